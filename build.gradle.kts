@@ -2,6 +2,7 @@ plugins {
     java
     id("org.springframework.boot") version "3.5.4"
     id("io.spring.dependency-management") version "1.1.7"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "dev.aparikh"
@@ -27,6 +28,7 @@ repositories {
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.springframework.boot:spring-boot-starter-cache")
+    implementation("com.github.ben-manes.caffeine:caffeine")
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-webflux")
     implementation("org.apache.solr:solr-solrj:9.6.1")
@@ -44,8 +46,20 @@ dependencies {
     testImplementation("org.testcontainers:junit-jupiter")
     testImplementation("org.testcontainers:solr")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    // Benchmarks run against a real Solr started with Testcontainers (requires Docker)
+    jmh("org.testcontainers:solr")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
 }
+
+jmh {
+    fork = 1
+    warmupIterations = 2
+    iterations = 5
+    resultFormat = "JSON"
+    // e.g. ./gradlew jmh -PjmhIncludes=FilterCacheBenchmark
+    (findProperty("jmhIncludes") as String?)?.let { includes = listOf(it) }
+}
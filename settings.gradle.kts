@@ -1 +1,4 @@
 rootProject.name = "search-email"
+
+// Solr query parser plugin jar, deployed into Solr rather than the application
+include("solr-privacy-plugin")
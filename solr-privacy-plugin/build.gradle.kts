@@ -0,0 +1,47 @@
+plugins {
+    `java-library`
+    id("me.champeau.jmh")
+}
+
+group = "dev.aparikh"
+version = "0.0.1-SNAPSHOT"
+description = "Solr post filter enforcing search-email participant privacy rules"
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(21)
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+val solrVersion = "9.6.1"
+
+dependencies {
+    // Provided by the Solr server the jar is installed into
+    compileOnly("org.apache.solr:solr-core:$solrVersion")
+
+    testImplementation("org.apache.solr:solr-core:$solrVersion")
+    testImplementation(platform("org.junit:junit-bom:5.12.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testImplementation("org.assertj:assertj-core:3.27.3")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    jmh("org.apache.solr:solr-core:$solrVersion")
+}
+
+tasks.withType<Test> {
+    useJUnitPlatform()
+}
+
+jmh {
+    fork = 1
+    warmupIterations = 2
+    iterations = 5
+    resultFormat = "JSON"
+    // Benchmarks reuse the embedded Solr home from the test resources
+    includeTests = true
+    (findProperty("jmhIncludes") as String?)?.let { includes = listOf(it) }
+}
@@ -0,0 +1,103 @@
+package dev.aparikh.searchemail.solr;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@code {!emailprivacy}} post filter with the query-time boolean expression it replaces,
+ * for participant lists of 10 and 100 addresses and a time filter that keeps 10% or all of the corpus.
+ * Both variants send the admin firm clause as a separate cached filter, as search-email does.
+ * <p>
+ * Solr runs in-process (EmbeddedSolrServer), so the score is query execution without HTTP.
+ * Run with {@code ./gradlew :solr-privacy-plugin:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EmailPrivacyFilterBenchmark {
+
+    private static final int DOCS = 100_000;
+    private static final List<String> FIRMS = List.of("firm0.com", "firm1.com", "firm2.com", "firm3.com",
+            "firm4.com", "firm5.com", "firm6.com", "firm7.com");
+    private static final int CUSTODIANS_PER_FIRM = 200;
+
+    @Param({"10", "100"})
+    public int participants;
+
+    @Param({"0.1", "1.0"})
+    public double timeSelectivity;
+
+    @Param({"EXPRESSION", "POST_FILTER"})
+    public String filter;
+
+    private Path dataDir;
+    private EmbeddedSolrServer solr;
+    private SolrQuery query;
+
+    private static String custodian(Random random) {
+        return "user" + random.nextInt(CUSTODIANS_PER_FIRM) + "@" + FIRMS.get(random.nextInt(FIRMS.size()));
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("emailprivacy-bench");
+        System.setProperty("solr.data.dir", dataDir.toString());
+        Path solrHome = Path.of(EmailPrivacyFilterBenchmark.class.getResource("/solr").toURI());
+        solr = new EmbeddedSolrServer(solrHome, "emails");
+
+        Random random = new Random(7);
+        List<SolrInputDocument> batch = new ArrayList<>(1000);
+        for (int i = 0; i < DOCS; i++) {
+            batch.add(EmailPrivacyFilterTest.email("d" + i, i, custodian(random),
+                    List.of(custodian(random), custodian(random)), List.of(custodian(random)), List.of(custodian(random))));
+            if (batch.size() == 1000) {
+                solr.add(batch);
+                batch.clear();
+            }
+        }
+        solr.add(batch);
+        solr.commit();
+
+        Set<String> custodians = new LinkedHashSet<>();
+        while (custodians.size() < participants) {
+            custodians.add(custodian(random));
+        }
+        String admin = FIRMS.get(0);
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+        long minutes = (long) (DOCS * timeSelectivity);
+
+        query = new SolrQuery("*:*");
+        query.setRows(0);
+        query.addFilterQuery("sent_at:[" + start + " TO " + start.plusSeconds(60 * minutes) + "]");
+        query.addFilterQuery("{!cache=true}any_domain:" + admin);
+        if ("POST_FILTER".equals(filter)) {
+            query.addFilterQuery("{!emailprivacy admin=" + admin + " participants=$p}");
+            query.set("p", String.join(",", custodians));
+        } else {
+            query.addFilterQuery("{!cache=false cost=100}" + BooleanExpression.of(admin, List.copyOf(custodians)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        solr.close();
+        System.clearProperty("solr.data.dir");
+    }
+
+    @Benchmark
+    public long hitCount() throws Exception {
+        return solr.query(query).getResults().getNumFound();
+    }
+}
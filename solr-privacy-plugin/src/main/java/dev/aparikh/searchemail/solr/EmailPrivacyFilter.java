@@ -0,0 +1,240 @@
+package dev.aparikh.searchemail.solr;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.search.DelegatingCollector;
+import org.apache.solr.search.ExtendedQueryBase;
+import org.apache.solr.search.PostFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Post filter applying the participant visibility rules to each document that survived the main query
+ * and all cheaper filters, reading the address fields from docValues:
+ * <ul>
+ *     <li>without an admin firm, a participant must be in FROM, TO or CC;</li>
+ *     <li>a participant from the admin firm is visible in FROM, TO, CC or BCC;</li>
+ *     <li>a participant from another firm is visible in FROM, TO or CC when the admin firm participates
+ *     anywhere on the email, and in BCC only when the admin firm sent it.</li>
+ * </ul>
+ * Admin firm participation is read from the derived {@code from_domain}/{@code any_domain} docValues, or from the
+ * addresses themselves on documents indexed before those fields existed, so the filter gives the same results on
+ * an index that has not been backfilled. The filter is never cached and always runs as a post filter, whatever
+ * local params it was given.
+ */
+public class EmailPrivacyFilter extends ExtendedQueryBase implements PostFilter {
+
+    // Same field names as the search-email schema; addresses and domains are indexed lowercase
+    static final String FROM = "from_addr";
+    static final String TO = "to_addr";
+    static final String CC = "cc_addr";
+    static final String BCC = "bcc_addr";
+    static final String FROM_DOMAIN = "from_domain";
+    static final String ANY_DOMAIN = "any_domain";
+
+    private static final List<String> VISIBLE_FIELDS = List.of(FROM, TO, CC);
+
+    // Post filters run only when cost >= 100
+    private static final int MIN_POST_FILTER_COST = 100;
+
+    private final String adminDomain;
+    private final Set<String> participants;
+
+    public EmailPrivacyFilter(String adminDomain, Set<String> participants) {
+        this.adminDomain = adminDomain;
+        this.participants = Set.copyOf(participants);
+    }
+
+    private static String domain(String email) {
+        int at = email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1);
+    }
+
+    @Override
+    public boolean getCache() {
+        return false;
+    }
+
+    @Override
+    public int getCost() {
+        return Math.max(super.getCost(), MIN_POST_FILTER_COST);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+        throw new UnsupportedOperationException("{!emailprivacy} can only be used as a filter query");
+    }
+
+    @Override
+    public DelegatingCollector getFilterCollector(IndexSearcher searcher) {
+        return new PrivacyCollector();
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        visitor.visitLeaf(this);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other)
+                && Objects.equals(adminDomain, ((EmailPrivacyFilter) other).adminDomain)
+                && participants.equals(((EmailPrivacyFilter) other).participants);
+    }
+
+    @Override
+    public int hashCode() {
+        return classHash() ^ Objects.hash(adminDomain, participants);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "{!emailprivacy admin=" + adminDomain + " participants=" + participants.size() + "}";
+    }
+
+    /**
+     * Per-segment state: the ordinals of the searched participants in each address field, so documents
+     * are matched by comparing ordinals instead of terms.
+     */
+    private final class PrivacyCollector extends DelegatingCollector {
+
+        // Indexed by field: FROM, TO, CC, BCC
+        private final SortedSetDocValues[] addresses = new SortedSetDocValues[4];
+        private final long[][] sameFirmOrds = new long[4][];
+        private final long[][] crossFirmOrds = new long[4][];
+        private boolean segmentMatches;
+
+        private SortedSetDocValues fromDomain;
+        private SortedSetDocValues anyDomain;
+        private long fromDomainOrd;
+        private long anyDomainOrd;
+        // Separate iterators over the address fields for documents without the derived domain fields
+        private final SortedSetDocValues[] underivedAddresses = new SortedSetDocValues[4];
+        private BytesRef adminSuffix;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            super.doSetNextReader(context);
+            LeafReader reader = context.reader();
+            String[] fields = {FROM, TO, CC, BCC};
+            segmentMatches = false;
+            for (int f = 0; f < fields.length; f++) {
+                addresses[f] = DocValues.getSortedSet(reader, fields[f]);
+                sameFirmOrds[f] = lookup(addresses[f], true);
+                crossFirmOrds[f] = lookup(addresses[f], false);
+                // Skip every document of segments where no searched participant occurs in a searchable field
+                boolean searchable = f < 3 || adminDomain != null;
+                segmentMatches |= searchable && (sameFirmOrds[f].length > 0 || crossFirmOrds[f].length > 0);
+            }
+            if (adminDomain != null) {
+                fromDomain = DocValues.getSortedSet(reader, FROM_DOMAIN);
+                anyDomain = DocValues.getSortedSet(reader, ANY_DOMAIN);
+                fromDomainOrd = fromDomain.lookupTerm(new BytesRef(adminDomain));
+                anyDomainOrd = anyDomain.lookupTerm(new BytesRef(adminDomain));
+                for (int f = 0; f < fields.length; f++) {
+                    underivedAddresses[f] = DocValues.getSortedSet(reader, fields[f]);
+                }
+                adminSuffix = new BytesRef("@" + adminDomain);
+            }
+        }
+
+        /**
+         * Sorted ordinals, in this segment, of the participants that are ({@code sameFirm}) or are not
+         * members of the admin firm. Without an admin firm everyone counts as cross-firm.
+         */
+        private long[] lookup(SortedSetDocValues values, boolean sameFirm) throws IOException {
+            long[] ords = new long[participants.size()];
+            int count = 0;
+            for (String participant : participants) {
+                boolean member = adminDomain != null && adminDomain.equals(domain(participant));
+                if (member != sameFirm) continue;
+                long ord = values.lookupTerm(new BytesRef(participant));
+                if (ord >= 0) ords[count++] = ord;
+            }
+            long[] found = Arrays.copyOf(ords, count);
+            Arrays.sort(found);
+            return found;
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (segmentMatches && isVisible(doc)) {
+                super.collect(doc);
+            }
+        }
+
+        private boolean isVisible(int doc) throws IOException {
+            boolean crossFirmVisible = false;
+            boolean crossFirmBcc = false;
+            for (int f = 0; f < 4; f++) {
+                boolean bcc = f == 3;
+                // Without an admin firm nobody is visible in BCC
+                if (bcc && adminDomain == null) break;
+                if (sameFirmOrds[f].length == 0 && crossFirmOrds[f].length == 0) continue;
+                SortedSetDocValues values = addresses[f];
+                if (!values.advanceExact(doc)) continue;
+                for (int i = 0, n = values.docValueCount(); i < n; i++) {
+                    long ord = values.nextOrd();
+                    if (Arrays.binarySearch(sameFirmOrds[f], ord) >= 0) return true;
+                    if (Arrays.binarySearch(crossFirmOrds[f], ord) >= 0) {
+                        if (bcc) {
+                            crossFirmBcc = true;
+                        } else {
+                            crossFirmVisible = true;
+                        }
+                    }
+                }
+            }
+            if (adminDomain == null) return crossFirmVisible;
+            if (!crossFirmVisible && !crossFirmBcc) return false;
+            // Admin firm membership is only checked for documents that already matched a participant
+            if (!anyDomain.advanceExact(doc)) return adminFirmInAddresses(doc, crossFirmVisible);
+            if (crossFirmVisible && contains(anyDomain, anyDomainOrd)) return true;
+            return crossFirmBcc && fromDomain.advanceExact(doc) && contains(fromDomain, fromDomainOrd);
+        }
+
+        // Values of the document the iterator is positioned on
+        private boolean contains(SortedSetDocValues values, long targetOrd) throws IOException {
+            if (targetOrd < 0) return false;
+            for (int i = 0, n = values.docValueCount(); i < n; i++) {
+                if (values.nextOrd() == targetOrd) return true;
+            }
+            return false;
+        }
+
+        /**
+         * The admin firm rules for a document without the derived domain fields, checking the domain of each
+         * address: the admin firm sending makes cross-firm participants visible anywhere, and participating in
+         * any other field makes them visible in FROM, TO or CC.
+         */
+        private boolean adminFirmInAddresses(int doc, boolean crossFirmVisible) throws IOException {
+            for (int f = 0; f < 4; f++) {
+                // FROM comes first; past it only FROM/TO/CC matches can still become visible
+                if (f > 0 && !crossFirmVisible) return false;
+                SortedSetDocValues values = underivedAddresses[f];
+                if (!values.advanceExact(doc)) continue;
+                for (int i = 0, n = values.docValueCount(); i < n; i++) {
+                    if (inAdminFirm(values.lookupOrd(values.nextOrd()))) return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean inAdminFirm(BytesRef address) {
+            int start = address.offset + address.length - adminSuffix.length;
+            return start >= address.offset && Arrays.equals(address.bytes, start, address.offset + address.length,
+                    adminSuffix.bytes, adminSuffix.offset, adminSuffix.offset + adminSuffix.length);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.aparikh.searchemail.solr;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.SyntaxError;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Query parser for {@code {!emailprivacy admin=<firm domain> participants=<a@x.com,b@y.com>}}.
+ * <p>
+ * Register it in solrconfig.xml with the plugin jar on the core's classpath:
+ * <pre>{@code <queryParser name="emailprivacy" class="dev.aparikh.searchemail.solr.EmailPrivacyQParserPlugin"/>}</pre>
+ * {@code admin} is optional; without it BCC recipients are never matched. {@code participants} is
+ * required and comma-separated, and may be dereferenced from a request parameter ({@code participants=$p}).
+ */
+public class EmailPrivacyQParserPlugin extends QParserPlugin {
+
+    public static final String NAME = "emailprivacy";
+    public static final String ADMIN = "admin";
+    public static final String PARTICIPANTS = "participants";
+
+    @Override
+    public QParser createParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
+        return new QParser(qstr, localParams, params, req) {
+            @Override
+            public Query parse() throws SyntaxError {
+                String participantList = localParams.get(PARTICIPANTS);
+                if (participantList == null || participantList.isBlank()) {
+                    throw new SyntaxError("Missing required local param '" + PARTICIPANTS + "'");
+                }
+                Set<String> participants = new LinkedHashSet<>();
+                for (String participant : StrUtils.splitSmart(participantList, ',')) {
+                    String trimmed = participant.trim();
+                    if (!trimmed.isEmpty()) participants.add(trimmed.toLowerCase(Locale.ROOT));
+                }
+                String admin = localParams.get(ADMIN);
+                String adminDomain = admin == null || admin.isBlank() ? null : admin.trim().toLowerCase(Locale.ROOT);
+                return new EmailPrivacyFilter(adminDomain, participants);
+            }
+        };
+    }
+}
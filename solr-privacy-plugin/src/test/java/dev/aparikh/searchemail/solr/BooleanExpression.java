@@ -0,0 +1,30 @@
+package dev.aparikh.searchemail.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The query-time boolean form of the privacy rules used by search-email without the plugin,
+ * as the reference the post filter is compared with.
+ */
+final class BooleanExpression {
+
+    private BooleanExpression() {
+    }
+
+    static String of(String adminDomain, List<String> participants) {
+        List<String> clauses = new ArrayList<>();
+        for (String participant : participants) {
+            String visible = "from_addr:\"" + participant + "\" OR to_addr:\"" + participant + "\" OR cc_addr:\"" + participant + "\"";
+            if (adminDomain == null) {
+                clauses.add("(" + visible + ")");
+            } else if (participant.endsWith("@" + adminDomain)) {
+                clauses.add("(" + visible + " OR bcc_addr:\"" + participant + "\")");
+            } else {
+                clauses.add("(((" + visible + ") AND any_domain:" + adminDomain + ") OR (bcc_addr:\"" + participant
+                        + "\" AND from_domain:" + adminDomain + "))");
+            }
+        }
+        return String.join(" OR ", clauses);
+    }
+}
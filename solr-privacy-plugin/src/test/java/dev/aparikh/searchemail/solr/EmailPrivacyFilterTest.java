@@ -0,0 +1,240 @@
+package dev.aparikh.searchemail.solr;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the post filter inside an in-process Solr core and checks it against the privacy rules,
+ * both on hand-written scenarios and against the boolean-expression filter on a generated corpus.
+ */
+class EmailPrivacyFilterTest {
+
+    private static final Instant BASE_TIME = Instant.parse("2025-01-01T00:00:00Z");
+
+    @TempDir
+    static Path dataDir;
+
+    private static EmbeddedSolrServer solr;
+
+    @BeforeAll
+    static void startSolr() throws Exception {
+        System.setProperty("solr.data.dir", dataDir.toString());
+        Path solrHome = Path.of(EmailPrivacyFilterTest.class.getResource("/solr").toURI());
+        solr = new EmbeddedSolrServer(solrHome, "emails");
+    }
+
+    @AfterAll
+    static void stopSolr() throws Exception {
+        solr.close();
+        System.clearProperty("solr.data.dir");
+    }
+
+    static SolrInputDocument email(String id, int minute, String from, List<String> to, List<String> cc, List<String> bcc) {
+        SolrInputDocument d = new SolrInputDocument();
+        d.addField("id", id);
+        d.addField("sent_at", Date.from(BASE_TIME.plusSeconds(60L * minute)));
+        d.addField("from_addr", from);
+        to.forEach(a -> d.addField("to_addr", a));
+        cc.forEach(a -> d.addField("cc_addr", a));
+        bcc.forEach(a -> d.addField("bcc_addr", a));
+        d.addField("from_domain", domain(from));
+        Set<String> domains = new LinkedHashSet<>();
+        domains.add(domain(from));
+        for (List<String> addresses : List.of(to, cc, bcc)) {
+            addresses.forEach(a -> domains.add(domain(a)));
+        }
+        domains.forEach(dom -> d.addField("any_domain", dom));
+        return d;
+    }
+
+    private static String domain(String email) {
+        return email.substring(email.lastIndexOf('@') + 1);
+    }
+
+    @BeforeEach
+    void cleanIndex() throws Exception {
+        solr.deleteByQuery("*:*");
+        solr.commit();
+    }
+
+    private void indexScenarios() throws Exception {
+        solr.add(scenarios());
+        solr.commit();
+    }
+
+    private static List<SolrInputDocument> scenarios() {
+        return List.of(
+                email("e1", 1, "alice@firm1.com", List.of("bob@firm2.com"), List.of(), List.of()),
+                email("e2", 2, "carol@firm3.com", List.of("bob@firm2.com"), List.of(), List.of()),
+                email("e3", 3, "alice@firm1.com", List.of("dave@firm3.com"), List.of(), List.of("bob@firm2.com")),
+                email("e4", 4, "carol@firm3.com", List.of("alice@firm1.com"), List.of(), List.of("bob@firm2.com")),
+                email("e5", 5, "bob@firm2.com", List.of(), List.of("dave@firm3.com"), List.of("erin@firm1.com")));
+    }
+
+    private Set<String> ids(SolrQuery q) throws Exception {
+        q.setRows(1000);
+        Set<String> ids = new HashSet<>();
+        for (SolrDocument d : solr.query(q).getResults()) {
+            ids.add((String) d.getFieldValue("id"));
+        }
+        return ids;
+    }
+
+    private Set<String> privacyFilter(String admin, String participants) throws Exception {
+        SolrQuery q = new SolrQuery("*:*");
+        q.addFilterQuery("{!emailprivacy" + (admin == null ? "" : " admin=" + admin) + " participants=" + participants + "}");
+        return ids(q);
+    }
+
+    @Test
+    void crossFirmParticipantRequiresAdminFirmParticipationOrSenderPrivilege() throws Exception {
+        indexScenarios();
+
+        // e1: TO with firm1 sending; e3: BCC with firm1 sending; e5: FROM with firm1 in BCC;
+        // e2 has no firm1 participant and e4 is BCC without sender privilege
+        assertThat(privacyFilter("firm1.com", "bob@firm2.com")).containsExactlyInAnyOrder("e1", "e3", "e5");
+        // e2: TO with firm3 sending; e4: BCC with firm3 sending; e5: FROM with firm3 in CC;
+        // e3 is BCC while firm3 is only in TO
+        assertThat(privacyFilter("firm3.com", "bob@firm2.com")).containsExactlyInAnyOrder("e2", "e4", "e5");
+    }
+
+    @Test
+    void derivesAdminFirmFromAddressesOnDocumentsWithoutDomainFields() throws Exception {
+        // An index that was not backfilled, with only e2 and e4 reindexed since the domain fields were added
+        for (SolrInputDocument d : scenarios()) {
+            if (!d.getFieldValue("id").equals("e2") && !d.getFieldValue("id").equals("e4")) {
+                d.removeField("from_domain");
+                d.removeField("any_domain");
+            }
+            solr.add(d);
+        }
+        solr.commit();
+
+        assertThat(privacyFilter("firm1.com", "bob@firm2.com")).containsExactlyInAnyOrder("e1", "e3", "e5");
+        assertThat(privacyFilter("firm3.com", "bob@firm2.com")).containsExactlyInAnyOrder("e2", "e4", "e5");
+        assertThat(privacyFilter("firm2.com", "erin@firm1.com")).containsExactly("e5");
+        assertThat(privacyFilter("firm3.com", "erin@firm1.com")).isEmpty();
+        // Domains are compared as a whole, not as a suffix of a longer domain
+        assertThat(privacyFilter("1.com", "bob@firm2.com")).isEmpty();
+    }
+
+    @Test
+    void sameFirmParticipantIsVisibleInBcc() throws Exception {
+        indexScenarios();
+
+        assertThat(privacyFilter("firm1.com", "erin@firm1.com")).containsExactly("e5");
+        // erin is cross-firm for firm2, but firm2 sent e5
+        assertThat(privacyFilter("firm2.com", "erin@firm1.com")).containsExactly("e5");
+        assertThat(privacyFilter("firm3.com", "erin@firm1.com")).isEmpty();
+    }
+
+    @Test
+    void withoutAdminFirmOnlyFromToAndCcMatch() throws Exception {
+        indexScenarios();
+
+        assertThat(privacyFilter(null, "bob@firm2.com")).containsExactlyInAnyOrder("e1", "e2", "e5");
+        assertThat(privacyFilter(null, "erin@firm1.com")).isEmpty();
+    }
+
+    @Test
+    void matchesAnyOfSeveralParticipantsCaseInsensitively() throws Exception {
+        indexScenarios();
+
+        assertThat(privacyFilter("Firm1.com", "Bob@Firm2.com,erin@firm1.com")).containsExactlyInAnyOrder("e1", "e3", "e5");
+    }
+
+    @Test
+    void onlyFiltersDocumentsMatchingTheMainQueryAndCheaperFilters() throws Exception {
+        indexScenarios();
+
+        SolrQuery q = new SolrQuery("from_addr:alice@firm1.com");
+        q.addFilterQuery("sent_at:[" + BASE_TIME.plusSeconds(150) + " TO *]");
+        q.addFilterQuery("{!emailprivacy admin=firm1.com participants=$p}");
+        q.set("p", "bob@firm2.com");
+
+        assertThat(ids(q)).containsExactly("e3");
+    }
+
+    @Test
+    void alwaysRunsAsUncachedPostFilter() throws Exception {
+        EmailPrivacyFilter filter = new EmailPrivacyFilter("firm1.com", Set.of("bob@firm2.com"));
+        filter.setCache(true);
+        filter.setCost(1);
+
+        assertThat(filter.getCache()).isFalse();
+        assertThat(filter.getCost()).isEqualTo(100);
+
+        indexScenarios();
+        SolrQuery q = new SolrQuery("*:*");
+        q.addFilterQuery("{!emailprivacy admin=firm1.com participants=bob@firm2.com cache=true cost=1}");
+        assertThat(ids(q)).containsExactlyInAnyOrder("e1", "e3", "e5");
+    }
+
+    @Test
+    void rejectsMissingParticipants() {
+        SolrQuery q = new SolrQuery("*:*");
+        q.addFilterQuery("{!emailprivacy admin=firm1.com}");
+
+        assertThatThrownBy(() -> solr.query(q)).hasMessageContaining("participants");
+    }
+
+    @Test
+    void agreesWithBooleanExpressionOnGeneratedCorpus() throws Exception {
+        Random random = new Random(42);
+        List<String> firms = List.of("firm1.com", "firm2.com", "firm3.com", "firm4.com");
+        List<String> people = new ArrayList<>();
+        for (String firm : firms) {
+            for (int i = 0; i < 4; i++) people.add("user" + i + "@" + firm);
+        }
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            docs.add(email("g" + i, i, pick(people, random), pickSome(people, random, 2), pickSome(people, random, 1),
+                    pickSome(people, random, 2)));
+        }
+        solr.add(docs);
+        solr.commit();
+
+        for (int round = 0; round < 40; round++) {
+            String admin = round % 5 == 0 ? null : pick(firms, random);
+            List<String> participants = pickSome(people, random, 3);
+            if (participants.isEmpty()) participants = List.of(pick(people, random));
+
+            SolrQuery expected = new SolrQuery("*:*");
+            expected.addFilterQuery(BooleanExpression.of(admin, participants));
+            assertThat(privacyFilter(admin, String.join(",", participants)))
+                    .as("admin %s searching %s", admin, participants)
+                    .isEqualTo(ids(expected));
+        }
+    }
+
+    private static String pick(List<String> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static List<String> pickSome(List<String> values, Random random, int max) {
+        Set<String> picked = new LinkedHashSet<>();
+        int count = random.nextInt(max + 1);
+        for (int i = 0; i < count; i++) picked.add(pick(values, random));
+        return new ArrayList<>(picked);
+    }
+}
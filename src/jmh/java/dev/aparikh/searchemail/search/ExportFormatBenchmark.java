@@ -0,0 +1,98 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.SearchEmailApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire throughput of a full export over HTTP: the SSE {@code /api/emails/stream} endpoint versus
+ * {@code /api/emails/export} as plain and gzip-compressed NDJSON. Each operation downloads the whole
+ * corpus; the {@code bytes} counter is the response size per second as received (divide by 2^20 for
+ * MB/s) and {@code documents} the emails per second, which is what the compressed format improves.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=ExportFormatBenchmark}; requires Docker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ExportFormatBenchmark {
+
+    private static final int DOCS = 100_000;
+
+    @Param({"SSE", "NDJSON", "NDJSON_GZIP"})
+    public String format;
+
+    private SolrBenchmarkSupport solr;
+    private ConfigurableApplicationContext app;
+    private HttpClient http;
+    private HttpRequest request;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Transferred {
+        public long bytes;
+        public long documents;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        solr = SolrBenchmarkSupport.start();
+        solr.seed(DOCS, 200);
+        app = new SpringApplicationBuilder(SearchEmailApplication.class)
+                .properties("server.port=0",
+                        "solr.base-url=" + solr.baseUrl(),
+                        "solr.core=" + SolrBenchmarkSupport.CORE)
+                .run();
+        int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+
+        Instant start = SolrBenchmarkSupport.CORPUS_START;
+        String body = """
+                {"startTime":"%s","endTime":"%s","adminFirmDomain":"%s","batchSize":1000}"""
+                .formatted(start, start.plusSeconds(60L * DOCS), SolrBenchmarkSupport.FIRMS.get(0));
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + ("SSE".equals(format) ? "/api/emails/stream" : "/api/emails/export")))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if ("NDJSON_GZIP".equals(format)) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        request = builder.build();
+        http = HttpClient.newHttpClient();
+    }
+
+    @Benchmark
+    public long export(Transferred transferred) throws Exception {
+        HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Export failed with status " + response.statusCode());
+        }
+        long bytes = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = response.body()) {
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                bytes += n;
+            }
+        }
+        transferred.bytes += bytes;
+        transferred.documents += DOCS;
+        return bytes;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        app.close();
+        solr.close();
+    }
+}
@@ -0,0 +1,83 @@
+package dev.aparikh.searchemail.search;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a review-team style traffic mix (a few admin firms, many overlapping custodian lists)
+ * with the privacy filter sent as one expression versus split into cacheable fq clauses, and
+ * reports the resulting Solr filterCache hit ratio for each.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=FilterCacheBenchmark}; requires Docker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilterCacheBenchmark {
+
+    private static final int DOCS = 50_000;
+    private static final int CUSTODIANS_PER_FIRM = 40;
+    private static final int MATTERS = 300;
+
+    @Param({"true", "false"})
+    public boolean splitPrivacyFilters;
+
+    private SolrBenchmarkSupport solr;
+    private EmailSearchService searchService;
+    private SolrBenchmarkSupport.CacheStats before;
+    private List<SearchQuery> traffic;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        solr = SolrBenchmarkSupport.start();
+        solr.seed(DOCS, CUSTODIANS_PER_FIRM);
+
+        SearchProperties properties = new SearchProperties();
+        properties.setSplitPrivacyFilters(splitPrivacyFilters);
+        searchService = new EmailSearchService(solr.client(), properties);
+        traffic = traffic(new Random(11));
+        before = solr.filterCacheStats();
+    }
+
+    /**
+     * Each matter is a fixed custodian list searched by one admin firm. Matters are drawn with a
+     * skew towards a few hot ones, and custodians overlap heavily between matters.
+     */
+    private static List<SearchQuery> traffic(Random random) {
+        Instant start = SolrBenchmarkSupport.CORPUS_START;
+        Instant end = start.plusSeconds(60L * DOCS);
+        List<SearchQuery> matters = new ArrayList<>(MATTERS);
+        for (int m = 0; m < MATTERS; m++) {
+            // Three firms generate most of the review traffic
+            String adminFirm = SolrBenchmarkSupport.FIRMS.get(random.nextInt(10) < 8 ? random.nextInt(3)
+                    : random.nextInt(SolrBenchmarkSupport.FIRMS.size()));
+            List<String> custodians = SolrBenchmarkSupport.randomCustodians(random, CUSTODIANS_PER_FIRM / 4, 3 + random.nextInt(6));
+            matters.add(new SearchQuery(start, end, null, custodians, adminFirm, 0, 20, null));
+        }
+        List<SearchQuery> requests = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            int matter = (int) Math.min(MATTERS - 1, Math.abs(random.nextGaussian()) * MATTERS / 3);
+            requests.add(matters.get(matter));
+        }
+        return requests;
+    }
+
+    @Benchmark
+    public Object search() {
+        SearchQuery query = traffic.get(next++ % traffic.size());
+        return searchService.search(query);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SolrBenchmarkSupport.CacheStats stats = solr.filterCacheStats().since(before);
+        System.out.println("filterCache (splitPrivacyFilters=" + splitPrivacyFilters + "): " + stats);
+        solr.close();
+    }
+}
@@ -0,0 +1,73 @@
+package dev.aparikh.searchemail.search;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of serving one search page with its total count: the former {@code search} plus
+ * {@code getHitCount} double request, versus {@code searchPage} with an exact count and with
+ * {@code minExactCount}. Sample-time mode reports the p50/p99 latency percentiles per path.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PageRoundTripBenchmark}; requires Docker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PageRoundTripBenchmark {
+
+    private static final int DOCS = 50_000;
+    private static final int CUSTODIANS_PER_FIRM = 40;
+    private static final int MIN_EXACT_COUNT = 1_000;
+
+    @Param({"SEARCH_AND_HIT_COUNT", "SEARCH_PAGE", "SEARCH_PAGE_MIN_EXACT_COUNT"})
+    public String path;
+
+    private SolrBenchmarkSupport solr;
+    private EmailSearchService searchService;
+    private List<SearchQuery> traffic;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        solr = SolrBenchmarkSupport.start();
+        solr.seed(DOCS, CUSTODIANS_PER_FIRM);
+        searchService = new EmailSearchService(solr.client(), new SearchProperties());
+        traffic = traffic(new Random(5), "SEARCH_PAGE_MIN_EXACT_COUNT".equals(path) ? MIN_EXACT_COUNT : null);
+    }
+
+    /**
+     * Page views over the first few pages of custodian searches, varied enough that Solr's
+     * queryResultCache does not answer every request.
+     */
+    private static List<SearchQuery> traffic(Random random, Integer minExactCount) {
+        Instant start = SolrBenchmarkSupport.CORPUS_START;
+        Instant end = start.plusSeconds(60L * DOCS);
+        List<SearchQuery> requests = new ArrayList<>(5_000);
+        for (int i = 0; i < 5_000; i++) {
+            String adminFirm = SolrBenchmarkSupport.FIRMS.get(random.nextInt(SolrBenchmarkSupport.FIRMS.size()));
+            List<String> custodians = SolrBenchmarkSupport.randomCustodians(random, CUSTODIANS_PER_FIRM, 1 + random.nextInt(5));
+            requests.add(new SearchQuery(start, end, null, custodians, adminFirm, random.nextInt(5), 50,
+                    null, null, null, minExactCount));
+        }
+        return requests;
+    }
+
+    @Benchmark
+    public Object page() {
+        SearchQuery query = traffic.get(next++ % traffic.size());
+        if ("SEARCH_AND_HIT_COUNT".equals(path)) {
+            return List.of(searchService.search(query), searchService.getHitCount(query));
+        }
+        return searchService.searchPage(query);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        solr.close();
+    }
+}
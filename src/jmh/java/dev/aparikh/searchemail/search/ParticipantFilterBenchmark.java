@@ -0,0 +1,97 @@
+package dev.aparikh.searchemail.search;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-participant phrase expression with the grouped {@code {!terms}} filter for
+ * custodian lists of 10, 100 and 1,000 addresses.
+ * <p>
+ * The JMH score is the client-observed latency of a hit count request. Solr's own query parse
+ * (prepare) and execution (process) times are taken from {@code debug=timing} and printed per trial.
+ * Expression requests rejected by Solr (e.g. too many boolean clauses) are counted, not timed.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=ParticipantFilterBenchmark}; requires Docker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParticipantFilterBenchmark {
+
+    private static final int DOCS = 50_000;
+    private static final int CUSTODIANS_PER_FIRM = 200;
+
+    @Param({"10", "100", "1000"})
+    public int participants;
+
+    @Param({"EXPRESSION", "TERMS"})
+    public String filter;
+
+    private SolrBenchmarkSupport solr;
+    private EmailSearchService searchService;
+    private SearchQuery query;
+
+    private long requests;
+    private long failures;
+    private double prepareMillis;
+    private double processMillis;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        solr = SolrBenchmarkSupport.start();
+        solr.seed(DOCS, CUSTODIANS_PER_FIRM);
+
+        SearchProperties properties = new SearchProperties();
+        properties.setTermsFilterThreshold("TERMS".equals(filter) ? 1 : Integer.MAX_VALUE);
+        searchService = new EmailSearchService(solr.client(), properties);
+
+        Random random = new Random(3);
+        Set<String> custodians = new LinkedHashSet<>();
+        while (custodians.size() < participants) {
+            custodians.add(SolrBenchmarkSupport.randomCustodian(random, CUSTODIANS_PER_FIRM));
+        }
+        Instant start = SolrBenchmarkSupport.CORPUS_START;
+        query = new SearchQuery(start, start.plusSeconds(60L * DOCS), null, List.copyOf(custodians),
+                SolrBenchmarkSupport.FIRMS.get(0), 0, 20, null);
+    }
+
+    @Benchmark
+    public long hitCount() {
+        SolrQuery q = searchService.buildSolrQuery(query);
+        q.setRows(0);
+        q.set("debug", "timing");
+        try {
+            QueryResponse resp = solr.client().query(q);
+            requests++;
+            NamedList<?> timing = (NamedList<?>) resp.getDebugMap().get("timing");
+            prepareMillis += time(timing, "prepare");
+            processMillis += time(timing, "process");
+            return resp.getResults().getNumFound();
+        } catch (Exception e) {
+            failures++;
+            return -1;
+        }
+    }
+
+    private static double time(NamedList<?> timing, String phase) {
+        Object total = ((NamedList<?>) timing.get(phase)).get("time");
+        return total instanceof Number n ? n.doubleValue() : 0.0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.printf("%s filter, %d participants: solr prepare=%.2fms process=%.2fms per request, %d failed requests%n",
+                filter, participants, requests == 0 ? 0 : prepareMillis / requests,
+                requests == 0 ? 0 : processMillis / requests, failures);
+        solr.close();
+    }
+}
@@ -0,0 +1,167 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.indexing.EmailIndexService;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.testcontainers.containers.SolrContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Shared plumbing for benchmarks that need a real Solr core: container lifecycle, schema,
+ * a synthetic multi-firm corpus, and access to Solr's cache statistics.
+ */
+final class SolrBenchmarkSupport implements AutoCloseable {
+
+    static final String CORE = "emails";
+    static final Instant CORPUS_START = Instant.parse("2025-01-01T00:00:00Z");
+    static final List<String> FIRMS = List.of(
+            "jpmorgan.com", "bankofamerica.com", "citi.com", "wellsfargo.com", "goldmansachs.com",
+            "morganstanley.com", "barclays.com", "hsbc.com");
+
+    private final SolrContainer container;
+    private final SolrClient client;
+
+    private SolrBenchmarkSupport(SolrContainer container, SolrClient client) {
+        this.container = container;
+        this.client = client;
+    }
+
+    static SolrBenchmarkSupport start() throws Exception {
+        SolrContainer container = new SolrContainer(DockerImageName.parse("solr:9.6.1"));
+        container.start();
+        container.execInContainer("solr", "create_collection", "-c", CORE, "-shards", "1", "-replicationFactor", "1");
+        SolrClient client = new HttpSolrClient.Builder(baseUrl(container) + "/" + CORE).build();
+        addField(client, EmailDocument.FIELD_ID, Map.of("type", "string", "stored", true, "indexed", true, "required", true));
+        addField(client, EmailDocument.FIELD_SUBJECT, Map.of("type", "text_general", "stored", true, "indexed", true));
+        addField(client, EmailDocument.FIELD_BODY, Map.of("type", "text_general", "stored", true, "indexed", true));
+        addField(client, EmailDocument.FIELD_FROM, Map.of("type", "string", "stored", true, "indexed", true));
+        addField(client, EmailDocument.FIELD_TO, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+        addField(client, EmailDocument.FIELD_CC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+        addField(client, EmailDocument.FIELD_BCC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+        addField(client, EmailDocument.FIELD_SENT_AT, Map.of("type", "pdate", "stored", true, "indexed", true));
+        for (String field : List.of(EmailDocument.FIELD_TO_DOMAIN, EmailDocument.FIELD_CC_DOMAIN,
+                EmailDocument.FIELD_BCC_DOMAIN, EmailDocument.FIELD_ANY_DOMAIN, EmailDocument.FIELD_VISIBLE_PARTICIPANT)) {
+            addField(client, field, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+        }
+        addField(client, EmailDocument.FIELD_FROM_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true));
+        return new SolrBenchmarkSupport(container, client);
+    }
+
+    private static String baseUrl(SolrContainer container) {
+        return "http://" + container.getHost() + ":" + container.getMappedPort(8983) + "/solr";
+    }
+
+    private static void addField(SolrClient core, String name, Map<String, Object> props) throws Exception {
+        Map<String, Object> field = new HashMap<>(props);
+        field.put("name", name);
+        new SchemaRequest.AddField(field).process(core);
+    }
+
+    SolrClient client() {
+        return client;
+    }
+
+    /**
+     * Base URL of the Solr node, without the core, as configured in {@code solr.base-url}.
+     */
+    String baseUrl() {
+        return baseUrl(container);
+    }
+
+    /**
+     * Custodian address {@code n} of a firm; small {@code n} are the most active senders and recipients.
+     */
+    static String custodian(String firm, int n) {
+        return "user" + n + "@" + firm;
+    }
+
+    /**
+     * Indexes {@code count} emails spread one minute apart, with 1-3 recipients per role drawn from
+     * {@code custodiansPerFirm} custodians in each firm.
+     */
+    void seed(int count, int custodiansPerFirm) {
+        EmailIndexService indexService = new EmailIndexService(client);
+        Random random = new Random(7);
+        List<EmailDocument> batch = new ArrayList<>(1000);
+        for (int i = 0; i < count; i++) {
+            batch.add(new EmailDocument("doc-" + i, "Subject " + i, "Body of message " + i,
+                    randomCustodian(random, custodiansPerFirm),
+                    randomCustodians(random, custodiansPerFirm, 1 + random.nextInt(3)),
+                    randomCustodians(random, custodiansPerFirm, random.nextInt(3)),
+                    randomCustodians(random, custodiansPerFirm, random.nextInt(2)),
+                    CORPUS_START.plusSeconds(60L * i)));
+            if (batch.size() == 1000) {
+                indexService.indexAll(batch);
+                batch.clear();
+            }
+        }
+        indexService.indexAll(batch);
+    }
+
+    static String randomCustodian(Random random, int custodiansPerFirm) {
+        return custodian(FIRMS.get(random.nextInt(FIRMS.size())), random.nextInt(custodiansPerFirm));
+    }
+
+    static List<String> randomCustodians(Random random, int custodiansPerFirm, int n) {
+        List<String> custodians = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) custodians.add(randomCustodian(random, custodiansPerFirm));
+        return custodians;
+    }
+
+    /**
+     * Cumulative filterCache lookups and hits for the core, from the Solr metrics API.
+     */
+    CacheStats filterCacheStats() throws Exception {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("group", "core");
+        params.set("prefix", "CACHE.searcher.filterCache");
+        try (SolrClient admin = new HttpSolrClient.Builder(baseUrl(container)).build()) {
+            NamedList<Object> response = admin.request(
+                    new GenericSolrRequest(SolrRequest.METHOD.GET, "/admin/metrics", params));
+            NamedList<?> metrics = (NamedList<?>) response.get("metrics");
+            long lookups = 0;
+            long hits = 0;
+            for (Map.Entry<String, ?> core : metrics) {
+                Object cache = ((NamedList<?>) core.getValue()).get("CACHE.searcher.filterCache");
+                lookups += number(cache, "cumulative_lookups");
+                hits += number(cache, "cumulative_hits");
+            }
+            return new CacheStats(lookups, hits);
+        }
+    }
+
+    private static long number(Object stats, String key) {
+        Object value = stats instanceof NamedList<?> nl ? nl.get(key) : ((Map<?, ?>) stats).get(key);
+        return value instanceof Number n ? n.longValue() : 0L;
+    }
+
+    record CacheStats(long lookups, long hits) {
+        CacheStats since(CacheStats before) {
+            return new CacheStats(lookups - before.lookups, hits - before.hits);
+        }
+
+        double hitRatio() {
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d lookups=%d hitRatio=%.3f", hits, lookups, hitRatio());
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        client.close();
+        container.stop();
+    }
+}
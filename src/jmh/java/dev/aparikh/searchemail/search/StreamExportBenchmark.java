@@ -0,0 +1,75 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the last document of a full export: {@code searchStream} paging with cursorMark versus the
+ * previous approach of an up-front hit count followed by {@code start = page * batchSize} pages
+ * merged with {@code flatMap}. Each iteration streams the whole corpus once.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=StreamExportBenchmark}; requires Docker. Seeding the
+ * default 1M documents takes several minutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class StreamExportBenchmark {
+
+    @Param({"1000000"})
+    public int docs;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"CURSOR_MARK", "PARALLEL_SLICES", "OFFSET"})
+    public String paging;
+
+    private SolrBenchmarkSupport solr;
+    private EmailSearchService searchService;
+    private SearchQuery query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        solr = SolrBenchmarkSupport.start();
+        solr.seed(docs, 200);
+        searchService = new EmailSearchService(solr.client(), new SearchProperties());
+        Instant start = SolrBenchmarkSupport.CORPUS_START;
+        query = new SearchQuery(start, start.plusSeconds(60L * docs), null, null,
+                SolrBenchmarkSupport.FIRMS.get(0), 0, batchSize, null);
+    }
+
+    @Benchmark
+    public long export() {
+        Flux<EmailDocument> stream = switch (paging) {
+            case "CURSOR_MARK" -> searchService.searchStream(query, batchSize);
+            case "PARALLEL_SLICES" -> searchService.parallelStream(query, batchSize, null);
+            default -> offsetStream();
+        };
+        Long exported = stream.count().block();
+        if (exported == null || exported != docs) {
+            throw new IllegalStateException("Exported " + exported + " of " + docs + " documents");
+        }
+        return exported;
+    }
+
+    // The streaming implementation this benchmark replaced
+    private Flux<EmailDocument> offsetStream() {
+        long totalCount = searchService.getHitCount(query);
+        int totalPages = (int) Math.ceil((double) totalCount / batchSize);
+        return Flux.range(0, Math.max(1, totalPages))
+                .flatMap(page -> Flux.fromIterable(searchService.search(new SearchQuery(
+                        query.start(), query.end(), null, null, query.adminFirmDomain(), page, batchSize, null))));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        solr.close();
+    }
+}
@@ -0,0 +1,34 @@
+package dev.aparikh.searchemail.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Response DTO for bulk ingest API.
+ */
+@Schema(description = "Bulk ingest report")
+public record BulkIngestResponse(
+        @Schema(description = "Number of lines read, including blank and rejected ones", example = "1000")
+        long lines,
+
+        @Schema(description = "Number of emails accepted by Solr", example = "998")
+        long indexed,
+
+        @Schema(description = "Number of lines that could not be indexed", example = "2")
+        long failed,
+
+        @Schema(description = "Failed lines in line order, capped at indexing.bulk-max-errors")
+        List<LineError> errors
+) {
+
+    @Schema(description = "A line that could not be indexed")
+    public record LineError(
+            @Schema(description = "1-based line number in the upload", example = "17")
+            long line,
+
+            @Schema(description = "Why the line was not indexed", example = "Missing id")
+            String message
+    ) {
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import dev.aparikh.searchemail.search.FacetQueryDefinition;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 
 import java.time.Instant;
 import java.util.List;
@@ -59,6 +60,17 @@ public record SearchRequest(
 
         @Schema(description = "Sort criteria for results (Solr syntax)",
                 example = "timestamp desc")
-        String sort
+        String sort,
+
+        @Positive
+        @Schema(description = "Count hits exactly only up to this many; above it totalCount is a lower bound " +
+                "(totalCountExact=false). Use when the UI only needs \"more than N\". Ignored with facets",
+                example = "1000")
+        Integer minExactCount
 ) {
+    public SearchRequest(Instant startTime, Instant endTime, String query, List<String> participantEmails,
+                         String adminFirmDomain, Integer page, Integer size, List<String> facetFields,
+                         List<FacetQueryDefinition> facetQueries, String sort) {
+        this(startTime, endTime, query, participantEmails, adminFirmDomain, page, size, facetFields, facetQueries, sort, null);
+    }
 }
\ No newline at end of file
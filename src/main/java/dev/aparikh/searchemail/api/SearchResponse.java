@@ -28,6 +28,14 @@ public record SearchResponse(
         int totalPages,
 
         @Schema(description = "Faceting results by field name")
-        Map<String, FacetResult> facets
+        Map<String, FacetResult> facets,
+
+        @Schema(description = "Whether totalCount is exact; false when counting stopped at minExactCount and " +
+                "totalCount (and totalPages) is a lower bound", example = "true")
+        boolean totalCountExact
 ) {
+    public SearchResponse(List<EmailDocument> emails, long totalCount, int page, int size, int totalPages,
+                          Map<String, FacetResult> facets) {
+        this(emails, totalCount, page, size, totalPages, facets, true);
+    }
 }
\ No newline at end of file
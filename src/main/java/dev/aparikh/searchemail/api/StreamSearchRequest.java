@@ -1,6 +1,7 @@
 package dev.aparikh.searchemail.api;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import dev.aparikh.searchemail.search.StreamMode;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotNull;
 
@@ -40,8 +41,20 @@ public record StreamSearchRequest(
                 requiredMode = Schema.RequiredMode.REQUIRED)
         String adminFirmDomain,
 
-        @Schema(description = "Batch size for streaming (number of documents per batch)",
+        @Schema(description = "Batch size for streaming (number of documents per batch). In CURSOR and PARALLEL " +
+                "mode this is the size of the first page; later pages adapt to Solr's latency and document size " +
+                "unless adaptive batch sizing is disabled",
                 example = "1000", defaultValue = "1000")
-        Integer batchSize
+        Integer batchSize,
+
+        @Schema(description = "CURSOR pages full documents; EXPORT reads participants and sent time through Solr's " +
+                "/export handler without subject or body, falling back to CURSOR when the schema lacks docValues; " +
+                "PARALLEL pages full documents in concurrent time slices, emitted in the same order as CURSOR",
+                example = "CURSOR", defaultValue = "CURSOR")
+        StreamMode mode
 ) {
+    public StreamSearchRequest(Instant startTime, Instant endTime, String query, List<String> participantEmails,
+                               String adminFirmDomain, Integer batchSize) {
+        this(startTime, endTime, query, participantEmails, adminFirmDomain, batchSize, null);
+    }
 }
\ No newline at end of file
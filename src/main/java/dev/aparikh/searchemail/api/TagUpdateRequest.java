@@ -0,0 +1,36 @@
+package dev.aparikh.searchemail.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request DTO for the tag update API.
+ */
+@Schema(description = "Tag changes applied to a batch of emails")
+public record TagUpdateRequest(
+        @NotEmpty
+        @Schema(description = "Ids of the emails to update, capped at indexing.tag-update-max-ids",
+                example = "[\"email-1\", \"email-2\"]",
+                requiredMode = Schema.RequiredMode.REQUIRED)
+        List<String> ids,
+
+        @Schema(description = "Tags to add to each email; tags it already has are kept once",
+                example = "[\"privileged\", \"hot\"]")
+        List<String> add,
+
+        @Schema(description = "Tags to remove from each email",
+                example = "[\"responsive\"]")
+        List<String> remove,
+
+        @Schema(description = "Tags replacing all of each email's tags; cannot be combined with add or remove",
+                example = "[\"privileged\"]")
+        List<String> set,
+
+        @Schema(description = "Expected _version_ by email id; an email whose version differs is not updated",
+                example = "{\"email-1\": 1712345678901234567}")
+        Map<String, Long> versions
+) {
+}
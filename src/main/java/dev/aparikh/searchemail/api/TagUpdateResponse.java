@@ -0,0 +1,32 @@
+package dev.aparikh.searchemail.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response DTO for the tag update API.
+ */
+@Schema(description = "Tag update report")
+public record TagUpdateResponse(
+        @Schema(description = "Number of emails updated", example = "998")
+        long updated,
+
+        @Schema(description = "New _version_ of every updated email, for the next conditional update")
+        Map<String, Long> versions,
+
+        @Schema(description = "Emails that were not updated, in request order")
+        List<Failure> failures
+) {
+
+    @Schema(description = "An email that was not updated")
+    public record Failure(
+            @Schema(description = "Email id", example = "email-2")
+            String id,
+
+            @Schema(description = "Why the email was not updated", example = "Version conflict: expected 1, found 2")
+            String message
+    ) {
+    }
+}
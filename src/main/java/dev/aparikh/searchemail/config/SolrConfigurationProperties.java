@@ -1,7 +1,6 @@
 package dev.aparikh.searchemail.config;
 
 import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.PositiveOrZero;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
@@ -18,9 +17,6 @@ class SolrConfigurationProperties {
     @NotBlank
     private String core;
 
-    @PositiveOrZero
-    private int commitWithinMs = 0; // 0 = explicit commit
-
     String getBaseUrl() {
         return baseUrl;
     }
@@ -36,12 +32,4 @@ class SolrConfigurationProperties {
     void setCore(String core) {
         this.core = core;
     }
-
-    int getCommitWithinMs() {
-        return commitWithinMs;
-    }
-
-    void setCommitWithinMs(int commitWithinMs) {
-        this.commitWithinMs = commitWithinMs;
-    }
 }
@@ -0,0 +1,189 @@
+package dev.aparikh.searchemail.indexing;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dev.aparikh.searchemail.api.BulkIngestResponse;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Indexes an NDJSON upload, one {@link EmailDocument} per line, while it is still arriving. Lines are parsed one
+ * at a time and handed to the {@link EmailIngestQueue} in batches of {@code indexing.ingest-batch-size}, so memory
+ * stays bounded by the queue capacity however large the upload. A line that fails to parse, misses required
+ * fields or belongs to a batch Solr rejected is reported with its line number; the other lines are still indexed.
+ */
+@Service
+@ConditionalOnBean(SolrClient.class)
+class BulkIngestService {
+
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
+    private final EmailIngestQueue ingestQueue;
+    private final ObjectReader emailReader;
+    private final int batchSize;
+    private final int maxLineLength;
+    private final int maxErrors;
+
+    BulkIngestService(EmailIngestQueue ingestQueue, ObjectMapper mapper, IndexingProperties properties) {
+        this.ingestQueue = ingestQueue;
+        this.emailReader = mapper.readerFor(EmailDocument.class);
+        this.batchSize = properties.getIngestBatchSize();
+        this.maxLineLength = properties.getBulkMaxLineLength();
+        this.maxErrors = properties.getBulkMaxErrors();
+    }
+
+    /**
+     * Reads and indexes the whole upload, then waits until Solr accepted every batch.
+     *
+     * @param gzip    whether the body is gzip-compressed
+     * @param visible whether to also wait until the emails are searchable
+     */
+    BulkIngestResponse ingest(InputStream body, boolean gzip, boolean visible) {
+        Report report = new Report();
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        Batch batch = new Batch(batchSize);
+        long lines = 0;
+        try (InputStream in = gzip ? new GZIPInputStream(body, GZIP_BUFFER_BYTES) : body) {
+            NdjsonLineReader reader = new NdjsonLineReader(new InputStreamReader(in, StandardCharsets.UTF_8), maxLineLength);
+            for (String line; (line = reader.readLine()) != null; ) {
+                lines++;
+                if (reader.tooLong()) {
+                    report.fail(lines, "Line longer than " + maxLineLength + " characters");
+                    continue;
+                }
+                if (line.isBlank()) continue;
+                EmailDocument email = parse(line, lines, report);
+                if (email == null) continue;
+                batch.add(lines, email);
+                if (batch.isFull()) {
+                    inFlight.add(submit(batch));
+                    batch = new Batch(batchSize);
+                    collect(inFlight, report, false);
+                }
+            }
+        } catch (ZipException e) {
+            throw new IllegalArgumentException("Request body is not valid gzip", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read bulk upload", e);
+        } finally {
+            // Whatever was read before a failure is still indexed
+            if (!batch.isEmpty()) inFlight.add(submit(batch));
+            collect(inFlight, report, true);
+        }
+        if (visible && report.indexed > 0) {
+            ingestQueue.awaitVisible();
+        }
+        return report.toResponse(lines);
+    }
+
+    private EmailDocument parse(String line, long number, Report report) {
+        EmailDocument email;
+        try {
+            email = emailReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            report.fail(number, "Invalid JSON: " + e.getOriginalMessage());
+            return null;
+        }
+        if (email == null) {
+            report.fail(number, "Expected an email object");
+        } else if (email.id() == null || email.id().isBlank()) {
+            report.fail(number, "Missing id");
+        } else if (email.sentAt() == null) {
+            report.fail(number, "Missing sentAt");
+        } else {
+            return email;
+        }
+        return null;
+    }
+
+    private Batch submit(Batch batch) {
+        try {
+            batch.done = ingestQueue.submit(batch.emails);
+        } catch (RejectedExecutionException e) {
+            batch.done = CompletableFuture.failedFuture(e);
+        }
+        return batch;
+    }
+
+    // Tallies finished batches in submission order; with wait, waits for all of them
+    private void collect(Deque<Batch> inFlight, Report report, boolean wait) {
+        while (!inFlight.isEmpty() && (wait || inFlight.peek().done.isDone())) {
+            Batch batch = inFlight.poll();
+            try {
+                batch.done.join();
+                report.indexed += batch.emails.size();
+            } catch (CompletionException e) {
+                String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                for (int i = 0; i < batch.emails.size(); i++) report.fail(batch.lines[i], message);
+            }
+        }
+    }
+
+    private static final class Batch {
+        final List<EmailDocument> emails;
+        final long[] lines;
+        CompletableFuture<Void> done;
+
+        Batch(int size) {
+            emails = new ArrayList<>(size);
+            lines = new long[size];
+        }
+
+        void add(long line, EmailDocument email) {
+            lines[emails.size()] = line;
+            emails.add(email);
+        }
+
+        boolean isFull() {
+            return emails.size() == lines.length;
+        }
+
+        boolean isEmpty() {
+            return emails.isEmpty();
+        }
+    }
+
+    private final class Report {
+        // The maxErrors lowest line numbers seen so far, highest on top; rejected batches arrive after later parse errors
+        final PriorityQueue<BulkIngestResponse.LineError> errors =
+                new PriorityQueue<>(Comparator.comparingLong(BulkIngestResponse.LineError::line).reversed());
+        long indexed;
+        long failed;
+
+        void fail(long line, String message) {
+            failed++;
+            if (maxErrors <= 0) return;
+            if (errors.size() < maxErrors) {
+                errors.add(new BulkIngestResponse.LineError(line, message));
+            } else if (line < errors.peek().line()) {
+                errors.poll();
+                errors.add(new BulkIngestResponse.LineError(line, message));
+            }
+        }
+
+        BulkIngestResponse toResponse(long lines) {
+            List<BulkIngestResponse.LineError> sorted = new ArrayList<>(errors);
+            sorted.sort(Comparator.comparingLong(BulkIngestResponse.LineError::line));
+            return new BulkIngestResponse(lines, indexed, failed, sorted);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailAddresses;
+import dev.aparikh.searchemail.model.EmailDocument;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A stable hash of an email as it is indexed: addresses normalized the way {@link EmailIndexService} stores them,
+ * blank addresses dropped and the time at the millisecond precision Solr keeps. Two sends of the same email hash
+ * the same however they were serialized upstream. Bump {@link #VERSION} whenever what gets indexed for the same
+ * email changes, e.g. new derived fields, so that re-sent emails are written again rather than skipped.
+ */
+final class ContentHash {
+
+    static final int VERSION = 1;
+
+    private static final int HASH_BYTES = 16;
+
+    private ContentHash() {
+    }
+
+    /**
+     * 128 bits of SHA-256 as 32 hex digits.
+     */
+    static String of(EmailDocument email) {
+        MessageDigest digest = sha256();
+        digest.update((byte) VERSION);
+        update(digest, email.id());
+        update(digest, email.subject());
+        update(digest, email.body());
+        update(digest, EmailAddresses.normalize(email.from()));
+        update(digest, email.to());
+        update(digest, email.cc());
+        update(digest, email.bcc());
+        digest.update(ByteBuffer.allocate(Long.BYTES)
+                .putLong(email.sentAt() == null ? Long.MIN_VALUE : email.sentAt().toEpochMilli())
+                .flip());
+        return HexFormat.of().formatHex(digest.digest(), 0, HASH_BYTES);
+    }
+
+    /**
+     * The two 64-bit halves of a hash, for {@link BloomFilter}.
+     */
+    static long[] halves(String hash) {
+        return new long[]{
+                Long.parseUnsignedLong(hash, 0, 16, 16),
+                Long.parseUnsignedLong(hash, 16, 32, 16)};
+    }
+
+    // Length-prefixed, so that moving text between fields changes the hash; -1 marks null
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(-1).flip());
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).flip());
+        digest.update(bytes);
+    }
+
+    private static void update(MessageDigest digest, List<String> addresses) {
+        List<String> normalized = addresses == null ? List.of() : addresses.stream()
+                .filter(address -> address != null && !address.isBlank())
+                .map(EmailAddresses::normalize)
+                .toList();
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(normalized.size()).flip());
+        normalized.forEach(address -> update(digest, address));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dev.aparikh.searchemail.indexing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills the derived domain and visibility fields for documents indexed before they existed.
+ * Runs on a background thread so the application keeps serving searches; keep
+ * {@code search.domain-fields-enabled} off (the default) and the boolean-expression privacy filter mode
+ * until the backfill has finished.
+ */
+@Component
+@ConditionalOnProperty(prefix = "indexing", name = "backfill-derived-fields", havingValue = "true")
+class DerivedFieldBackfillRunner implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DerivedFieldBackfillRunner.class);
+
+    private final EmailIndexService indexService;
+    private final IndexingProperties properties;
+
+    DerivedFieldBackfillRunner(EmailIndexService indexService, IndexingProperties properties) {
+        this.indexService = indexService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread.ofVirtual().name("derived-field-backfill").start(() -> {
+            try {
+                long updated = indexService.backfillDerivedFields(properties.getBackfillBatchSize());
+                LOG.info("Derived field backfill complete, {} documents updated", updated);
+            } catch (RuntimeException e) {
+                LOG.error("Derived field backfill failed", e);
+            }
+        });
+    }
+}
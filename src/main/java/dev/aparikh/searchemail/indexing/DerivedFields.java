@@ -0,0 +1,110 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailAddresses;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Fields derived from the participant addresses at index time.
+ * <p>
+ * The visibility entries encode the BCC privacy rules as {@code <viewer domain>|<address>} terms, so that
+ * the query-time filter for an admin of firm A searching for participant P is a single term lookup on
+ * {@code A|P}. For every firm domain D that appears on the email:
+ * <ul>
+ *     <li>D sent the email: D may see every participant, including all BCC recipients.</li>
+ *     <li>Otherwise: D may see FROM/TO/CC participants, and BCC recipients from its own firm.</li>
+ * </ul>
+ * Firms that do not appear on the email get no entries, which matches the rule that cross-firm
+ * participants are only visible when the admin firm participates.
+ */
+record DerivedFields(
+        Set<String> fromDomains,
+        Set<String> toDomains,
+        Set<String> ccDomains,
+        Set<String> bccDomains,
+        Set<String> anyDomains,
+        Set<String> visibleParticipants
+) {
+    static final char VISIBILITY_SEPARATOR = '|';
+
+    static DerivedFields of(Object from, Collection<?> to, Collection<?> cc, Collection<?> bcc) {
+        List<String> fromAddresses = addresses(from == null ? null : List.of(from));
+        List<String> toAddresses = addresses(to);
+        List<String> ccAddresses = addresses(cc);
+        List<String> bccAddresses = addresses(bcc);
+
+        Set<String> fromDomains = domains(fromAddresses);
+        Set<String> toDomains = domains(toAddresses);
+        Set<String> ccDomains = domains(ccAddresses);
+        Set<String> bccDomains = domains(bccAddresses);
+        Set<String> anyDomains = new LinkedHashSet<>();
+        anyDomains.addAll(fromDomains);
+        anyDomains.addAll(toDomains);
+        anyDomains.addAll(ccDomains);
+        anyDomains.addAll(bccDomains);
+
+        Set<String> visible = new LinkedHashSet<>();
+        for (String viewer : anyDomains) {
+            boolean sender = fromDomains.contains(viewer);
+            for (String a : fromAddresses) visible.add(visibilityTerm(viewer, a));
+            for (String a : toAddresses) visible.add(visibilityTerm(viewer, a));
+            for (String a : ccAddresses) visible.add(visibilityTerm(viewer, a));
+            for (String a : bccAddresses) {
+                if (sender || viewer.equals(EmailAddresses.domain(a))) visible.add(visibilityTerm(viewer, a));
+            }
+        }
+        return new DerivedFields(fromDomains, toDomains, ccDomains, bccDomains, anyDomains, visible);
+    }
+
+    static DerivedFields of(EmailDocument e) {
+        return of(e.from(), e.to(), e.cc(), e.bcc());
+    }
+
+    static String visibilityTerm(String viewerDomain, String address) {
+        return viewerDomain + VISIBILITY_SEPARATOR + address;
+    }
+
+    /**
+     * Adds every derived field to a document being indexed.
+     */
+    void addTo(SolrInputDocument d) {
+        forEachField((field, values) -> values.forEach(v -> d.addField(field, v)));
+    }
+
+    /**
+     * Adds atomic "set" operations for every non-empty derived field to an update document.
+     */
+    void setOn(SolrInputDocument d) {
+        forEachField((field, values) -> d.addField(field, Map.of("set", new ArrayList<>(values))));
+    }
+
+    private void forEachField(BiConsumer<String, Set<String>> action) {
+        if (!fromDomains.isEmpty()) action.accept(EmailDocument.FIELD_FROM_DOMAIN, fromDomains);
+        if (!toDomains.isEmpty()) action.accept(EmailDocument.FIELD_TO_DOMAIN, toDomains);
+        if (!ccDomains.isEmpty()) action.accept(EmailDocument.FIELD_CC_DOMAIN, ccDomains);
+        if (!bccDomains.isEmpty()) action.accept(EmailDocument.FIELD_BCC_DOMAIN, bccDomains);
+        if (!anyDomains.isEmpty()) action.accept(EmailDocument.FIELD_ANY_DOMAIN, anyDomains);
+        if (!visibleParticipants.isEmpty()) action.accept(EmailDocument.FIELD_VISIBLE_PARTICIPANT, visibleParticipants);
+    }
+
+    private static List<String> addresses(Collection<?> values) {
+        if (values == null) return List.of();
+        List<String> addresses = new ArrayList<>(values.size());
+        for (Object v : values) {
+            if (v != null && !v.toString().isBlank()) addresses.add(EmailAddresses.normalize(v.toString()));
+        }
+        return addresses;
+    }
+
+    private static Set<String> domains(List<String> addresses) {
+        Set<String> domains = new LinkedHashSet<>();
+        for (String address : addresses) {
+            String domain = EmailAddresses.domain(address);
+            if (!domain.isEmpty()) domains.add(domain);
+        }
+        return domains;
+    }
+}
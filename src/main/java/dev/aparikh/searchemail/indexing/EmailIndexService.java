@@ -1,18 +1,37 @@
 package dev.aparikh.searchemail.indexing;
 
+import dev.aparikh.searchemail.model.EmailAddresses;
 import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @Service
 @ConditionalOnBean(SolrClient.class)
@@ -20,10 +39,36 @@ public class EmailIndexService {
 
     private static final Logger LOG = LoggerFactory.getLogger(EmailIndexService.class);
 
+    // Sends of a batch whose emails were tagged between reading their tags and the add
+    private static final int MAX_ADD_ATTEMPTS = 3;
+
     private final SolrClient solr;
+    private final ApplicationEventPublisher events;
+    private final ContentDeduplicator dedup; // null when disabled
 
     public EmailIndexService(SolrClient solr) {
+        this(solr, event -> {
+        });
+    }
+
+    public EmailIndexService(SolrClient solr, ApplicationEventPublisher events) {
+        this(solr, events, (ContentDeduplicator) null);
+    }
+
+    @Autowired
+    EmailIndexService(SolrClient solr, ApplicationEventPublisher events, IndexingProperties properties,
+                      MeterRegistry meterRegistry) {
+        this(solr, events, properties.isDedupEnabled()
+                ? new ContentDeduplicator(solr,
+                new BloomFilter(properties.getDedupExpectedDocuments(), properties.getDedupFalsePositiveRate()),
+                meterRegistry)
+                : null);
+    }
+
+    EmailIndexService(SolrClient solr, ApplicationEventPublisher events, ContentDeduplicator dedup) {
         this.solr = solr;
+        this.events = events;
+        this.dedup = dedup;
     }
 
     private static void addAll(SolrInputDocument d, String field, List<String> values) {
@@ -34,7 +79,7 @@ public class EmailIndexService {
     }
 
     private static String lower(String s) {
-        return s == null ? null : s.toLowerCase(Locale.ROOT);
+        return EmailAddresses.normalize(s);
     }
 
     public void index(EmailDocument email) {
@@ -43,18 +88,176 @@ public class EmailIndexService {
 
     public void indexAll(List<EmailDocument> emails) {
         if (emails == null || emails.isEmpty()) return;
+        List<SolrInputDocument> docs = emails.stream()
+                .map(this::toSolrDoc)
+                .toList();
+        List<SolrInputDocument> changed = changed(docs);
         try {
-            List<SolrInputDocument> docs = emails.stream()
-                    .map(this::toSolrDoc)
-                    .toList();
-            solr.add(docs);
+            if (!changed.isEmpty()) addKeepingTags(changed, () -> solr.add(changed));
+            // Still committed when nothing changed: skipped emails may have been added but not yet committed
             solr.commit();
         } catch (SolrServerException | IOException e) {
             throw new RuntimeException("Failed to index emails", e);
         }
+        if (changed.isEmpty()) return;
+        if (dedup != null) dedup.indexed(changed);
+        events.publishEvent(new EmailsIndexedEvent(changed.size()));
+    }
+
+    /**
+     * Adds documents without waiting for them to become searchable: Solr commits them within
+     * {@code commitWithin}, or straight away with a soft commit when it is zero. Used by {@link EmailIngestQueue}.
+     *
+     * @return number of documents sent, leaving out those Solr already holds unchanged
+     */
+    int add(List<SolrInputDocument> docs, Duration commitWithin) {
+        List<SolrInputDocument> changed = changed(docs);
+        if (changed.isEmpty()) return 0;
+        try {
+            if (commitWithin.isZero()) {
+                addKeepingTags(changed, () -> solr.add(changed));
+                solr.commit(true, true, true);
+            } else {
+                addKeepingTags(changed, () -> solr.add(changed, (int) commitWithin.toMillis()));
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Failed to index emails", e);
+        }
+        if (dedup != null) dedup.indexed(changed);
+        return changed.size();
+    }
+
+    private List<SolrInputDocument> changed(List<SolrInputDocument> docs) {
+        return dedup == null ? docs : dedup.changed(docs);
+    }
+
+    @FunctionalInterface
+    private interface SolrAdd {
+        void send() throws SolrServerException, IOException;
+    }
+
+    /**
+     * Sends documents that replace any stored version of the same email, carrying over the review tags set on it
+     * with {@link EmailTagService}. Each email that already exists is sent with the {@code _version_} its tags were
+     * read at, so a tag update landing in between makes Solr reject the add with a 409 instead of the add
+     * dropping the new tag; the batch is then read and sent again.
+     */
+    private void addKeepingTags(List<SolrInputDocument> docs, SolrAdd add) throws SolrServerException, IOException {
+        for (int attempt = 1; ; attempt++) {
+            copyStoredTags(docs);
+            try {
+                add.send();
+                return;
+            } catch (SolrException e) {
+                if (e.code() != SolrException.ErrorCode.CONFLICT.code || attempt == MAX_ADD_ATTEMPTS) throw e;
+                LOG.debug("Emails changed while being re-indexed, sending {} documents again", docs.size());
+            }
+        }
+    }
+
+    // One real-time get per batch, which also sees tags and adds not yet committed
+    private void copyStoredTags(List<SolrInputDocument> docs) throws SolrServerException, IOException {
+        Set<String> ids = new LinkedHashSet<>();
+        for (SolrInputDocument doc : docs) ids.add(id(doc));
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CommonParams.FL, EmailDocument.FIELD_ID + "," + CommonParams.VERSION_FIELD + ","
+                + EmailDocument.FIELD_TAGS);
+        Map<String, SolrDocument> stored = new HashMap<>();
+        for (SolrDocument doc : solr.getById(ids, params)) {
+            stored.put(Objects.toString(doc.getFieldValue(EmailDocument.FIELD_ID)), doc);
+        }
+
+        Set<String> pinned = new HashSet<>();
+        for (SolrInputDocument doc : docs) {
+            doc.removeField(EmailDocument.FIELD_TAGS);
+            doc.removeField(CommonParams.VERSION_FIELD);
+            SolrDocument existing = stored.get(id(doc));
+            if (existing == null) continue;
+            Collection<Object> tags = existing.getFieldValues(EmailDocument.FIELD_TAGS);
+            if (tags != null) doc.setField(EmailDocument.FIELD_TAGS, new ArrayList<>(tags));
+            // A later copy of the same email in the batch follows the first one, which changes the version
+            Object version = existing.getFieldValue(CommonParams.VERSION_FIELD);
+            if (version != null && pinned.add(id(doc))) doc.setField(CommonParams.VERSION_FIELD, version);
+        }
+    }
+
+    private static String id(SolrInputDocument doc) {
+        return Objects.toString(doc.getFieldValue(EmailDocument.FIELD_ID));
+    }
+
+    /**
+     * Opens a new searcher over everything added so far, without the fsync of a hard commit.
+     */
+    void softCommit() {
+        try {
+            solr.commit(true, true, true);
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Failed to commit", e);
+        }
     }
 
-    private SolrInputDocument toSolrDoc(EmailDocument e) {
+    /**
+     * Populates the derived domain and visibility fields on documents indexed before those fields existed.
+     * Documents are walked with a cursor and updated in place with atomic "set" operations,
+     * so the index stays searchable throughout and subject/body are not re-analyzed.
+     *
+     * @return number of documents updated
+     */
+    public long backfillDerivedFields(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        SolrQuery q = new SolrQuery("*:*");
+        q.addFilterQuery("(*:* -" + EmailDocument.FIELD_ANY_DOMAIN + ":[* TO *]) OR (*:* -"
+                + EmailDocument.FIELD_VISIBLE_PARTICIPANT + ":[* TO *])");
+        q.setFields(EmailDocument.FIELD_ID, EmailDocument.FIELD_FROM, EmailDocument.FIELD_TO,
+                EmailDocument.FIELD_CC, EmailDocument.FIELD_BCC);
+        q.setRows(batchSize);
+        q.setSort(SolrQuery.SortClause.asc(EmailDocument.FIELD_ID));
+
+        long updated = 0;
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        try {
+            while (true) {
+                q.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse resp = solr.query(q);
+                List<SolrInputDocument> updates = resp.getResults().stream()
+                        .map(this::toDerivedFieldUpdate)
+                        .filter(Objects::nonNull)
+                        .toList();
+                if (!updates.isEmpty()) {
+                    solr.add(updates);
+                    updated += updates.size();
+                    LOG.info("Backfilled derived fields on {} documents", updated);
+                }
+                String nextCursorMark = resp.getNextCursorMark();
+                if (nextCursorMark == null || cursorMark.equals(nextCursorMark)) break;
+                cursorMark = nextCursorMark;
+            }
+            solr.commit();
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Failed to backfill derived fields", e);
+        }
+        // Privacy filters match on the derived fields, so backfilled documents can change results
+        if (updated > 0) events.publishEvent(new EmailsIndexedEvent(updated));
+        return updated;
+    }
+
+    private SolrInputDocument toDerivedFieldUpdate(SolrDocument existing) {
+        DerivedFields derived = DerivedFields.of(
+                existing.getFieldValue(EmailDocument.FIELD_FROM),
+                existing.getFieldValues(EmailDocument.FIELD_TO),
+                existing.getFieldValues(EmailDocument.FIELD_CC),
+                existing.getFieldValues(EmailDocument.FIELD_BCC));
+        if (derived.anyDomains().isEmpty() && derived.visibleParticipants().isEmpty()) return null;
+
+        SolrInputDocument d = new SolrInputDocument();
+        d.addField(EmailDocument.FIELD_ID, existing.getFieldValue(EmailDocument.FIELD_ID));
+        derived.setOn(d);
+        return d;
+    }
+
+    SolrInputDocument toSolrDoc(EmailDocument e) {
         SolrInputDocument d = new SolrInputDocument();
         d.addField(EmailDocument.FIELD_ID, e.id());
         if (e.subject() != null) d.addField(EmailDocument.FIELD_SUBJECT, e.subject());
@@ -64,6 +267,10 @@ public class EmailIndexService {
         addAll(d, EmailDocument.FIELD_CC, e.cc());
         addAll(d, EmailDocument.FIELD_BCC, e.bcc());
         if (e.sentAt() != null) d.addField(EmailDocument.FIELD_SENT_AT, java.util.Date.from(e.sentAt()));
+
+        // Derived fields let privacy filters use term lookups instead of leading wildcards
+        DerivedFields.of(e).addTo(d);
+        if (dedup != null) d.addField(EmailDocument.FIELD_CONTENT_HASH, ContentHash.of(e));
         return d;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.BulkIngestResponse;
+import dev.aparikh.searchemail.api.ErrorResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * REST Controller for email ingest.
+ */
+@RestController
+@RequestMapping("/api/emails")
+@Tag(name = "Email Ingest", description = "Bulk indexing of emails")
+public class EmailIngestController {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    private final BulkIngestService bulkIngestService;
+
+    public EmailIngestController(BulkIngestService bulkIngestService) {
+        this.bulkIngestService = bulkIngestService;
+    }
+
+    @PostMapping(value = "/bulk", consumes = NDJSON, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Bulk index emails",
+            description = "Index a newline-delimited JSON upload with one email per line, optionally sent with " +
+                    "'Content-Encoding: gzip'. Emails are indexed in batches while the upload is still arriving. " +
+                    "Lines that cannot be indexed are listed in the report instead of failing the upload. " +
+                    "Set 'refresh' to return only once the indexed emails are searchable."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Upload processed; see the report for lines that were not indexed",
+                    content = @Content(schema = @Schema(implementation = BulkIngestResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Unsupported or corrupt content encoding",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<BulkIngestResponse> bulkIngest(
+            @Parameter(description = "Content encoding of the body; only gzip is supported")
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            @Parameter(description = "Wait until the indexed emails are searchable before returning")
+            @RequestParam(defaultValue = "false") boolean refresh,
+            InputStream body) {
+
+        String encoding = contentEncoding == null ? "" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        boolean gzip = switch (encoding) {
+            case "gzip", "x-gzip" -> true;
+            case "", "identity" -> false;
+            default -> throw new IllegalArgumentException("Unsupported Content-Encoding: " + contentEncoding);
+        };
+        return ResponseEntity.ok(bulkIngestService.ingest(body, gzip, refresh));
+    }
+}
@@ -0,0 +1,224 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes emails asynchronously, for bulk ingest. Submitted emails wait in a bounded queue and are sent to Solr
+ * from one background thread in batches of {@code indexing.ingest-batch-size} emails, or fewer once the oldest
+ * has waited {@code indexing.ingest-max-batch-age}. Batches are added with {@code indexing.commit-within} rather
+ * than a commit each, so Solr reopens its searcher once per interval however many batches arrive.
+ * <p>
+ * When the queue is full, callers wait up to {@code indexing.ingest-enqueue-timeout} for room before being
+ * rejected. Callers that need to read their writes call {@link #awaitVisible()}; {@link EmailIndexService#indexAll}
+ * still adds and commits synchronously for the odd email that must be searchable straight away.
+ */
+@Service
+@ConditionalOnBean(SolrClient.class)
+public class EmailIngestQueue implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmailIngestQueue.class);
+
+    // Stops the drainer once everything queued before it is sent
+    private static final Pending STOP = new Pending(List.of(), new CompletableFuture<>());
+
+    private final EmailIndexService indexService;
+    private final ApplicationEventPublisher events;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxBatchAgeNanos;
+    private final long enqueueTimeoutNanos;
+    private final Duration commitWithin;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Semaphore room;
+    private final Timer sent;
+    private final Timer failed;
+    private final DistributionSummary batchSizes;
+    private final Thread drainer;
+    private boolean closed; // guarded by queue
+
+    EmailIngestQueue(EmailIndexService indexService, IndexingProperties properties, MeterRegistry registry,
+                     ApplicationEventPublisher events) {
+        this.indexService = indexService;
+        this.events = events;
+        this.capacity = properties.getIngestQueueCapacity();
+        this.batchSize = properties.getIngestBatchSize();
+        this.maxBatchAgeNanos = properties.getIngestMaxBatchAge().toNanos();
+        this.enqueueTimeoutNanos = properties.getIngestEnqueueTimeout().toNanos();
+        this.commitWithin = properties.getCommitWithin();
+        // Fair, so a large submission is not starved by a stream of small ones
+        this.room = new Semaphore(capacity, true);
+        this.sent = Timer.builder("indexing.ingest.batch.latency")
+                .description("Time to send one ingest batch to Solr")
+                .tag("result", "success")
+                .register(registry);
+        this.failed = Timer.builder("indexing.ingest.batch.latency")
+                .description("Time to send one ingest batch to Solr")
+                .tag("result", "failure")
+                .register(registry);
+        this.batchSizes = DistributionSummary.builder("indexing.ingest.batch.size")
+                .description("Emails per ingest batch")
+                .register(registry);
+        Gauge.builder("indexing.ingest.queue.documents", room, r -> capacity - r.availablePermits())
+                .description("Emails queued or being sent")
+                .register(registry);
+        this.drainer = Thread.ofVirtual().name("email-ingest").start(this::drain);
+    }
+
+    /**
+     * Queues emails for indexing, waiting for room while the queue is full.
+     *
+     * @return completes once Solr accepted the emails, before they are searchable
+     * @throws RejectedExecutionException when no room frees up within the enqueue timeout
+     */
+    public CompletableFuture<Void> submit(List<EmailDocument> emails) {
+        if (emails == null || emails.isEmpty()) return CompletableFuture.completedFuture(null);
+        if (emails.size() > capacity) {
+            throw new IllegalArgumentException("Cannot queue more than " + capacity + " emails at once");
+        }
+        List<SolrInputDocument> docs = emails.stream()
+                .map(indexService::toSolrDoc)
+                .toList();
+        try {
+            if (!room.tryAcquire(docs.size(), enqueueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("Ingest queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for room in the ingest queue", e);
+        }
+        Pending pending = new Pending(docs, new CompletableFuture<>());
+        enqueue(pending);
+        return pending.done().thenRun(() -> {
+        });
+    }
+
+    /**
+     * Sends everything submitted so far without waiting for the batch age, then opens a new searcher, so that
+     * it is searchable when this returns. Failures of earlier batches are reported through their own futures.
+     */
+    public void awaitVisible() {
+        Pending flush = new Pending(List.of(), new CompletableFuture<>());
+        enqueue(flush);
+        int documents;
+        try {
+            documents = flush.done().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        indexService.softCommit();
+        events.publishEvent(new EmailsIndexedEvent(documents));
+    }
+
+    /**
+     * Sends what is still queued and stops the background thread.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        synchronized (queue) {
+            if (closed) return;
+            closed = true;
+            queue.add(STOP);
+        }
+        drainer.join();
+    }
+
+    private void enqueue(Pending pending) {
+        synchronized (queue) {
+            if (closed) {
+                room.release(pending.docs().size());
+                throw new IllegalStateException("Ingest queue is closed");
+            }
+            queue.add(pending);
+        }
+    }
+
+    private void drain() {
+        boolean stopping = false;
+        while (!stopping) {
+            List<Pending> batch = new ArrayList<>();
+            int documents = 0;
+            try {
+                Pending next = queue.take();
+                long deadline = System.nanoTime() + maxBatchAgeNanos;
+                while (next != null) {
+                    if (next == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                    documents += next.docs().size();
+                    // An empty submission is a flush from awaitVisible: send what we have right away
+                    if (next.docs().isEmpty() || documents >= batchSize) break;
+                    next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            send(batch, documents);
+        }
+        // Only reached early when interrupted; destroy() queues nothing after STOP
+        for (Pending left; (left = queue.poll()) != null; ) {
+            room.release(left.docs().size());
+            left.done().completeExceptionally(new IllegalStateException("Ingest queue is closed"));
+        }
+    }
+
+    private void send(List<Pending> batch, int documents) {
+        if (batch.isEmpty()) return;
+        if (documents == 0) {
+            batch.forEach(pending -> pending.done().complete(0));
+            return;
+        }
+        List<SolrInputDocument> docs = new ArrayList<>(documents);
+        for (Pending pending : batch) docs.addAll(pending.docs());
+
+        long start = System.nanoTime();
+        int changed;
+        try {
+            changed = indexService.add(docs, commitWithin);
+        } catch (RuntimeException e) {
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            LOG.warn("Failed to index a batch of {} emails", documents, e);
+            room.release(documents);
+            batch.forEach(pending -> pending.done().completeExceptionally(e));
+            return;
+        }
+        sent.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        room.release(documents);
+        batchSizes.record(documents);
+        // Cached results stay valid until the batch becomes searchable; nothing changes if no email was sent
+        EmailsIndexedEvent event = new EmailsIndexedEvent(changed);
+        if (changed > 0 && commitWithin.isZero()) {
+            events.publishEvent(event);
+        } else if (changed > 0) {
+            CompletableFuture.delayedExecutor(commitWithin.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> events.publishEvent(event));
+        }
+        batch.forEach(pending -> pending.done().complete(documents));
+    }
+
+    private record Pending(List<SolrInputDocument> docs, CompletableFuture<Integer> done) {
+    }
+}
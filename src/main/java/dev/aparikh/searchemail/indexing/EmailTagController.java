@@ -0,0 +1,63 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.ErrorResponse;
+import dev.aparikh.searchemail.api.TagUpdateRequest;
+import dev.aparikh.searchemail.api.TagUpdateResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST Controller for email review tags.
+ */
+@RestController
+@RequestMapping("/api/emails")
+@Tag(name = "Email Tags", description = "Review tags on indexed emails")
+public class EmailTagController {
+
+    private final EmailTagService tagService;
+
+    public EmailTagController(EmailTagService tagService) {
+        this.tagService = tagService;
+    }
+
+    @PatchMapping(value = "/tags", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Update email tags",
+            description = "Add, remove or replace the tags of a batch of emails without re-indexing them. " +
+                    "Give expected _version_ values to update an email only if nobody changed it since it was read; " +
+                    "the new versions are returned. Emails that do not exist or changed are listed in the report " +
+                    "instead of failing the request. Set 'refresh' to return only once the changes are searchable."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Request processed; see the report for emails that were not updated",
+                    content = @Content(schema = @Schema(implementation = TagUpdateResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid request, e.g. no tag changes, blank tags or too many ids",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<TagUpdateResponse> updateTags(
+            @Valid @RequestBody TagUpdateRequest request,
+            @Parameter(description = "Wait until the changes are searchable before returning")
+            @RequestParam(defaultValue = "false") boolean refresh) {
+
+        return ResponseEntity.ok(tagService.update(request, refresh));
+    }
+}
@@ -0,0 +1,322 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.TagUpdateRequest;
+import dev.aparikh.searchemail.api.TagUpdateResponse;
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes the review tags of emails with Solr atomic updates ({@code add-distinct}, {@code remove}, {@code set} on
+ * {@link EmailDocument#FIELD_TAGS}), so subject and body are never sent again. Ids are handled in batches of
+ * {@code indexing.tag-update-batch-size}: one real-time get finds the emails that do not exist or whose
+ * {@code _version_} differs from the one the caller expects, and one update request changes the rest. Every
+ * update carries a {@code _version_} constraint, the expected one or "must exist", so an email deleted or changed
+ * after the check is reported rather than created or updated blindly. Solr does not roll back the emails it
+ * updated before such a conflict, so those are read again and reported as updated with their new versions.
+ */
+@Service
+@ConditionalOnBean(SolrClient.class)
+class EmailTagService {
+
+    static final String NOT_FOUND = "Not found";
+    static final String CONCURRENT_UPDATE = "Changed concurrently; re-read its version and retry";
+
+    // Solr's _version_ constraint that only requires the document to exist
+    private static final long MUST_EXIST = 1L;
+    private static final String RETURN_VERSIONS = "versions";
+    // Leaves emails whose _version_ no longer matches out of the update instead of failing the whole request
+    private static final String FAIL_ON_VERSION_CONFLICTS = "failOnVersionConflicts";
+
+    private static final String SET = "set";
+    private static final String ADD = "add-distinct";
+    private static final String REMOVE = "remove";
+
+    private final SolrClient solr;
+    private final ApplicationEventPublisher events;
+    private final int maxIds;
+    private final int batchSize;
+    private final Duration commitWithin;
+    private final Counter updatedCounter;
+    private final Counter notFoundCounter;
+    private final Counter conflictCounter;
+
+    EmailTagService(SolrClient solr, ApplicationEventPublisher events, IndexingProperties properties,
+                    MeterRegistry registry) {
+        this.solr = solr;
+        this.events = events;
+        this.maxIds = properties.getTagUpdateMaxIds();
+        this.batchSize = properties.getTagUpdateBatchSize();
+        this.commitWithin = properties.getCommitWithin();
+        this.updatedCounter = counter(registry, "updated");
+        this.notFoundCounter = counter(registry, "not_found");
+        this.conflictCounter = counter(registry, "conflict");
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("indexing.tags.documents")
+                .description("Emails in tag update requests")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Applies the request's tag changes to every email it names that exists and has the expected version.
+     *
+     * @param visible whether to return only once the changes are searchable
+     */
+    TagUpdateResponse update(TagUpdateRequest request, boolean visible) {
+        Map<String, Object> operations = operations(request);
+        List<String> ids = ids(request.ids());
+        Map<String, Long> expected = request.versions() == null ? Map.of() : request.versions();
+        if (!new HashSet<>(ids).containsAll(expected.keySet())) {
+            throw new IllegalArgumentException("versions must only name emails listed in ids");
+        }
+
+        Report report = new Report();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            updateBatch(ids.subList(from, Math.min(ids.size(), from + batchSize)), operations, expected, report);
+        }
+        if (!report.versions.isEmpty()) published(report.versions.size(), visible);
+        return report.toResponse(ids);
+    }
+
+    private Map<String, Object> operations(TagUpdateRequest request) {
+        List<String> add = tags(request.add());
+        List<String> remove = tags(request.remove());
+        List<String> set = request.set() == null ? null : tags(request.set());
+        Map<String, Object> operations = new LinkedHashMap<>();
+        if (set != null) {
+            if (!add.isEmpty() || !remove.isEmpty()) {
+                throw new IllegalArgumentException("set cannot be combined with add or remove");
+            }
+            operations.put(SET, set);
+            return operations;
+        }
+        if (add.isEmpty() && remove.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to update: give tags to add, remove or set");
+        }
+        List<String> both = add.stream().filter(remove::contains).toList();
+        if (!both.isEmpty()) {
+            throw new IllegalArgumentException("Tags both added and removed: " + String.join(", ", both));
+        }
+        if (!add.isEmpty()) operations.put(ADD, add);
+        if (!remove.isEmpty()) operations.put(REMOVE, remove);
+        return operations;
+    }
+
+    // Trimmed, lower-cased and de-duplicated, so "Hot" and "hot " are the same tag
+    private static List<String> tags(List<String> tags) {
+        if (tags == null) return List.of();
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String tag : tags) {
+            if (tag == null || tag.isBlank()) throw new IllegalArgumentException("Tags must not be blank");
+            normalized.add(tag.trim().toLowerCase(Locale.ROOT));
+        }
+        return List.copyOf(normalized);
+    }
+
+    private List<String> ids(List<String> requested) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String id : requested) {
+            if (id == null || id.isBlank()) throw new IllegalArgumentException("Ids must not be blank");
+            ids.add(id);
+        }
+        if (ids.size() > maxIds) {
+            throw new IllegalArgumentException("At most " + maxIds + " ids can be updated per request");
+        }
+        return List.copyOf(ids);
+    }
+
+    private void updateBatch(List<String> ids, Map<String, Object> operations, Map<String, Long> expected,
+                             Report report) {
+        Map<String, SolrDocument> current = read(ids, false);
+        Map<String, Long> checked = new LinkedHashMap<>(); // version each email had when it was checked, by id
+        for (String id : ids) {
+            SolrDocument doc = current.get(id);
+            Long wanted = expected.get(id);
+            if (doc == null) {
+                report.fail(id, NOT_FOUND, notFoundCounter);
+            } else if (wanted != null && wanted != version(doc)) {
+                report.fail(id, "Version conflict: expected " + wanted + ", found " + version(doc), conflictCounter);
+            } else {
+                checked.put(id, version(doc));
+            }
+        }
+        if (!checked.isEmpty()) send(checked, operations, expected.keySet(), report);
+    }
+
+    // Emails that changed after the check are left out of the response rather than failing the request. An email
+    // deleted after the check still fails it with a 409, once Solr has applied the emails before it
+    private void send(Map<String, Long> checked, Map<String, Object> operations, Set<String> conditional,
+                      Report report) {
+        List<SolrInputDocument> docs = new ArrayList<>(checked.size());
+        checked.forEach((id, version) -> {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField(EmailDocument.FIELD_ID, id);
+            doc.addField(EmailDocument.FIELD_TAGS, operations);
+            doc.addField(CommonParams.VERSION_FIELD, conditional.contains(id) ? version : MUST_EXIST);
+            docs.add(doc);
+        });
+        NamedList<?> newVersions;
+        try {
+            newVersions = add(docs);
+        } catch (SolrException e) {
+            if (e.code() != SolrException.ErrorCode.CONFLICT.code) throw new RuntimeException("Failed to update tags", e);
+            resolve(checked, operations, conditional, report);
+            return;
+        }
+        for (String id : checked.keySet()) {
+            Object version = newVersions.get(id);
+            if (version != null) {
+                report.updated(id, ((Number) version).longValue());
+            } else {
+                report.fail(id, CONCURRENT_UPDATE, conflictCounter);
+            }
+        }
+    }
+
+    // After a 409, reads the emails again to tell the ones Solr updated before it stopped from the ones it never
+    // reached, and sends only the latter again
+    private void resolve(Map<String, Long> checked, Map<String, Object> operations, Set<String> conditional,
+                         Report report) {
+        Map<String, SolrDocument> current = read(new ArrayList<>(checked.keySet()), true);
+        Map<String, Long> pending = new LinkedHashMap<>();
+        checked.forEach((id, version) -> {
+            SolrDocument doc = current.get(id);
+            if (doc == null) {
+                report.fail(id, NOT_FOUND, notFoundCounter);
+            } else if (version(doc) == version) {
+                pending.put(id, version);
+            } else if (applied(doc, operations)) {
+                report.updated(id, version(doc));
+            } else {
+                report.fail(id, CONCURRENT_UPDATE, conflictCounter);
+            }
+        });
+        if (pending.size() == checked.size()) {
+            // Nothing was deleted or updated, so sending again would only fail again
+            pending.keySet().forEach(id -> report.fail(id, CONCURRENT_UPDATE, conflictCounter));
+        } else if (!pending.isEmpty()) {
+            send(pending, operations, conditional, report);
+        }
+    }
+
+    // Whether an email's tags show the operations, i.e. this update reached it
+    @SuppressWarnings("unchecked")
+    private static boolean applied(SolrDocument doc, Map<String, Object> operations) {
+        Collection<Object> values = doc.getFieldValues(EmailDocument.FIELD_TAGS);
+        Set<Object> tags = values == null ? Set.of() : new HashSet<>(values);
+        for (Map.Entry<String, Object> operation : operations.entrySet()) {
+            List<String> operand = (List<String>) operation.getValue();
+            boolean shown = switch (operation.getKey()) {
+                case SET -> tags.equals(new HashSet<>(operand));
+                case ADD -> tags.containsAll(operand);
+                default -> operand.stream().noneMatch(tags::contains);
+            };
+            if (!shown) return false;
+        }
+        return true;
+    }
+
+    // Current documents by id, from the update log as well as the index
+    private Map<String, SolrDocument> read(List<String> ids, boolean withTags) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CommonParams.FL, EmailDocument.FIELD_ID + "," + CommonParams.VERSION_FIELD
+                + (withTags ? "," + EmailDocument.FIELD_TAGS : ""));
+        Map<String, SolrDocument> docs = new HashMap<>();
+        try {
+            for (SolrDocument doc : solr.getById(ids, params)) {
+                docs.put(doc.getFieldValue(EmailDocument.FIELD_ID).toString(), doc);
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Failed to update tags", e);
+        }
+        return docs;
+    }
+
+    private static long version(SolrDocument doc) {
+        return ((Number) doc.getFieldValue(CommonParams.VERSION_FIELD)).longValue();
+    }
+
+    // New versions by id of the updated emails
+    private NamedList<?> add(List<SolrInputDocument> docs) {
+        UpdateRequest request = new UpdateRequest();
+        request.add(docs);
+        request.setParam(RETURN_VERSIONS, "true");
+        request.setParam(FAIL_ON_VERSION_CONFLICTS, "false");
+        if (!commitWithin.isZero()) request.setCommitWithin((int) commitWithin.toMillis());
+        try {
+            NamedList<?> versions = (NamedList<?>) request.process(solr).getResponse().get("adds");
+            return versions == null ? new NamedList<>() : versions;
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Failed to update tags", e);
+        }
+    }
+
+    private void published(long updated, boolean visible) {
+        EmailsIndexedEvent event = new EmailsIndexedEvent(updated);
+        if (visible || commitWithin.isZero()) {
+            try {
+                solr.commit(true, true, true);
+            } catch (SolrServerException | IOException e) {
+                throw new RuntimeException("Failed to commit", e);
+            }
+            events.publishEvent(event);
+        } else {
+            // Cached results stay valid until the changes become searchable
+            CompletableFuture.delayedExecutor(commitWithin.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> events.publishEvent(event));
+        }
+    }
+
+    private final class Report {
+        final Map<String, Long> versions = new LinkedHashMap<>();
+        final Map<String, String> failures = new HashMap<>();
+
+        void updated(String id, long version) {
+            versions.put(id, version);
+            updatedCounter.increment();
+        }
+
+        void fail(String id, String message, Counter counter) {
+            failures.put(id, message);
+            counter.increment();
+        }
+
+        TagUpdateResponse toResponse(List<String> ids) {
+            List<TagUpdateResponse.Failure> failed = ids.stream()
+                    .filter(failures::containsKey)
+                    .map(id -> new TagUpdateResponse.Failure(id, failures.get(id)))
+                    .toList();
+            return new TagUpdateResponse(versions.size(), versions, failed);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package dev.aparikh.searchemail.indexing;
+
+/**
+ * Published by {@link EmailIndexService} after a commit has made added or updated documents searchable.
+ *
+ * @param documents number of documents added or updated by the commit
+ */
+public record EmailsIndexedEvent(long documents) {
+}
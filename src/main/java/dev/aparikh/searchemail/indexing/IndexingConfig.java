@@ -0,0 +1,9 @@
+package dev.aparikh.searchemail.indexing;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(IndexingProperties.class)
+class IndexingConfig {
+}
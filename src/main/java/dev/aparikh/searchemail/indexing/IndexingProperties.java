@@ -0,0 +1,192 @@
+package dev.aparikh.searchemail.indexing;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Typed configuration properties for indexing and index maintenance.
+ */
+@Validated
+@ConfigurationProperties(prefix = "indexing")
+class IndexingProperties {
+
+    private boolean backfillDerivedFields = false; // run the derived field backfill on startup
+
+    @Positive
+    private int backfillBatchSize = 1000;
+
+    // Emails waiting to be sent by the ingest queue, including the batch in flight
+    @Positive
+    private int ingestQueueCapacity = 10000;
+
+    @Positive
+    private int ingestBatchSize = 500;
+
+    private Duration ingestMaxBatchAge = Duration.ofMillis(250); // send a partial batch once its oldest email waited this long
+
+    private Duration ingestEnqueueTimeout = Duration.ofSeconds(30); // how long callers wait for room in a full queue
+
+    private Duration commitWithin = Duration.ofSeconds(1); // 0 = soft commit after every batch
+
+    // Longer NDJSON lines in a bulk upload are rejected without being buffered
+    @Positive
+    private int bulkMaxLineLength = 1024 * 1024;
+
+    @Positive
+    private int bulkMaxErrors = 1000; // line errors listed in a bulk ingest report; the rest are only counted
+
+    // Skip emails Solr already holds unchanged; off by default because every add then carries content_hash,
+    // which a schema without that field rejects
+    private boolean dedupEnabled = false;
+
+    @Positive
+    private long dedupExpectedDocuments = 10_000_000; // sizes the Bloom filter of indexed content hashes
+
+    @Positive
+    @DecimalMax(value = "1", inclusive = false)
+    private double dedupFalsePositiveRate = 0.01; // share of new emails that still get a real-time get
+
+    @Positive
+    private int tagUpdateMaxIds = 10_000; // emails one tag update request may change
+
+    @Positive
+    private int tagUpdateBatchSize = 1000; // emails per real-time get and atomic update request to Solr
+
+    private Path importPath; // mbox file, .eml file or directory of them to import on startup
+
+    @Positive
+    private int importParallelism = Runtime.getRuntime().availableProcessors(); // threads parsing imported messages
+
+    boolean isBackfillDerivedFields() {
+        return backfillDerivedFields;
+    }
+
+    void setBackfillDerivedFields(boolean backfillDerivedFields) {
+        this.backfillDerivedFields = backfillDerivedFields;
+    }
+
+    int getBackfillBatchSize() {
+        return backfillBatchSize;
+    }
+
+    void setBackfillBatchSize(int backfillBatchSize) {
+        this.backfillBatchSize = backfillBatchSize;
+    }
+
+    int getIngestQueueCapacity() {
+        return ingestQueueCapacity;
+    }
+
+    void setIngestQueueCapacity(int ingestQueueCapacity) {
+        this.ingestQueueCapacity = ingestQueueCapacity;
+    }
+
+    int getIngestBatchSize() {
+        return ingestBatchSize;
+    }
+
+    void setIngestBatchSize(int ingestBatchSize) {
+        this.ingestBatchSize = ingestBatchSize;
+    }
+
+    Duration getIngestMaxBatchAge() {
+        return ingestMaxBatchAge;
+    }
+
+    void setIngestMaxBatchAge(Duration ingestMaxBatchAge) {
+        this.ingestMaxBatchAge = ingestMaxBatchAge;
+    }
+
+    Duration getIngestEnqueueTimeout() {
+        return ingestEnqueueTimeout;
+    }
+
+    void setIngestEnqueueTimeout(Duration ingestEnqueueTimeout) {
+        this.ingestEnqueueTimeout = ingestEnqueueTimeout;
+    }
+
+    Duration getCommitWithin() {
+        return commitWithin;
+    }
+
+    void setCommitWithin(Duration commitWithin) {
+        this.commitWithin = commitWithin;
+    }
+
+    int getBulkMaxLineLength() {
+        return bulkMaxLineLength;
+    }
+
+    void setBulkMaxLineLength(int bulkMaxLineLength) {
+        this.bulkMaxLineLength = bulkMaxLineLength;
+    }
+
+    int getBulkMaxErrors() {
+        return bulkMaxErrors;
+    }
+
+    void setBulkMaxErrors(int bulkMaxErrors) {
+        this.bulkMaxErrors = bulkMaxErrors;
+    }
+
+    Path getImportPath() {
+        return importPath;
+    }
+
+    void setImportPath(Path importPath) {
+        this.importPath = importPath;
+    }
+
+    int getImportParallelism() {
+        return importParallelism;
+    }
+
+    void setImportParallelism(int importParallelism) {
+        this.importParallelism = importParallelism;
+    }
+
+    boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+
+    void setDedupEnabled(boolean dedupEnabled) {
+        this.dedupEnabled = dedupEnabled;
+    }
+
+    long getDedupExpectedDocuments() {
+        return dedupExpectedDocuments;
+    }
+
+    void setDedupExpectedDocuments(long dedupExpectedDocuments) {
+        this.dedupExpectedDocuments = dedupExpectedDocuments;
+    }
+
+    double getDedupFalsePositiveRate() {
+        return dedupFalsePositiveRate;
+    }
+
+    void setDedupFalsePositiveRate(double dedupFalsePositiveRate) {
+        this.dedupFalsePositiveRate = dedupFalsePositiveRate;
+    }
+
+    int getTagUpdateMaxIds() {
+        return tagUpdateMaxIds;
+    }
+
+    void setTagUpdateMaxIds(int tagUpdateMaxIds) {
+        this.tagUpdateMaxIds = tagUpdateMaxIds;
+    }
+
+    int getTagUpdateBatchSize() {
+        return tagUpdateBatchSize;
+    }
+
+    void setTagUpdateBatchSize(int tagUpdateBatchSize) {
+        this.tagUpdateBatchSize = tagUpdateBatchSize;
+    }
+}
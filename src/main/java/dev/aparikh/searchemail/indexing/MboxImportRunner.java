@@ -0,0 +1,47 @@
+package dev.aparikh.searchemail.indexing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Imports the mail archive at {@code indexing.import-path} on startup, e.g.
+ * {@code java -jar search-email.jar --indexing.import-path=/data/archive.mbox}. Runs on a background thread so
+ * the application keeps serving searches, and makes the imported emails searchable once it is done.
+ */
+@Component
+@ConditionalOnProperty(prefix = "indexing", name = "import-path")
+class MboxImportRunner implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MboxImportRunner.class);
+
+    private final EmailIngestQueue ingestQueue;
+    private final IndexingProperties properties;
+
+    MboxImportRunner(EmailIngestQueue ingestQueue, IndexingProperties properties) {
+        this.ingestQueue = ingestQueue;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread.ofVirtual().name("mbox-import").start(() -> {
+            try (ForkJoinPool pool = new ForkJoinPool(properties.getImportParallelism())) {
+                MboxImporter importer = new MboxImporter(ingestQueue, pool, properties.getIngestBatchSize());
+                MboxImporter.Result result = importer.importPath(properties.getImportPath());
+                ingestQueue.awaitVisible();
+                LOG.info("Import of {} complete: {} messages imported, {} skipped, {} failed in {}s ({} messages/s)",
+                        properties.getImportPath(), result.imported(), result.skipped(), result.failed(),
+                        result.elapsed().toSeconds(), Math.round(result.messagesPerSecond()));
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Import of {} failed", properties.getImportPath(), e);
+            }
+        });
+    }
+}
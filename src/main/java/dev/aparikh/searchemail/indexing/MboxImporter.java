@@ -0,0 +1,212 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Imports mail archives: mbox files, split by {@link MboxReader}, and .eml files holding one message each. Files
+ * are memory-mapped, and messages are parsed by {@link MimeMessageParser} in parallel on a fork-join pool, a
+ * group of batches at a time, then handed to the {@link EmailIngestQueue} batch by batch. Messages that cannot be
+ * parsed are skipped and counted. Progress is logged with the import rate every few seconds.
+ */
+final class MboxImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MboxImporter.class);
+
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(5);
+
+    /**
+     * Totals of one import; {@code failed} counts parsed messages that Solr did not accept.
+     */
+    record Result(long imported, long skipped, long failed, Duration elapsed) {
+        double messagesPerSecond() {
+            return imported / Math.max(elapsed.toNanos() / 1e9, 1e-3);
+        }
+    }
+
+    private final EmailIngestQueue ingestQueue;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final int groupSize;
+
+    MboxImporter(EmailIngestQueue ingestQueue, ForkJoinPool pool, int batchSize) {
+        this.ingestQueue = ingestQueue;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        // Enough messages to keep every worker busy, few enough to keep memory flat
+        this.groupSize = batchSize * pool.getParallelism();
+    }
+
+    /**
+     * Imports a file, or every regular file under a directory, and waits until Solr accepted what was parsed.
+     */
+    Result importPath(Path path) throws IOException {
+        Progress progress = new Progress();
+        List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                files = walk.filter(Files::isRegularFile).sorted().toList();
+            }
+        } else {
+            files = List.of(path);
+        }
+        for (Path file : files) {
+            LOG.info("Importing {}", file);
+            if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".eml")) {
+                importEml(file, progress);
+            } else {
+                importMbox(file, progress);
+            }
+        }
+        progress.finish();
+        return progress.result();
+    }
+
+    private void importMbox(Path file, Progress progress) throws IOException {
+        try (MboxReader reader = new MboxReader(file)) {
+            List<ByteBuffer> group = new ArrayList<>(groupSize);
+            for (ByteBuffer message; (message = reader.next()) != null; ) {
+                group.add(message);
+                if (group.size() == groupSize) {
+                    process(group, progress);
+                    group = new ArrayList<>(groupSize);
+                }
+            }
+            process(group, progress);
+        }
+    }
+
+    private void importEml(Path file, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            process(List.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())), progress);
+        }
+    }
+
+    private void process(List<ByteBuffer> messages, Progress progress) {
+        if (messages.isEmpty()) return;
+        EmailDocument[] parsed = new EmailDocument[messages.size()];
+        pool.invoke(new ParseTask(messages, parsed, 0, parsed.length));
+
+        List<EmailDocument> batch = new ArrayList<>(batchSize);
+        for (EmailDocument email : parsed) {
+            if (email == null) {
+                progress.skipped++;
+                continue;
+            }
+            batch.add(email);
+            if (batch.size() == batchSize) {
+                progress.submit(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) progress.submit(batch);
+        progress.log();
+    }
+
+    // Parses a range of messages, splitting it in halves until it is small enough to parse directly
+    private static final class ParseTask extends RecursiveAction {
+        private static final int THRESHOLD = 64;
+
+        private final List<ByteBuffer> messages;
+        private final EmailDocument[] parsed;
+        private final int from;
+        private final int to;
+
+        ParseTask(List<ByteBuffer> messages, EmailDocument[] parsed, int from, int to) {
+            this.messages = messages;
+            this.parsed = parsed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(messages, parsed, from, middle), new ParseTask(messages, parsed, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    parsed[i] = MimeMessageParser.parse(messages.get(i));
+                } catch (RuntimeException e) {
+                    LOG.debug("Skipping unparseable message: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Counts and batches in flight; only touched by the importing thread
+    private final class Progress {
+        private final long started = System.nanoTime();
+        private final Deque<Batch> inFlight = new ArrayDeque<>();
+        private long lastLogged = started;
+        private long imported;
+        private long skipped;
+        private long failed;
+
+        void submit(List<EmailDocument> emails) {
+            CompletableFuture<Void> done;
+            try {
+                done = ingestQueue.submit(emails);
+            } catch (RejectedExecutionException e) {
+                done = CompletableFuture.failedFuture(e);
+            }
+            inFlight.add(new Batch(emails.size(), done));
+            collect(false);
+        }
+
+        void finish() {
+            collect(true);
+        }
+
+        void log() {
+            long now = System.nanoTime();
+            if (now - lastLogged < PROGRESS_INTERVAL.toNanos()) return;
+            lastLogged = now;
+            Result result = result();
+            LOG.info("Imported {} messages, skipped {}, failed {} ({} messages/s)",
+                    result.imported(), result.skipped(), result.failed(), Math.round(result.messagesPerSecond()));
+        }
+
+        Result result() {
+            return new Result(imported, skipped, failed, Duration.ofNanos(System.nanoTime() - started));
+        }
+
+        private void collect(boolean wait) {
+            while (!inFlight.isEmpty() && (wait || inFlight.peek().done().isDone())) {
+                Batch batch = inFlight.poll();
+                try {
+                    batch.done().join();
+                    imported += batch.size();
+                } catch (CompletionException e) {
+                    failed += batch.size();
+                    LOG.warn("Failed to index a batch of {} imported messages", batch.size(), e.getCause());
+                }
+            }
+        }
+    }
+
+    private record Batch(int size, CompletableFuture<Void> done) {
+    }
+}
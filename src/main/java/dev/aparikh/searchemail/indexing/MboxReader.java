@@ -0,0 +1,118 @@
+package dev.aparikh.searchemail.indexing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Splits an mbox file into messages without copying them. The file is memory-mapped a window at a time and
+ * scanned for "From " lines; each message is returned as a slice of the mapping, without its "From " line. A
+ * window starts at a message boundary, so a message never spans two windows, but must fit in one.
+ */
+final class MboxReader implements Closeable {
+
+    static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+
+    private static final byte[] FROM = {'F', 'r', 'o', 'm', ' '};
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long offset; // of the next message's "From " line
+
+    MboxReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_BYTES);
+    }
+
+    MboxReader(Path file, long windowBytes) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowBytes = windowBytes;
+        this.offset = firstMessage();
+    }
+
+    /**
+     * The next message, or null after the last one.
+     */
+    ByteBuffer next() throws IOException {
+        while (offset < size) {
+            map(offset);
+            int start = (int) (offset - windowStart);
+            int content = indexOf('\n', start);
+            int end = content < 0 ? -1 : boundary(content + 1);
+            if (end < 0) {
+                if (windowStart + window.limit() < size) {
+                    if (windowStart == offset) {
+                        throw new IOException("Message at offset " + offset + " is larger than "
+                                + windowBytes + " bytes");
+                    }
+                    remap(offset);
+                    continue;
+                }
+                end = window.limit(); // the last message runs to the end of the file
+            }
+            offset = windowStart + end;
+            if (content < 0) return null; // a "From " line at the very end of the file
+            return window.slice(content + 1, end - content - 1);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // Offset of the first "From " line; anything before it is not a message
+    private long firstMessage() throws IOException {
+        if (size == 0) return 0;
+        map(0);
+        if (startsWithFrom(0)) return 0;
+        int first = boundary(1);
+        if (first < 0 && window.limit() < size) {
+            throw new IOException("No \"From \" line in the first " + windowBytes + " bytes");
+        }
+        return first < 0 ? size : first;
+    }
+
+    private void map(long position) throws IOException {
+        if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+            remap(position);
+        }
+    }
+
+    private void remap(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowBytes, size - position));
+    }
+
+    // Index of the next "From " at the start of a line at or after from, or -1 if there is none in the window
+    private int boundary(int from) {
+        for (int i = Math.max(from, 1); i <= window.limit() - FROM.length; i++) {
+            if (window.get(i - 1) == '\n' && startsWithFrom(i)) return i;
+        }
+        return -1;
+    }
+
+    private boolean startsWithFrom(int index) {
+        if (index + FROM.length > window.limit()) return false;
+        for (int i = 0; i < FROM.length; i++) {
+            if (window.get(index + i) != FROM[i]) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < window.limit(); i++) {
+            if (window.get(i) == c) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,324 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns one RFC 822 message into an {@link EmailDocument}: the From, To, Cc, Bcc, Date, Subject and Message-ID
+ * headers (with RFC 2047 encoded words), and the first text/plain part of the body, or the first text/html part
+ * with its markup stripped. Base64 and quoted-printable parts are decoded in their declared charset. Covers what
+ * mail archives contain in practice rather than all of MIME; attachments are ignored.
+ */
+final class MimeMessageParser {
+
+    private static final Pattern ENCODED_WORD = Pattern.compile("=\\?([^?]+)\\?([bBqQ])\\?([^?]*)\\?=");
+    private static final Pattern BETWEEN_ENCODED_WORDS = Pattern.compile("(\\?=)\\s+(=\\?)");
+    private static final Pattern PARAMETER = Pattern.compile(";\\s*([^=\\s;]+)\\s*=\\s*(\"([^\"]*)\"|[^;\\s]*)");
+    private static final Pattern COMMENT = Pattern.compile("\\([^()]*\\)");
+    private static final Pattern MBOXRD_FROM = Pattern.compile("(?m)^>(>*From )");
+    private static final Pattern SCRIPT_OR_STYLE = Pattern.compile("(?is)<(script|style)[^>]*>.*?</\\1\\s*>");
+    private static final Pattern TAG = Pattern.compile("<[^>]*>");
+    // Zone names RFC 822 allows besides numeric offsets
+    private static final Map<String, String> ZONES = Map.of(
+            "UT", "+0000", "EST", "-0500", "EDT", "-0400", "CST", "-0600", "CDT", "-0500",
+            "MST", "-0700", "MDT", "-0600", "PST", "-0800", "PDT", "-0700");
+
+    private MimeMessageParser() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the message has no usable Date header, which every email needs
+     */
+    static EmailDocument parse(ByteBuffer message) {
+        // Latin-1 maps each byte to one char, so parts can be cut as text and decoded in their own charset later
+        String raw = StandardCharsets.ISO_8859_1.decode(message.duplicate()).toString().replace("\r\n", "\n");
+        Part part = Part.of(raw);
+
+        Instant sentAt = date(part.header("date"));
+        if (sentAt == null) {
+            throw new IllegalArgumentException("Missing or invalid Date header");
+        }
+        String messageId = strip(part.header("message-id"));
+        String id = messageId != null ? messageId : digest(message);
+        List<String> from = addresses(part.header("from"));
+        return new EmailDocument(
+                id,
+                decodeHeader(part.header("subject")),
+                text(part),
+                from.isEmpty() ? null : from.getFirst(),
+                addresses(part.header("to")),
+                addresses(part.header("cc")),
+                addresses(part.header("bcc")),
+                sentAt);
+    }
+
+    static Instant date(String value) {
+        if (value == null) return null;
+        String cleaned = COMMENT.matcher(value).replaceAll(" ").trim().replaceAll("\\s+", " ");
+        int space = cleaned.lastIndexOf(' ');
+        if (space > 0) {
+            String zone = ZONES.get(cleaned.substring(space + 1).toUpperCase(Locale.ROOT));
+            if (zone != null) cleaned = cleaned.substring(0, space + 1) + zone;
+        }
+        try {
+            return ZonedDateTime.parse(cleaned, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The address specs of an address list, without display names, comments or group labels.
+     */
+    static List<String> addresses(String value) {
+        List<String> addresses = new ArrayList<>();
+        if (value == null) return addresses;
+        String list = COMMENT.matcher(recode(value, StandardCharsets.UTF_8)).replaceAll("");
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean bracketed = false;
+        for (int i = 0; i < list.length(); i++) {
+            char c = list.charAt(i);
+            if (c == '"' && !bracketed) quoted = !quoted;
+            else if (c == '<' && !quoted) bracketed = true;
+            else if (c == '>' && !quoted) bracketed = false;
+            if ((c == ',' || c == ';') && !quoted && !bracketed) {
+                addAddress(addresses, current.toString());
+                current.setLength(0);
+            } else if (c == ':' && !quoted && !bracketed) {
+                current.setLength(0); // "undisclosed-recipients:" and other group labels
+            } else {
+                current.append(c);
+            }
+        }
+        addAddress(addresses, current.toString());
+        return addresses;
+    }
+
+    private static void addAddress(List<String> addresses, String mailbox) {
+        int open = mailbox.lastIndexOf('<');
+        int close = mailbox.lastIndexOf('>');
+        String address = (open >= 0 && close > open ? mailbox.substring(open + 1, close) : mailbox).trim();
+        if (address.indexOf('@') > 0) addresses.add(address);
+    }
+
+    /**
+     * Decodes raw UTF-8 and RFC 2047 encoded words in an unfolded header value.
+     */
+    static String decodeHeader(String value) {
+        if (value == null) return null;
+        String text = BETWEEN_ENCODED_WORDS.matcher(recode(value, StandardCharsets.UTF_8)).replaceAll("$1$2");
+        Matcher matcher = ENCODED_WORD.matcher(text);
+        StringBuilder decoded = new StringBuilder();
+        while (matcher.find()) {
+            String word;
+            try {
+                byte[] bytes = matcher.group(2).equalsIgnoreCase("b")
+                        ? Base64.getMimeDecoder().decode(matcher.group(3))
+                        : quotedPrintable(matcher.group(3).replace('_', ' '));
+                word = new String(bytes, charset(matcher.group(1)));
+            } catch (IllegalArgumentException e) {
+                word = matcher.group();
+            }
+            matcher.appendReplacement(decoded, Matcher.quoteReplacement(word));
+        }
+        matcher.appendTail(decoded);
+        return decoded.toString().trim();
+    }
+
+    private static String text(Part message) {
+        Part plain = message.find("text/plain", 0);
+        if (plain != null) return MBOXRD_FROM.matcher(plain.decode()).replaceAll("$1").strip();
+        Part html = message.find("text/html", 0);
+        if (html != null) return stripHtml(html.decode());
+        return null;
+    }
+
+    private static String stripHtml(String html) {
+        String text = TAG.matcher(SCRIPT_OR_STYLE.matcher(html).replaceAll(" ")).replaceAll(" ");
+        return text.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">")
+                .replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&")
+                .replaceAll("[ \\t]+", " ").replaceAll("\\s*\\n\\s*", "\n").strip();
+    }
+
+    private static byte[] quotedPrintable(String text) {
+        byte[] out = new byte[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '=' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                i++; // soft line break
+            } else if (c == '=' && i + 2 < text.length()
+                    && Character.digit(text.charAt(i + 1), 16) >= 0 && Character.digit(text.charAt(i + 2), 16) >= 0) {
+                out[n++] = (byte) (Character.digit(text.charAt(i + 1), 16) << 4 | Character.digit(text.charAt(i + 2), 16));
+                i += 2;
+            } else {
+                out[n++] = (byte) c;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static Charset charset(String name) {
+        if (name == null) return StandardCharsets.UTF_8;
+        try {
+            return Charset.forName(name.trim());
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static String recode(String latin1, Charset charset) {
+        return new String(latin1.getBytes(StandardCharsets.ISO_8859_1), charset);
+    }
+
+    private static String strip(String messageId) {
+        if (messageId == null) return null;
+        String id = messageId.trim();
+        if (id.startsWith("<") && id.endsWith(">")) id = id.substring(1, id.length() - 1).trim();
+        return id.isEmpty() ? null : id;
+    }
+
+    // Messages without a Message-ID get an id derived from their content, so importing them again overwrites them
+    private static String digest(ByteBuffer message) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(message.duplicate());
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // A message or body part: headers with lower-case names and the body, both as Latin-1 text
+    private record Part(Map<String, String> headers, String body) {
+
+        static Part of(String raw) {
+            int separator = raw.startsWith("\n") ? 0 : raw.indexOf("\n\n");
+            String head = separator < 0 ? raw : raw.substring(0, separator);
+            String body = separator < 0 ? "" : raw.substring(separator + (separator == 0 ? 1 : 2));
+
+            Map<String, String> headers = new HashMap<>();
+            String name = null;
+            StringBuilder value = new StringBuilder();
+            for (String line : head.split("\n")) {
+                if (!line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t') && name != null) {
+                    value.append(' ').append(line.strip());
+                    continue;
+                }
+                addHeader(headers, name, value);
+                int colon = line.indexOf(':');
+                name = colon > 0 ? line.substring(0, colon).trim().toLowerCase(Locale.ROOT) : null;
+                value.setLength(0);
+                if (name != null) value.append(line.substring(colon + 1).strip());
+            }
+            addHeader(headers, name, value);
+            return new Part(headers, body);
+        }
+
+        private static void addHeader(Map<String, String> headers, String name, StringBuilder value) {
+            if (name == null) return;
+            // Repeated address headers add up; for anything else the first one wins
+            headers.merge(name, value.toString(), (first, next) ->
+                    name.equals("to") || name.equals("cc") || name.equals("bcc") ? first + ", " + next : first);
+        }
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        String mimeType() {
+            String type = header("content-type");
+            if (type == null) return "text/plain";
+            int semicolon = type.indexOf(';');
+            return (semicolon < 0 ? type : type.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+        }
+
+        String parameter(String name) {
+            String type = header("content-type");
+            if (type == null) return null;
+            Matcher matcher = PARAMETER.matcher(type);
+            while (matcher.find()) {
+                if (matcher.group(1).equalsIgnoreCase(name)) {
+                    return matcher.group(3) != null ? matcher.group(3) : matcher.group(2);
+                }
+            }
+            return null;
+        }
+
+        boolean isAttachment() {
+            String disposition = header("content-disposition");
+            return disposition != null && disposition.trim().toLowerCase(Locale.ROOT).startsWith("attachment");
+        }
+
+        // The first part of this type that is not an attachment, depth first
+        Part find(String mimeType, int depth) {
+            if (isAttachment()) return null;
+            String type = mimeType();
+            if (type.equals(mimeType)) return this;
+            if (!type.startsWith("multipart/") || depth > 8) return null;
+            for (Part child : children()) {
+                Part found = child.find(mimeType, depth + 1);
+                if (found != null) return found;
+            }
+            return null;
+        }
+
+        List<Part> children() {
+            List<Part> children = new ArrayList<>();
+            String boundary = parameter("boundary");
+            if (boundary == null || boundary.isEmpty()) return children;
+            String delimiter = "--" + boundary;
+            int start = body.startsWith(delimiter) ? 0 : body.indexOf("\n" + delimiter) + 1;
+            if (start == 0 && !body.startsWith(delimiter)) return children;
+            while (!body.startsWith(delimiter + "--", start)) {
+                int content = body.indexOf('\n', start);
+                if (content < 0) break;
+                int next = body.indexOf("\n" + delimiter, content);
+                children.add(Part.of(body.substring(content + 1, next < 0 ? body.length() : next)));
+                if (next < 0) break;
+                start = next + 1;
+            }
+            return children;
+        }
+
+        String decode() {
+            String encoding = header("content-transfer-encoding");
+            byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+            if (encoding != null) {
+                switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+                    case "base64" -> {
+                        try {
+                            bytes = Base64.getMimeDecoder().decode(bytes);
+                        } catch (IllegalArgumentException e) {
+                            // Leave malformed base64 as it is
+                        }
+                    }
+                    case "quoted-printable" -> bytes = quotedPrintable(body);
+                    default -> {
+                    }
+                }
+            }
+            return new String(bytes, charset(parameter("charset")));
+        }
+    }
+}
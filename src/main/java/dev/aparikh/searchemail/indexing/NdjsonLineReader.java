@@ -0,0 +1,79 @@
+package dev.aparikh.searchemail.indexing;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads newline-delimited lines of at most a given length, so one runaway line cannot exhaust memory. Longer
+ * lines are skipped rather than buffered and reported through {@link #tooLong()}.
+ */
+final class NdjsonLineReader {
+
+    private final Reader in;
+    private final int maxLength;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder line = new StringBuilder();
+    private int position;
+    private int limit;
+    private boolean tooLong;
+
+    NdjsonLineReader(Reader in, int maxLength) {
+        this.in = in;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * The next line without its line terminator, empty when it was too long, or null at the end of the input.
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        tooLong = false;
+        boolean any = false;
+        while (true) {
+            if (position == limit) {
+                int read = in.read(buffer, 0, buffer.length);
+                if (read < 0) {
+                    limit = position = 0;
+                    return any ? finish() : null;
+                }
+                position = 0;
+                limit = read;
+            }
+            any = true;
+            int start = position;
+            while (position < limit && buffer[position] != '\n') position++;
+            append(start, position);
+            if (position < limit) {
+                position++; // past the newline
+                return finish();
+            }
+        }
+    }
+
+    /**
+     * Whether the last line read was longer than the limit.
+     */
+    boolean tooLong() {
+        return tooLong;
+    }
+
+    private void append(int start, int end) {
+        if (tooLong) return;
+        if (line.length() + (end - start) > maxLength + 1) { // one spare for a trailing \r
+            tooLong = true;
+            line.setLength(0);
+        } else {
+            line.append(buffer, start, end - start);
+        }
+    }
+
+    private String finish() {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(--length);
+        if (length > maxLength) {
+            tooLong = true;
+            return "";
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package dev.aparikh.searchemail.model;
+
+import java.util.Locale;
+
+/**
+ * Helpers for normalizing email addresses consistently at index and query time.
+ */
+public final class EmailAddresses {
+
+    private EmailAddresses() {
+    }
+
+    /**
+     * Lowercases an address using the root locale so that index and query terms line up.
+     */
+    public static String normalize(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the lowercased domain part of an address, or an empty string when there is none.
+     */
+    public static String domain(String email) {
+        if (email == null) return "";
+        int at = email.lastIndexOf('@');
+        if (at == -1 || at == email.length() - 1) return "";
+        return email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -25,4 +25,17 @@ public record EmailDocument(
     public static final String FIELD_CC = "cc_addr";
     public static final String FIELD_BCC = "bcc_addr";
     public static final String FIELD_SENT_AT = "sent_at";
+
+    // Derived at index time from the address fields so privacy filters can use term lookups
+    public static final String FIELD_FROM_DOMAIN = "from_domain";
+    public static final String FIELD_TO_DOMAIN = "to_domain";
+    public static final String FIELD_CC_DOMAIN = "cc_domain";
+    public static final String FIELD_BCC_DOMAIN = "bcc_domain";
+    public static final String FIELD_ANY_DOMAIN = "any_domain";
+    // "<viewer domain>|<address>" terms for every participant a firm's admin is allowed to find
+    public static final String FIELD_VISIBLE_PARTICIPANT = "visible_participant";
+    // Hash of the normalized email, so re-sent emails that did not change can be skipped
+    public static final String FIELD_CONTENT_HASH = "content_hash";
+    // Review tags, changed with atomic updates rather than by re-indexing the email
+    public static final String FIELD_TAGS = "tags";
 }
@@ -0,0 +1,62 @@
+package dev.aparikh.searchemail.search;
+
+import java.time.Duration;
+
+/**
+ * Picks the rows of each cursor page of one stream, starting from the requested batch size. After every full
+ * page it moves towards the size at which a page would take the target time in Solr (scaling the observed
+ * QTime linearly with rows) and hold the target number of bytes, whichever is smaller. Each step is at most a
+ * factor of {@link #MAX_STEP} and stays within the configured bounds, so one odd page cannot swing it far.
+ */
+final class AdaptiveBatchSize {
+
+    static final int MAX_STEP = 2;
+
+    /**
+     * Bounds and targets shared by all streams.
+     */
+    record Limits(int min, int max, Duration targetLatency, long targetBytes) {
+        Limits {
+            if (min <= 0 || max < min) {
+                throw new IllegalArgumentException("Batch size bounds must satisfy 0 < min <= max");
+            }
+        }
+
+        AdaptiveBatchSize start(int batchSize) {
+            return new AdaptiveBatchSize(this, batchSize);
+        }
+    }
+
+    private final Limits limits;
+    private int rows;
+
+    private AdaptiveBatchSize(Limits limits, int rows) {
+        this.limits = limits;
+        this.rows = rows;
+    }
+
+    /**
+     * Rows to request for the next page.
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * Adjusts the size after a page of {@code documents} emails of about {@code bytes} in total that Solr served
+     * in {@code qTimeMillis}, or an unknown time when negative.
+     */
+    void observe(int documents, long qTimeMillis, long bytes) {
+        if (documents < rows) return; // the last page says nothing about the next one
+
+        double target = (double) rows * MAX_STEP;
+        if (qTimeMillis > 0) {
+            target = Math.min(target, (double) rows * limits.targetLatency().toMillis() / qTimeMillis);
+        }
+        if (bytes > 0) {
+            target = Math.min(target, (double) limits.targetBytes() * documents / bytes);
+        }
+        target = Math.max(target, (double) rows / MAX_STEP);
+        rows = (int) Math.max(limits.min(), Math.min(limits.max(), Math.round(target)));
+    }
+}
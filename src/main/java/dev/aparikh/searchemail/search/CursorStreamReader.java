@@ -0,0 +1,213 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Reads a cursorMark-paged stream with {@link SolrClient#queryAndStreamResponse}, converting and emitting each
+ * document as it is decoded from the javabin response, without building a {@code SolrDocumentList} or a list
+ * of emails first.
+ * <p>
+ * Pages are fetched on the given scheduler and run at most one page ahead of the subscriber: the next page is
+ * requested as soon as the previous one is decoded, and decoding pauses once a page's worth of documents is
+ * waiting to be delivered. Fetching stops when demand stops, and cancelling abandons the page being read.
+ * Bytes waiting in stream buffers are reported as {@code search.stream.buffered.bytes} across all streams,
+ * and each stream's peak as the {@code search.stream.buffered.peak.bytes} distribution.
+ * <p>
+ * With {@link AdaptiveBatchSize.Limits}, the rows of each page adapt to the QTime and estimated size of the
+ * previous one; the rows requested are recorded in {@code search.stream.batch.size}.
+ */
+class CursorStreamReader {
+
+    private final SolrClient solr;
+    private final Scheduler scheduler;
+    private final AtomicLong bufferedBytes;
+    private final DistributionSummary peakBufferedBytes;
+    private final DistributionSummary batchSizes;
+    private final AdaptiveBatchSize.Limits batchLimits; // null for fixed batch sizes
+
+    CursorStreamReader(SolrClient solr, Scheduler scheduler, MeterRegistry registry) {
+        this(solr, scheduler, registry, null);
+    }
+
+    CursorStreamReader(SolrClient solr, Scheduler scheduler, MeterRegistry registry,
+                       AdaptiveBatchSize.Limits batchLimits) {
+        this.solr = solr;
+        this.scheduler = scheduler;
+        this.batchLimits = batchLimits;
+        this.bufferedBytes = registry.gauge("search.stream.buffered.bytes", new AtomicLong());
+        this.peakBufferedBytes = DistributionSummary.builder("search.stream.buffered.peak.bytes")
+                .description("Largest estimated size of the documents a stream held for its subscriber")
+                .baseUnit("bytes")
+                .register(registry);
+        this.batchSizes = DistributionSummary.builder("search.stream.batch.size")
+                .description("Rows requested per cursor stream page")
+                .register(registry);
+    }
+
+    /**
+     * Streams every page of {@code pageQuery}, called with each cursorMark and the rows to request in turn,
+     * until a page comes back short or the cursor stops advancing. Pages have {@code batchSize} rows unless
+     * batch sizes adapt.
+     */
+    Flux<EmailDocument> stream(BiFunction<String, Integer, SolrParams> pageQuery, int batchSize,
+                               Function<SolrDocument, EmailDocument> convert) {
+        return Flux.defer(() -> {
+            AdaptiveBatchSize sizing = batchLimits != null ? batchLimits.start(batchSize) : null;
+            Buffer buffer = new Buffer(batchSize);
+            return Flux.<EmailDocument>create(sink -> {
+                        sink.onCancel(buffer::cancel);
+                        try {
+                            String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+                            while (true) {
+                                int rows = sizing != null ? sizing.rows() : batchSize;
+                                batchSizes.record(rows);
+                                buffer.resize(rows);
+                                Page page = readPage(pageQuery.apply(cursorMark, rows), convert, buffer, sink);
+                                // A short page or an unchanged cursor means there is nothing left to read
+                                if (page.size() < rows || page.nextCursorMark() == null
+                                        || page.nextCursorMark().equals(cursorMark)) {
+                                    break;
+                                }
+                                if (sizing != null) {
+                                    sizing.observe(page.size(), page.qTimeMillis(), page.bytes());
+                                }
+                                cursorMark = page.nextCursorMark();
+                            }
+                            sink.complete();
+                        } catch (SolrServerException | IOException | RuntimeException e) {
+                            // After a cancel this is our own CancellationException, possibly wrapped by SolrJ
+                            if (!buffer.isCancelled()) {
+                                sink.error(new RuntimeException("Stream batch failed", e));
+                            }
+                        }
+                    }, FluxSink.OverflowStrategy.BUFFER)
+                    .doOnNext(buffer::delivered)
+                    // Before the terminal signal reaches the subscriber, so the metrics are settled once it has
+                    .doOnTerminate(buffer::close)
+                    .doOnCancel(buffer::close)
+                    // Requests must not queue behind the worker, which may be blocked waiting for them
+                    .subscribeOn(scheduler, false);
+        });
+    }
+
+    private Page readPage(SolrParams params, Function<SolrDocument, EmailDocument> convert, Buffer buffer,
+                          FluxSink<EmailDocument> sink) throws SolrServerException, IOException {
+        int[] size = new int[1];
+        long[] bytes = new long[1];
+        QueryResponse response = solr.queryAndStreamResponse(params, new StreamingResponseCallback() {
+            @Override
+            public void streamSolrDocument(SolrDocument doc) {
+                EmailDocument email = convert.apply(doc);
+                buffer.awaitRoom();
+                bytes[0] += buffer.emitted(email);
+                sink.next(email);
+                size[0]++;
+            }
+
+            @Override
+            public void streamDocListInfo(long numFound, long start, Float maxScore) {
+                // Cursor paging needs no hit count
+            }
+        });
+        return new Page(size[0], response.getNextCursorMark(), qTime(response), bytes[0]);
+    }
+
+    // Negative when the response header lacks it
+    private static long qTime(QueryResponse response) {
+        NamedList<?> header = response.getResponseHeader();
+        return header != null && header.get("QTime") instanceof Number qTime ? qTime.longValue() : -1;
+    }
+
+    private record Page(int size, String nextCursorMark, long qTimeMillis, long bytes) {
+    }
+
+    // Documents emitted to the sink but not yet delivered to the subscriber, for one stream
+    private final class Buffer {
+        private int capacity;
+        private int documents;
+        private long bytes;
+        private long peakBytes;
+        private boolean cancelled;
+        private boolean closed;
+
+        Buffer(int capacity) {
+            this.capacity = capacity;
+        }
+
+        // Pages of a different size change how far ahead of the subscriber the stream may read
+        synchronized void resize(int capacity) {
+            this.capacity = capacity;
+            notifyAll();
+        }
+
+        synchronized void awaitRoom() {
+            while (documents >= capacity && !cancelled) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting for demand");
+                }
+            }
+            if (cancelled) {
+                throw new CancellationException("Stream cancelled");
+            }
+        }
+
+        synchronized long emitted(EmailDocument email) {
+            long size = SearchResultCache.weigh(email);
+            documents++;
+            bytes += size;
+            peakBytes = Math.max(peakBytes, bytes);
+            bufferedBytes.addAndGet(size);
+            return size;
+        }
+
+        synchronized void delivered(EmailDocument email) {
+            if (closed) return;
+            long size = SearchResultCache.weigh(email);
+            documents--;
+            bytes -= size;
+            bufferedBytes.addAndGet(-size);
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized void close() {
+            if (closed) return;
+            closed = true;
+            // Whatever a cancelled stream still held is released with it
+            bufferedBytes.addAndGet(-bytes);
+            peakBufferedBytes.record(peakBytes);
+            cancelled = true;
+            notifyAll();
+        }
+    }
+}
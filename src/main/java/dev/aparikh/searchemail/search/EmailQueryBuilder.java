@@ -0,0 +1,289 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailAddresses;
+import dev.aparikh.searchemail.model.EmailDocument;
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.ParserQuery;
+import dev.aparikh.searchemail.search.QueryNode.Raw;
+import dev.aparikh.searchemail.search.QueryNode.Term;
+import dev.aparikh.searchemail.search.QueryNode.Terms;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.solr.client.solrj.SolrQuery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Builds the Solr request for a {@link SearchQuery}: base query, time range, participant privacy
+ * filters and sort. Filters are assembled as {@link QueryNode} trees, simplified, and rendered in the
+ * configured {@link QuerySyntax}.
+ */
+class EmailQueryBuilder {
+
+    // Participant fields visible to any admin, and all participant fields including BCC
+    private static final List<String> VISIBLE_FIELDS = List.of(EmailDocument.FIELD_FROM, EmailDocument.FIELD_TO, EmailDocument.FIELD_CC);
+    private static final List<String> ALL_FIELDS = List.of(EmailDocument.FIELD_FROM, EmailDocument.FIELD_TO, EmailDocument.FIELD_CC, EmailDocument.FIELD_BCC);
+
+    // Non-cached filters are evaluated in increasing cost order, after all cached filters
+    private static final int PARTICIPANT_FILTER_COST = 100;
+
+    // Post filters must cost at least 100; above the other non-cached filters so they run last
+    private static final int POST_FILTER_COST = 200;
+
+    private final SearchProperties properties;
+    private final BooleanSupplier postFilterAvailable;
+    private final TimeFilterMetrics timeFilterMetrics;
+
+    EmailQueryBuilder(SearchProperties properties) {
+        this(properties, () -> false, new TimeFilterMetrics(Metrics.globalRegistry));
+    }
+
+    /**
+     * @param postFilterAvailable whether Solr has the {@code emailprivacy} post filter, consulted only in
+     *                            {@link PrivacyFilterMode#POST_FILTER} mode
+     */
+    EmailQueryBuilder(SearchProperties properties, BooleanSupplier postFilterAvailable, TimeFilterMetrics timeFilterMetrics) {
+        this.properties = properties;
+        this.postFilterAvailable = postFilterAvailable;
+        this.timeFilterMetrics = timeFilterMetrics;
+    }
+
+    private static boolean sameDomain(String email, String adminFirmDomain) {
+        return EmailAddresses.domain(email).equals(adminFirmDomain);
+    }
+
+    private static String mapSortField(String field) {
+        // Map common field aliases to actual Solr field names
+        return switch (field.toLowerCase()) {
+            case "timestamp" -> EmailDocument.FIELD_SENT_AT;
+            default -> field;
+        };
+    }
+
+    /**
+     * Normalizes a "field [asc|desc]" sort to the field Solr sorts on and an explicit lowercase direction,
+     * e.g. "timestamp DESC" to "sent_at desc". The direction defaults to ascending.
+     */
+    static String canonicalSort(String sort) {
+        String[] parts = sort.trim().split("\\s+");
+        // Map common field aliases to actual Solr field names
+        String field = mapSortField(parts[0]);
+        String direction = parts.length >= 2 && "desc".equalsIgnoreCase(parts[1]) ? "desc" : "asc";
+        return field + " " + direction;
+    }
+
+    SolrQuery build(SearchQuery query) {
+        SolrQuery q = new SolrQuery();
+
+        // Base query: use provided query or match all
+        q.setQuery(query.queryOpt().orElse("*:*"));
+
+        List<FilterClause> filters = new ArrayList<>(3);
+        // Time range filter, split into cacheable day/month clauses by the configured strategy
+        FilterClause timeFilter = TimeBuckets.filter(EmailDocument.FIELD_SENT_AT, query.start(), query.end(),
+                properties.getTimeFilterStrategy());
+        timeFilterMetrics.record(properties.getTimeFilterStrategy(), timeFilter);
+        filters.add(timeFilter);
+        addParticipantFilters(filters, query);
+
+        if (properties.getQuerySyntax() == QuerySyntax.JSON) {
+            q.set("json", QueryRenderer.jsonFilterBody(filters));
+        } else {
+            QueryRenderer renderer = new QueryRenderer(q);
+            for (FilterClause filter : filters) {
+                q.addFilterQuery(renderer.standard(filter));
+            }
+        }
+
+        // Add sorting if specified
+        query.sortOpt().map(EmailQueryBuilder::canonicalSort).ifPresent(sort -> {
+            int space = sort.lastIndexOf(' ');
+            SolrQuery.ORDER order = sort.endsWith(" desc") ? SolrQuery.ORDER.desc : SolrQuery.ORDER.asc;
+            q.setSort(sort.substring(0, space), order);
+        });
+
+        return q;
+    }
+
+    // Participant filter with cross-firm BCC visibility
+    private void addParticipantFilters(List<FilterClause> filters, SearchQuery query) {
+        List<String> raw = query.participantEmailsNonEmpty();
+        if (raw.isEmpty()) return;
+
+        // Addresses are indexed lowercase; duplicates would only repeat identical clauses
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+        boolean termsSafe = true;
+        for (String participant : raw) {
+            String normalized = EmailAddresses.normalize(participant);
+            unique.add(normalized);
+            termsSafe &= QueryNode.isTermsValue(normalized);
+        }
+        List<String> participants = new ArrayList<>(unique);
+
+        String adminFirmDomain = query.adminFirmDomain();
+        String adminDomain = adminFirmDomain != null && !adminFirmDomain.trim().isEmpty()
+                ? adminFirmDomain.toLowerCase(Locale.ROOT) : null;
+
+        if (adminDomain != null && termsSafe && properties.getPrivacyFilterMode() == PrivacyFilterMode.VISIBILITY_FIELD) {
+            // The privacy rules were evaluated at index time, so every participant is one term lookup
+            List<String> terms = new ArrayList<>(participants.size());
+            for (String participant : participants) {
+                terms.add(adminDomain + "|" + participant);
+            }
+            filters.add(FilterClause.uncached(new Terms(EmailDocument.FIELD_VISIBLE_PARTICIPANT, terms), 0));
+        } else if (termsSafe && properties.getPrivacyFilterMode() == PrivacyFilterMode.POST_FILTER
+                && postFilterAvailable.getAsBoolean()) {
+            addPostFilter(filters, participants, adminDomain);
+        } else if (participants.size() >= properties.getTermsFilterThreshold() && termsSafe) {
+            addTermsParticipantFilters(filters, participants, adminDomain);
+        } else if (properties.isSplitPrivacyFilters()) {
+            addSplitParticipantFilters(filters, participants, adminDomain);
+        } else {
+            filters.add(FilterClause.of(QuerySimplifier.simplify(participantExpression(participants, adminDomain))));
+        }
+    }
+
+    private QueryNode adminFirmAnywhere(String adminDomain) {
+        if (properties.isDomainFieldsEnabled()) {
+            return new Term(EmailDocument.FIELD_ANY_DOMAIN, adminDomain);
+        }
+        // Legacy leading-wildcard form for indexes that have not been backfilled with domain fields
+        return new Raw(String.format("from_addr:*@%s OR to_addr:*@%s OR cc_addr:*@%s OR bcc_addr:*@%s",
+                adminDomain, adminDomain, adminDomain, adminDomain));
+    }
+
+    private QueryNode adminFirmSender(String adminDomain) {
+        if (properties.isDomainFieldsEnabled()) {
+            return new Term(EmailDocument.FIELD_FROM_DOMAIN, adminDomain);
+        }
+        return new Raw("from_addr:*@" + adminDomain);
+    }
+
+    /**
+     * Evaluates the privacy rules inside Solr with the {@code emailprivacy} post filter, which reads the
+     * address docValues of only those documents that matched the main query and every cheaper filter.
+     * The cached admin firm clause still narrows those candidates first.
+     */
+    private void addPostFilter(List<FilterClause> filters, List<String> participants, String adminDomain) {
+        Map<String, String> localParams = new LinkedHashMap<>();
+        if (adminDomain != null) {
+            filters.add(FilterClause.cached(adminFirmAnywhere(adminDomain)));
+            localParams.put("admin", adminDomain);
+        }
+        localParams.put("participants", String.join(",", participants));
+        filters.add(FilterClause.uncached(new ParserQuery(PrivacyPluginProbe.PARSER, localParams), POST_FILTER_COST));
+    }
+
+    /**
+     * Splits the privacy filter into filterCache-friendly pieces.
+     * <p>
+     * Every visible match requires the admin firm to participate somewhere on the email (same-firm
+     * participants imply it), so that clause becomes its own cached fq keyed only on the admin domain.
+     * The remaining participant clause changes with every participant list, so it is not cached as a
+     * whole and runs after the cheaper cached filters; instead each participant's sub-clause is wrapped
+     * in {@code filter(...)} so it is cached and reused across different participant lists.
+     */
+    private void addSplitParticipantFilters(List<FilterClause> filters, List<String> participants, String adminDomain) {
+        List<QueryNode> clauses = new ArrayList<>(participants.size());
+        if (adminDomain != null) {
+            filters.add(FilterClause.cached(adminFirmAnywhere(adminDomain)));
+        }
+        for (String participant : participants) {
+            if (adminDomain == null) {
+                clauses.add(new Filter(QueryNode.anyField(VISIBLE_FIELDS, participant)));
+            } else if (sameDomain(participant, adminDomain)) {
+                clauses.add(new Filter(QueryNode.anyField(ALL_FIELDS, participant)));
+            } else {
+                // Admin firm participation is already enforced by the cached fq above
+                clauses.add(QueryNode.or(
+                        new Filter(QueryNode.anyField(VISIBLE_FIELDS, participant)),
+                        QueryNode.and(new Filter(new Term(EmailDocument.FIELD_BCC, participant)),
+                                new Filter(adminFirmSender(adminDomain)))));
+            }
+        }
+        filters.add(FilterClause.uncached(QuerySimplifier.simplify(QueryNode.or(clauses)), PARTICIPANT_FILTER_COST));
+    }
+
+    /**
+     * Filters large participant lists with {@code {!terms}} lookups instead of per-participant term
+     * clauses. The participant clauses are built without per-participant caching and simplified, which
+     * merges them into one terms lookup per field (BCC split by whether the participant belongs to the
+     * admin firm), so the number of boolean clauses no longer grows with the participant list.
+     */
+    private void addTermsParticipantFilters(List<FilterClause> filters, List<String> participants, String adminDomain) {
+        List<QueryNode> clauses = new ArrayList<>(participants.size());
+        if (adminDomain != null) {
+            filters.add(FilterClause.cached(adminFirmAnywhere(adminDomain)));
+        }
+        for (String participant : participants) {
+            if (adminDomain == null) {
+                clauses.add(QueryNode.anyField(VISIBLE_FIELDS, participant));
+            } else if (sameDomain(participant, adminDomain)) {
+                clauses.add(QueryNode.anyField(ALL_FIELDS, participant));
+            } else {
+                // Cross-firm BCC only when the admin firm sent the email
+                clauses.add(QueryNode.or(QueryNode.anyField(VISIBLE_FIELDS, participant),
+                        QueryNode.and(new Term(EmailDocument.FIELD_BCC, participant),
+                                new Filter(adminFirmSender(adminDomain)))));
+            }
+        }
+        filters.add(FilterClause.uncached(QuerySimplifier.simplify(QueryNode.or(clauses)), PARTICIPANT_FILTER_COST));
+    }
+
+    private QueryNode participantExpression(List<String> participants, String adminDomain) {
+        List<QueryNode> participantExpressions = new ArrayList<>(participants.size());
+
+        for (String participant : participants) {
+            if (adminDomain != null) {
+                // Cross-firm scenario: admin from firm A searching for participant from firm B
+                if (!sameDomain(participant, adminDomain)) {
+                    // PRIVACY RULE: Cross-firm searches require admin firm participation to prevent information leakage
+                    // 
+                    // Example: JP Morgan admin searching for Bank of America employee
+                    // 
+                    // VISIBLE scenarios:
+                    // 1. Cross-firm participant in FROM/TO/CC + admin firm anywhere in FROM/TO/CC/BCC
+                    //    - BoA employee in TO + JP Morgan employee in CC ✅
+                    //    - BoA employee in FROM + JP Morgan employee in BCC ✅
+                    // 
+                    // 2. Cross-firm participant in BCC + admin firm as sender (special sender privilege)
+                    //    - BoA employee in BCC + JP Morgan employee as sender ✅ (senders can see all BCCs)
+                    // 
+                    // HIDDEN scenarios:
+                    // 3. Cross-firm participant in BCC + admin firm not sender
+                    //    - BoA employee in BCC + JP Morgan employee in TO ❌ (no sender privilege)
+                    // 
+                    // 4. Cross-firm participant anywhere + no admin firm participation
+                    //    - BoA employee in FROM + no JP Morgan participation ❌ (information leakage prevention)
+
+                    // Case 1: Cross-firm participant in visible fields (FROM/TO/CC), admin firm anywhere
+                    QueryNode visibleCase = QueryNode.and(QueryNode.anyField(VISIBLE_FIELDS, participant),
+                            adminFirmAnywhere(adminDomain));
+
+                    // Case 2: Cross-firm participant in BCC + admin firm as sender
+                    QueryNode bccCase = QueryNode.and(new Term(EmailDocument.FIELD_BCC, participant),
+                            adminFirmSender(adminDomain));
+
+                    // Combine both cases
+                    participantExpressions.add(QueryNode.or(visibleCase, bccCase));
+                } else {
+                    // SAME-FIRM scenario: admin searching for participant from same firm
+                    // Example: JP Morgan admin searching for JP Morgan employee
+                    // VISIBLE: JP Morgan employee anywhere (FROM/TO/CC/BCC) ✅
+                    participantExpressions.add(QueryNode.anyField(ALL_FIELDS, participant));
+                }
+            } else {
+                // No admin domain provided - use standard logic without BCC
+                participantExpressions.add(QueryNode.anyField(VISIBLE_FIELDS, participant));
+            }
+        }
+
+        // Combine all participant expressions with OR
+        return QueryNode.or(participantExpressions);
+    }
+}
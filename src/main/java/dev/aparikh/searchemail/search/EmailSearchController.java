@@ -2,6 +2,7 @@ package dev.aparikh.searchemail.search;
 
 import dev.aparikh.searchemail.api.*;
 import dev.aparikh.searchemail.model.EmailDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -10,17 +11,18 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Flux;
 
-import java.util.List;
-
 /**
  * REST Controller for email search operations.
  */
@@ -29,10 +31,14 @@ import java.util.List;
 @Tag(name = "Email Search", description = "Email search, pagination, streaming and hit count operations")
 public class EmailSearchController {
 
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+
     private final EmailSearchService emailSearchService;
+    private final NdjsonExportWriter ndjsonWriter;
 
-    public EmailSearchController(EmailSearchService emailSearchService) {
+    public EmailSearchController(EmailSearchService emailSearchService, ObjectMapper objectMapper) {
         this.emailSearchService = emailSearchService;
+        this.ndjsonWriter = new NdjsonExportWriter(objectMapper);
     }
 
     @PostMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -41,7 +47,8 @@ public class EmailSearchController {
             description = "Search for emails based on time range, participants, and optional full-text query. " +
                     "Returns emails involving any of the specified participants with pagination support. " +
                     "BCC visibility is enforced based on admin firm domain. " +
-                    "Use 'page' and 'size' parameters for pagination (defaults: page=0, size=100)."
+                    "Use 'page' and 'size' parameters for pagination (defaults: page=0, size=100). " +
+                    "Set 'minExactCount' to let Solr stop counting exactly beyond that many hits."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -75,10 +82,10 @@ public class EmailSearchController {
                     result.page(), result.size(), result.totalPages(), result.facets());
             return ResponseEntity.ok(response);
         } else {
-            List<EmailDocument> emails = emailSearchService.search(query);
-            long totalCount = emailSearchService.getHitCount(query);
-            int totalPages = (int) Math.ceil((double) totalCount / query.size());
-            SearchResponse response = new SearchResponse(emails, totalCount, query.page(), query.size(), totalPages, null);
+            // Documents and numFound come back from the same Solr request
+            SearchResult result = emailSearchService.searchPage(query);
+            SearchResponse response = new SearchResponse(result.emails(), result.totalCount(),
+                    result.page(), result.size(), result.totalPages(), null, result.totalCountExact());
             return ResponseEntity.ok(response);
         }
     }
@@ -122,7 +129,10 @@ public class EmailSearchController {
             summary = "Stream emails",
             description = "Stream emails in real-time for large data dumps. " +
                     "Returns a stream of email documents matching the search criteria. " +
-                    "Suitable for exporting large datasets."
+                    "Suitable for exporting large datasets. Use mode=EXPORT for full-matter dumps through Solr's " +
+                    "/export handler (participants and sent time only), or mode=PARALLEL to page time slices " +
+                    "concurrently. Every event carries a resume token as its " +
+                    "id; send it back as Last-Event-ID to continue an interrupted stream after that email."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -143,15 +153,68 @@ public class EmailSearchController {
     })
     public Flux<ServerSentEvent<EmailDocument>> streamEmails(
             @Parameter(description = "Stream search request parameters", required = true)
-            @Valid @RequestBody StreamSearchRequest request) {
-
-        SearchQuery query = toStreamSearchQuery(request);
-        int batchSize = request.batchSize() != null ? request.batchSize() : 1000;
+            @Valid @RequestBody StreamSearchRequest request,
+            @Parameter(description = "Id of the last event received, to resume an interrupted stream after it")
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId) {
+
+        SearchQuery query = StreamRequests.toSearchQuery(request);
+        int batchSize = request.batchSize() != null ? request.batchSize() : StreamRequests.DEFAULT_BATCH_SIZE;
+        ResumeToken after = lastEventId != null && !lastEventId.isBlank() ? ResumeToken.decode(lastEventId) : null;
+        Flux<EmailDocument> emails = StreamRequests.open(emailSearchService, request.mode(), query, batchSize, after);
+
+        return emails
+                .map(email -> {
+                    ServerSentEvent.Builder<EmailDocument> event = ServerSentEvent.<EmailDocument>builder().data(email);
+                    ResumeToken position = ResumeToken.after(email);
+                    if (position != null) {
+                        event.id(position.encode());
+                    }
+                    return event.build();
+                });
+    }
 
-        return emailSearchService.searchStream(query, batchSize)
-                .map(email -> ServerSentEvent.<EmailDocument>builder()
-                        .data(email)
-                        .build());
+    @PostMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Export emails as NDJSON",
+            description = "Export emails as newline-delimited JSON, one document per line, for ingestion tools. " +
+                    "Takes the same parameters as /stream. The response is gzip-compressed when the request's " +
+                    "Accept-Encoding allows it."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Export started successfully",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid search parameters",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Internal server error during export",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> exportEmails(
+            @Parameter(description = "Stream search request parameters", required = true)
+            @Valid @RequestBody StreamSearchRequest request,
+            @Parameter(hidden = true)
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        SearchQuery query = StreamRequests.toSearchQuery(request);
+        int batchSize = StreamRequests.batchSize(request);
+        Flux<EmailDocument> emails = StreamRequests.open(emailSearchService, request.mode(), query, batchSize, null);
+        boolean gzip = NdjsonExportWriter.acceptsGzip(acceptEncoding);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(out -> ndjsonWriter.write(emails, out, gzip));
     }
 
     private SearchQuery toSearchQuery(SearchRequest request) {
@@ -167,21 +230,8 @@ public class EmailSearchController {
                 size,
                 request.facetFields(),
                 request.facetQueries(),
-                request.sort()
-        );
-    }
-
-    private SearchQuery toStreamSearchQuery(StreamSearchRequest request) {
-        return new SearchQuery(
-                request.startTime(),
-                request.endTime(),
-                request.query(),
-                request.participantEmails(),
-                request.adminFirmDomain(),
-                0, // Always start from page 0 for streaming
-                1000, // Default batch size for streaming
-                null, // No faceting for streaming
-                null // No facet queries for streaming
+                request.sort(),
+                request.minExactCount()
         );
     }
-}
\ No newline at end of file
+}
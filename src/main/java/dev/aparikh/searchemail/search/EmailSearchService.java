@@ -1,18 +1,28 @@
 package dev.aparikh.searchemail.search;
 
 import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.response.RangeFacet;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.time.Instant;
@@ -24,10 +34,71 @@ class EmailSearchService {
 
     private static final Logger LOG = LoggerFactory.getLogger(EmailSearchService.class);
 
+    // Order of streamed and exported emails
+    private static final List<SolrQuery.SortClause> STREAM_SORT = List.of(
+            SolrQuery.SortClause.asc(EmailDocument.FIELD_SENT_AT), SolrQuery.SortClause.asc(EmailDocument.FIELD_ID));
+
     private final SolrClient solr;
+    private final EmailQueryBuilder queryBuilder;
+    private final SearchResultCache resultCache;
+    private final ExportSchemaProbe exportProbe;
+    private final ExportReader exportReader;
+    private final CursorStreamReader cursorReader;
+    private final Scheduler streamScheduler;
+    private final SingleFlight<Map<String, List<String>>, QueryResponse> inFlight; // null when disabled
+    private final SharedStreams<Map<String, List<String>>> sharedStreams; // null when disabled
+    private final int parallelStreamSlices;
+    private final int parallelStreamConcurrency;
+
+    EmailSearchService(SolrClient solr, SearchProperties properties) {
+        this(solr, properties, Metrics.globalRegistry);
+    }
+
+    EmailSearchService(SolrClient solr, SearchProperties properties, MeterRegistry meterRegistry) {
+        this(solr, properties, meterRegistry, new SearchResultCache(properties, meterRegistry));
+    }
+
+    EmailSearchService(SolrClient solr, SearchProperties properties, MeterRegistry meterRegistry,
+                       SearchResultCache resultCache) {
+        this(solr, properties, meterRegistry, resultCache, Schedulers.boundedElastic());
+    }
 
-    EmailSearchService(SolrClient solr) {
+    @Autowired
+    EmailSearchService(SolrClient solr, SearchProperties properties, MeterRegistry meterRegistry,
+                       SearchResultCache resultCache, Scheduler streamScheduler) {
         this.solr = solr;
+        PrivacyPluginProbe pluginProbe = new PrivacyPluginProbe(solr);
+        this.queryBuilder = new EmailQueryBuilder(properties, pluginProbe::isAvailable, new TimeFilterMetrics(meterRegistry));
+        this.resultCache = resultCache;
+        this.exportProbe = new ExportSchemaProbe(solr);
+        this.exportReader = new ExportReader(solr);
+        this.cursorReader = new CursorStreamReader(solr, streamScheduler, meterRegistry,
+                properties.isAdaptiveStreamBatchSize()
+                        ? new AdaptiveBatchSize.Limits(properties.getStreamBatchSizeMin(),
+                                properties.getStreamBatchSizeMax(), properties.getStreamBatchTargetLatency(),
+                                properties.getStreamBatchTargetBytes())
+                        : null);
+        this.streamScheduler = streamScheduler;
+        this.inFlight = properties.isCoalesceRequests()
+                ? new SingleFlight<>(meterRegistry.counter("search.solr.requests.coalesced")::increment)
+                : null;
+        this.sharedStreams = properties.isShareStreams()
+                ? new SharedStreams<>(properties.getStreamShareWindow(), properties.getStreamShareReplayDocuments(),
+                        meterRegistry.counter("search.stream.subscriptions", "result", "joined")::increment,
+                        meterRegistry.counter("search.stream.subscriptions", "result", "split")::increment)
+                : null;
+        this.parallelStreamSlices = properties.getParallelStreamSlices();
+        this.parallelStreamConcurrency = properties.getParallelStreamConcurrency();
+    }
+
+    /**
+     * Key under which identical Solr requests are coalesced: every parameter with its values,
+     * independent of the order the parameters were set in.
+     */
+    static Map<String, List<String>> coalescingKey(SolrParams params) {
+        Map<String, List<String>> key = new TreeMap<>();
+        params.getParameterNamesIterator().forEachRemaining(name -> key.put(name, List.of(params.getParams(name))));
+        return key;
     }
 
 
@@ -39,22 +110,6 @@ class EmailSearchService {
                 .toList();
     }
 
-    private static String formatInstant(Instant instant) {
-        return instant.toString(); // ISO-8601 with Z accepted by Solr
-    }
-
-    private static boolean sameDomain(String email, String adminFirmDomain) {
-        if (email == null || adminFirmDomain == null) return false;
-        String domain = emailDomain(email);
-        return domain.equalsIgnoreCase(adminFirmDomain);
-    }
-
-    private static String emailDomain(String email) {
-        int at = email.lastIndexOf('@');
-        if (at == -1 || at == email.length() - 1) return "";
-        return email.substring(at + 1).toLowerCase(Locale.ROOT);
-    }
-
     private static String getFieldAsString(SolrDocument d, String fieldName) {
         Object value = d.getFieldValue(fieldName);
         if (value == null) return null;
@@ -69,7 +124,7 @@ class EmailSearchService {
         try {
             SolrQuery q = buildSolrQuery(query);
             q.setRows(0); // We only want the count, no documents
-            QueryResponse resp = solr.query(q);
+            QueryResponse resp = query(q);
             return resp.getResults().getNumFound();
         } catch (SolrServerException | IOException e) {
             throw new RuntimeException("Hit count failed", e);
@@ -77,18 +132,54 @@ class EmailSearchService {
     }
 
     public List<EmailDocument> search(SearchQuery query) {
+        return resultCache.get(SearchCacheKey.Kind.PAGE, query, () -> fetchPage(query));
+    }
+
+    private List<EmailDocument> fetchPage(SearchQuery query) {
         try {
             SolrQuery q = buildSolrQuery(query);
             q.setRows(query.size());
             q.setStart(query.page() * query.size());
-            QueryResponse resp = solr.query(q);
+            QueryResponse resp = query(q);
             return resp.getResults().stream().map(this::fromSolrDoc).toList();
         } catch (SolrServerException | IOException e) {
             throw new RuntimeException("Search failed", e);
         }
     }
 
+    /**
+     * Returns a page of results with the total hit count and page metadata, all from one Solr request.
+     * With {@link SearchQuery#minExactCount()} set, Solr may stop counting exactly once that many hits are
+     * found (when results are sorted by score); the count is then flagged as a lower bound.
+     */
+    public SearchResult searchPage(SearchQuery query) {
+        return resultCache.get(SearchCacheKey.Kind.COUNTED_PAGE, query, () -> fetchCountedPage(query));
+    }
+
+    private SearchResult fetchCountedPage(SearchQuery query) {
+        try {
+            SolrQuery q = buildSolrQuery(query);
+            q.setRows(query.size());
+            q.setStart(query.page() * query.size());
+            if (query.minExactCount() != null) {
+                q.set(CommonParams.MIN_EXACT_COUNT, query.minExactCount());
+            }
+            SolrDocumentList results = query(q).getResults();
+            List<EmailDocument> emails = results.stream().map(this::fromSolrDoc).toList();
+            long totalCount = results.getNumFound();
+            int totalPages = (int) Math.ceil((double) totalCount / query.size());
+            boolean exact = !Boolean.FALSE.equals(results.getNumFoundExact());
+            return new SearchResult(emails, totalCount, query.page(), query.size(), totalPages, null, exact);
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Search failed", e);
+        }
+    }
+
     public SearchResult searchWithFacets(SearchQuery query) {
+        return resultCache.get(SearchCacheKey.Kind.FACETED_PAGE, query, () -> fetchFacetedPage(query));
+    }
+
+    private SearchResult fetchFacetedPage(SearchQuery query) {
         try {
             SolrQuery q = buildSolrQuery(query);
             q.setRows(query.size());
@@ -120,7 +211,7 @@ class EmailSearchService {
 
             QueryResponse resp;
             try {
-                resp = solr.query(q);
+                resp = query(q);
             } catch (SolrServerException | IOException solrException) {
                 // If the query fails due to invalid facet fields, retry without faceting
                 LOG.warn("Faceted query failed, retrying without facets: {}", solrException.getMessage());
@@ -128,7 +219,7 @@ class EmailSearchService {
                 fallbackQuery.setRows(query.size());
                 fallbackQuery.setStart(query.page() * query.size());
                 // Don't add faceting to fallback query
-                resp = solr.query(fallbackQuery);
+                resp = query(fallbackQuery);
             }
             
             List<EmailDocument> emails = resp.getResults().stream().map(this::fromSolrDoc).toList();
@@ -176,30 +267,144 @@ class EmailSearchService {
         }
     }
 
+    /**
+     * Streams every matching email in {@code sent_at, id} order. Pages are read with cursorMark, so a page
+     * deep into a large export costs Solr no more than the first one. No hit count is taken up front.
+     * Documents are converted as they are decoded, on the stream scheduler, and at most one page ahead of
+     * the consumer (see {@link CursorStreamReader}). The first page has {@code batchSize} rows; with
+     * {@code search.adaptive-stream-batch-size} later pages adapt to Solr's QTime and the size of the
+     * documents (see {@link AdaptiveBatchSize}).
+     */
     public Flux<EmailDocument> searchStream(SearchQuery query, int batchSize) {
-        return Flux.defer(() -> {
-            try {
-                long totalCount = getHitCount(query);
-                int totalPages = (int) Math.ceil((double) totalCount / batchSize);
-
-                return Flux.range(0, Math.max(1, totalPages))
-                        .flatMap(page -> {
-                            try {
-                                SearchQuery pageQuery = new SearchQuery(
-                                        query.start(), query.end(), query.query(),
-                                        query.participantEmails(), query.adminFirmDomain(),
-                                        page, batchSize, query.facetFields(), query.facetQueries()
-                                );
-                                List<EmailDocument> results = search(pageQuery);
-                                return Flux.fromIterable(results);
-                            } catch (RuntimeException e) {
-                                return Flux.error(new RuntimeException("Stream batch failed for page " + page, e));
-                            }
-                        });
-            } catch (RuntimeException e) {
-                return Flux.error(new RuntimeException("Stream setup failed", e));
+        return searchStream(query, batchSize, null);
+    }
+
+    /**
+     * Like {@link #searchStream(SearchQuery, int)}, but starts right after {@code after} when it is not null.
+     * With {@code search.share-streams}, concurrent streams of the same query share one pass over Solr
+     * (see {@link SharedStreams}).
+     */
+    public Flux<EmailDocument> searchStream(SearchQuery query, int batchSize, ResumeToken after) {
+        if (batchSize <= 0) {
+            return Flux.error(new IllegalArgumentException("batchSize must be > 0"));
+        }
+        if (sharedStreams == null) {
+            return cursorStream(query, batchSize, after);
+        }
+        // Identical first pages mean identical streams
+        return Flux.defer(() -> sharedStreams.stream(
+                coalescingKey(buildStreamQuery(query, after, batchSize, CursorMarkParams.CURSOR_MARK_START)),
+                resumeAfter -> cursorStream(query, batchSize, resumeAfter != null ? resumeAfter : after)));
+    }
+
+    private Flux<EmailDocument> cursorStream(SearchQuery query, int batchSize, ResumeToken after) {
+        return cursorReader.stream((cursorMark, rows) -> buildStreamQuery(query, after, rows, cursorMark),
+                batchSize, this::fromSolrDoc);
+    }
+
+    /**
+     * Streams the same emails in the same order as {@link #searchStream(SearchQuery, int, ResumeToken)}, but
+     * splits the time range into slices of similar size (see {@link #timeSlices}) and pages up to
+     * {@code search.parallel-stream-concurrency} of them at once. Slices are emitted one after another; each
+     * buffers at most one batch ahead of the consumer.
+     */
+    public Flux<EmailDocument> parallelStream(SearchQuery query, int batchSize, ResumeToken after) {
+        if (batchSize <= 0) {
+            return Flux.error(new IllegalArgumentException("batchSize must be > 0"));
+        }
+        return Flux.defer(() -> Flux.mergeSequential(
+                Flux.fromIterable(timeSlices(query, after))
+                        // Pages are decoded on their own threads, so the slices run concurrently
+                        .map(slice -> searchStream(sliceQuery(query, slice), batchSize, after)),
+                parallelStreamConcurrency, batchSize));
+    }
+
+    /**
+     * Splits the query's time range, from the resume point if there is one, into slices holding similar
+     * numbers of matches, using a {@code sent_at} range facet over the same filters as a cheap histogram.
+     * Slices never split a millisecond, so emails sharing a {@code sent_at} stay in one slice.
+     */
+    List<TimeSlices.Slice> timeSlices(SearchQuery query, ResumeToken after) {
+        Instant start = after != null && after.sentAt().isAfter(query.start()) ? after.sentAt() : query.start();
+        if (start.isAfter(query.end())) {
+            return List.of();
+        }
+        if (parallelStreamSlices <= 1) {
+            return List.of(new TimeSlices.Slice(start, query.end()));
+        }
+        long bucketMillis = TimeSlices.bucketMillis(start, query.end(), parallelStreamSlices);
+        SolrQuery q = buildSolrQuery(query);
+        q.setRows(0);
+        q.setFacet(true);
+        q.addDateRangeFacet(EmailDocument.FIELD_SENT_AT, Date.from(start), Date.from(query.end().plusMillis(1)),
+                "+" + bucketMillis + "MILLISECONDS");
+        try {
+            QueryResponse resp = query(q);
+            long buckets = (query.end().toEpochMilli() - start.toEpochMilli()) / bucketMillis + 1;
+            long[] counts = new long[(int) buckets];
+            for (RangeFacet<?, ?> range : resp.getFacetRanges()) {
+                for (RangeFacet.Count count : range.getCounts()) {
+                    long offset = Instant.parse(count.getValue()).toEpochMilli() - start.toEpochMilli();
+                    int bucket = (int) (offset / bucketMillis);
+                    if (bucket >= 0 && bucket < counts.length) counts[bucket] += count.getCount();
+                }
             }
-        });
+            return TimeSlices.split(start, query.end(), bucketMillis, counts, parallelStreamSlices);
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Stream slicing failed", e);
+        }
+    }
+
+    private static SearchQuery sliceQuery(SearchQuery query, TimeSlices.Slice slice) {
+        return new SearchQuery(slice.start(), slice.end(), query.query(), query.participantEmails(),
+                query.adminFirmDomain(), 0, query.size(), null, null);
+    }
+
+    /**
+     * Streams every matching email through Solr's {@code /export} handler in {@code sent_at, id} order, with
+     * the same privacy filters as any other search. Emails carry only their docValues fields (see
+     * {@link StreamMode#EXPORT}). When the schema lacks those docValues, falls back to {@link #searchStream}.
+     */
+    public Flux<EmailDocument> exportStream(SearchQuery query, int fallbackBatchSize) {
+        return exportStream(query, fallbackBatchSize, null);
+    }
+
+    /**
+     * Like {@link #exportStream(SearchQuery, int)}, but starts right after {@code after} when it is not null.
+     */
+    public Flux<EmailDocument> exportStream(SearchQuery query, int fallbackBatchSize, ResumeToken after) {
+        return Flux.defer(() -> exportProbe.isSupported()
+                ? exportReader.stream(buildExportQuery(query, after)).subscribeOn(streamScheduler)
+                : searchStream(query, fallbackBatchSize, after));
+    }
+
+    SolrQuery buildExportQuery(SearchQuery query, ResumeToken after) {
+        SolrQuery q = buildSolrQuery(query);
+        q.setFields(ExportSchemaProbe.EXPORT_FIELDS.toArray(String[]::new));
+        q.setSorts(STREAM_SORT);
+        if (after != null) q.addFilterQuery(resumeFilter(after));
+        return q;
+    }
+
+    SolrQuery buildStreamQuery(SearchQuery query, ResumeToken after, int batchSize, String cursorMark) {
+        SolrQuery q = buildSolrQuery(query);
+        // cursorMark needs a total order that ends on the unique key
+        q.setSorts(STREAM_SORT);
+        q.setRows(batchSize);
+        q.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        if (after != null) q.addFilterQuery(resumeFilter(after));
+        return q;
+    }
+
+    /**
+     * Matches the emails that sort after {@code after} in {@code sent_at, id} order. Not cached: every resume
+     * point is different.
+     */
+    static String resumeFilter(ResumeToken after) {
+        String sentAt = after.sentAt().toString();
+        String id = ClientUtils.escapeQueryChars(after.id());
+        return "{!cache=false}" + EmailDocument.FIELD_SENT_AT + ":{" + sentAt + " TO *] OR ("
+                + EmailDocument.FIELD_SENT_AT + ":\"" + sentAt + "\" AND " + EmailDocument.FIELD_ID + ":{" + id + " TO *])";
     }
 
     @SuppressWarnings("unchecked")
@@ -221,133 +426,13 @@ class EmailSearchService {
         return new EmailDocument(id, subject, body, from, to, cc, bcc, sentAt);
     }
 
-    private String mapSortField(String field) {
-        // Map common field aliases to actual Solr field names
-        return switch (field.toLowerCase()) {
-            case "timestamp" -> EmailDocument.FIELD_SENT_AT;
-            default -> field;
-        };
+    // Identical requests issued while one is in flight share its response instead of going to Solr again
+    private QueryResponse query(SolrQuery q) throws SolrServerException, IOException {
+        if (inFlight == null) return solr.query(q);
+        return inFlight.execute(coalescingKey(q), () -> solr.query(q));
     }
 
-    private SolrQuery buildSolrQuery(SearchQuery query) {
-        SolrQuery q = new SolrQuery();
-        List<String> participants = query.participantEmailsNonEmpty();
-
-        // Base query: use provided query or match all
-        String baseQuery = query.queryOpt().orElse("*:*");
-        q.setQuery(baseQuery);
-
-        // Time range filter
-        String start = formatInstant(query.start());
-        String end = formatInstant(query.end());
-        q.addFilterQuery(EmailDocument.FIELD_SENT_AT + ":[" + start + " TO " + end + "]");
-
-        // Participant filter with cross-firm BCC visibility
-        if (!participants.isEmpty()) {
-            List<String> participantExpressions = new ArrayList<>();
-
-            for (String participant : participants) {
-                String term = ClientUtils.escapeQueryChars(participant.toLowerCase(Locale.ROOT));
-                String participantDomain = emailDomain(participant);
-                String adminDomain = query.adminFirmDomain();
-                
-                if (adminDomain != null && !adminDomain.trim().isEmpty()) {
-                    // Cross-firm scenario: admin from firm A searching for participant from firm B
-                    if (!sameDomain(participant, adminDomain)) {
-                        // PRIVACY RULE: Cross-firm searches require admin firm participation to prevent information leakage
-                        // 
-                        // Example: JP Morgan admin searching for Bank of America employee
-                        // 
-                        // VISIBLE scenarios:
-                        // 1. Cross-firm participant in FROM/TO/CC + admin firm anywhere in FROM/TO/CC/BCC
-                        //    - BoA employee in TO + JP Morgan employee in CC ✅
-                        //    - BoA employee in FROM + JP Morgan employee in BCC ✅
-                        // 
-                        // 2. Cross-firm participant in BCC + admin firm as sender (special sender privilege)
-                        //    - BoA employee in BCC + JP Morgan employee as sender ✅ (senders can see all BCCs)
-                        // 
-                        // HIDDEN scenarios:
-                        // 3. Cross-firm participant in BCC + admin firm not sender
-                        //    - BoA employee in BCC + JP Morgan employee in TO ❌ (no sender privilege)
-                        // 
-                        // 4. Cross-firm participant anywhere + no admin firm participation
-                        //    - BoA employee in FROM + no JP Morgan participation ❌ (information leakage prevention)
-                        
-                        // Case 1: Cross-firm participant in visible fields (FROM/TO/CC)
-                        List<String> visibleFields = List.of(EmailDocument.FIELD_FROM, EmailDocument.FIELD_TO, EmailDocument.FIELD_CC);
-                        String visibleParticipantExpr = String.join(" OR ", visibleFields.stream()
-                                .map(f -> f + ":\"" + term + "\"")
-                                .toList());
-                        
-                        // Admin firm can be anywhere for visible participant matches
-                        String adminFirmAnywhereExpr = String.format("(from_addr:*@%s OR to_addr:*@%s OR cc_addr:*@%s OR bcc_addr:*@%s)", 
-                                adminDomain.toLowerCase(), adminDomain.toLowerCase(), 
-                                adminDomain.toLowerCase(), adminDomain.toLowerCase());
-                        
-                        String visibleCaseExpr = "((" + visibleParticipantExpr + ") AND " + adminFirmAnywhereExpr + ")";
-                        
-                        // Case 2: Cross-firm participant in BCC + admin firm as sender
-                        String bccParticipantExpr = EmailDocument.FIELD_BCC + ":\"" + term + "\"";
-                        String adminFirmSenderExpr = "from_addr:*@" + adminDomain.toLowerCase();
-                        String bccCaseExpr = "((" + bccParticipantExpr + ") AND (" + adminFirmSenderExpr + "))";
-                        
-                        // Combine both cases
-                        participantExpressions.add("(" + visibleCaseExpr + " OR " + bccCaseExpr + ")");
-                    } else {
-                        // SAME-FIRM scenario: admin searching for participant from same firm
-                        // Example: JP Morgan admin searching for JP Morgan employee
-                        // VISIBLE: JP Morgan employee anywhere (FROM/TO/CC/BCC) ✅
-                        List<String> fields = new ArrayList<>();
-                        fields.add(EmailDocument.FIELD_FROM);
-                        fields.add(EmailDocument.FIELD_TO);
-                        fields.add(EmailDocument.FIELD_CC);
-                        fields.add(EmailDocument.FIELD_BCC); // Same firm can see BCC
-                        
-                        String participantExpr = String.join(" OR ", fields.stream()
-                                .map(f -> f + ":\"" + term + "\"")
-                                .toList());
-                        participantExpressions.add("(" + participantExpr + ")");
-                    }
-                } else {
-                    // No admin domain provided - use standard logic without BCC
-                    List<String> fields = new ArrayList<>();
-                    fields.add(EmailDocument.FIELD_FROM);
-                    fields.add(EmailDocument.FIELD_TO);
-                    fields.add(EmailDocument.FIELD_CC);
-                    
-                    String participantExpr = String.join(" OR ", fields.stream()
-                            .map(f -> f + ":\"" + term + "\"")
-                            .toList());
-                    participantExpressions.add("(" + participantExpr + ")");
-                }
-            }
-
-            // Combine all participant expressions with OR
-            String allParticipantsExpr = String.join(" OR ", participantExpressions);
-            q.addFilterQuery(allParticipantsExpr);
-        }
-
-        // Add sorting if specified
-        if (query.sortOpt().isPresent()) {
-            String sortString = query.sortOpt().get();
-            String[] parts = sortString.split("\\s+");
-            if (parts.length >= 2) {
-                String field = parts[0];
-                String direction = parts[1];
-                
-                // Map common field aliases to actual Solr field names
-                String mappedField = mapSortField(field);
-                
-                SolrQuery.ORDER order = "desc".equalsIgnoreCase(direction) ? 
-                    SolrQuery.ORDER.desc : SolrQuery.ORDER.asc;
-                q.setSort(mappedField, order);
-            } else if (parts.length == 1) {
-                // Default to ascending if no direction specified
-                String mappedField = mapSortField(parts[0]);
-                q.setSort(mappedField, SolrQuery.ORDER.asc);
-            }
-        }
-
-        return q;
+    SolrQuery buildSolrQuery(SearchQuery query) {
+        return queryBuilder.build(query);
     }
 }
@@ -0,0 +1,113 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.api.ErrorResponse;
+import dev.aparikh.searchemail.api.StreamSearchRequest;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+
+/**
+ * REST Controller for background export jobs.
+ */
+@RestController
+@RequestMapping("/api/exports")
+@Tag(name = "Export Jobs", description = "Background exports written to compressed files for later download")
+public class ExportJobController {
+
+    static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+
+    private final ExportJobService exportJobService;
+
+    public ExportJobController(ExportJobService exportJobService) {
+        this.exportJobService = exportJobService;
+    }
+
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Submit an export job",
+            description = "Start exporting the emails matching a stream request in the background. " +
+                    "The job writes gzip-compressed JSON Lines chunks; poll its status for the committed chunks " +
+                    "and their SHA-256 checksums, and download them as they appear."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Export job started",
+                    content = @Content(schema = @Schema(implementation = ExportManifest.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid search parameters",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<ExportManifest> submitExport(
+            @Parameter(description = "Stream search request parameters", required = true)
+            @Valid @RequestBody StreamSearchRequest request) {
+
+        ExportManifest job = exportJobService.submit(request);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/exports/" + job.id()))
+                .body(job);
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Get export job status",
+            description = "Status of an export job with its committed chunks."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Export job found",
+                    content = @Content(schema = @Schema(implementation = ExportManifest.class))
+            ),
+            @ApiResponse(responseCode = "404", description = "No such export job")
+    })
+    public ResponseEntity<ExportManifest> getExport(@PathVariable String id) {
+        return ResponseEntity.of(exportJobService.find(id));
+    }
+
+    @GetMapping("/{id}/chunks/{index}")
+    @Operation(
+            summary = "Download an export chunk",
+            description = "Download a committed chunk as a gzip file of JSON Lines. Supports Range requests, " +
+                    "so an interrupted download can continue where it stopped."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Chunk file",
+                    content = @Content(mediaType = "application/gzip")),
+            @ApiResponse(responseCode = "206", description = "Requested range of the chunk file",
+                    content = @Content(mediaType = "application/gzip")),
+            @ApiResponse(responseCode = "404", description = "No such export job or chunk")
+    })
+    public ResponseEntity<Resource> downloadChunk(@PathVariable String id, @PathVariable int index) {
+        // Spring MVC answers Range requests for Resource bodies with 206 and the requested regions
+        return exportJobService.chunk(id, index)
+                .map(file -> ResponseEntity.ok()
+                        .contentType(GZIP)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                .filename(file.getFileName().toString()).build().toString())
+                        .<Resource>body(new FileSystemResource(file)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
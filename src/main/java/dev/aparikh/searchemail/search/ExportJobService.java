@@ -0,0 +1,303 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.aparikh.searchemail.api.StreamSearchRequest;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs exports in the background instead of over one long-lived HTTP response. Each job writes its emails as
+ * gzip-compressed JSON Lines chunks of {@code search.export-job-chunk-documents} emails into its own directory
+ * under {@code search.export-job-directory}, next to a {@code manifest.json} (see {@link ExportManifest}).
+ * <p>
+ * A chunk is committed once it is fully written and synced to disk: the manifest is then replaced atomically,
+ * recording the chunk with its SHA-256 and the resume token of its last email. Jobs still running when the
+ * application stops are resumed from that token on the next start, after discarding any partly written chunk.
+ */
+@Service
+@ConditionalOnBean(SolrClient.class)
+class ExportJobService implements ApplicationRunner, DisposableBean {
+
+    static final String MANIFEST = "manifest.json";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExportJobService.class);
+
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
+    private final EmailSearchService searchService;
+    private final ObjectMapper mapper;
+    private final ObjectWriter lineWriter;
+    private final Path directory;
+    private final int chunkDocuments;
+    private final ExecutorService executor;
+    private volatile boolean closed;
+
+    ExportJobService(EmailSearchService searchService, ObjectMapper mapper, SearchProperties properties) {
+        this.searchService = searchService;
+        this.mapper = mapper;
+        this.lineWriter = mapper.writerFor(EmailDocument.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.directory = properties.getExportJobDirectory();
+        this.chunkDocuments = properties.getExportJobChunkDocuments();
+        // Jobs mostly wait on Solr and the disk
+        this.executor = Executors.newFixedThreadPool(properties.getExportJobConcurrency(),
+                Thread.ofVirtual().name("export-job-", 0).factory());
+    }
+
+    /**
+     * Records a new job and starts it in the background.
+     *
+     * @throws IllegalArgumentException if the request does not describe a valid stream
+     */
+    ExportManifest submit(StreamSearchRequest request) {
+        // Reject bad requests now rather than as a failed job
+        StreamRequests.toSearchQuery(request);
+        StreamRequests.batchSize(request);
+
+        ExportManifest job = ExportManifest.started(UUID.randomUUID().toString(), request, Instant.now());
+        try {
+            Files.createDirectories(jobDirectory(job.id()));
+            save(job);
+        } catch (IOException e) {
+            throw new RuntimeException("Export job submission failed", e);
+        }
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * The job's current manifest, if it exists.
+     *
+     * @throws IllegalArgumentException if {@code id} is not a job id
+     */
+    Optional<ExportManifest> find(String id) {
+        Path manifest = jobDirectory(id).resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(mapper.readValue(manifest.toFile(), ExportManifest.class));
+        } catch (IOException e) {
+            throw new RuntimeException("Reading export job failed", e);
+        }
+    }
+
+    /**
+     * The file of a committed chunk of the job, if both exist.
+     */
+    Optional<Path> chunk(String id, int index) {
+        return find(id)
+                .flatMap(job -> job.chunks().stream().filter(c -> c.index() == index).findFirst())
+                .map(c -> jobDirectory(id).resolve(c.file()));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!Files.isDirectory(directory)) return;
+        int resumed = 0;
+        try (DirectoryStream<Path> jobs = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path jobDirectory : jobs) {
+                Path manifest = jobDirectory.resolve(MANIFEST);
+                if (!Files.exists(manifest)) continue;
+                ExportManifest job = mapper.readValue(manifest.toFile(), ExportManifest.class);
+                if (job.status() == ExportManifest.Status.RUNNING) {
+                    executor.execute(() -> run(job));
+                    resumed++;
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Scanning {} for interrupted export jobs failed", directory, e);
+        }
+        if (resumed > 0) {
+            LOG.info("Resuming {} interrupted export jobs", resumed);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Running jobs stay RUNNING in their manifests and resume on the next start
+        closed = true;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Writes the job's remaining emails, starting after its last committed chunk.
+     */
+    void run(ExportManifest job) {
+        ChunkWriter chunk = null;
+        try {
+            discardUncommitted(job);
+            StreamSearchRequest request = job.request();
+            int batchSize = StreamRequests.batchSize(request);
+            ResumeToken after = job.resumeToken() != null ? ResumeToken.decode(job.resumeToken()) : null;
+            Flux<EmailDocument> emails = StreamRequests.open(searchService, request.mode(),
+                    StreamRequests.toSearchQuery(request), batchSize, after);
+
+            try (Stream<EmailDocument> documents = emails.toStream(batchSize)) {
+                Iterator<EmailDocument> it = documents.iterator();
+                EmailDocument last = null;
+                while (it.hasNext()) {
+                    if (chunk == null) {
+                        chunk = new ChunkWriter(jobDirectory(job.id()), job.chunks().size());
+                    }
+                    last = it.next();
+                    chunk.write(last);
+                    if (chunk.documents == chunkDocuments) {
+                        job = commit(job, chunk, last);
+                        chunk = null;
+                    }
+                }
+                if (chunk != null) {
+                    job = commit(job, chunk, last);
+                    chunk = null;
+                }
+            }
+            save(job.completed(Instant.now()));
+            LOG.info("Export job {} completed: {} emails in {} chunks", job.id(), job.documents(), job.chunks().size());
+        } catch (IOException | RuntimeException e) {
+            if (chunk != null) chunk.abort();
+            if (closed) {
+                LOG.info("Export job {} interrupted by shutdown, it resumes on the next start", job.id());
+                return;
+            }
+            LOG.error("Export job {} failed", job.id(), e);
+            try {
+                save(job.failed(e.getMessage(), Instant.now()));
+            } catch (IOException saveFailure) {
+                LOG.error("Recording the failure of export job {} failed", job.id(), saveFailure);
+            }
+        }
+    }
+
+    private ExportManifest commit(ExportManifest job, ChunkWriter chunk, EmailDocument last) throws IOException {
+        ExportManifest.Chunk committed = chunk.finish();
+        ResumeToken position = ResumeToken.after(last);
+        ExportManifest next = job.withChunk(committed, position != null ? position.encode() : job.resumeToken(),
+                Instant.now());
+        save(next);
+        return next;
+    }
+
+    // Chunk files left behind by an interrupted run, which the manifest does not list
+    private void discardUncommitted(ExportManifest job) throws IOException {
+        Path jobDirectory = jobDirectory(job.id());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(jobDirectory, ChunkWriter.GLOB)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (job.chunks().stream().noneMatch(c -> c.file().equals(name))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Replaces the manifest atomically, so a crash leaves either the old or the new one
+    private void save(ExportManifest job) throws IOException {
+        Path jobDirectory = jobDirectory(job.id());
+        Path temp = jobDirectory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(mapper.writeValueAsBytes(job));
+            while (bytes.hasRemaining()) channel.write(bytes);
+            channel.force(true);
+        }
+        Files.move(temp, jobDirectory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path jobDirectory(String id) {
+        try {
+            // Ids are UUIDs, which also keeps them from naming paths outside the export directory
+            return directory.resolve(UUID.fromString(id).toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid export job id", e);
+        }
+    }
+
+    // One chunk being written: JSON Lines through gzip, hashed as it reaches the file
+    private final class ChunkWriter {
+        static final String GLOB = "chunk-*.jsonl.gz";
+
+        private final int index;
+        private final String file;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private final GZIPOutputStream gzip;
+        private final JsonGenerator generator;
+        long documents;
+
+        ChunkWriter(Path jobDirectory, int index) throws IOException {
+            this.index = index;
+            this.file = String.format("chunk-%05d.jsonl.gz", index);
+            this.channel = FileChannel.open(jobDirectory.resolve(file), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                channel.close();
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            OutputStream out = new DigestOutputStream(Channels.newOutputStream(channel), digest);
+            this.gzip = new GZIPOutputStream(out, GZIP_BUFFER_BYTES);
+            this.generator = mapper.getFactory().createGenerator(gzip);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        }
+
+        void write(EmailDocument email) throws IOException {
+            lineWriter.writeValue(generator, email);
+            generator.writeRaw('\n');
+            documents++;
+        }
+
+        ExportManifest.Chunk finish() throws IOException {
+            generator.close();
+            gzip.finish();
+            channel.force(true);
+            long bytes = channel.size();
+            channel.close();
+            return new ExportManifest.Chunk(index, file, documents, bytes, HexFormat.of().formatHex(digest.digest()));
+        }
+
+        void abort() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // The partial file is discarded when the job runs again
+            }
+        }
+    }
+}
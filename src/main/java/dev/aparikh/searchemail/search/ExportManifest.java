@@ -0,0 +1,59 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.api.StreamSearchRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of an export job, stored as {@code manifest.json} in the job's directory and returned by the export job
+ * API. Lists the chunks committed so far and the resume token of the last email they hold.
+ */
+public record ExportManifest(
+        String id,
+        Status status,
+        StreamSearchRequest request,
+        Instant createdAt,
+        Instant updatedAt,
+        long documents,
+        List<Chunk> chunks,
+        String resumeToken,
+        String error
+) {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    /**
+     * One gzip-compressed JSON Lines file of the export, with the SHA-256 of its compressed bytes.
+     */
+    public record Chunk(int index, String file, long documents, long bytes, String sha256) {
+    }
+
+    public ExportManifest {
+        chunks = chunks != null ? List.copyOf(chunks) : List.of();
+    }
+
+    static ExportManifest started(String id, StreamSearchRequest request, Instant now) {
+        return new ExportManifest(id, Status.RUNNING, request, now, now, 0, List.of(), null, null);
+    }
+
+    ExportManifest withChunk(Chunk chunk, String resumeToken, Instant now) {
+        List<Chunk> committed = new ArrayList<>(chunks);
+        committed.add(chunk);
+        return new ExportManifest(id, status, request, createdAt, now, documents + chunk.documents(), committed,
+                resumeToken, error);
+    }
+
+    ExportManifest completed(Instant now) {
+        return new ExportManifest(id, Status.COMPLETED, request, createdAt, now, documents, chunks, resumeToken, null);
+    }
+
+    ExportManifest failed(String error, Instant now) {
+        return new ExportManifest(id, Status.FAILED, request, createdAt, now, documents, chunks, resumeToken, error);
+    }
+}
@@ -0,0 +1,174 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.InputStreamResponseParser;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams emails from Solr's {@code /export} handler. The JSON response is parsed incrementally as
+ * documents are requested, so only the document being emitted is held in memory, and the response is
+ * closed when the stream completes, fails or is cancelled.
+ */
+class ExportReader {
+
+    static final String EXPORT_PATH = "/export";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final SolrClient solr;
+
+    ExportReader(SolrClient solr) {
+        this.solr = solr;
+    }
+
+    Flux<EmailDocument> stream(SolrParams params) {
+        return Flux.using(() -> open(params),
+                parser -> Flux.<EmailDocument>generate(sink -> {
+                    try {
+                        EmailDocument next = nextDocument(parser);
+                        if (next == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(next);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        sink.error(new RuntimeException("Export failed", e));
+                    }
+                }),
+                ExportReader::close);
+    }
+
+    private JsonParser open(SolrParams params) {
+        // POST: participant lists can make the filter parameters long
+        QueryRequest request = new QueryRequest(params, SolrRequest.METHOD.POST);
+        request.setPath(EXPORT_PATH);
+        request.setResponseParser(new InputStreamResponseParser("json"));
+        try {
+            NamedList<Object> response = solr.request(request);
+            JsonParser parser = JSON.createParser((InputStream) response.get("stream"));
+            try {
+                positionAtDocs(parser);
+            } catch (IOException | RuntimeException e) {
+                close(parser);
+                throw e;
+            }
+            return parser;
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            throw new RuntimeException("Export failed", e);
+        }
+    }
+
+    private static void close(JsonParser parser) {
+        try {
+            parser.close();
+        } catch (IOException ignored) {
+            // Nothing left to read from a response we are abandoning
+        }
+    }
+
+    /**
+     * Advances past the start of {@code response.docs}. Leaves the parser at the end of the input when the
+     * response has no documents, and fails on a Solr error response.
+     */
+    static void positionAtDocs(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected export response");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("error".equals(name)) {
+                throw new IllegalStateException("Solr export failed: " + errorMessage(parser));
+            }
+            if ("response".equals(name) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && "docs".equals(field)) {
+                        return;
+                    }
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        // No docs array: nothing to stream
+        while (parser.nextToken() != null) {
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * Reads the next document of the docs array, or returns null once it ends.
+     */
+    static EmailDocument nextDocument(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) return null;
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected token in export response: " + token);
+        }
+        String id = null;
+        String from = null;
+        List<String> to = List.of();
+        List<String> cc = List.of();
+        List<String> bcc = List.of();
+        Instant sentAt = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case EmailDocument.FIELD_ID -> id = parser.getValueAsString();
+                case EmailDocument.FIELD_FROM -> from = parser.getValueAsString();
+                case EmailDocument.FIELD_TO -> to = strings(parser);
+                case EmailDocument.FIELD_CC -> cc = strings(parser);
+                case EmailDocument.FIELD_BCC -> bcc = strings(parser);
+                case EmailDocument.FIELD_SENT_AT -> sentAt = Instant.parse(parser.getValueAsString());
+                // Solr reports failures after the response has started as a tuple of their own
+                case "EXCEPTION" -> throw new IllegalStateException("Solr export failed: " + parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return new EmailDocument(id, null, null, from, to, cc, bcc, sentAt);
+    }
+
+    private static List<String> strings(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            return List.of(parser.getValueAsString());
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getValueAsString());
+        }
+        return values;
+    }
+
+    private static String errorMessage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) return parser.getValueAsString();
+        String message = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("msg".equals(field)) {
+                message = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,66 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that every field the {@code /export} handler reads or sorts on has docValues, using the Schema API
+ * with defaults resolved from the field types. A complete answer is remembered; failures to reach Solr are
+ * retried on the next call.
+ */
+class ExportSchemaProbe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExportSchemaProbe.class);
+
+    // Returned by export mode and used for its sent_at, id sort
+    static final List<String> EXPORT_FIELDS = List.of(EmailDocument.FIELD_ID, EmailDocument.FIELD_FROM,
+            EmailDocument.FIELD_TO, EmailDocument.FIELD_CC, EmailDocument.FIELD_BCC, EmailDocument.FIELD_SENT_AT);
+
+    private final SolrClient solr;
+    private volatile Boolean supported;
+
+    ExportSchemaProbe(SolrClient solr) {
+        this.solr = solr;
+    }
+
+    boolean isSupported() {
+        Boolean known = supported;
+        if (known != null) return known;
+
+        ModifiableSolrParams showDefaults = new ModifiableSolrParams();
+        showDefaults.set("showDefaults", true);
+        try {
+            for (String field : EXPORT_FIELDS) {
+                Map<String, Object> attributes = new SchemaRequest.Field(field, showDefaults).process(solr).getField();
+                if (!Boolean.TRUE.equals(attributes.get("docValues"))) {
+                    LOG.warn("Field {} has no docValues, exports fall back to cursor paging", field);
+                    supported = Boolean.FALSE;
+                    return false;
+                }
+            }
+        } catch (SolrException e) {
+            if (e.code() != SolrException.ErrorCode.NOT_FOUND.code) {
+                LOG.warn("Could not check the schema for export support: {}", e.getMessage());
+                return false;
+            }
+            LOG.warn("Export field missing from schema, exports fall back to cursor paging: {}", e.getMessage());
+            supported = Boolean.FALSE;
+            return false;
+        } catch (SolrServerException | IOException e) {
+            LOG.warn("Could not check the schema for export support: {}", e.getMessage());
+            return false;
+        }
+        supported = Boolean.TRUE;
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.aparikh.searchemail.search;
+
+/**
+ * One filter query together with the local params that control how Solr evaluates it.
+ *
+ * @param cache explicit {@code cache} local param, or {@code null} to leave Solr's default
+ * @param cost  {@code cost} local param for non-cached filters, or 0 for none
+ */
+record FilterClause(QueryNode query, Boolean cache, int cost) {
+
+    static FilterClause of(QueryNode query) {
+        return new FilterClause(query, null, 0);
+    }
+
+    static FilterClause cached(QueryNode query) {
+        return new FilterClause(query, Boolean.TRUE, 0);
+    }
+
+    static FilterClause uncached(QueryNode query, int cost) {
+        return new FilterClause(query, Boolean.FALSE, cost);
+    }
+
+    boolean hasLocalParams() {
+        return cache != null || cost > 0;
+    }
+}
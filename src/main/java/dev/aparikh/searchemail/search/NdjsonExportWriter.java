@@ -0,0 +1,94 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.aparikh.searchemail.model.EmailDocument;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes emails as newline-delimited JSON through one streaming Jackson generator, optionally gzip-compressed.
+ * Documents are pulled from the stream {@link #PREFETCH} at a time and the output is flushed to the client every
+ * {@link #FLUSH_DOCUMENTS} documents, so memory is bounded by the prefetch and the generator and compressor
+ * buffers whatever the size of the export.
+ */
+class NdjsonExportWriter {
+
+    static final int FLUSH_DOCUMENTS = 500;
+
+    // Documents requested ahead of the writer; enough to keep the stream busy while one is serialized
+    static final int PREFETCH = 32;
+
+    private static final int GZIP_BUFFER_BYTES = 8 * 1024;
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    NdjsonExportWriter(ObjectMapper mapper) {
+        this.mapper = mapper;
+        // Flushing is batched below rather than after every document
+        this.writer = mapper.writerFor(EmailDocument.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Writes every email of the stream to {@code out} and returns how many were written. Closing the stream,
+     * also when the client goes away mid-export, cancels the underlying Solr paging.
+     */
+    long write(Flux<EmailDocument> emails, OutputStream out, boolean gzip) throws IOException {
+        // Sync flush so each flush hands the client complete lines instead of waiting for the compressor
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, GZIP_BUFFER_BYTES, true) : null;
+        long written = 0;
+        try (Stream<EmailDocument> documents = emails.toStream(PREFETCH);
+             JsonGenerator generator = mapper.getFactory().createGenerator(gzip ? compressed : out)) {
+            // The servlet container owns the response stream; the gzip trailer is written below
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            Iterator<EmailDocument> it = documents.iterator();
+            while (it.hasNext()) {
+                writer.writeValue(generator, it.next());
+                generator.writeRaw('\n');
+                if (++written % FLUSH_DOCUMENTS == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        if (compressed != null) {
+            compressed.finish();
+        }
+        out.flush();
+        return written;
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header allows gzip, i.e. names {@code gzip} (or {@code *}) without
+     * {@code q=0}.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) == 0.0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (!refused) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+package dev.aparikh.searchemail.search;
+
+/**
+ * How participant privacy rules are turned into Solr filters.
+ */
+enum PrivacyFilterMode {
+    /**
+     * Evaluate the FROM/TO/CC/BCC visibility rules per query as a boolean expression over the address fields.
+     */
+    BOOLEAN_EXPRESSION,
+    /**
+     * Look up the index-time {@code visible_participant} terms; requires documents indexed (or backfilled)
+     * with the derived visibility field.
+     */
+    VISIBILITY_FIELD,
+    /**
+     * Evaluate the rules per candidate document with the {@code {!emailprivacy}} post filter from the
+     * solr-privacy-plugin module; falls back to {@link #BOOLEAN_EXPRESSION} when Solr does not have the plugin.
+     * Works on indexes without the derived domain fields, which the plugin reads from the addresses instead.
+     */
+    POST_FILTER
+}
@@ -0,0 +1,55 @@
+package dev.aparikh.searchemail.search;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Detects whether the Solr core has the {@code emailprivacy} query parser from the solr-privacy-plugin
+ * module registered. The first successful probe is remembered; failures that do not come from Solr
+ * rejecting the parser (e.g. Solr being unreachable) are retried on the next call.
+ */
+class PrivacyPluginProbe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrivacyPluginProbe.class);
+
+    static final String PARSER = "emailprivacy";
+
+    private final SolrClient solr;
+    private volatile Boolean available;
+
+    PrivacyPluginProbe(SolrClient solr) {
+        this.solr = solr;
+    }
+
+    boolean isAvailable() {
+        Boolean known = available;
+        if (known != null) return known;
+
+        // Matches no documents, so only parsing the filter costs anything
+        SolrQuery q = new SolrQuery("id:__" + PARSER + "_probe__");
+        q.setRows(0);
+        q.addFilterQuery("{!" + PARSER + " participants=probe}");
+        try {
+            solr.query(q);
+            available = Boolean.TRUE;
+            LOG.info("Solr {} post filter available", PARSER);
+        } catch (SolrException e) {
+            if (e.code() != SolrException.ErrorCode.BAD_REQUEST.code) {
+                LOG.warn("Could not probe for Solr {} post filter: {}", PARSER, e.getMessage());
+                return false;
+            }
+            available = Boolean.FALSE;
+            LOG.warn("Solr {} post filter not installed, falling back to boolean privacy filters", PARSER);
+        } catch (SolrServerException | IOException e) {
+            LOG.warn("Could not probe for Solr {} post filter: {}", PARSER, e.getMessage());
+            return false;
+        }
+        return available;
+    }
+}
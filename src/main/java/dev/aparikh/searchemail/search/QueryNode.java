@@ -0,0 +1,124 @@
+package dev.aparikh.searchemail.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small typed model of the Solr queries this service builds. Nodes are immutable records with
+ * structural equality, so identical clauses can be detected and merged before rendering
+ * (see {@link QuerySimplifier}) and rendered to either syntax by {@link QueryRenderer}.
+ */
+sealed interface QueryNode {
+
+    /**
+     * Exact match of a single indexed term, e.g. an address on a string field.
+     */
+    record Term(String field, String value) implements QueryNode {
+    }
+
+    /**
+     * Match of any of several indexed terms on one field, rendered with the {@code terms} query parser.
+     * Values are sent comma-separated, so they must not contain commas themselves.
+     */
+    record Terms(String field, List<String> values) implements QueryNode {
+        public Terms {
+            values = List.copyOf(new LinkedHashSet<>(values));
+            for (String value : values) {
+                if (!isTermsValue(value)) {
+                    throw new IllegalArgumentException("terms value must not contain ',': " + value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Range with an inclusive lower bound; a {@code null} bound is open.
+     */
+    record Range(String field, String lower, String upper, boolean upperInclusive) implements QueryNode {
+        /**
+         * Range including both bounds.
+         */
+        public Range(String field, String lower, String upper) {
+            this(field, lower, upper, true);
+        }
+    }
+
+    /**
+     * Phrase match on an analyzed field.
+     */
+    record Phrase(String field, String text) implements QueryNode {
+    }
+
+    /**
+     * Matches when every {@code must} clause matches, at least one {@code should} clause matches
+     * (if there are any) and no {@code mustNot} clause matches.
+     */
+    record Bool(List<QueryNode> must, List<QueryNode> should, List<QueryNode> mustNot) implements QueryNode {
+        public Bool {
+            must = List.copyOf(must);
+            should = List.copyOf(should);
+            mustNot = List.copyOf(mustNot);
+        }
+
+        boolean isConjunction() {
+            return should.isEmpty() && mustNot.isEmpty();
+        }
+
+        boolean isDisjunction() {
+            return must.isEmpty() && mustNot.isEmpty();
+        }
+    }
+
+    /**
+     * Clause evaluated and cached on its own in Solr's filterCache, independent of the enclosing query.
+     */
+    record Filter(QueryNode query) implements QueryNode {
+    }
+
+    /**
+     * Query handled by a named query parser and configured only through local params,
+     * e.g. {@code {!emailprivacy admin=acme.com participants=...}}.
+     */
+    record ParserQuery(String parser, Map<String, String> localParams) implements QueryNode {
+        public ParserQuery {
+            localParams = Collections.unmodifiableMap(new LinkedHashMap<>(localParams));
+        }
+    }
+
+    /**
+     * Pre-built standard-syntax query, for clauses the typed model does not cover (e.g. legacy wildcards).
+     */
+    record Raw(String query) implements QueryNode {
+    }
+
+    static boolean isTermsValue(String value) {
+        return value.indexOf(',') < 0;
+    }
+
+    static QueryNode and(QueryNode... clauses) {
+        return new Bool(List.of(clauses), List.of(), List.of());
+    }
+
+    static QueryNode or(List<? extends QueryNode> clauses) {
+        return new Bool(List.of(), new ArrayList<>(clauses), List.of());
+    }
+
+    static QueryNode or(QueryNode... clauses) {
+        return or(List.of(clauses));
+    }
+
+    /**
+     * The same term on each of several fields, OR-ed together.
+     */
+    static QueryNode anyField(List<String> fields, String value) {
+        List<QueryNode> clauses = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            clauses.add(new Term(field, value));
+        }
+        return or(clauses);
+    }
+}
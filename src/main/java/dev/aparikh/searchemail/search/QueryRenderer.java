@@ -0,0 +1,317 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Bool;
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.ParserQuery;
+import dev.aparikh.searchemail.search.QueryNode.Phrase;
+import dev.aparikh.searchemail.search.QueryNode.Range;
+import dev.aparikh.searchemail.search.QueryNode.Raw;
+import dev.aparikh.searchemail.search.QueryNode.Term;
+import dev.aparikh.searchemail.search.QueryNode.Terms;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders {@link QueryNode} trees to Solr's standard query syntax or to the JSON Query DSL,
+ * writing into a single {@link StringBuilder} per filter.
+ * <p>
+ * In standard syntax, {@link Terms} lists nested inside a larger query are moved into request
+ * parameters (named {@value #TERMS_PARAM_PREFIX}N) and dereferenced with {@code v=$param}, so the
+ * filter string stays short and identical value lists are sent once. Without a parameter target
+ * they are inlined as quoted local params instead.
+ */
+final class QueryRenderer {
+
+    static final String TERMS_PARAM_PREFIX = "fq.terms.";
+
+    private final ModifiableSolrParams params;
+    private final Map<List<String>, String> paramNames = new HashMap<>();
+
+    /**
+     * @param params request parameters to hoist nested terms lists into, or {@code null} to inline them
+     */
+    QueryRenderer(ModifiableSolrParams params) {
+        this.params = params;
+    }
+
+    String standard(QueryNode node) {
+        StringBuilder sb = new StringBuilder(128);
+        writeStandard(node, sb, true);
+        return sb.toString();
+    }
+
+    String standard(FilterClause filter) {
+        StringBuilder sb = new StringBuilder(128);
+        if (filter.query() instanceof Terms terms) {
+            // Top-level terms keep their values in the query body
+            sb.append("{!terms f=").append(terms.field());
+            appendLocalParams(filter, sb);
+            sb.append('}');
+            appendJoined(terms.values(), sb);
+            return sb.toString();
+        }
+        if (filter.query() instanceof ParserQuery parserQuery) {
+            writeParserQuery(parserQuery, sb, filter);
+            return sb.toString();
+        }
+        if (filter.hasLocalParams()) {
+            sb.append("{!");
+            appendLocalParams(filter, sb);
+            sb.deleteCharAt(2).append('}');
+        }
+        writeStandard(filter.query(), sb, true);
+        return sb.toString();
+    }
+
+    static String json(QueryNode node) {
+        StringBuilder sb = new StringBuilder(256);
+        writeJson(node, sb, "");
+        return sb.toString();
+    }
+
+    static String json(FilterClause filter) {
+        StringBuilder sb = new StringBuilder(256);
+        StringBuilder localParams = new StringBuilder();
+        if (filter.cache() != null) localParams.append(",\"cache\":").append(filter.cache());
+        if (filter.cost() > 0) localParams.append(",\"cost\":").append(filter.cost());
+        writeJson(filter.query(), sb, localParams.toString());
+        return sb.toString();
+    }
+
+    /**
+     * Request body for the JSON Request API carrying the given filters.
+     */
+    static String jsonFilterBody(List<FilterClause> filters) {
+        StringBuilder sb = new StringBuilder(256).append("{\"filter\":[");
+        for (int i = 0; i < filters.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(json(filters.get(i)));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendLocalParams(FilterClause filter, StringBuilder sb) {
+        if (filter.cache() != null) sb.append(" cache=").append(filter.cache());
+        if (filter.cost() > 0) sb.append(" cost=").append(filter.cost());
+    }
+
+    private static void appendJoined(List<String> values, StringBuilder sb) {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(values.get(i));
+        }
+    }
+
+    private void writeStandard(QueryNode node, StringBuilder sb, boolean topLevel) {
+        switch (node) {
+            case Term term -> sb.append(term.field()).append(':').append(ClientUtils.escapeQueryChars(term.value()));
+            case Terms terms -> writeTerms(terms, sb);
+            case Range range -> sb.append(range.field()).append(":[")
+                    .append(range.lower() == null ? "*" : range.lower()).append(" TO ")
+                    .append(range.upper() == null ? "*" : range.upper()).append(range.upperInclusive() ? ']' : '}');
+            case Phrase phrase -> {
+                sb.append(phrase.field()).append(":\"");
+                appendEscaped(phrase.text(), sb);
+                sb.append('"');
+            }
+            case Raw raw -> {
+                boolean group = !topLevel && raw.query().indexOf(' ') >= 0;
+                if (group) sb.append('(');
+                sb.append(raw.query());
+                if (group) sb.append(')');
+            }
+            case Filter filter -> {
+                sb.append("filter(");
+                writeStandard(filter.query(), sb, true);
+                sb.append(')');
+            }
+            case ParserQuery parserQuery -> writeParserQuery(parserQuery, sb, null);
+            case Bool bool -> writeBool(bool, sb, topLevel);
+        }
+    }
+
+    private static void writeParserQuery(ParserQuery query, StringBuilder sb, FilterClause filter) {
+        sb.append("{!").append(query.parser());
+        for (Map.Entry<String, String> param : query.localParams().entrySet()) {
+            sb.append(' ').append(param.getKey()).append("='");
+            appendEscaped(param.getValue(), sb);
+            sb.append('\'');
+        }
+        if (filter != null) appendLocalParams(filter, sb);
+        sb.append('}');
+    }
+
+    private void writeTerms(Terms terms, StringBuilder sb) {
+        sb.append("{!terms f=").append(terms.field()).append(" v=");
+        if (params == null) {
+            sb.append('\'');
+            appendEscaped(String.join(",", terms.values()), sb);
+            sb.append("'}");
+            return;
+        }
+        String name = paramNames.computeIfAbsent(terms.values(), values -> {
+            String param = TERMS_PARAM_PREFIX + paramNames.size();
+            params.set(param, String.join(",", values));
+            return param;
+        });
+        sb.append('$').append(name).append('}');
+    }
+
+    private void writeBool(Bool bool, StringBuilder sb, boolean topLevel) {
+        if (bool.isDisjunction()) {
+            if (!topLevel) sb.append('(');
+            writeJoined(bool.should(), " OR ", sb);
+            if (!topLevel) sb.append(')');
+            return;
+        }
+        if (!topLevel) sb.append('(');
+        boolean first = true;
+        for (QueryNode clause : bool.must()) {
+            if (!first) sb.append(" AND ");
+            writeStandard(clause, sb, false);
+            first = false;
+        }
+        if (!bool.should().isEmpty()) {
+            if (!first) sb.append(" AND ");
+            sb.append('(');
+            writeJoined(bool.should(), " OR ", sb);
+            sb.append(')');
+            first = false;
+        }
+        if (first) sb.append("*:*"); // only negated clauses: subtract them from all documents
+        for (QueryNode clause : bool.mustNot()) {
+            sb.append(" AND NOT ");
+            writeStandard(clause, sb, false);
+        }
+        if (!topLevel) sb.append(')');
+    }
+
+    private void writeJoined(List<QueryNode> clauses, String separator, StringBuilder sb) {
+        for (int i = 0; i < clauses.size(); i++) {
+            if (i > 0) sb.append(separator);
+            writeStandard(clauses.get(i), sb, false);
+        }
+    }
+
+    private static void writeJson(QueryNode node, StringBuilder sb, String localParams) {
+        switch (node) {
+            case Term term -> {
+                sb.append("{\"term\":{\"f\":");
+                appendJsonString(term.field(), sb);
+                sb.append(",\"query\":");
+                appendJsonString(term.value(), sb);
+                sb.append(localParams).append("}}");
+            }
+            case Terms terms -> {
+                sb.append("{\"terms\":{\"f\":");
+                appendJsonString(terms.field(), sb);
+                sb.append(",\"query\":");
+                appendJsonString(String.join(",", terms.values()), sb);
+                sb.append(localParams).append("}}");
+            }
+            case Filter filter -> {
+                sb.append("{\"bool\":{\"filter\":[");
+                writeJson(filter.query(), sb, "");
+                sb.append(']').append(localParams).append("}}");
+            }
+            case ParserQuery parserQuery -> {
+                sb.append('{');
+                appendJsonString(parserQuery.parser(), sb);
+                sb.append(":{");
+                boolean first = true;
+                for (Map.Entry<String, String> param : parserQuery.localParams().entrySet()) {
+                    if (!first) sb.append(',');
+                    appendJsonString(param.getKey(), sb);
+                    sb.append(':');
+                    appendJsonString(param.getValue(), sb);
+                    first = false;
+                }
+                sb.append(first && !localParams.isEmpty() ? localParams.substring(1) : localParams).append("}}");
+            }
+            case Bool bool -> writeJsonBool(bool, sb, localParams);
+            // Ranges, phrases and raw queries are plain strings, which the JSON DSL parses as standard syntax
+            default -> {
+                String query = new QueryRenderer(null).standard(node);
+                if (localParams.isEmpty()) {
+                    appendJsonString(query, sb);
+                } else {
+                    sb.append("{\"lucene\":{\"query\":");
+                    appendJsonString(query, sb);
+                    sb.append(localParams).append("}}");
+                }
+            }
+        }
+    }
+
+    private static void writeJsonBool(Bool bool, StringBuilder sb, String localParams) {
+        sb.append("{\"bool\":{");
+        boolean hasMust = !bool.must().isEmpty();
+        boolean hasShould = !bool.should().isEmpty();
+        if (hasMust && hasShould) {
+            // Alongside required clauses, optional ones only affect scoring; nest them to require one
+            sb.append("\"must\":[");
+            writeJsonArray(bool.must(), sb);
+            sb.append(",{\"bool\":{\"should\":[");
+            writeJsonArray(bool.should(), sb);
+            sb.append("]}}]");
+        } else if (hasMust) {
+            sb.append("\"must\":[");
+            writeJsonArray(bool.must(), sb);
+            sb.append(']');
+        } else if (hasShould) {
+            sb.append("\"should\":[");
+            writeJsonArray(bool.should(), sb);
+            sb.append(']');
+        } else {
+            sb.append("\"must\":[\"*:*\"]");
+        }
+        if (!bool.mustNot().isEmpty()) {
+            sb.append(",\"must_not\":[");
+            writeJsonArray(bool.mustNot(), sb);
+            sb.append(']');
+        }
+        sb.append(localParams).append("}}");
+    }
+
+    private static void writeJsonArray(List<QueryNode> clauses, StringBuilder sb) {
+        for (int i = 0; i < clauses.size(); i++) {
+            if (i > 0) sb.append(',');
+            writeJson(clauses.get(i), sb, "");
+        }
+    }
+
+    // Backslash-escapes quotes and backslashes inside quoted phrases and local param values
+    private static void appendEscaped(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\'' || c == '\\') sb.append('\\');
+            sb.append(c);
+        }
+    }
+
+    private static void appendJsonString(String value, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
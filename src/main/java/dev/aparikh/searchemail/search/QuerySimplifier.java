@@ -0,0 +1,138 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Bool;
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.Term;
+import dev.aparikh.searchemail.search.QueryNode.Terms;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural rewrites that keep a {@link QueryNode} tree equivalent while making it smaller:
+ * <ul>
+ *     <li>nested AND/OR of the same kind are flattened and identical clauses removed;</li>
+ *     <li>OR-ed conjunctions that differ only in their first clause share the rest,
+ *     e.g. {@code (bcc:a AND S) OR (bcc:b AND S)} becomes {@code (bcc:a OR bcc:b) AND S};</li>
+ *     <li>OR-ed term clauses on the same field become one {@link Terms} lookup.</li>
+ * </ul>
+ * {@link Filter} nodes are simplified inside but never merged with their siblings, since each one
+ * is a separate filterCache entry.
+ */
+final class QuerySimplifier {
+
+    private QuerySimplifier() {
+    }
+
+    static QueryNode simplify(QueryNode node) {
+        return switch (node) {
+            case Terms terms when terms.values().size() == 1 -> new Term(terms.field(), terms.values().get(0));
+            case Filter filter -> new Filter(simplify(filter.query()));
+            case Bool bool -> simplifyBool(bool);
+            default -> node;
+        };
+    }
+
+    private static QueryNode simplifyBool(Bool bool) {
+        LinkedHashSet<QueryNode> must = new LinkedHashSet<>();
+        for (QueryNode clause : bool.must()) {
+            QueryNode simplified = simplify(clause);
+            if (simplified instanceof Bool nested && nested.isConjunction()) {
+                must.addAll(nested.must());
+            } else {
+                must.add(simplified);
+            }
+        }
+        LinkedHashSet<QueryNode> should = new LinkedHashSet<>();
+        for (QueryNode clause : bool.should()) {
+            QueryNode simplified = simplify(clause);
+            if (simplified instanceof Bool nested && nested.isDisjunction()) {
+                should.addAll(nested.should());
+            } else {
+                should.add(simplified);
+            }
+        }
+        LinkedHashSet<QueryNode> mustNot = new LinkedHashSet<>();
+        for (QueryNode clause : bool.mustNot()) {
+            mustNot.add(simplify(clause));
+        }
+
+        List<QueryNode> disjuncts = mergeTerms(factorCommonConjuncts(new ArrayList<>(should)));
+        if (disjuncts.size() == 1 && (!must.isEmpty() || !mustNot.isEmpty())) {
+            must.add(disjuncts.get(0));
+            disjuncts = List.of();
+        }
+        if (mustNot.isEmpty()) {
+            if (must.isEmpty() && disjuncts.size() == 1) return disjuncts.get(0);
+            if (disjuncts.isEmpty() && must.size() == 1) return must.iterator().next();
+        }
+        return new Bool(new ArrayList<>(must), disjuncts, new ArrayList<>(mustNot));
+    }
+
+    private static List<QueryNode> factorCommonConjuncts(List<QueryNode> disjuncts) {
+        Map<List<QueryNode>, List<QueryNode>> headsByTail = new LinkedHashMap<>();
+        for (QueryNode clause : disjuncts) {
+            if (clause instanceof Bool bool && bool.isConjunction() && bool.must().size() > 1) {
+                List<QueryNode> tail = bool.must().subList(1, bool.must().size());
+                headsByTail.computeIfAbsent(tail, t -> new ArrayList<>()).add(bool.must().get(0));
+            }
+        }
+        if (headsByTail.values().stream().allMatch(heads -> heads.size() == 1)) return disjuncts;
+
+        List<QueryNode> result = new ArrayList<>(disjuncts.size());
+        for (QueryNode clause : disjuncts) {
+            if (clause instanceof Bool bool && bool.isConjunction() && bool.must().size() > 1) {
+                List<QueryNode> tail = bool.must().subList(1, bool.must().size());
+                List<QueryNode> heads = headsByTail.remove(tail);
+                if (heads == null) continue; // already emitted with the first clause sharing this tail
+                if (heads.size() == 1) {
+                    result.add(clause);
+                } else {
+                    List<QueryNode> must = new ArrayList<>(tail.size() + 1);
+                    must.add(QueryNode.or(heads));
+                    must.addAll(tail);
+                    result.add(simplify(new Bool(must, List.of(), List.of())));
+                }
+            } else {
+                result.add(clause);
+            }
+        }
+        return result;
+    }
+
+    private static List<QueryNode> mergeTerms(List<QueryNode> disjuncts) {
+        Map<String, List<String>> valuesByField = new LinkedHashMap<>();
+        int mergeable = 0;
+        for (QueryNode clause : disjuncts) {
+            if (clause instanceof Term term && QueryNode.isTermsValue(term.value())) {
+                valuesByField.computeIfAbsent(term.field(), f -> new ArrayList<>()).add(term.value());
+                mergeable++;
+            } else if (clause instanceof Terms terms) {
+                valuesByField.computeIfAbsent(terms.field(), f -> new ArrayList<>()).addAll(terms.values());
+                mergeable++;
+            }
+        }
+        if (mergeable == valuesByField.size()) return disjuncts; // at most one clause per field
+
+        List<QueryNode> result = new ArrayList<>(disjuncts.size());
+        for (QueryNode clause : disjuncts) {
+            String field = switch (clause) {
+                case Term term when QueryNode.isTermsValue(term.value()) -> term.field();
+                case Terms terms -> terms.field();
+                default -> null;
+            };
+            if (field == null) {
+                result.add(clause);
+                continue;
+            }
+            List<String> values = valuesByField.remove(field);
+            if (values != null) {
+                result.add(simplify(new Terms(field, values)));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,15 @@
+package dev.aparikh.searchemail.search;
+
+/**
+ * Syntax used to send filter queries to Solr.
+ */
+enum QuerySyntax {
+    /**
+     * Classic {@code fq} parameters in the standard (lucene) query syntax.
+     */
+    STANDARD,
+    /**
+     * A single {@code json} request parameter holding the filters in Solr's JSON Query DSL.
+     */
+    JSON
+}
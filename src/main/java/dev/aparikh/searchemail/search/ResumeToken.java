@@ -0,0 +1,63 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position in a stream ordered by {@code sent_at, id}: the sort key of the last email a client received.
+ * Sent as the SSE event id, so a client that reconnects with {@code Last-Event-ID} continues right after
+ * that email. Unlike a cursorMark it also works for {@link StreamMode#EXPORT}, and it stays valid across
+ * batch sizes and restarts of the service.
+ */
+public record ResumeToken(Instant sentAt, String id) {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public ResumeToken {
+        Objects.requireNonNull(sentAt, "sentAt");
+        Objects.requireNonNull(id, "id");
+    }
+
+    /**
+     * The position right after the given email, or null when it lacks a sort key.
+     */
+    static ResumeToken after(EmailDocument email) {
+        return email.sentAt() != null && email.id() != null ? new ResumeToken(email.sentAt(), email.id()) : null;
+    }
+
+    /**
+     * Opaque, URL-safe form of the token.
+     */
+    public String encode() {
+        String key = sentAt.toEpochMilli() + ":" + id;
+        return ENCODER.encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a token produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ResumeToken decode(String token) {
+        String key;
+        long sentAt;
+        int separator;
+        try {
+            key = new String(DECODER.decode(token), StandardCharsets.UTF_8);
+            separator = key.indexOf(':');
+            sentAt = Long.parseLong(key.substring(0, Math.max(separator, 0)));
+        } catch (IllegalArgumentException e) {
+            // Not base64, or no epoch millis before the separator
+            throw new IllegalArgumentException("Invalid resume token", e);
+        }
+        if (separator == key.length() - 1) {
+            throw new IllegalArgumentException("Invalid resume token");
+        }
+        return new ResumeToken(Instant.ofEpochMilli(sentAt), key.substring(separator + 1));
+    }
+}
@@ -0,0 +1,82 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailAddresses;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Canonical form of a {@link SearchQuery} for the result cache. Two queries that the
+ * {@link EmailQueryBuilder} turns into the same Solr request map to the same key: participants are
+ * normalized, deduplicated and sorted, the admin domain is lowercased, sort aliases and directions are
+ * resolved, and facet definitions are put in a fixed order. Page searches ignore facets, and only counted
+ * pages depend on minExactCount.
+ *
+ * @param generation index generation the result was loaded in; bumped on every index commit
+ */
+record SearchCacheKey(
+        Kind kind,
+        long generation,
+        Instant start,
+        Instant end,
+        String query,
+        List<String> participants,
+        String adminFirmDomain,
+        int page,
+        int size,
+        String sort,
+        List<String> facetFields,
+        List<FacetQueryDefinition> facetQueries,
+        Integer minExactCount
+) {
+
+    private static final Comparator<FacetQueryDefinition> FACET_QUERY_ORDER =
+            Comparator.comparing(FacetQueryDefinition::label).thenComparing(FacetQueryDefinition::query);
+
+    enum Kind {
+        PAGE,
+        COUNTED_PAGE,
+        FACETED_PAGE
+    }
+
+    static SearchCacheKey of(Kind kind, long generation, SearchQuery query) {
+        boolean faceted = kind == Kind.FACETED_PAGE;
+        return new SearchCacheKey(
+                kind,
+                generation,
+                query.start(),
+                query.end(),
+                query.queryOpt().orElse(null),
+                query.participantEmailsNonEmpty().stream()
+                        .map(EmailAddresses::normalize)
+                        .distinct()
+                        .sorted()
+                        .toList(),
+                adminDomain(query.adminFirmDomain()),
+                query.page(),
+                query.size(),
+                query.sortOpt().map(EmailQueryBuilder::canonicalSort).orElse(null),
+                faceted && query.facetFields() != null
+                        ? query.facetFields().stream().filter(Objects::nonNull).distinct().sorted().toList()
+                        : List.of(),
+                faceted && query.facetQueries() != null
+                        ? query.facetQueries().stream().filter(Objects::nonNull).distinct().sorted(FACET_QUERY_ORDER).toList()
+                        : List.of(),
+                kind == Kind.COUNTED_PAGE ? query.minExactCount() : null);
+    }
+
+    /**
+     * Firm the cached result was requested for, for per-firm statistics.
+     */
+    String firm() {
+        return adminFirmDomain == null ? "none" : adminFirmDomain;
+    }
+
+    private static String adminDomain(String adminFirmDomain) {
+        return adminFirmDomain != null && !adminFirmDomain.trim().isEmpty()
+                ? adminFirmDomain.toLowerCase(Locale.ROOT) : null;
+    }
+}
@@ -0,0 +1,41 @@
+package dev.aparikh.searchemail.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(SearchProperties.class)
+class SearchConfig {
+
+    @Bean
+    SearchResultCache searchResultCache(SearchProperties properties, MeterRegistry meterRegistry) {
+        return new SearchResultCache(properties, meterRegistry);
+    }
+
+    // Threads that fetch stream pages; each stays busy while its stream waits for a slow client
+    @Bean(destroyMethod = "dispose")
+    Scheduler searchStreamScheduler(SearchProperties properties) {
+        return Schedulers.newBoundedElastic(properties.getStreamThreads(),
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "search-stream");
+    }
+
+    // Exposes the result cache to actuator's caches endpoint and cache.* metrics
+    @Bean
+    @ConditionalOnProperty(prefix = "search", name = "result-cache-enabled", havingValue = "true")
+    CacheManager searchCacheManager(SearchResultCache searchResultCache) {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        searchResultCache.nativeCache().ifPresent(cache ->
+                cacheManager.setCaches(List.of(new CaffeineCache(SearchResultCache.CACHE_NAME, cache, false))));
+        return cacheManager;
+    }
+}
@@ -0,0 +1,293 @@
+package dev.aparikh.searchemail.search;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Typed configuration properties for search query building.
+ */
+@Validated
+@ConfigurationProperties(prefix = "search")
+class SearchProperties {
+
+    // Use the index-time *_domain fields for privacy filters instead of leading-wildcard address queries.
+    // Off by default: documents indexed before those fields existed would silently stop matching, so enable it
+    // only once indexing.backfill-derived-fields has finished (or on an index built with them from the start).
+    private boolean domainFieldsEnabled = false;
+
+    // Send the privacy filter as separate filterCache-friendly fq clauses instead of one expression
+    private boolean splitPrivacyFilters = true;
+
+    // Participant lists at least this long are filtered with {!terms} lookups grouped by firm,
+    // instead of one phrase clause per participant and field (which runs into maxBooleanClauses)
+    @Positive
+    private int termsFilterThreshold = 50;
+
+    @NotNull
+    private PrivacyFilterMode privacyFilterMode = PrivacyFilterMode.BOOLEAN_EXPRESSION;
+
+    @NotNull
+    private QuerySyntax querySyntax = QuerySyntax.STANDARD;
+
+    @NotNull
+    private TimeFilterStrategy timeFilterStrategy = TimeFilterStrategy.DAY;
+
+    // Let concurrent identical Solr requests share one round trip
+    private boolean coalesceRequests = true;
+
+    // Let cursor streams of the same query started within the join window share one pass over Solr. Up to
+    // the replay buffer's worth of emails is kept for late joiners and subscribers that fall a little behind.
+    private boolean shareStreams = false;
+
+    @NotNull
+    private Duration streamShareWindow = Duration.ofSeconds(10);
+
+    @Positive
+    private int streamShareReplayDocuments = 1000;
+
+    // Cache result pages in the application. Commits made through EmailIndexService invalidate it;
+    // writes made directly against Solr are only picked up once entries expire.
+    private boolean resultCacheEnabled = false;
+
+    // Upper bound on the estimated size of all cached pages
+    @Positive
+    private long resultCacheMaxWeightBytes = 64L * 1024 * 1024;
+
+    @NotNull
+    private Duration resultCacheExpireAfterWrite = Duration.ofMinutes(5);
+
+    // Time slices a PARALLEL stream is split into, and how many of them are read from Solr at once
+    @Positive
+    private int parallelStreamSlices = 8;
+
+    @Positive
+    private int parallelStreamConcurrency = 4;
+
+    // Upper bound on stream pages being fetched at once; further streams queue until a thread frees up
+    @Positive
+    private int streamThreads = 32;
+
+    // Cursor streams start from the requested batch size and adapt it page by page, within these bounds, to take
+    // about the target time in Solr and hold about the target number of bytes per page
+    private boolean adaptiveStreamBatchSize = true;
+
+    @Positive
+    private int streamBatchSizeMin = 100;
+
+    @Positive
+    private int streamBatchSizeMax = 10_000;
+
+    @NotNull
+    private Duration streamBatchTargetLatency = Duration.ofMillis(500);
+
+    @Positive
+    private long streamBatchTargetBytes = 8L * 1024 * 1024;
+
+    // Background export jobs: where their files are written, how many emails go into each compressed chunk,
+    // and how many jobs run at once (further jobs wait for a free slot)
+    @NotNull
+    private Path exportJobDirectory = Path.of(System.getProperty("java.io.tmpdir"), "search-email-exports");
+
+    @Positive
+    private int exportJobChunkDocuments = 100_000;
+
+    @Positive
+    private int exportJobConcurrency = 2;
+
+    boolean isDomainFieldsEnabled() {
+        return domainFieldsEnabled;
+    }
+
+    void setDomainFieldsEnabled(boolean domainFieldsEnabled) {
+        this.domainFieldsEnabled = domainFieldsEnabled;
+    }
+
+    boolean isSplitPrivacyFilters() {
+        return splitPrivacyFilters;
+    }
+
+    void setSplitPrivacyFilters(boolean splitPrivacyFilters) {
+        this.splitPrivacyFilters = splitPrivacyFilters;
+    }
+
+    int getTermsFilterThreshold() {
+        return termsFilterThreshold;
+    }
+
+    void setTermsFilterThreshold(int termsFilterThreshold) {
+        this.termsFilterThreshold = termsFilterThreshold;
+    }
+
+    PrivacyFilterMode getPrivacyFilterMode() {
+        return privacyFilterMode;
+    }
+
+    void setPrivacyFilterMode(PrivacyFilterMode privacyFilterMode) {
+        this.privacyFilterMode = privacyFilterMode;
+    }
+
+    QuerySyntax getQuerySyntax() {
+        return querySyntax;
+    }
+
+    void setQuerySyntax(QuerySyntax querySyntax) {
+        this.querySyntax = querySyntax;
+    }
+
+    TimeFilterStrategy getTimeFilterStrategy() {
+        return timeFilterStrategy;
+    }
+
+    void setTimeFilterStrategy(TimeFilterStrategy timeFilterStrategy) {
+        this.timeFilterStrategy = timeFilterStrategy;
+    }
+
+    boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    boolean isShareStreams() {
+        return shareStreams;
+    }
+
+    void setShareStreams(boolean shareStreams) {
+        this.shareStreams = shareStreams;
+    }
+
+    Duration getStreamShareWindow() {
+        return streamShareWindow;
+    }
+
+    void setStreamShareWindow(Duration streamShareWindow) {
+        this.streamShareWindow = streamShareWindow;
+    }
+
+    int getStreamShareReplayDocuments() {
+        return streamShareReplayDocuments;
+    }
+
+    void setStreamShareReplayDocuments(int streamShareReplayDocuments) {
+        this.streamShareReplayDocuments = streamShareReplayDocuments;
+    }
+
+    boolean isResultCacheEnabled() {
+        return resultCacheEnabled;
+    }
+
+    void setResultCacheEnabled(boolean resultCacheEnabled) {
+        this.resultCacheEnabled = resultCacheEnabled;
+    }
+
+    long getResultCacheMaxWeightBytes() {
+        return resultCacheMaxWeightBytes;
+    }
+
+    void setResultCacheMaxWeightBytes(long resultCacheMaxWeightBytes) {
+        this.resultCacheMaxWeightBytes = resultCacheMaxWeightBytes;
+    }
+
+    Duration getResultCacheExpireAfterWrite() {
+        return resultCacheExpireAfterWrite;
+    }
+
+    void setResultCacheExpireAfterWrite(Duration resultCacheExpireAfterWrite) {
+        this.resultCacheExpireAfterWrite = resultCacheExpireAfterWrite;
+    }
+
+    int getParallelStreamSlices() {
+        return parallelStreamSlices;
+    }
+
+    void setParallelStreamSlices(int parallelStreamSlices) {
+        this.parallelStreamSlices = parallelStreamSlices;
+    }
+
+    int getParallelStreamConcurrency() {
+        return parallelStreamConcurrency;
+    }
+
+    void setParallelStreamConcurrency(int parallelStreamConcurrency) {
+        this.parallelStreamConcurrency = parallelStreamConcurrency;
+    }
+
+    int getStreamThreads() {
+        return streamThreads;
+    }
+
+    void setStreamThreads(int streamThreads) {
+        this.streamThreads = streamThreads;
+    }
+
+    boolean isAdaptiveStreamBatchSize() {
+        return adaptiveStreamBatchSize;
+    }
+
+    void setAdaptiveStreamBatchSize(boolean adaptiveStreamBatchSize) {
+        this.adaptiveStreamBatchSize = adaptiveStreamBatchSize;
+    }
+
+    int getStreamBatchSizeMin() {
+        return streamBatchSizeMin;
+    }
+
+    void setStreamBatchSizeMin(int streamBatchSizeMin) {
+        this.streamBatchSizeMin = streamBatchSizeMin;
+    }
+
+    int getStreamBatchSizeMax() {
+        return streamBatchSizeMax;
+    }
+
+    void setStreamBatchSizeMax(int streamBatchSizeMax) {
+        this.streamBatchSizeMax = streamBatchSizeMax;
+    }
+
+    Duration getStreamBatchTargetLatency() {
+        return streamBatchTargetLatency;
+    }
+
+    void setStreamBatchTargetLatency(Duration streamBatchTargetLatency) {
+        this.streamBatchTargetLatency = streamBatchTargetLatency;
+    }
+
+    long getStreamBatchTargetBytes() {
+        return streamBatchTargetBytes;
+    }
+
+    void setStreamBatchTargetBytes(long streamBatchTargetBytes) {
+        this.streamBatchTargetBytes = streamBatchTargetBytes;
+    }
+
+    Path getExportJobDirectory() {
+        return exportJobDirectory;
+    }
+
+    void setExportJobDirectory(Path exportJobDirectory) {
+        this.exportJobDirectory = exportJobDirectory;
+    }
+
+    int getExportJobChunkDocuments() {
+        return exportJobChunkDocuments;
+    }
+
+    void setExportJobChunkDocuments(int exportJobChunkDocuments) {
+        this.exportJobChunkDocuments = exportJobChunkDocuments;
+    }
+
+    int getExportJobConcurrency() {
+        return exportJobConcurrency;
+    }
+
+    void setExportJobConcurrency(int exportJobConcurrency) {
+        this.exportJobConcurrency = exportJobConcurrency;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.Optional;
  * adminFirmDomain is used to enforce BCC privacy.
  * Optional facetFields enables field-based faceting on specified fields.
  * Optional facetQueries enables query-based faceting with custom labels and queries.
+ * Optional minExactCount lets a page search stop counting hits exactly once that many have been found.
  */
 public record SearchQuery(
         Instant start,
@@ -22,7 +23,8 @@ public record SearchQuery(
         int size,
         List<String> facetFields,
         List<FacetQueryDefinition> facetQueries,
-        String sort
+        String sort,
+        Integer minExactCount
 ) {
     public SearchQuery {
         if (start == null || end == null) {
@@ -37,6 +39,9 @@ public record SearchQuery(
         if (size <= 0) {
             throw new IllegalArgumentException("size must be > 0");
         }
+        if (minExactCount != null && minExactCount <= 0) {
+            throw new IllegalArgumentException("minExactCount must be > 0");
+        }
     }
 
     public Optional<String> queryOpt() {
@@ -44,6 +49,12 @@ public record SearchQuery(
     }
 
     // Backward compatibility constructors
+    public SearchQuery(Instant start, Instant end, String query, List<String> participantEmails,
+                      String adminFirmDomain, int page, int size, List<String> facetFields,
+                      List<FacetQueryDefinition> facetQueries, String sort) {
+        this(start, end, query, participantEmails, adminFirmDomain, page, size, facetFields, facetQueries, sort, null);
+    }
+
     public SearchQuery(Instant start, Instant end, String query, List<String> participantEmails,
                       String adminFirmDomain, int page, int size, List<String> facetFields, 
                       List<FacetQueryDefinition> facetQueries) {
@@ -53,7 +64,7 @@ public record SearchQuery(
     // Legacy constructor with 8 parameters (no facetFields, no facetQueries, no sort)
     public SearchQuery(Instant start, Instant end, String query, List<String> participantEmails,
                       String adminFirmDomain, int page, int size, List<String> facetFields) {
-        this(start, end, query, participantEmails, adminFirmDomain, page, size, facetFields, null, null);
+        this(start, end, query, participantEmails, adminFirmDomain, page, size, facetFields, null, null, null);
     }
 
     public List<String> participantEmailsNonEmpty() {
@@ -78,6 +89,7 @@ public record SearchQuery(
         private List<String> facetFields;
         private List<FacetQueryDefinition> facetQueries;
         private String sort;
+        private Integer minExactCount;
         
         public Builder startTime(Instant start) {
             this.start = start;
@@ -129,9 +141,14 @@ public record SearchQuery(
             return this;
         }
         
+        public Builder minExactCount(Integer minExactCount) {
+            this.minExactCount = minExactCount;
+            return this;
+        }
+        
         public SearchQuery build() {
             return new SearchQuery(start, end, query, participantEmails, adminFirmDomain, 
-                                 page, size, facetFields, facetQueries, sort);
+                                 page, size, facetFields, facetQueries, sort, minExactCount);
         }
     }
 }
@@ -7,6 +7,7 @@ import java.util.Map;
 
 /**
  * Search result containing both email documents and faceting information.
+ * When totalCountExact is false, totalCount (and with it totalPages) is a lower bound.
  */
 public record SearchResult(
         List<EmailDocument> emails,
@@ -14,6 +15,11 @@ public record SearchResult(
         int page,
         int size,
         int totalPages,
-        Map<String, FacetResult> facets
+        Map<String, FacetResult> facets,
+        boolean totalCountExact
 ) {
-}
\ No newline at end of file
+    public SearchResult(List<EmailDocument> emails, long totalCount, int page, int size, int totalPages,
+                        Map<String, FacetResult> facets) {
+        this(emails, totalCount, page, size, totalPages, facets, true);
+    }
+}
@@ -0,0 +1,137 @@
+package dev.aparikh.searchemail.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.aparikh.searchemail.indexing.EmailsIndexedEvent;
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches search result pages by their {@link SearchCacheKey}, bounded by the estimated payload size.
+ * Every commit through the indexing service starts a new generation: older entries stop matching and age
+ * out, including pages that were still loading when the commit happened. Hits and misses are counted
+ * per admin firm as {@code search.result.cache.requests{firm,result}}.
+ */
+class SearchResultCache {
+
+    static final String CACHE_NAME = "search-results";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResultCache.class);
+
+    // Rough per-object overhead of headers, references and boxed fields in the estimates below
+    private static final int OBJECT_OVERHEAD = 32;
+
+    private final Cache<Object, Object> cache; // null when disabled
+    private final MeterRegistry registry;
+    private final AtomicLong generation = new AtomicLong();
+
+    SearchResultCache(SearchProperties properties, MeterRegistry registry) {
+        this.registry = registry;
+        this.cache = properties.isResultCacheEnabled()
+                ? Caffeine.newBuilder()
+                .maximumWeight(properties.getResultCacheMaxWeightBytes())
+                .weigher(SearchResultCache::weigh)
+                .expireAfterWrite(properties.getResultCacheExpireAfterWrite())
+                .recordStats()
+                .build()
+                : null;
+    }
+
+    /**
+     * Returns the cached value for the query, loading and caching it on a miss.
+     * Loader failures propagate and nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(SearchCacheKey.Kind kind, SearchQuery query, Supplier<T> loader) {
+        if (cache == null) return loader.get();
+
+        SearchCacheKey key = SearchCacheKey.of(kind, generation.get(), query);
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            count(key, "hit");
+            return (T) cached;
+        }
+        count(key, "miss");
+        // Loaded outside the cache so a slow Solr round trip doesn't block other keys
+        T loaded = loader.get();
+        if (loaded != null) cache.put(key, loaded);
+        return loaded;
+    }
+
+    @EventListener
+    void onEmailsIndexed(EmailsIndexedEvent event) {
+        invalidateAll();
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        if (cache != null) {
+            cache.invalidateAll();
+            LOG.debug("Invalidated search result cache");
+        }
+    }
+
+    /**
+     * The underlying Caffeine cache, for registration with Spring's cache infrastructure.
+     */
+    Optional<Cache<Object, Object>> nativeCache() {
+        return Optional.ofNullable(cache);
+    }
+
+    private void count(SearchCacheKey key, String result) {
+        registry.counter("search.result.cache.requests", "firm", key.firm(), "result", result).increment();
+    }
+
+    // Estimated heap size of a cached page, in bytes
+    static int weigh(Object key, Object value) {
+        long bytes = OBJECT_OVERHEAD;
+        if (value instanceof List<?> emails) {
+            bytes += weighEmails(emails);
+        } else if (value instanceof SearchResult result) {
+            bytes += weighEmails(result.emails());
+            Map<String, FacetResult> facets = result.facets() != null ? result.facets() : Map.of();
+            for (Map.Entry<String, FacetResult> facet : facets.entrySet()) {
+                bytes += OBJECT_OVERHEAD + weigh(facet.getKey());
+                for (FacetValue v : facet.getValue().values()) {
+                    bytes += OBJECT_OVERHEAD + weigh(v.value());
+                }
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long weighEmails(List<?> emails) {
+        long bytes = 0;
+        for (Object o : emails) {
+            if (o instanceof EmailDocument e) bytes += weigh(e);
+        }
+        return bytes;
+    }
+
+    // Estimated heap size of one email, also used to account for emails buffered by streams
+    static long weigh(EmailDocument e) {
+        return 3L * OBJECT_OVERHEAD
+                + weigh(e.id()) + weigh(e.subject()) + weigh(e.body()) + weigh(e.from())
+                + weigh(e.to()) + weigh(e.cc()) + weigh(e.bcc());
+    }
+
+    private static long weigh(List<String> values) {
+        if (values == null) return 0;
+        long bytes = OBJECT_OVERHEAD;
+        for (String v : values) bytes += weigh(v);
+        return bytes;
+    }
+
+    private static long weigh(String s) {
+        return s == null ? 0 : OBJECT_OVERHEAD + 2L * s.length();
+    }
+}
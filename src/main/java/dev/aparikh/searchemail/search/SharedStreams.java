@@ -0,0 +1,289 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Lets concurrent subscribers to the same stream share one pass over Solr. A subscriber arriving within the join
+ * window of a stream with the same key attaches to it and is replayed what was already read, as long as all of
+ * that still fits the replay buffer. The shared stream reads at most a buffer's worth ahead of its slowest
+ * subscriber; a subscriber that holds the buffer back while others wait for more is split off and continues on
+ * a stream of its own, right after the last email it received.
+ * <p>
+ * Like {@link SingleFlight}, nothing is kept once a stream's subscribers are gone, and a stream that started
+ * longer ago than the join window is not joined.
+ */
+final class SharedStreams<K> {
+
+    private final ConcurrentHashMap<K, Upstream> active = new ConcurrentHashMap<>();
+    private final long joinWindowNanos;
+    private final int replayDocuments;
+    private final Runnable onJoined;
+    private final Runnable onSplit;
+
+    /**
+     * @param onJoined run each time a subscriber attaches to a stream already running instead of starting its own
+     * @param onSplit  run each time a subscriber falls behind the replay buffer and continues on its own stream
+     */
+    SharedStreams(Duration joinWindow, int replayDocuments, Runnable onJoined, Runnable onSplit) {
+        this.joinWindowNanos = joinWindow.toNanos();
+        this.replayDocuments = replayDocuments;
+        this.onJoined = onJoined;
+        this.onSplit = onSplit;
+    }
+
+    /**
+     * Streams {@code source.apply(null)}, shared with other subscribers of {@code key}. A subscriber split off
+     * from the shared stream continues with {@code source.apply(token)}, where the token is the position after
+     * the last email it received, or null when it received none.
+     */
+    Flux<EmailDocument> stream(K key, Function<ResumeToken, Flux<EmailDocument>> source) {
+        return Flux.defer(() -> {
+            Member member = new Member();
+            Upstream upstream = attach(key, member, source);
+            return Flux.<EmailDocument>create(sink -> upstream.connect(member, sink), FluxSink.OverflowStrategy.BUFFER)
+                    .concatWith(Flux.defer(() -> member.splitOff
+                            ? source.apply(member.last != null ? ResumeToken.after(member.last) : null)
+                            : Flux.empty()));
+        });
+    }
+
+    private Upstream attach(K key, Member member, Function<ResumeToken, Flux<EmailDocument>> source) {
+        while (true) {
+            long now = System.nanoTime();
+            Upstream running = active.get(key);
+            if (running != null && running.join(member, now)) {
+                onJoined.run();
+                return running;
+            }
+            Upstream started = new Upstream(key, source.apply(null), now);
+            started.join(member, now);
+            boolean installed = running == null
+                    ? active.putIfAbsent(key, started) == null
+                    : active.replace(key, running, started);
+            if (installed) {
+                return started;
+            }
+        }
+    }
+
+    // A subscriber of a shared stream
+    private static final class Member {
+        FluxSink<EmailDocument> sink; // null until subscribed
+        long position; // index of the next email to deliver
+        long requested;
+        EmailDocument last;
+        boolean attached = true;
+        volatile boolean splitOff;
+    }
+
+    // One pass over Solr and the emails it read that some subscriber has yet to receive
+    private final class Upstream extends BaseSubscriber<EmailDocument> {
+        private final K key;
+        private final Flux<EmailDocument> source;
+        private final long startedAt;
+        private final EmailDocument[] buffer = new EmailDocument[replayDocuments];
+        private final List<Member> members = new ArrayList<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private long base; // index of the oldest buffered email
+        private long head; // index of the next email to arrive
+        private long outstanding; // requested from the source but not yet received
+        private boolean started;
+        private boolean subscribed;
+        private boolean done;
+        private boolean closed;
+        private Throwable error;
+
+        Upstream(K key, Flux<EmailDocument> source, long startedAt) {
+            this.key = key;
+            this.source = source;
+            this.startedAt = startedAt;
+        }
+
+        // Joinable while everything it read is still buffered
+        synchronized boolean join(Member member, long now) {
+            if (closed || error != null || base > 0 || now - startedAt > joinWindowNanos) {
+                return false;
+            }
+            members.add(member);
+            return true;
+        }
+
+        void connect(Member member, FluxSink<EmailDocument> sink) {
+            boolean subscribe;
+            synchronized (this) {
+                member.sink = sink;
+                subscribe = !started;
+                started = true;
+            }
+            sink.onRequest(n -> {
+                synchronized (this) {
+                    member.requested = member.requested + n < 0 ? Long.MAX_VALUE : member.requested + n;
+                }
+                drain();
+            });
+            sink.onCancel(() -> {
+                synchronized (this) {
+                    if (member.attached) {
+                        member.attached = false;
+                        members.remove(member);
+                    }
+                }
+                drain();
+            });
+            if (subscribe) {
+                source.subscribe(this);
+            }
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            synchronized (this) {
+                subscribed = true;
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnNext(EmailDocument email) {
+            synchronized (this) {
+                buffer[index(head++)] = email;
+                outstanding--;
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized (this) {
+                done = true;
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized (this) {
+                error = throwable;
+                done = true;
+            }
+            drain();
+        }
+
+        // Serializes delivery: whichever thread finds it idle drains for everyone
+        private void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                drainOnce();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            List<Member> snapshot;
+            synchronized (this) {
+                snapshot = List.copyOf(members);
+            }
+            for (Member member : snapshot) {
+                deliver(member);
+            }
+
+            List<Member> split;
+            long request = 0;
+            boolean cancel = false;
+            boolean finished;
+            synchronized (this) {
+                split = laggards();
+                // Emails every remaining subscriber has received are no longer needed
+                long min = head;
+                for (Member member : members) min = Math.min(min, member.position);
+                for (; base < min; base++) buffer[index(base)] = null;
+
+                if (members.isEmpty()) {
+                    cancel = !closed && !done;
+                    closed = true;
+                } else if (subscribed && !done) {
+                    request = replayDocuments - (head - base) - outstanding;
+                    if (request > 0) outstanding += request;
+                }
+                finished = closed;
+            }
+            for (Member member : split) {
+                member.splitOff = true;
+                onSplit.run();
+                member.sink.complete();
+            }
+            if (cancel) {
+                cancel();
+            }
+            if (finished) {
+                active.remove(key, this);
+            }
+            if (request > 0) {
+                request(request);
+            }
+        }
+
+        private void deliver(Member member) {
+            while (true) {
+                EmailDocument next = null;
+                synchronized (this) {
+                    if (!member.attached || member.sink == null) return;
+                    if (member.position < head) {
+                        if (member.requested == 0) return;
+                        next = buffer[index(member.position++)];
+                        if (member.requested != Long.MAX_VALUE) member.requested--;
+                    } else if (done) {
+                        member.attached = false;
+                        members.remove(member);
+                    } else {
+                        return;
+                    }
+                }
+                if (next != null) {
+                    member.last = next;
+                    member.sink.next(next);
+                } else {
+                    if (error != null) {
+                        member.sink.error(error);
+                    } else {
+                        member.sink.complete();
+                    }
+                    return;
+                }
+            }
+        }
+
+        // With the buffer full and a subscriber waiting for more, the ones still at its oldest email go their own way
+        private List<Member> laggards() {
+            if (done || head - base < replayDocuments) return List.of();
+            boolean waiting = false;
+            for (Member member : members) {
+                waiting |= member.position == head && member.requested > 0;
+            }
+            if (!waiting) return List.of();
+            List<Member> split = new ArrayList<>();
+            for (Member member : members) {
+                if (member.position == base) split.add(member);
+            }
+            members.removeAll(split);
+            for (Member member : split) member.attached = false;
+            return split;
+        }
+
+        private int index(long position) {
+            return (int) (position % replayDocuments);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package dev.aparikh.searchemail.search;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller runs the call, callers arriving while it
+ * is in flight wait for and share its result or failure. Nothing is remembered once the call completes,
+ * so a later call with the same key runs again.
+ * <p>
+ * Waiting callers block in {@link CompletableFuture#join()}, which parks virtual threads without pinning
+ * their carrier.
+ */
+final class SingleFlight<K, V> {
+
+    @FunctionalInterface
+    interface Call<V, E extends Exception> {
+        V call() throws E;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Runnable onShared;
+
+    /**
+     * @param onShared run each time a caller joins a call already in flight instead of starting its own
+     */
+    SingleFlight(Runnable onShared) {
+        this.onShared = onShared;
+    }
+
+    @SuppressWarnings("unchecked")
+    <E extends Exception> V execute(K key, Call<V, E> call) throws E {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            onShared.run();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException re) throw re;
+                if (cause instanceof Error err) throw err;
+                // Every caller of a key runs the same kind of call, so the leader's checked exception fits
+                throw (E) cause;
+            }
+        }
+
+        try {
+            V result = call.call();
+            mine.complete(result);
+            return result;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
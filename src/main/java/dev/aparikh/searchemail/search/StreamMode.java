@@ -0,0 +1,23 @@
+package dev.aparikh.searchemail.search;
+
+/**
+ * How {@code /api/emails/stream} reads results from Solr.
+ */
+public enum StreamMode {
+    /**
+     * Full documents paged with cursorMark.
+     */
+    CURSOR,
+    /**
+     * Solr's {@code /export} handler: every match in one sorted response read from docValues, without
+     * scoring or stored-field decompression. Emails carry their participants and sent time but no subject
+     * or body, and multi-valued address fields come back sorted and de-duplicated. Falls back to
+     * {@link #CURSOR} when the schema lacks the docValues the handler needs.
+     */
+    EXPORT,
+    /**
+     * Full documents like {@link #CURSOR}, with the time range split into slices of similar size that are
+     * paged concurrently and emitted one slice after another, in the same order.
+     */
+    PARALLEL
+}
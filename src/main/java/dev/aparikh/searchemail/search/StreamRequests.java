@@ -0,0 +1,52 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.api.StreamSearchRequest;
+import dev.aparikh.searchemail.model.EmailDocument;
+import reactor.core.publisher.Flux;
+
+/**
+ * Turns a {@link StreamSearchRequest} into a stream of emails, for the streaming endpoints and for export jobs.
+ */
+final class StreamRequests {
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private StreamRequests() {
+    }
+
+    static SearchQuery toSearchQuery(StreamSearchRequest request) {
+        return new SearchQuery(
+                request.startTime(),
+                request.endTime(),
+                request.query(),
+                request.participantEmails(),
+                request.adminFirmDomain(),
+                0, // Always start from page 0 for streaming
+                DEFAULT_BATCH_SIZE, // Default batch size for streaming
+                null, // No faceting for streaming
+                null // No facet queries for streaming
+        );
+    }
+
+    /**
+     * The requested batch size, or the default.
+     *
+     * @throws IllegalArgumentException if the requested batch size is not positive
+     */
+    static int batchSize(StreamSearchRequest request) {
+        int batchSize = request.batchSize() != null ? request.batchSize() : DEFAULT_BATCH_SIZE;
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        return batchSize;
+    }
+
+    static Flux<EmailDocument> open(EmailSearchService service, StreamMode mode, SearchQuery query, int batchSize,
+                                    ResumeToken after) {
+        return switch (mode != null ? mode : StreamMode.CURSOR) {
+            case CURSOR -> service.searchStream(query, batchSize, after);
+            case EXPORT -> service.exportStream(query, batchSize, after);
+            case PARALLEL -> service.parallelStream(query, batchSize, after);
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.Range;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a time range filter into pieces aligned to UTC day or month boundaries.
+ * <p>
+ * The aligned pieces are {@code filter(...)} clauses, so each is a filterCache entry keyed only on its
+ * boundaries and is reused by every request covering the same days (e.g. repeated "last 30 days"
+ * refreshes during a day). The enclosing filter and the partial-day edges change with every request,
+ * so they are not cached; the edges are at most a day each and cheap to evaluate.
+ */
+final class TimeBuckets {
+
+    private TimeBuckets() {
+    }
+
+    private static Instant ceilDay(Instant instant) {
+        Instant floor = instant.truncatedTo(ChronoUnit.DAYS);
+        return floor.equals(instant) ? floor : floor.plus(1, ChronoUnit.DAYS);
+    }
+
+    private static Instant floorMonth(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC).withDayOfMonth(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    private static Instant ceilMonth(Instant instant) {
+        Instant floor = floorMonth(instant);
+        return floor.equals(instant) ? floor : LocalDate.ofInstant(floor, ZoneOffset.UTC).plusMonths(1)
+                .atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    private static Range range(String field, Instant lower, Instant upper) {
+        return new Range(field, lower.toString(), upper.toString(), false);
+    }
+
+    /**
+     * Filter matching {@code field} in {@code [start, end]}.
+     */
+    static FilterClause filter(String field, Instant start, Instant end, TimeFilterStrategy strategy) {
+        Range exact = new Range(field, start.toString(), end.toString());
+        Instant firstDay = ceilDay(start);
+        Instant lastDay = end.truncatedTo(ChronoUnit.DAYS);
+        if (strategy == TimeFilterStrategy.EXACT || !firstDay.isBefore(lastDay)) {
+            return FilterClause.of(exact);
+        }
+
+        List<QueryNode> pieces = new ArrayList<>(5);
+        Instant firstMonth = ceilMonth(firstDay);
+        Instant lastMonth = floorMonth(lastDay);
+        if (strategy == TimeFilterStrategy.MONTH && firstMonth.isBefore(lastMonth)) {
+            pieces.add(new Filter(range(field, firstMonth, lastMonth)));
+            if (firstDay.isBefore(firstMonth)) pieces.add(new Filter(range(field, firstDay, firstMonth)));
+            if (lastMonth.isBefore(lastDay)) pieces.add(new Filter(range(field, lastMonth, lastDay)));
+        } else {
+            pieces.add(new Filter(range(field, firstDay, lastDay)));
+        }
+        // Partial days at each end; the end instant itself is inclusive
+        if (start.isBefore(firstDay)) pieces.add(range(field, start, firstDay));
+        pieces.add(new Range(field, lastDay.toString(), end.toString()));
+        return FilterClause.uncached(QueryNode.or(pieces), 0);
+    }
+
+    /**
+     * The cached, boundary-aligned clauses of a filter built by {@link #filter}.
+     */
+    static List<Range> buckets(FilterClause filter) {
+        if (!(filter.query() instanceof QueryNode.Bool bool)) return List.of();
+        List<Range> buckets = new ArrayList<>(3);
+        for (QueryNode clause : bool.should()) {
+            if (clause instanceof Filter f && f.query() instanceof Range range) buckets.add(range);
+        }
+        return buckets;
+    }
+}
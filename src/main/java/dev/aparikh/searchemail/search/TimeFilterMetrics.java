@@ -0,0 +1,59 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Range;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts time filters by strategy and shape, and how often their cached day/month clauses repeat a
+ * clause sent recently. A repeated clause is served from Solr's filterCache unless it was evicted, so
+ * {@code search.time.filter.buckets{result=reused}} over all buckets approximates the cache hit ratio of
+ * the split filters; Solr's own filterCache metrics give the ratio over all filters.
+ */
+class TimeFilterMetrics {
+
+    // Solr's default filterCache size; older buckets have likely been evicted there as well
+    private static final int TRACKED_BUCKETS = 512;
+
+    private final MeterRegistry registry;
+    private final Counter reused;
+    private final Counter sentFirst;
+    private final Set<Range> recentBuckets = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Range, Boolean> eldest) {
+                    return size() > TRACKED_BUCKETS;
+                }
+            }));
+
+    TimeFilterMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.reused = Counter.builder("search.time.filter.buckets")
+                .description("Cached time filter clauses, by whether the same clause was sent recently")
+                .tag("result", "reused")
+                .register(registry);
+        this.sentFirst = Counter.builder("search.time.filter.buckets")
+                .description("Cached time filter clauses, by whether the same clause was sent recently")
+                .tag("result", "new")
+                .register(registry);
+    }
+
+    void record(TimeFilterStrategy strategy, FilterClause filter) {
+        var buckets = TimeBuckets.buckets(filter);
+        registry.counter("search.time.filter", "strategy", strategy.name(),
+                "shape", buckets.isEmpty() ? "exact" : "bucketed").increment();
+        for (Range bucket : buckets) {
+            // add() both checks and refreshes the bucket's recency
+            if (recentBuckets.add(bucket)) {
+                sentFirst.increment();
+            } else {
+                reused.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.aparikh.searchemail.search;
+
+/**
+ * How the mandatory {@code sent_at} range is sent to Solr.
+ */
+enum TimeFilterStrategy {
+    /**
+     * One filter with the exact requested instants; cached, but only reused by identical requests.
+     */
+    EXACT,
+    /**
+     * Whole UTC days inside the range as one cached {@code filter(...)} clause, OR-ed with uncached
+     * ranges for the partial days at each end.
+     */
+    DAY,
+    /**
+     * Like {@link #DAY}, with whole calendar months as their own cached clause and whole days only for
+     * the partial months at each end.
+     */
+    MONTH
+}
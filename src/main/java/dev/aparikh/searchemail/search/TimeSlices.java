@@ -0,0 +1,67 @@
+package dev.aparikh.searchemail.search;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a time range into contiguous slices holding roughly equal numbers of emails, given how many fall
+ * into each of a series of equal-width buckets (a {@code sent_at} range facet). Slices end on bucket
+ * boundaries, so a dense day gets several slices and a quiet month may share one.
+ */
+final class TimeSlices {
+
+    // Histogram resolution: finer buckets balance the slices better at the cost of a larger facet response
+    static final int BUCKETS_PER_SLICE = 16;
+
+    private TimeSlices() {
+    }
+
+    /**
+     * Inclusive time range of one slice, at the millisecond precision Solr stores dates with.
+     */
+    record Slice(Instant start, Instant end) {
+    }
+
+    /**
+     * Width of the histogram buckets for splitting {@code [start, end]} into {@code slices}, at least 1ms.
+     */
+    static long bucketMillis(Instant start, Instant end, int slices) {
+        long rangeMillis = end.toEpochMilli() - start.toEpochMilli() + 1;
+        long buckets = (long) slices * BUCKETS_PER_SLICE;
+        return Math.max(1, (rangeMillis + buckets - 1) / buckets);
+    }
+
+    /**
+     * Cuts {@code [start, end]} into at most {@code slices} slices, where {@code counts[i]} is the number of
+     * emails in {@code [start + i * bucketMillis, start + (i + 1) * bucketMillis)}. Returns fewer slices when
+     * the emails are concentrated in fewer buckets, and the whole range when there is nothing to balance.
+     */
+    static List<Slice> split(Instant start, Instant end, long bucketMillis, long[] counts, int slices) {
+        long total = 0;
+        for (long count : counts) total += count;
+        if (slices <= 1 || total == 0) {
+            return List.of(new Slice(start, end));
+        }
+
+        List<Slice> result = new ArrayList<>(slices);
+        Instant sliceStart = start;
+        long seen = 0;
+        int cut = 1;
+        for (int i = 0; i < counts.length && cut < slices; i++) {
+            seen += counts[i];
+            // Several targets may fall into one dense bucket; it still yields a single cut
+            if (seen * slices < total * cut) continue;
+            while (cut < slices && seen * slices >= total * cut) cut++;
+
+            long boundary = start.toEpochMilli() + (i + 1) * bucketMillis;
+            if (boundary > end.toEpochMilli()) break;
+            Instant sliceEnd = Instant.ofEpochMilli(boundary - 1);
+            if (sliceEnd.isBefore(sliceStart)) continue;
+            result.add(new Slice(sliceStart, sliceEnd));
+            sliceStart = Instant.ofEpochMilli(boundary);
+        }
+        result.add(new Slice(sliceStart, end));
+        return result;
+    }
+}
@@ -0,0 +1,159 @@
+package dev.aparikh.searchemail.indexing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.aparikh.searchemail.api.BulkIngestResponse;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkIngestServiceTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T10:00:00Z");
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Mock
+    private EmailIngestQueue ingestQueue;
+
+    private BulkIngestService bulkIngestService;
+
+    @BeforeEach
+    void setUp() {
+        IndexingProperties properties = new IndexingProperties();
+        properties.setIngestBatchSize(2);
+        properties.setBulkMaxLineLength(300);
+        properties.setBulkMaxErrors(3);
+        bulkIngestService = new BulkIngestService(ingestQueue, mapper, properties);
+    }
+
+    private static EmailDocument email(int i) {
+        return new EmailDocument("id-" + i, "Subject " + i, "Body", "from@test.com",
+                List.of("to@test.com"), List.of(), List.of(), START.plusSeconds(i));
+    }
+
+    private String line(int i) throws IOException {
+        return mapper.writeValueAsString(email(i)) + "\n";
+    }
+
+    private static InputStream body(String ndjson) {
+        return new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void indexesEmailsInBatchesAsTheyAreRead() throws Exception {
+        when(ingestQueue.submit(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        BulkIngestResponse response = bulkIngestService.ingest(
+                body(line(0) + line(1) + "\n" + line(2)), false, false);
+
+        ArgumentCaptor<List<EmailDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(ingestQueue, times(2)).submit(captor.capture());
+        assertThat(captor.getAllValues()).containsExactly(List.of(email(0), email(1)), List.of(email(2)));
+        assertThat(response).isEqualTo(new BulkIngestResponse(4, 3, 0, List.of()));
+        verify(ingestQueue, never()).awaitVisible();
+    }
+
+    @Test
+    void reportsBadLinesAndIndexesTheRest() throws Exception {
+        when(ingestQueue.submit(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        String tooLong = "{\"id\":\"" + "x".repeat(300) + "\"}\n";
+
+        BulkIngestResponse response = bulkIngestService.ingest(body(
+                line(0) + "{not json\n" + "{\"subject\":\"no id\",\"sentAt\":\"2025-01-01T10:00:00Z\"}\n"
+                        + tooLong + "{\"id\":\"no-date\"}\n" + line(1)), false, false);
+
+        assertThat(response.lines()).isEqualTo(6);
+        assertThat(response.indexed()).isEqualTo(2);
+        assertThat(response.failed()).isEqualTo(4);
+        // Capped at three errors, the rest only counted
+        assertThat(response.errors()).extracting(BulkIngestResponse.LineError::line).containsExactly(2L, 3L, 4L);
+        assertThat(response.errors().get(0).message()).startsWith("Invalid JSON");
+        assertThat(response.errors().get(1).message()).isEqualTo("Missing id");
+        assertThat(response.errors().get(2).message()).isEqualTo("Line longer than 300 characters");
+    }
+
+    @Test
+    void reportsEveryLineOfARejectedBatch() throws Exception {
+        when(ingestQueue.submit(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Failed to index emails")))
+                .thenThrow(new RejectedExecutionException("Ingest queue is full"));
+
+        BulkIngestResponse response = bulkIngestService.ingest(body(line(0) + line(1) + line(2)), false, false);
+
+        assertThat(response.indexed()).isZero();
+        assertThat(response.errors()).containsExactly(
+                new BulkIngestResponse.LineError(1, "Failed to index emails"),
+                new BulkIngestResponse.LineError(2, "Failed to index emails"),
+                new BulkIngestResponse.LineError(3, "Ingest queue is full"));
+    }
+
+    @Test
+    void keepsTheEarliestLinesWhenARejectedBatchFinishesAfterLaterErrors() throws Exception {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        when(ingestQueue.submit(anyList()))
+                .thenReturn(first)
+                .thenAnswer(invocation -> {
+                    first.completeExceptionally(new RuntimeException("Failed to index emails"));
+                    return CompletableFuture.completedFuture(null);
+                });
+
+        BulkIngestResponse response = bulkIngestService.ingest(
+                body(line(0) + line(1) + "{not json\n".repeat(4) + line(2)), false, false);
+
+        assertThat(response.failed()).isEqualTo(6);
+        // Lines 1 and 2 fail after lines 3 to 6 were reported, yet still make the capped list
+        assertThat(response.errors()).extracting(BulkIngestResponse.LineError::line).containsExactly(1L, 2L, 3L);
+        assertThat(response.errors().get(0).message()).isEqualTo("Failed to index emails");
+        assertThat(response.errors().get(2).message()).startsWith("Invalid JSON");
+    }
+
+    @Test
+    void readsGzipBodiesAndWaitsForVisibilityOnRequest() throws Exception {
+        when(ingestQueue.submit(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write((line(0) + line(1)).getBytes(StandardCharsets.UTF_8));
+        }
+
+        BulkIngestResponse response = bulkIngestService.ingest(
+                new ByteArrayInputStream(compressed.toByteArray()), true, true);
+
+        assertThat(response.indexed()).isEqualTo(2);
+        verify(ingestQueue).awaitVisible();
+    }
+
+    @Test
+    void rejectsBodiesThatAreNotGzip() {
+        assertThatThrownBy(() -> bulkIngestService.ingest(body("{}\n"), true, false))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Request body is not valid gzip");
+    }
+}
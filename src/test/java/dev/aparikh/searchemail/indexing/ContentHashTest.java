@@ -0,0 +1,59 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentHashTest {
+
+    private static final Instant SENT_AT = Instant.parse("2025-01-01T10:00:00Z");
+
+    private static EmailDocument email(String from, List<String> to, String body, Instant sentAt) {
+        return new EmailDocument("id-1", "Subject", body, from, to, List.of(), List.of(), sentAt);
+    }
+
+    @Test
+    void isStableAcrossEqualEmails() {
+        String hash = ContentHash.of(email("from@test.com", List.of("to@test.com"), "Body", SENT_AT));
+
+        assertThat(hash).matches("[0-9a-f]{32}");
+        assertThat(ContentHash.of(email("from@test.com", List.of("to@test.com"), "Body", SENT_AT))).isEqualTo(hash);
+    }
+
+    @Test
+    void hashesAddressesAsTheyAreIndexed() {
+        assertThat(ContentHash.of(email("From@Test.com", Arrays.asList("TO@test.com", " ", null), "Body", SENT_AT)))
+                .isEqualTo(ContentHash.of(email("from@test.com", List.of("to@test.com"), "Body", SENT_AT)));
+    }
+
+    @Test
+    void hashesTimeAtMillisecondPrecision() {
+        assertThat(ContentHash.of(email("from@test.com", List.of(), "Body", SENT_AT.plusNanos(999))))
+                .isEqualTo(ContentHash.of(email("from@test.com", List.of(), "Body", SENT_AT)));
+        assertThat(ContentHash.of(email("from@test.com", List.of(), "Body", SENT_AT.plusMillis(1))))
+                .isNotEqualTo(ContentHash.of(email("from@test.com", List.of(), "Body", SENT_AT)));
+    }
+
+    @Test
+    void changesWithContent() {
+        String hash = ContentHash.of(email("from@test.com", List.of("to@test.com"), "Body", SENT_AT));
+
+        assertThat(ContentHash.of(email("from@test.com", List.of("to@test.com"), "Body!", SENT_AT))).isNotEqualTo(hash);
+        assertThat(ContentHash.of(email("from@test.com", List.of("to@test.com", "cc@test.com"), "Body", SENT_AT)))
+                .isNotEqualTo(hash);
+        assertThat(ContentHash.of(new EmailDocument("id-1", "SubjectBody", "", "from@test.com",
+                List.of("to@test.com"), List.of(), List.of(), SENT_AT))).isNotEqualTo(hash);
+    }
+
+    @Test
+    void splitsIntoTwoHalves() {
+        long[] halves = ContentHash.halves("0000000000000001ffffffffffffffff");
+
+        assertThat(halves).containsExactly(1L, -1L);
+    }
+}
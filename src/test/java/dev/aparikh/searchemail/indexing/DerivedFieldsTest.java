@@ -0,0 +1,65 @@
+package dev.aparikh.searchemail.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DerivedFieldsTest {
+
+    @Test
+    void sameFirmSeesOwnParticipantInEveryRole() {
+        DerivedFields derived = DerivedFields.of("external@other.com",
+                List.of("external2@other.com"), List.of(), List.of("alice@firm1.com"));
+
+        assertThat(derived.visibleParticipants()).contains("firm1.com|alice@firm1.com");
+    }
+
+    @Test
+    void crossFirmVisibleParticipantRequiresAdminFirmAnywhere() {
+        // bob@firm2.com in TO, firm1 only in BCC: still visible to firm1
+        DerivedFields withFirm1 = DerivedFields.of("external@other.com",
+                List.of("bob@firm2.com"), List.of(), List.of("alice@firm1.com"));
+        // no firm1 participation at all: hidden
+        DerivedFields withoutFirm1 = DerivedFields.of("bob@firm2.com",
+                List.of("charlie@firm2.com"), List.of(), List.of());
+
+        assertThat(withFirm1.visibleParticipants()).contains("firm1.com|bob@firm2.com");
+        assertThat(withoutFirm1.visibleParticipants()).noneMatch(t -> t.startsWith("firm1.com|"));
+    }
+
+    @Test
+    void crossFirmBccRecipientOnlyVisibleToSendingFirm() {
+        DerivedFields sentByFirm1 = DerivedFields.of("alice@firm1.com",
+                List.of("x@other.com"), List.of(), List.of("bob@firm2.com"));
+        DerivedFields firm1InCc = DerivedFields.of("external@other.com",
+                List.of("external2@other.com"), List.of("alice@firm1.com"), List.of("bob@firm2.com"));
+
+        assertThat(sentByFirm1.visibleParticipants()).contains("firm1.com|bob@firm2.com");
+        assertThat(firm1InCc.visibleParticipants())
+                .doesNotContain("firm1.com|bob@firm2.com")
+                .contains("firm2.com|bob@firm2.com", "other.com|bob@firm2.com");
+    }
+
+    @Test
+    void addressesAndDomainsAreNormalizedAndBlankValuesIgnored() {
+        DerivedFields derived = DerivedFields.of("Alice@FIRM1.com",
+                List.of("", "  ", "Bob@Firm2.COM"), null, List.of("no-domain"));
+
+        assertThat(derived.anyDomains()).containsExactly("firm1.com", "firm2.com");
+        assertThat(derived.bccDomains()).isEmpty();
+        // the domain-less BCC recipient is only visible to the sending firm
+        assertThat(derived.visibleParticipants()).containsExactly(
+                "firm1.com|alice@firm1.com", "firm1.com|bob@firm2.com", "firm1.com|no-domain",
+                "firm2.com|alice@firm1.com", "firm2.com|bob@firm2.com");
+    }
+
+    @Test
+    void emailWithoutParticipantsHasNoDerivedValues() {
+        DerivedFields derived = DerivedFields.of(null, null, null, null);
+
+        assertThat(derived.anyDomains()).isEmpty();
+        assertThat(derived.visibleParticipants()).isEmpty();
+    }
+}
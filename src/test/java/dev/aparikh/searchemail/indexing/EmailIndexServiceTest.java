@@ -2,21 +2,32 @@ package dev.aparikh.searchemail.indexing;
 
 import dev.aparikh.searchemail.model.EmailDocument;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
@@ -29,8 +40,10 @@ class EmailIndexServiceTest {
     private EmailIndexService indexService;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws Exception {
         indexService = new EmailIndexService(solrClient);
+        // Nothing stored yet: adds find no tags to carry over
+        lenient().when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(new SolrDocumentList());
     }
 
     @Test
@@ -134,6 +147,217 @@ class EmailIndexServiceTest {
         assertThat(doc.getFieldValues(EmailDocument.FIELD_TO)).containsExactly("valid@test.com", "another@test.com");
     }
 
+    @Test
+    void indexAddsDerivedDomainFields() throws Exception {
+        EmailDocument email = new EmailDocument("1", "Subject", "Body", "Alice@Firm1.com",
+                List.of("bob@firm2.com", "carol@FIRM2.com"), List.of("dave@firm3.com"), List.of("eve@firm1.com"),
+                Instant.parse("2025-01-01T10:00:00Z"));
+
+        indexService.index(email);
+
+        ArgumentCaptor<List<SolrInputDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(solrClient).add(captor.capture());
+
+        SolrInputDocument doc = captor.getValue().get(0);
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_FROM_DOMAIN)).containsExactly("firm1.com");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_TO_DOMAIN)).containsExactly("firm2.com");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_CC_DOMAIN)).containsExactly("firm3.com");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_BCC_DOMAIN)).containsExactly("firm1.com");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_ANY_DOMAIN))
+                .containsExactly("firm1.com", "firm2.com", "firm3.com");
+        // firm1.com sent the email so it sees the BCC; firm2/firm3 only see their own BCC recipients
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_VISIBLE_PARTICIPANT))
+                .contains("firm1.com|eve@firm1.com", "firm2.com|bob@firm2.com", "firm3.com|alice@firm1.com")
+                .doesNotContain("firm2.com|eve@firm1.com", "firm3.com|eve@firm1.com");
+    }
+
+    @Test
+    void indexSkipsDomainFieldsForAddressesWithoutDomain() throws Exception {
+        EmailDocument email = new EmailDocument("1", "Subject", "Body", "undisclosed-recipients",
+                List.of("bob@"), List.of(), List.of(), Instant.parse("2025-01-01T10:00:00Z"));
+
+        indexService.index(email);
+
+        ArgumentCaptor<List<SolrInputDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(solrClient).add(captor.capture());
+
+        SolrInputDocument doc = captor.getValue().get(0);
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_FROM_DOMAIN)).isNull();
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_ANY_DOMAIN)).isNull();
+    }
+
+    @Test
+    void backfillDerivedFieldsSendsAtomicUpdatesUntilCursorIsExhausted() throws Exception {
+        SolrDocument legacy = new SolrDocument();
+        legacy.setField(EmailDocument.FIELD_ID, "legacy-1");
+        legacy.setField(EmailDocument.FIELD_FROM, "alice@firm1.com");
+        legacy.setField(EmailDocument.FIELD_TO, List.of("bob@firm2.com"));
+        SolrDocumentList page = new SolrDocumentList();
+        page.add(legacy);
+
+        QueryResponse first = mock(QueryResponse.class);
+        when(first.getResults()).thenReturn(page);
+        when(first.getNextCursorMark()).thenReturn("next");
+        QueryResponse last = mock(QueryResponse.class);
+        when(last.getResults()).thenReturn(new SolrDocumentList());
+        when(last.getNextCursorMark()).thenReturn("next");
+        when(solrClient.query(any(SolrQuery.class))).thenReturn(first, last);
+
+        long updated = indexService.backfillDerivedFields(100);
+
+        assertThat(updated).isEqualTo(1);
+        ArgumentCaptor<List<SolrInputDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(solrClient).add(captor.capture());
+        verify(solrClient).commit();
+
+        SolrInputDocument update = captor.getValue().get(0);
+        assertThat(update.getFieldValue(EmailDocument.FIELD_ID)).isEqualTo("legacy-1");
+        assertThat(update.getFieldValue(EmailDocument.FIELD_FROM_DOMAIN)).isEqualTo(Map.of("set", List.of("firm1.com")));
+        assertThat(update.getFieldValue(EmailDocument.FIELD_ANY_DOMAIN))
+                .isEqualTo(Map.of("set", List.of("firm1.com", "firm2.com")));
+        assertThat(update.getFieldValue(EmailDocument.FIELD_BCC_DOMAIN)).isNull();
+        assertThat(update.getFieldValue(EmailDocument.FIELD_VISIBLE_PARTICIPANT)).isEqualTo(Map.of("set", List.of(
+                "firm1.com|alice@firm1.com", "firm1.com|bob@firm2.com",
+                "firm2.com|alice@firm1.com", "firm2.com|bob@firm2.com")));
+    }
+
+    @Test
+    void backfillDerivedFieldsRejectsNonPositiveBatchSize() {
+        assertThatThrownBy(() -> indexService.backfillDerivedFields(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void indexAllPublishesEventAfterCommit() throws Exception {
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        indexService = new EmailIndexService(solrClient, events);
+
+        indexService.indexAll(List.of(createTestEmail()));
+
+        var order = inOrder(solrClient, events);
+        order.verify(solrClient).commit();
+        order.verify(events).publishEvent(new EmailsIndexedEvent(1));
+    }
+
+    @Test
+    void failedIndexingPublishesNoEvent() throws Exception {
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        indexService = new EmailIndexService(solrClient, events);
+        doThrow(new SolrServerException("Commit error")).when(solrClient).commit();
+
+        assertThatThrownBy(() -> indexService.index(createTestEmail())).isInstanceOf(RuntimeException.class);
+        verify(events, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void dedupSkipsEmailsSolrAlreadyHoldsUnchanged() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        indexService = new EmailIndexService(solrClient, event -> { },
+                new ContentDeduplicator(solrClient, new BloomFilter(1000, 0.01), registry));
+        EmailDocument email = createTestEmail();
+        SolrDocument stored = new SolrDocument();
+        stored.setField(EmailDocument.FIELD_ID, email.id());
+        stored.setField(EmailDocument.FIELD_CONTENT_HASH, ContentHash.of(email));
+        SolrDocumentList storedDocs = new SolrDocumentList();
+        storedDocs.add(stored);
+        when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(storedDocs);
+
+        indexService.index(email);
+        indexService.index(email);
+
+        ArgumentCaptor<List<SolrInputDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(solrClient, times(1)).add(captor.capture());
+        verify(solrClient, times(2)).commit();
+        assertThat(captor.getValue().getFirst().getFieldValue(EmailDocument.FIELD_CONTENT_HASH))
+                .isEqualTo(ContentHash.of(email));
+        assertThat(registry.counter("indexing.dedup.documents", "result", "new").count()).isEqualTo(1);
+        assertThat(registry.counter("indexing.dedup.documents", "result", "unchanged").count()).isEqualTo(1);
+    }
+
+    @Test
+    void dedupSendsEmailsWhoseStoredHashDiffers() throws Exception {
+        indexService = new EmailIndexService(solrClient, event -> { },
+                new ContentDeduplicator(solrClient, new BloomFilter(1000, 0.01), new SimpleMeterRegistry()));
+        EmailDocument email = createTestEmail();
+        SolrDocument stored = new SolrDocument();
+        stored.setField(EmailDocument.FIELD_ID, email.id());
+        stored.setField(EmailDocument.FIELD_CONTENT_HASH, "0".repeat(32));
+        SolrDocumentList storedDocs = new SolrDocumentList();
+        storedDocs.add(stored);
+        when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(storedDocs);
+
+        indexService.index(email);
+        indexService.index(email);
+
+        verify(solrClient, times(2)).add(anyList());
+    }
+
+    @Test
+    void failsTheAddWhenStoredTagsCannotBeRead() throws Exception {
+        indexService = new EmailIndexService(solrClient, event -> { },
+                new ContentDeduplicator(solrClient, new BloomFilter(1000, 0.01), new SimpleMeterRegistry()));
+        when(solrClient.getById(anyCollection(), any(SolrParams.class)))
+                .thenThrow(new SolrServerException("RTG error"));
+
+        // Sending the email without its tags would drop them
+        assertThatThrownBy(() -> indexService.index(createTestEmail()))
+                .hasMessage("Failed to index emails")
+                .hasCauseInstanceOf(SolrServerException.class);
+        verify(solrClient, never()).add(anyList());
+    }
+
+    @Test
+    void reAddCarriesOverStoredTagsPinnedToTheirVersion() throws Exception {
+        SolrDocument stored = new SolrDocument();
+        stored.setField(EmailDocument.FIELD_ID, "test-id");
+        stored.setField("_version_", 42L);
+        stored.setField(EmailDocument.FIELD_TAGS, List.of("privileged", "reviewed"));
+        SolrDocumentList storedDocs = new SolrDocumentList();
+        storedDocs.add(stored);
+        when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(storedDocs);
+
+        indexService.indexAll(List.of(createTestEmail(), new EmailDocument("new-id", "New", "Body", "from@test.com",
+                List.of("to@test.com"), List.of(), List.of(), Instant.parse("2025-01-02T10:00:00Z"))));
+
+        ArgumentCaptor<List<SolrInputDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(solrClient).add(captor.capture());
+        SolrInputDocument reAdded = captor.getValue().get(0);
+        assertThat(reAdded.getFieldValues(EmailDocument.FIELD_TAGS)).containsExactly("privileged", "reviewed");
+        assertThat(reAdded.getFieldValue("_version_")).isEqualTo(42L);
+        SolrInputDocument added = captor.getValue().get(1);
+        assertThat(added.getFieldValue(EmailDocument.FIELD_TAGS)).isNull();
+        assertThat(added.getFieldValue("_version_")).isNull();
+    }
+
+    @Test
+    void readsTagsAgainWhenTheyChangeBeforeTheAdd() throws Exception {
+        SolrDocument before = new SolrDocument();
+        before.setField(EmailDocument.FIELD_ID, "test-id");
+        before.setField("_version_", 42L);
+        before.setField(EmailDocument.FIELD_TAGS, List.of("reviewed"));
+        SolrDocument after = new SolrDocument();
+        after.setField(EmailDocument.FIELD_ID, "test-id");
+        after.setField("_version_", 43L);
+        after.setField(EmailDocument.FIELD_TAGS, List.of("reviewed", "privileged"));
+        SolrDocumentList beforeDocs = new SolrDocumentList();
+        beforeDocs.add(before);
+        SolrDocumentList afterDocs = new SolrDocumentList();
+        afterDocs.add(after);
+        when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(beforeDocs, afterDocs);
+        List<List<Object>> sentTags = new ArrayList<>();
+        when(solrClient.add(anyList())).thenAnswer(invocation -> {
+            SolrInputDocument doc = invocation.<List<SolrInputDocument>>getArgument(0).getFirst();
+            sentTags.add(List.copyOf(doc.getFieldValues(EmailDocument.FIELD_TAGS)));
+            if (sentTags.size() == 1) throw new SolrException(SolrException.ErrorCode.CONFLICT, "version conflict");
+            return null;
+        });
+
+        indexService.index(createTestEmail());
+
+        assertThat(sentTags).containsExactly(List.of("reviewed"), List.of("reviewed", "privileged"));
+        verify(solrClient).commit();
+    }
+
     @Test
     void indexWrapsExceptionFromSolr() throws Exception {
         when(solrClient.add(any(List.class))).thenThrow(new SolrServerException("Solr error"));
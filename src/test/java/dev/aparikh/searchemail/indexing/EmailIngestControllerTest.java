@@ -0,0 +1,57 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.BulkIngestResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = EmailIngestController.class)
+class EmailIngestControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private BulkIngestService bulkIngestService;
+
+    @Test
+    void bulkIngestReturnsTheReport() throws Exception {
+        when(bulkIngestService.ingest(any(InputStream.class), eq(true), eq(true))).thenReturn(
+                new BulkIngestResponse(3, 2, 1, List.of(new BulkIngestResponse.LineError(2, "Missing id"))));
+
+        mockMvc.perform(post("/api/emails/bulk")
+                        .param("refresh", "true")
+                        .contentType(EmailIngestController.NDJSON)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.indexed").value(2))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[0].message").value("Missing id"));
+    }
+
+    @Test
+    void bulkIngestRejectsUnsupportedEncodings() throws Exception {
+        mockMvc.perform(post("/api/emails/bulk")
+                        .contentType(EmailIngestController.NDJSON)
+                        .header(HttpHeaders.CONTENT_ENCODING, "br")
+                        .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_ARGUMENT"));
+
+        verifyNoInteractions(bulkIngestService);
+    }
+}
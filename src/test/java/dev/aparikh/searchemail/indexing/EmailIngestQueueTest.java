@@ -0,0 +1,186 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailIngestQueueTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T10:00:00Z");
+
+    @Mock
+    private SolrClient solrClient;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private final IndexingProperties properties = new IndexingProperties();
+    private EmailIngestQueue queue;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lenient().when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(new SolrDocumentList());
+        properties.setIngestBatchSize(3);
+        properties.setIngestMaxBatchAge(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (queue != null) queue.destroy();
+    }
+
+    private EmailIngestQueue start() {
+        queue = new EmailIngestQueue(new EmailIndexService(solrClient, events::add), properties, registry, events::add);
+        return queue;
+    }
+
+    private static List<EmailDocument> emails(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> new EmailDocument("id-" + i, "Subject " + i, "Body", "from@test.com",
+                        List.of("to@test.com"), List.of(), List.of(), START.plusSeconds(i)))
+                .toList();
+    }
+
+    @Test
+    void sendsFullBatchesWithCommitWithin() throws Exception {
+        start();
+
+        CompletableFuture<Void> first = queue.submit(emails(0, 2));
+        CompletableFuture<Void> second = queue.submit(emails(2, 3));
+        second.get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<List<SolrInputDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(solrClient).add(captor.capture(), eq(1000));
+        verify(solrClient, never()).commit();
+        assertThat(first).isCompleted();
+        assertThat(captor.getValue()).extracting(d -> d.getFieldValue(EmailDocument.FIELD_ID))
+                .containsExactly("id-0", "id-1", "id-2");
+        assertThat(registry.timer("indexing.ingest.batch.latency", "result", "success").count()).isEqualTo(1);
+        assertThat(registry.summary("indexing.ingest.batch.size").totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    void sendsPartialBatchOnceItIsOldEnough() throws Exception {
+        properties.setIngestMaxBatchAge(Duration.ofMillis(50));
+        start();
+
+        queue.submit(emails(0, 1)).get(5, TimeUnit.SECONDS);
+
+        verify(solrClient).add(anyList(), eq(1000));
+    }
+
+    @Test
+    void awaitVisibleFlushesAndSoftCommits() throws Exception {
+        start();
+        CompletableFuture<Void> submitted = queue.submit(emails(0, 2));
+
+        queue.awaitVisible();
+
+        assertThat(submitted).isCompleted();
+        var order = inOrder(solrClient);
+        order.verify(solrClient).add(anyList(), eq(1000));
+        order.verify(solrClient).commit(true, true, true);
+        assertThat(events).contains(new EmailsIndexedEvent(2));
+    }
+
+    @Test
+    void zeroCommitWithinSoftCommitsEveryBatch() throws Exception {
+        properties.setCommitWithin(Duration.ZERO);
+        start();
+
+        queue.submit(emails(0, 3)).get(5, TimeUnit.SECONDS);
+
+        verify(solrClient).add(anyList());
+        verify(solrClient).commit(true, true, true);
+        assertThat(events).containsExactly(new EmailsIndexedEvent(3));
+    }
+
+    @Test
+    void rejectsSubmissionsWhileTheQueueIsFull() throws Exception {
+        properties.setIngestQueueCapacity(3);
+        properties.setIngestEnqueueTimeout(Duration.ofMillis(50));
+        CountDownLatch solrBusy = new CountDownLatch(1);
+        when(solrClient.add(anyList(), anyInt())).thenAnswer(invocation -> {
+            solrBusy.await();
+            return null;
+        });
+        start();
+
+        CompletableFuture<Void> inFlight = queue.submit(emails(0, 3));
+
+        // The batch being sent still holds its room
+        assertThatThrownBy(() -> queue.submit(emails(3, 4)))
+                .isInstanceOf(RejectedExecutionException.class)
+                .hasMessage("Ingest queue is full");
+        assertThatThrownBy(() -> queue.submit(emails(0, 4)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        solrBusy.countDown();
+        inFlight.get(5, TimeUnit.SECONDS);
+        queue.submit(emails(3, 6)).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failedBatchFailsItsSubmissions() throws Exception {
+        when(solrClient.add(anyList(), anyInt()))
+                .thenThrow(new SolrServerException("Solr down"))
+                .thenReturn(null);
+        start();
+
+        CompletableFuture<Void> failed = queue.submit(emails(0, 3));
+
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("Solr down");
+        assertThat(registry.timer("indexing.ingest.batch.latency", "result", "failure").count()).isEqualTo(1);
+        queue.submit(emails(3, 6)).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void destroySendsWhatIsStillQueued() throws Exception {
+        start();
+        CompletableFuture<Void> submitted = queue.submit(emails(0, 1));
+
+        queue.destroy();
+
+        assertThat(submitted).isCompleted();
+        verify(solrClient).add(anyList(), eq(1000));
+        assertThatThrownBy(() -> queue.submit(emails(1, 2)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
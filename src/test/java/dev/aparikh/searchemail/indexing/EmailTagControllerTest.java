@@ -0,0 +1,59 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.TagUpdateRequest;
+import dev.aparikh.searchemail.api.TagUpdateResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = EmailTagController.class)
+class EmailTagControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private EmailTagService tagService;
+
+    @Test
+    void updateTagsReturnsTheReport() throws Exception {
+        when(tagService.update(any(TagUpdateRequest.class), eq(true))).thenReturn(new TagUpdateResponse(
+                1, Map.of("id-1", 11L), List.of(new TagUpdateResponse.Failure("id-2", EmailTagService.NOT_FOUND))));
+
+        mockMvc.perform(patch("/api/emails/tags")
+                        .param("refresh", "true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"ids": ["id-1", "id-2"], "add": ["hot"], "versions": {"id-1": 10}}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updated").value(1))
+                .andExpect(jsonPath("$.versions['id-1']").value(11))
+                .andExpect(jsonPath("$.failures[0].id").value("id-2"))
+                .andExpect(jsonPath("$.failures[0].message").value(EmailTagService.NOT_FOUND));
+    }
+
+    @Test
+    void updateTagsRequiresIds() throws Exception {
+        mockMvc.perform(patch("/api/emails/tags")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"add\": [\"hot\"]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("VALIDATION_ERROR"));
+
+        verifyNoInteractions(tagService);
+    }
+}
@@ -0,0 +1,254 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.TagUpdateRequest;
+import dev.aparikh.searchemail.api.TagUpdateResponse;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.SolrContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class EmailTagServiceIT {
+
+    @Container
+    static final SolrContainer SOLR = new SolrContainer(DockerImageName.parse("solr:9.6.1"));
+    private static final String CORE = "emails";
+    private static final Instant SENT_AT = Instant.parse("2025-01-01T10:15:30Z");
+
+    @Autowired
+    private EmailTagService tagService;
+    @Autowired
+    private EmailIndexService indexService;
+    @Autowired
+    private SolrClient solrClient;
+
+    private static String solrBaseUrl() {
+        return "http://" + SOLR.getHost() + ":" + SOLR.getMappedPort(8983) + "/solr";
+    }
+
+    @DynamicPropertySource
+    static void props(DynamicPropertyRegistry registry) {
+        registry.add("solr.base-url", EmailTagServiceIT::solrBaseUrl);
+        registry.add("solr.core", () -> CORE);
+        // Checks that atomic tag updates keep content_hash
+        registry.add("indexing.dedup-enabled", () -> "true");
+    }
+
+    @BeforeAll
+    static void createCoreAndSchema() throws Exception {
+        SOLR.execInContainer("solr", "create_collection", "-c", CORE, "-shards", "1", "-replicationFactor", "1");
+
+        boolean coreReady = false;
+        for (int i = 0; i < 10 && !coreReady; i++) {
+            try (SolrClient testClient = new HttpSolrClient.Builder(solrBaseUrl() + "/" + CORE).build()) {
+                testClient.query(new SolrQuery("*:*").setRows(0));
+                coreReady = true;
+            } catch (Exception e) {
+                Thread.sleep(1000);
+            }
+        }
+        if (!coreReady) {
+            throw new RuntimeException("Core " + CORE + " not accessible after 10 attempts");
+        }
+
+        try (SolrClient core = new HttpSolrClient.Builder(solrBaseUrl() + "/" + CORE).build()) {
+            addField(core, EmailDocument.FIELD_ID, Map.of("type", "string", "stored", true, "indexed", true, "required", true));
+            addField(core, EmailDocument.FIELD_SUBJECT, Map.of("type", "text_general", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_BODY, Map.of("type", "text_general", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM, Map.of("type", "string", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_TO, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_SENT_AT, Map.of("type", "pdate", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true));
+            addField(core, EmailDocument.FIELD_TO_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_ANY_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_VISIBLE_PARTICIPANT, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CONTENT_HASH, Map.of("type", "string", "stored", true, "indexed", false));
+            addField(core, EmailDocument.FIELD_TAGS, Map.of("type", "string", "stored", true, "indexed", true, "docValues", true, "multiValued", true));
+        }
+    }
+
+    private static void addField(SolrClient core, String name, Map<String, Object> props) {
+        Map<String, Object> field = new HashMap<>(props);
+        field.put("name", name);
+        try {
+            new SchemaRequest.AddField(field).process(core);
+        } catch (Exception ignore) {
+            // ignore errors if field exists to keep test idempotent
+        }
+    }
+
+    @BeforeEach
+    void cleanIndex() throws Exception {
+        solrClient.deleteByQuery("*:*");
+        solrClient.commit();
+    }
+
+    private static EmailDocument email(String id) {
+        return new EmailDocument(id, "Quarterly results", "Please review the attached numbers", "alice@acme.com",
+                List.of("bob@other.com"), List.of(), List.of("carol@acme.com"), SENT_AT);
+    }
+
+    private static TagUpdateRequest request(List<String> ids, List<String> add, List<String> remove, List<String> set,
+                                            Map<String, Long> versions) {
+        return new TagUpdateRequest(ids, add, remove, set, versions);
+    }
+
+    private SolrDocument stored(String id) throws Exception {
+        return solrClient.getById(id);
+    }
+
+    private long count(String query) throws Exception {
+        return solrClient.query(new SolrQuery(query).setRows(0)).getResults().getNumFound();
+    }
+
+    @Test
+    void addRemoveAndSetChangeOnlyTheTags() throws Exception {
+        indexService.index(email("1"));
+
+        tagService.update(request(List.of("1"), List.of("hot", "privileged"), null, null, null), true);
+        assertThat(stored("1").getFieldValues(EmailDocument.FIELD_TAGS)).containsExactlyInAnyOrder("hot", "privileged");
+
+        tagService.update(request(List.of("1"), List.of("hot"), List.of("privileged"), null, null), true);
+        assertThat(stored("1").getFieldValues(EmailDocument.FIELD_TAGS)).containsExactly("hot");
+        assertThat(count("tags:hot")).isEqualTo(1);
+        assertThat(count("tags:privileged")).isZero();
+
+        tagService.update(request(List.of("1"), null, null, List.of("responsive"), null), true);
+        assertThat(stored("1").getFieldValues(EmailDocument.FIELD_TAGS)).containsExactly("responsive");
+
+        SolrDocument doc = stored("1");
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_SUBJECT)).isEqualTo("Quarterly results");
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_BODY)).isEqualTo("Please review the attached numbers");
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_FROM)).isEqualTo("alice@acme.com");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_BCC)).containsExactly("carol@acme.com");
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_SENT_AT)).isEqualTo(Date.from(SENT_AT));
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_CONTENT_HASH)).isEqualTo(ContentHash.of(email("1")));
+        // Derived fields are docValues only and must survive the atomic updates too
+        assertThat(count(EmailDocument.FIELD_ANY_DOMAIN + ":other.com")).isEqualTo(1);
+        assertThat(count(EmailDocument.FIELD_BCC_DOMAIN + ":acme.com")).isEqualTo(1);
+        assertThat(count("subject:quarterly AND body:numbers")).isEqualTo(1);
+    }
+
+    @Test
+    void reIndexingAnEmailKeepsItsTags() throws Exception {
+        indexService.index(email("1"));
+        tagService.update(request(List.of("1"), List.of("hot", "privileged"), null, null, null), true);
+
+        EmailDocument edited = new EmailDocument("1", "Quarterly results (revised)", "Updated numbers attached",
+                "alice@acme.com", List.of("bob@other.com", "dave@other.com"), List.of(), List.of(), SENT_AT);
+        indexService.index(edited);
+
+        SolrDocument doc = stored("1");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_TAGS)).containsExactlyInAnyOrder("hot", "privileged");
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_SUBJECT)).isEqualTo("Quarterly results (revised)");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_BCC)).isNull();
+
+        // Without dedup every re-send replaces the document
+        new EmailIndexService(solrClient).index(email("1"));
+
+        doc = stored("1");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_TAGS)).containsExactlyInAnyOrder("hot", "privileged");
+        assertThat(doc.getFieldValues(EmailDocument.FIELD_BCC)).containsExactly("carol@acme.com");
+        assertThat(count("tags:privileged AND subject:quarterly")).isEqualTo(1);
+    }
+
+    @Test
+    void missingEmailsAreReportedNotCreated() throws Exception {
+        indexService.index(email("1"));
+
+        TagUpdateResponse response = tagService.update(request(List.of("1", "2"), List.of("hot"), null, null, null), true);
+
+        assertThat(response.updated()).isEqualTo(1);
+        assertThat(response.failures()).containsExactly(new TagUpdateResponse.Failure("2", EmailTagService.NOT_FOUND));
+        assertThat(stored("2")).isNull();
+        assertThat(count("*:*")).isEqualTo(1);
+    }
+
+    @Test
+    void mustExistVersionRejectsAnAtomicUpdateOfAMissingEmail() {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField(EmailDocument.FIELD_ID, "missing");
+        doc.addField(EmailDocument.FIELD_TAGS, Map.of("add-distinct", List.of("hot")));
+        doc.addField(CommonParams.VERSION_FIELD, 1L);
+
+        assertThatThrownBy(() -> solrClient.add(doc))
+                .isInstanceOfSatisfying(SolrException.class,
+                        e -> assertThat(e.code()).isEqualTo(SolrException.ErrorCode.CONFLICT.code));
+    }
+
+    @Test
+    void versionConflictsAreLeftOutOfTheUpdate() throws Exception {
+        indexService.indexAll(List.of(email("1"), email("2")));
+        long stale = ((Number) stored("1").getFieldValue(CommonParams.VERSION_FIELD)).longValue();
+        tagService.update(request(List.of("1"), List.of("hot"), null, null, null), true);
+
+        UpdateRequest update = new UpdateRequest();
+        for (String id : List.of("1", "2")) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField(EmailDocument.FIELD_ID, id);
+            doc.addField(EmailDocument.FIELD_TAGS, Map.of("add-distinct", List.of("privileged")));
+            doc.addField(CommonParams.VERSION_FIELD, id.equals("1") ? stale : 1L);
+            update.add(doc);
+        }
+        update.setParam("versions", "true");
+        update.setParam("failOnVersionConflicts", "false");
+        NamedList<?> adds = (NamedList<?>) update.process(solrClient).getResponse().get("adds");
+
+        assertThat(adds.get("1")).isNull();
+        assertThat(adds.get("2")).isNotNull();
+        assertThat(stored("1").getFieldValues(EmailDocument.FIELD_TAGS)).containsExactly("hot");
+    }
+
+    @Test
+    void expectedVersionsMakeUpdatesConditional() throws Exception {
+        indexService.index(email("1"));
+        long version = ((Number) stored("1").getFieldValue(CommonParams.VERSION_FIELD)).longValue();
+
+        TagUpdateResponse first = tagService.update(
+                request(List.of("1"), List.of("hot"), null, null, Map.of("1", version)), true);
+        TagUpdateResponse stale = tagService.update(
+                request(List.of("1"), List.of("privileged"), null, null, Map.of("1", version)), true);
+        TagUpdateResponse chained = tagService.update(
+                request(List.of("1"), List.of("responsive"), null, null, first.versions()), true);
+
+        assertThat(first.updated()).isEqualTo(1);
+        assertThat(first.versions().get("1")).isGreaterThan(version);
+        assertThat(stale.updated()).isZero();
+        assertThat(stale.failures()).singleElement()
+                .satisfies(failure -> assertThat(failure.message()).startsWith("Version conflict"));
+        assertThat(chained.updated()).isEqualTo(1);
+        assertThat(stored("1").getFieldValues(EmailDocument.FIELD_TAGS)).containsExactlyInAnyOrder("hot", "responsive");
+    }
+}
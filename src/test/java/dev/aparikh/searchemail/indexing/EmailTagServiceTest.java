@@ -0,0 +1,243 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.api.TagUpdateRequest;
+import dev.aparikh.searchemail.api.TagUpdateResponse;
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailTagServiceTest {
+
+    @Mock
+    private SolrClient solrClient;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private final IndexingProperties properties = new IndexingProperties();
+    private EmailTagService tagService;
+
+    @BeforeEach
+    void setUp() {
+        properties.setCommitWithin(Duration.ofSeconds(1));
+        tagService = new EmailTagService(solrClient, events::add, properties, registry);
+    }
+
+    private void stored(Map<String, Long> versions) throws Exception {
+        SolrDocumentList docs = new SolrDocumentList();
+        versions.forEach((id, version) -> docs.add(doc(id, version)));
+        when(solrClient.getById(anyCollection(), any(SolrParams.class))).thenReturn(docs);
+    }
+
+    private static SolrDocument doc(String id, long version, String... tags) {
+        SolrDocument doc = new SolrDocument();
+        doc.setField(EmailDocument.FIELD_ID, id);
+        doc.setField(CommonParams.VERSION_FIELD, version);
+        if (tags.length > 0) doc.setField(EmailDocument.FIELD_TAGS, List.of(tags));
+        return doc;
+    }
+
+    private static SolrDocumentList list(SolrDocument... docs) {
+        SolrDocumentList list = new SolrDocumentList();
+        list.addAll(List.of(docs));
+        return list;
+    }
+
+    private static NamedList<Object> added(Map<String, Long> versions) {
+        NamedList<Object> adds = new NamedList<>();
+        versions.forEach(adds::add);
+        NamedList<Object> response = new NamedList<>();
+        response.add("adds", adds);
+        return response;
+    }
+
+    private static List<SolrInputDocument> docs(SolrRequest<?> request) {
+        return ((UpdateRequest) request).getDocuments();
+    }
+
+    private static TagUpdateRequest add(List<String> ids, List<String> add, Map<String, Long> versions) {
+        return new TagUpdateRequest(ids, add, null, null, versions);
+    }
+
+    @Test
+    void updatesExistingEmailsWithAtomicOperations() throws Exception {
+        stored(Map.of("id-1", 10L, "id-2", 20L));
+        when(solrClient.request(any(SolrRequest.class), any())).thenReturn(added(Map.of("id-1", 11L, "id-2", 21L)));
+
+        TagUpdateResponse response = tagService.update(new TagUpdateRequest(
+                List.of("id-1", "id-2", "id-3"), List.of(" Hot", "hot"), List.of("responsive"), null, null), true);
+
+        assertThat(response.updated()).isEqualTo(2);
+        assertThat(response.versions()).containsEntry("id-1", 11L).containsEntry("id-2", 21L);
+        assertThat(response.failures()).containsExactly(new TagUpdateResponse.Failure("id-3", EmailTagService.NOT_FOUND));
+        ArgumentCaptor<SolrRequest<?>> captor = ArgumentCaptor.forClass(SolrRequest.class);
+        verify(solrClient).request(captor.capture(), any());
+        SolrInputDocument doc = docs(captor.getValue()).getFirst();
+        assertThat(doc.getFieldValue(EmailDocument.FIELD_TAGS))
+                .isEqualTo(Map.of("add-distinct", List.of("hot"), "remove", List.of("responsive")));
+        assertThat(doc.getFieldValue(CommonParams.VERSION_FIELD)).isEqualTo(1L);
+        assertThat(((UpdateRequest) captor.getValue()).getParams().get("versions")).isEqualTo("true");
+        verify(solrClient).commit(true, true, true);
+        assertThat(events).containsExactly(new EmailsIndexedEvent(2));
+        assertThat(registry.counter("indexing.tags.documents", "result", "not_found").count()).isEqualTo(1);
+    }
+
+    @Test
+    void skipsEmailsWhoseVersionChanged() throws Exception {
+        stored(Map.of("id-1", 10L, "id-2", 20L));
+        when(solrClient.request(any(SolrRequest.class), any())).thenReturn(added(Map.of("id-1", 11L)));
+
+        TagUpdateResponse response = tagService.update(
+                add(List.of("id-1", "id-2"), List.of("hot"), Map.of("id-1", 10L, "id-2", 19L)), false);
+
+        assertThat(response.updated()).isEqualTo(1);
+        assertThat(response.failures()).containsExactly(
+                new TagUpdateResponse.Failure("id-2", "Version conflict: expected 19, found 20"));
+        ArgumentCaptor<SolrRequest<?>> captor = ArgumentCaptor.forClass(SolrRequest.class);
+        verify(solrClient).request(captor.capture(), any());
+        assertThat(docs(captor.getValue())).hasSize(1);
+        assertThat(docs(captor.getValue()).getFirst().getFieldValue(CommonParams.VERSION_FIELD)).isEqualTo(10L);
+        assertThat(((UpdateRequest) captor.getValue()).getCommitWithin()).isEqualTo(1000);
+        verify(solrClient, never()).commit(true, true, true);
+    }
+
+    @Test
+    void reportsEmailsChangedAfterTheCheckAsConflicts() throws Exception {
+        stored(Map.of("id-1", 10L, "id-2", 20L));
+        when(solrClient.request(any(SolrRequest.class), any())).thenReturn(added(Map.of("id-1", 11L)));
+
+        TagUpdateResponse response = tagService.update(
+                add(List.of("id-1", "id-2"), List.of("hot"), Map.of("id-1", 10L, "id-2", 20L)), true);
+
+        assertThat(response.updated()).isEqualTo(1);
+        assertThat(response.versions()).containsOnlyKeys("id-1");
+        assertThat(response.failures()).containsExactly(
+                new TagUpdateResponse.Failure("id-2", EmailTagService.CONCURRENT_UPDATE));
+        ArgumentCaptor<SolrRequest<?>> captor = ArgumentCaptor.forClass(SolrRequest.class);
+        verify(solrClient).request(captor.capture(), any());
+        assertThat(((UpdateRequest) captor.getValue()).getParams().get("failOnVersionConflicts")).isEqualTo("false");
+    }
+
+    @Test
+    void countsEmailsSolrUpdatedBeforeADeletedOne() throws Exception {
+        when(solrClient.getById(anyCollection(), any(SolrParams.class)))
+                .thenReturn(list(doc("id-1", 10L), doc("id-2", 20L), doc("id-3", 30L)))
+                .thenReturn(list(doc("id-1", 11L, "hot"), doc("id-3", 30L)));
+        when(solrClient.request(any(SolrRequest.class), any()))
+                .thenThrow(new SolrException(SolrException.ErrorCode.CONFLICT, "Document not found for update"))
+                .thenReturn(added(Map.of("id-3", 31L)));
+
+        TagUpdateResponse response = tagService.update(
+                add(List.of("id-1", "id-2", "id-3"), List.of("hot"), Map.of("id-1", 10L)), true);
+
+        assertThat(response.updated()).isEqualTo(2);
+        assertThat(response.versions()).containsEntry("id-1", 11L).containsEntry("id-3", 31L);
+        assertThat(response.failures()).containsExactly(new TagUpdateResponse.Failure("id-2", EmailTagService.NOT_FOUND));
+        ArgumentCaptor<SolrRequest<?>> captor = ArgumentCaptor.forClass(SolrRequest.class);
+        verify(solrClient, times(2)).request(captor.capture(), any());
+        assertThat(docs(captor.getAllValues().get(1))).extracting(doc -> doc.getFieldValue(EmailDocument.FIELD_ID))
+                .containsExactly("id-3");
+        assertThat(events).containsExactly(new EmailsIndexedEvent(2));
+        assertThat(registry.counter("indexing.tags.documents", "result", "updated").count()).isEqualTo(2);
+    }
+
+    @Test
+    void reportsEmailsChangedByOthersDuringAFailedUpdate() throws Exception {
+        when(solrClient.getById(anyCollection(), any(SolrParams.class)))
+                .thenReturn(list(doc("id-1", 10L), doc("id-2", 20L)))
+                .thenReturn(list(doc("id-1", 12L, "cold")));
+        when(solrClient.request(any(SolrRequest.class), any()))
+                .thenThrow(new SolrException(SolrException.ErrorCode.CONFLICT, "Document not found for update"));
+
+        TagUpdateResponse response = tagService.update(add(List.of("id-1", "id-2"), List.of("hot"), null), true);
+
+        assertThat(response.updated()).isZero();
+        assertThat(response.failures()).containsExactly(
+                new TagUpdateResponse.Failure("id-1", EmailTagService.CONCURRENT_UPDATE),
+                new TagUpdateResponse.Failure("id-2", EmailTagService.NOT_FOUND));
+        verify(solrClient, times(1)).request(any(SolrRequest.class), any());
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void setReplacesAllTags() throws Exception {
+        stored(Map.of("id-1", 10L));
+        when(solrClient.request(any(SolrRequest.class), any())).thenReturn(added(Map.of("id-1", 11L)));
+
+        tagService.update(new TagUpdateRequest(List.of("id-1"), null, null, List.of(), null), true);
+
+        ArgumentCaptor<SolrRequest<?>> captor = ArgumentCaptor.forClass(SolrRequest.class);
+        verify(solrClient).request(captor.capture(), any());
+        assertThat(docs(captor.getValue()).getFirst().getFieldValue(EmailDocument.FIELD_TAGS))
+                .isEqualTo(Map.of("set", List.of()));
+    }
+
+    @Test
+    void sendsIdsInBatches() throws Exception {
+        properties.setTagUpdateBatchSize(2);
+        tagService = new EmailTagService(solrClient, events::add, properties, registry);
+        stored(Map.of());
+
+        TagUpdateResponse response = tagService.update(add(List.of("id-1", "id-2", "id-3"), List.of("hot"), null), true);
+
+        assertThat(response.failures()).hasSize(3);
+        verify(solrClient, times(2)).getById(anyCollection(), any(SolrParams.class));
+        verify(solrClient, never()).request(any(SolrRequest.class), any());
+        verify(solrClient, never()).commit(true, true, true);
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void rejectsInvalidRequests() {
+        properties.setTagUpdateMaxIds(2);
+        tagService = new EmailTagService(solrClient, events::add, properties, registry);
+
+        assertThatThrownBy(() -> tagService.update(new TagUpdateRequest(
+                List.of("id-1"), List.of("hot"), null, List.of("cold"), null), false))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("set cannot be combined with add or remove");
+        assertThatThrownBy(() -> tagService.update(new TagUpdateRequest(
+                List.of("id-1"), List.of(), null, null, null), false))
+                .hasMessageStartingWith("Nothing to update");
+        assertThatThrownBy(() -> tagService.update(new TagUpdateRequest(
+                List.of("id-1"), List.of("hot"), List.of("HOT"), null, null), false))
+                .hasMessage("Tags both added and removed: hot");
+        assertThatThrownBy(() -> tagService.update(add(List.of("id-1"), List.of(" "), null), false))
+                .hasMessage("Tags must not be blank");
+        assertThatThrownBy(() -> tagService.update(add(List.of("id-1", "id-2", "id-3"), List.of("hot"), null), false))
+                .hasMessage("At most 2 ids can be updated per request");
+        assertThatThrownBy(() -> tagService.update(add(List.of("id-1"), List.of("hot"), Map.of("id-2", 1L)), false))
+                .hasMessage("versions must only name emails listed in ids");
+        verifyNoInteractions(solrClient);
+    }
+}
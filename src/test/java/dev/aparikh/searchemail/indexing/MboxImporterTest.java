@@ -0,0 +1,81 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MboxImporterTest {
+
+    @Mock
+    private EmailIngestQueue ingestQueue;
+
+    @TempDir
+    Path directory;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    private static String message(int i) {
+        return "From sender@test.com Wed Jan  1 10:00:00 2025\n"
+                + "Message-ID: <" + i + "@test.com>\n"
+                + "Date: Wed, 01 Jan 2025 10:00:0" + i + " +0000\n"
+                + "From: sender@test.com\n"
+                + "To: recipient@test.com\n"
+                + "Subject: Message " + i + "\n\n"
+                + "Body " + i + "\n\n";
+    }
+
+    @Test
+    void importsMboxAndEmlFilesInBatches() throws Exception {
+        when(ingestQueue.submit(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        Files.writeString(directory.resolve("a.mbox"), message(0) + message(1) + message(2)
+                + "From nobody Wed Jan  1 10:00:00 2025\nSubject: no date\n\nBody\n");
+        Files.writeString(directory.resolve("b.eml"), message(3).substring(message(3).indexOf('\n') + 1));
+
+        MboxImporter.Result result = new MboxImporter(ingestQueue, pool, 2).importPath(directory);
+
+        assertThat(result.imported()).isEqualTo(4);
+        assertThat(result.skipped()).isEqualTo(1);
+        assertThat(result.failed()).isZero();
+        ArgumentCaptor<List<EmailDocument>> captor = ArgumentCaptor.forClass(List.class);
+        verify(ingestQueue, times(3)).submit(captor.capture());
+        assertThat(captor.getAllValues().stream().flatMap(List::stream).map(EmailDocument::id))
+                .containsExactly("0@test.com", "1@test.com", "2@test.com", "3@test.com");
+        assertThat(captor.getAllValues().getFirst()).hasSize(2);
+    }
+
+    @Test
+    void countsBatchesSolrRejected() throws Exception {
+        when(ingestQueue.submit(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Failed to index emails")));
+        Path file = directory.resolve("archive.mbox");
+        Files.writeString(file, message(0) + message(1));
+
+        MboxImporter.Result result = new MboxImporter(ingestQueue, pool, 2).importPath(file);
+
+        assertThat(result.imported()).isZero();
+        assertThat(result.failed()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,77 @@
+package dev.aparikh.searchemail.indexing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MboxReaderTest {
+
+    private static final String MBOX = """
+            From alice@test.com Wed Jan  1 10:00:00 2025
+            Subject: one
+
+            First
+            >From inside the body
+
+            From bob@test.com Wed Jan  1 11:00:00 2025
+            Subject: two
+
+            Second
+
+            From carol@test.com Wed Jan  1 12:00:00 2025
+            Subject: three
+
+            Third
+            """;
+
+    @TempDir
+    Path directory;
+
+    private List<String> read(String content, long windowBytes) throws IOException {
+        Path file = directory.resolve("archive.mbox");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        List<String> messages = new ArrayList<>();
+        try (MboxReader reader = new MboxReader(file, windowBytes)) {
+            for (ByteBuffer message; (message = reader.next()) != null; ) {
+                messages.add(StandardCharsets.UTF_8.decode(message).toString());
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    void splitsMessagesOnFromLines() throws IOException {
+        assertThat(read(MBOX, MboxReader.DEFAULT_WINDOW_BYTES)).containsExactly(
+                "Subject: one\n\nFirst\n>From inside the body\n\n",
+                "Subject: two\n\nSecond\n\n",
+                "Subject: three\n\nThird\n");
+    }
+
+    @Test
+    void remapsWhenAMessageCrossesTheWindow() throws IOException {
+        assertThat(read(MBOX, 100)).isEqualTo(read(MBOX, MboxReader.DEFAULT_WINDOW_BYTES));
+    }
+
+    @Test
+    void skipsWhatComesBeforeTheFirstMessage() throws IOException {
+        assertThat(read("garbage\n" + MBOX, MboxReader.DEFAULT_WINDOW_BYTES)).hasSize(3);
+        assertThat(read("", MboxReader.DEFAULT_WINDOW_BYTES)).isEmpty();
+    }
+
+    @Test
+    void rejectsMessagesLargerThanTheWindow() {
+        assertThatThrownBy(() -> read(MBOX, 40))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("larger than 40 bytes");
+    }
+}
@@ -0,0 +1,126 @@
+package dev.aparikh.searchemail.indexing;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MimeMessageParserTest {
+
+    private static EmailDocument parse(String message) {
+        return MimeMessageParser.parse(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void parsesHeadersAndPlainBody() {
+        EmailDocument email = parse("""
+                Message-ID: <abc@mail.test.com>\r
+                Date: Wed, 1 Jan 2025 10:00:00 +0100 (CET)\r
+                From: "Doe, John" <John.Doe@test.com>\r
+                To: alice@test.com, Bob <bob@other.com>\r
+                Cc: undisclosed-recipients:;\r
+                Subject: Quarterly\r
+                 numbers\r
+                \r
+                Hello,\r
+                >From the desk of John\r
+                """);
+
+        assertThat(email.id()).isEqualTo("abc@mail.test.com");
+        assertThat(email.sentAt()).isEqualTo(Instant.parse("2025-01-01T09:00:00Z"));
+        assertThat(email.from()).isEqualTo("John.Doe@test.com");
+        assertThat(email.to()).containsExactly("alice@test.com", "bob@other.com");
+        assertThat(email.cc()).isEmpty();
+        assertThat(email.bcc()).isEmpty();
+        assertThat(email.subject()).isEqualTo("Quarterly numbers");
+        assertThat(email.body()).isEqualTo("Hello,\nFrom the desk of John");
+    }
+
+    @Test
+    void decodesEncodedWordsAndNamedZones() {
+        EmailDocument email = parse("""
+                Date: 1 Jan 2025 10:00:00 EST
+                From: =?UTF-8?Q?J=C3=BCrgen?= <juergen@test.com>
+                Subject: =?UTF-8?B?R3LDvMOfZQ==?= =?ISO-8859-1?Q?_und_mehr?=
+
+                Body
+                """);
+
+        assertThat(email.sentAt()).isEqualTo(Instant.parse("2025-01-01T15:00:00Z"));
+        assertThat(email.from()).isEqualTo("juergen@test.com");
+        assertThat(email.subject()).isEqualTo("Grüße und mehr");
+    }
+
+    @Test
+    void prefersThePlainPartOfMultipartMessages() {
+        EmailDocument email = parse("""
+                Date: Wed, 01 Jan 2025 10:00:00 GMT
+                Content-Type: multipart/mixed; boundary="outer"
+
+                preamble
+                --outer
+                Content-Type: multipart/alternative; boundary=inner
+
+                --inner
+                Content-Type: text/html; charset=utf-8
+
+                <p>Ignored</p>
+                --inner
+                Content-Type: text/plain; charset=utf-8
+                Content-Transfer-Encoding: quoted-printable
+
+                Gr=C3=BC=C3=9Fe, a long line that was =
+                wrapped
+                --inner--
+                --outer
+                Content-Type: text/plain
+                Content-Disposition: attachment; filename=notes.txt
+                Content-Transfer-Encoding: base64
+
+                bm90ZXM=
+                --outer--
+                """);
+
+        assertThat(email.body()).isEqualTo("Grüße, a long line that was wrapped");
+    }
+
+    @Test
+    void fallsBackToHtmlWithoutMarkup() {
+        EmailDocument email = parse("""
+                Date: Wed, 01 Jan 2025 10:00:00 GMT
+                Content-Type: text/html; charset=ISO-8859-1
+                Content-Transfer-Encoding: base64
+
+                PHN0eWxlPnB7fTwvc3R5bGU+PHA+RmlzaCAmYW1wOyBjaGlwczwvcD4=
+                """);
+
+        assertThat(email.body()).isEqualTo("Fish & chips");
+    }
+
+    @Test
+    void derivesAnIdFromTheContentWithoutMessageId() {
+        String message = "Date: Wed, 01 Jan 2025 10:00:00 GMT\n\nBody\n";
+
+        assertThat(parse(message).id()).hasSize(64).isEqualTo(parse(message).id());
+        assertThat(parse(message + "changed").id()).isNotEqualTo(parse(message).id());
+    }
+
+    @Test
+    void rejectsMessagesWithoutADate() {
+        assertThatThrownBy(() -> parse("From: a@test.com\n\nBody\n"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Missing or invalid Date header");
+    }
+
+    @Test
+    void parsesAddressListsWithCommentsAndQuotes() {
+        assertThat(MimeMessageParser.addresses("a@test.com (Alice), \"Smith; Bob\" <bob@test.com>, Team: c@test.com, d@test.com;"))
+                .isEqualTo(List.of("a@test.com", "bob@test.com", "c@test.com", "d@test.com"));
+    }
+}
@@ -0,0 +1,87 @@
+package dev.aparikh.searchemail.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveBatchSizeTest {
+
+    private static final AdaptiveBatchSize.Limits LIMITS =
+            new AdaptiveBatchSize.Limits(100, 5000, Duration.ofMillis(500), 1_000_000);
+
+    @Test
+    void startsFromTheRequestedBatchSize() {
+        assertThat(LIMITS.start(1000).rows()).isEqualTo(1000);
+        // Bounds apply to adjustments, not to what the client asked for
+        assertThat(LIMITS.start(10).rows()).isEqualTo(10);
+    }
+
+    @Test
+    void growsAtMostTwofoldWhenPagesAreFastAndSmall() {
+        AdaptiveBatchSize sizing = LIMITS.start(1000);
+
+        sizing.observe(1000, 10, 1000 * 100L);
+        assertThat(sizing.rows()).isEqualTo(2000);
+        sizing.observe(2000, 20, 2000 * 100L);
+        assertThat(sizing.rows()).isEqualTo(4000);
+        sizing.observe(4000, 40, 4000 * 100L);
+        assertThat(sizing.rows()).isEqualTo(5000);
+    }
+
+    @Test
+    void shrinksTowardsTheByteBudgetForLargeDocuments() {
+        AdaptiveBatchSize sizing = LIMITS.start(1000);
+
+        // 10KB per document: 100 rows fit the 1MB budget
+        sizing.observe(1000, 50, 1000 * 10_000L);
+        assertThat(sizing.rows()).isEqualTo(500);
+        sizing.observe(500, 25, 500 * 10_000L);
+        assertThat(sizing.rows()).isEqualTo(250);
+        sizing.observe(250, 12, 250 * 10_000L);
+        assertThat(sizing.rows()).isEqualTo(125);
+        sizing.observe(125, 6, 125 * 10_000L);
+        assertThat(sizing.rows()).isEqualTo(100);
+        sizing.observe(100, 5, 100 * 10_000L);
+        assertThat(sizing.rows()).isEqualTo(100);
+    }
+
+    @Test
+    void shrinksTowardsTheTargetLatencyForSlowPages() {
+        AdaptiveBatchSize sizing = LIMITS.start(1000);
+
+        sizing.observe(1000, 800, 1000 * 100L);
+
+        assertThat(sizing.rows()).isEqualTo(625);
+    }
+
+    @Test
+    void staysWithinTheBounds() {
+        AdaptiveBatchSize small = LIMITS.start(10);
+        small.observe(10, 1, 10 * 100_000L);
+        assertThat(small.rows()).isEqualTo(100);
+
+        AdaptiveBatchSize large = LIMITS.start(4000);
+        large.observe(4000, 1, 4000L);
+        assertThat(large.rows()).isEqualTo(5000);
+    }
+
+    @Test
+    void ignoresShortPagesAndUnknownQTime() {
+        AdaptiveBatchSize sizing = LIMITS.start(1000);
+
+        sizing.observe(10, 5000, 10 * 1_000_000L);
+        assertThat(sizing.rows()).isEqualTo(1000);
+
+        sizing.observe(1000, -1, 1000 * 100L);
+        assertThat(sizing.rows()).isEqualTo(2000);
+    }
+
+    @Test
+    void rejectsInvertedBounds() {
+        assertThatThrownBy(() -> new AdaptiveBatchSize.Limits(500, 100, Duration.ofMillis(500), 1_000_000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -75,6 +75,14 @@ class CrossFirmBccVisibilityTest {
             addField(core, EmailDocument.FIELD_CC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
             addField(core, EmailDocument.FIELD_BCC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
             addField(core, EmailDocument.FIELD_SENT_AT, Map.of("type", "pdate", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true));
+            addField(core, EmailDocument.FIELD_TO_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_ANY_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_VISIBLE_PARTICIPANT, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CONTENT_HASH, Map.of("type", "string", "stored", true, "indexed", false));
+            addField(core, EmailDocument.FIELD_TAGS, Map.of("type", "string", "stored", true, "indexed", true, "docValues", true, "multiValued", true));
         }
     }
 
@@ -0,0 +1,96 @@
+package dev.aparikh.searchemail.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailQueryBuilderTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T10:00:00Z");
+    private static final Instant END = Instant.parse("2025-01-01T11:00:00Z");
+    private static final TimeFilterMetrics METRICS = new TimeFilterMetrics(new SimpleMeterRegistry());
+
+    private static SearchProperties postFilterProperties() {
+        SearchProperties properties = new SearchProperties();
+        properties.setPrivacyFilterMode(PrivacyFilterMode.POST_FILTER);
+        properties.setDomainFieldsEnabled(true);
+        return properties;
+    }
+
+    @Test
+    void usesPostFilterWhenPluginIsAvailable() {
+        EmailQueryBuilder builder = new EmailQueryBuilder(postFilterProperties(), () -> true, METRICS);
+        SearchQuery query = new SearchQuery(START, END, null, List.of("Alice@acme.com", "bob@other.com"), "Acme.com", 0, 100, null);
+
+        SolrQuery q = builder.build(query);
+
+        assertThat(q.getFilterQueries()).containsExactly(
+                "sent_at:[2025-01-01T10:00:00Z TO 2025-01-01T11:00:00Z]",
+                "{!cache=true}any_domain:acme.com",
+                "{!emailprivacy admin='acme.com' participants='alice@acme.com,bob@other.com' cache=false cost=200}");
+    }
+
+    @Test
+    void postFilterWithoutAdminFirmOmitsAdminParam() {
+        EmailQueryBuilder builder = new EmailQueryBuilder(postFilterProperties(), () -> true, METRICS);
+        SearchQuery query = new SearchQuery(START, END, null, List.of("alice@acme.com"), null, 0, 100, null);
+
+        SolrQuery q = builder.build(query);
+
+        assertThat(q.getFilterQueries()).containsExactly(
+                "sent_at:[2025-01-01T10:00:00Z TO 2025-01-01T11:00:00Z]",
+                "{!emailprivacy participants='alice@acme.com' cache=false cost=200}");
+    }
+
+    @Test
+    void fallsBackToBooleanFiltersWhenPluginIsMissing() {
+        EmailQueryBuilder builder = new EmailQueryBuilder(postFilterProperties(), () -> false, METRICS);
+        SearchQuery query = new SearchQuery(START, END, null, List.of("alice@acme.com"), "acme.com", 0, 100, null);
+
+        SolrQuery q = builder.build(query);
+
+        assertThat(q.getFilterQueries()).containsExactly(
+                "sent_at:[2025-01-01T10:00:00Z TO 2025-01-01T11:00:00Z]",
+                "{!cache=true}any_domain:acme.com",
+                "{!cache=false cost=100}filter(from_addr:alice@acme.com OR to_addr:alice@acme.com OR cc_addr:alice@acme.com OR bcc_addr:alice@acme.com)");
+    }
+
+    @Test
+    void splitsTimeFilterIntoCachedWholeDaysAndUncachedEdges() {
+        EmailQueryBuilder builder = new EmailQueryBuilder(new SearchProperties(), () -> false, METRICS);
+        SearchQuery query = new SearchQuery(Instant.parse("2025-01-03T15:30:00Z"), Instant.parse("2025-01-10T08:00:00Z"),
+                null, null, "acme.com", 0, 100, null);
+
+        assertThat(builder.build(query).getFilterQueries()).containsExactly(
+                "{!cache=false}filter(sent_at:[2025-01-04T00:00:00Z TO 2025-01-10T00:00:00Z})"
+                        + " OR sent_at:[2025-01-03T15:30:00Z TO 2025-01-04T00:00:00Z}"
+                        + " OR sent_at:[2025-01-10T00:00:00Z TO 2025-01-10T08:00:00Z]");
+    }
+
+    @Test
+    void keepsExactTimeFilterWhenConfigured() {
+        SearchProperties properties = new SearchProperties();
+        properties.setTimeFilterStrategy(TimeFilterStrategy.EXACT);
+        EmailQueryBuilder builder = new EmailQueryBuilder(properties, () -> false, METRICS);
+        SearchQuery query = new SearchQuery(Instant.parse("2025-01-03T15:30:00Z"), Instant.parse("2025-01-10T08:00:00Z"),
+                null, null, "acme.com", 0, 100, null);
+
+        assertThat(builder.build(query).getFilterQueries())
+                .containsExactly("sent_at:[2025-01-03T15:30:00Z TO 2025-01-10T08:00:00Z]");
+    }
+
+    @Test
+    void doesNotProbeForPluginInOtherModes() {
+        EmailQueryBuilder builder = new EmailQueryBuilder(new SearchProperties(), () -> {
+            throw new AssertionError("plugin probed");
+        }, METRICS);
+        SearchQuery query = new SearchQuery(START, END, null, List.of("alice@acme.com"), "acme.com", 0, 100, null);
+
+        assertThat(builder.build(query).getFilterQueries()).hasSize(3);
+    }
+}
@@ -2,20 +2,34 @@ package dev.aparikh.searchemail.search;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.aparikh.searchemail.api.SearchRequest;
+import dev.aparikh.searchemail.api.StreamSearchRequest;
 import dev.aparikh.searchemail.model.EmailDocument;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Flux;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 import java.time.Instant;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -39,8 +53,8 @@ class EmailSearchControllerTest {
                 List.of("to@test.com"), List.of(), List.of(), now
         );
 
-        when(emailSearchService.search(any(SearchQuery.class))).thenReturn(List.of(email));
-        when(emailSearchService.getHitCount(any(SearchQuery.class))).thenReturn(1L);
+        when(emailSearchService.searchPage(any(SearchQuery.class)))
+                .thenReturn(new SearchResult(List.of(email), 1, 0, 100, 1, null));
 
         SearchRequest request = new SearchRequest(
                 now.minusSeconds(3600),
@@ -66,10 +80,12 @@ class EmailSearchControllerTest {
                 .andExpect(jsonPath("$.totalCount").value(1))
                 .andExpect(jsonPath("$.page").value(0))
                 .andExpect(jsonPath("$.size").value(100))
-                .andExpect(jsonPath("$.totalPages").value(1));
+                .andExpect(jsonPath("$.totalPages").value(1))
+                .andExpect(jsonPath("$.totalCountExact").value(true));
 
-        verify(emailSearchService).search(any(SearchQuery.class));
-        verify(emailSearchService).getHitCount(any(SearchQuery.class));
+        // One Solr round trip per page: no separate hit count request
+        verify(emailSearchService).searchPage(any(SearchQuery.class));
+        verify(emailSearchService, never()).getHitCount(any(SearchQuery.class));
     }
 
     @Test
@@ -125,7 +141,7 @@ class EmailSearchControllerTest {
     @Test
     void searchEmailsHandlesServiceException() throws Exception {
         Instant now = Instant.parse("2025-01-01T10:00:00Z");
-        when(emailSearchService.search(any(SearchQuery.class)))
+        when(emailSearchService.searchPage(any(SearchQuery.class)))
                 .thenThrow(new RuntimeException("Search failed"));
 
         SearchRequest request = new SearchRequest(
@@ -154,7 +170,7 @@ class EmailSearchControllerTest {
         Instant now = Instant.parse("2025-01-01T10:00:00Z");
 
         // This will trigger IllegalArgumentException from SearchQuery constructor
-        when(emailSearchService.search(any(SearchQuery.class)))
+        when(emailSearchService.searchPage(any(SearchQuery.class)))
                 .thenThrow(new IllegalArgumentException("end must be >= start"));
 
         SearchRequest request = new SearchRequest(
@@ -234,8 +250,8 @@ class EmailSearchControllerTest {
                 List.of("to@test.com"), List.of(), List.of(), now
         );
 
-        when(emailSearchService.search(any(SearchQuery.class))).thenReturn(List.of(email));
-        when(emailSearchService.getHitCount(any(SearchQuery.class))).thenReturn(50L);
+        when(emailSearchService.searchPage(any(SearchQuery.class)))
+                .thenReturn(new SearchResult(List.of(email), 50, 2, 10, 5, null));
 
         SearchRequest request = new SearchRequest(
                 now.minusSeconds(3600),
@@ -259,4 +275,132 @@ class EmailSearchControllerTest {
                 .andExpect(jsonPath("$.totalPages").value(5))
                 .andExpect(jsonPath("$.totalCount").value(50));
     }
-}
\ No newline at end of file
+
+    @Test
+    void searchEmailsPassesMinExactCountAndReportsLowerBound() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        when(emailSearchService.searchPage(any(SearchQuery.class)))
+                .thenReturn(new SearchResult(List.of(), 1000, 0, 100, 10, null, false));
+
+        SearchRequest request = new SearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null, null,
+                "test.com", null, null, null, null, null, 1000);
+
+        mockMvc.perform(post("/api/emails/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalCount").value(1000))
+                .andExpect(jsonPath("$.totalCountExact").value(false));
+
+        ArgumentCaptor<SearchQuery> captor = ArgumentCaptor.forClass(SearchQuery.class);
+        verify(emailSearchService).searchPage(captor.capture());
+        assertThat(captor.getValue().minExactCount()).isEqualTo(1000);
+    }
+
+    @Test
+    void exportEmailsWritesNdjson() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        List<EmailDocument> emails = List.of(
+                new EmailDocument("1", "S1", "B1", "from@test.com", List.of("to@test.com"), List.of(), List.of(), now),
+                new EmailDocument("2", "S2", "B2", "from@test.com", List.of("to@test.com"), List.of(), List.of(), now));
+        when(emailSearchService.searchStream(any(SearchQuery.class), eq(50), isNull())).thenReturn(Flux.fromIterable(emails));
+
+        StreamSearchRequest request = new StreamSearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                List.of("to@test.com"), "test.com", 50);
+
+        MvcResult started = mockMvc.perform(post("/api/emails/export")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[0], EmailDocument.class)).isEqualTo(emails.get(0));
+        assertThat(objectMapper.readValue(lines[1], EmailDocument.class)).isEqualTo(emails.get(1));
+    }
+
+    @Test
+    void exportEmailsCompressesWhenGzipIsAccepted() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        EmailDocument email = new EmailDocument("1", "S1", "B1", "from@test.com", List.of("to@test.com"),
+                List.of(), List.of(), now);
+        when(emailSearchService.searchStream(any(SearchQuery.class), eq(1000), isNull())).thenReturn(Flux.just(email));
+
+        StreamSearchRequest request = new StreamSearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                null, "test.com", null);
+
+        MvcResult started = mockMvc.perform(post("/api/emails/export")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+
+        byte[] body = result.getResponse().getContentAsByteArray();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            String line = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            assertThat(objectMapper.readValue(line, EmailDocument.class)).isEqualTo(email);
+        }
+    }
+
+    @Test
+    void exportEmailsRejectsNonPositiveBatchSize() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        StreamSearchRequest request = new StreamSearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                null, "test.com", 0);
+
+        mockMvc.perform(post("/api/emails/export")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamEmailsTagsEventsWithResumeTokensAndResumesFromLastEventId() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        EmailDocument email = new EmailDocument("7", "S", "B", "from@test.com", List.of("to@test.com"),
+                List.of(), List.of(), now);
+        ResumeToken lastSeen = new ResumeToken(now.minusSeconds(60), "6");
+        when(emailSearchService.searchStream(any(SearchQuery.class), eq(1000), eq(lastSeen)))
+                .thenReturn(Flux.just(email));
+
+        StreamSearchRequest request = new StreamSearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                null, "test.com", null);
+
+        MvcResult started = mockMvc.perform(post("/api/emails/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Last-Event-ID", lastSeen.encode())
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(
+                        "id:" + new ResumeToken(now, "7").encode() + "\n")));
+    }
+
+    @Test
+    void streamEmailsRejectsMalformedLastEventId() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        StreamSearchRequest request = new StreamSearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                null, "test.com", null);
+
+        mockMvc.perform(post("/api/emails/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Last-Event-ID", "not a token")
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid resume token"));
+    }
+}
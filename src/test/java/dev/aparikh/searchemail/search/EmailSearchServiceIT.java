@@ -6,6 +6,7 @@ import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrInputDocument;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,6 +20,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
 import java.time.Instant;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -94,6 +96,14 @@ class EmailSearchServiceIT {
             addField(core, EmailDocument.FIELD_CC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
             addField(core, EmailDocument.FIELD_BCC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
             addField(core, EmailDocument.FIELD_SENT_AT, Map.of("type", "pdate", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true));
+            addField(core, EmailDocument.FIELD_TO_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_ANY_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_VISIBLE_PARTICIPANT, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CONTENT_HASH, Map.of("type", "string", "stored", true, "indexed", false));
+            addField(core, EmailDocument.FIELD_TAGS, Map.of("type", "string", "stored", true, "indexed", true, "docValues", true, "multiValued", true));
         }
     }
 
@@ -420,7 +430,91 @@ class EmailSearchServiceIT {
                 .doesNotContain("24");
     }
 
+    @Test
+    void backfillMakesLegacyDocumentsVisibleToDomainFieldFilters() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:15:30Z");
+
+        // Simulate a document indexed before the derived domain fields existed
+        SolrInputDocument legacy = new SolrInputDocument();
+        legacy.addField(EmailDocument.FIELD_ID, "30");
+        legacy.addField(EmailDocument.FIELD_SUBJECT, "Legacy");
+        legacy.addField(EmailDocument.FIELD_FROM, "alice@acme.com");
+        legacy.addField(EmailDocument.FIELD_TO, "bob@other.com");
+        legacy.addField(EmailDocument.FIELD_SENT_AT, Date.from(now));
+        solrClient.add(legacy);
+        solrClient.commit();
+
+        SearchQuery crossFirm = createSearchQuery(now.minusSeconds(3600), now.plusSeconds(3600), null, "bob@other.com", "acme.com");
+        assertThat(searchService.search(crossFirm)).isEmpty();
+
+        long updated = indexService.backfillDerivedFields(10);
+
+        assertThat(updated).isEqualTo(1);
+        List<EmailDocument> results = searchService.search(crossFirm);
+        assertThat(results).extracting(EmailDocument::id).containsExactly("30");
+        assertThat(results.get(0).subject()).isEqualTo("Legacy");
+        assertThat(indexService.backfillDerivedFields(10)).isZero();
+    }
+
+    @Test
+    void timeFilterStrategiesReturnSameHitsAroundDayAndMonthBoundaries() {
+        Instant start = Instant.parse("2025-01-30T18:00:00Z");
+        Instant end = Instant.parse("2025-03-02T06:00:00Z");
+        List<Instant> sentTimes = List.of(
+                start.minusSeconds(1), start, Instant.parse("2025-01-31T00:00:00Z"), Instant.parse("2025-01-31T23:59:59Z"),
+                Instant.parse("2025-02-01T00:00:00Z"), Instant.parse("2025-02-28T23:59:59Z"), Instant.parse("2025-03-01T00:00:00Z"),
+                Instant.parse("2025-03-02T00:00:00Z"), end, end.plusSeconds(1));
+        List<EmailDocument> emails = new java.util.ArrayList<>();
+        for (int i = 0; i < sentTimes.size(); i++) {
+            emails.add(new EmailDocument("t" + i, "Time " + i, "Boundary", "sender@test.com",
+                    List.of("recipient@test.com"), List.of(), List.of(), sentTimes.get(i)));
+        }
+        indexService.indexAll(emails);
+
+        SearchQuery query = createSearchQuery(start, end, null, "recipient@test.com", "test.com");
+        for (TimeFilterStrategy strategy : TimeFilterStrategy.values()) {
+            SearchProperties properties = new SearchProperties();
+            properties.setTimeFilterStrategy(strategy);
+            EmailSearchService service = new EmailSearchService(solrClient, properties);
+
+            assertThat(service.search(query)).as("hits with %s time filter", strategy)
+                    .extracting(EmailDocument::id)
+                    .containsExactlyInAnyOrder("t1", "t2", "t3", "t4", "t5", "t6", "t7", "t8");
+        }
+    }
+
     // Helper method to create SearchQuery with single participant
+    @Test
+    void searchPageMatchesSearchPlusHitCount() {
+        Instant now = Instant.parse("2025-01-01T10:15:30Z");
+        List<EmailDocument> emails = new java.util.ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            emails.add(new EmailDocument("p" + i, "report " + i, "b", "alice@acme.com",
+                    List.of("bob@acme.com"), List.of(), List.of(), now.plusSeconds(i)));
+        }
+        indexService.indexAll(emails);
+        SearchQuery query = new SearchQuery(now.minusSeconds(60), now.plusSeconds(60), null, List.of("alice@acme.com"),
+                "acme.com", 1, 7, null, null, "sent_at asc");
+
+        SearchResult page = searchService.searchPage(query);
+
+        assertThat(page.emails()).isEqualTo(searchService.search(query));
+        assertThat(page.totalCount()).isEqualTo(searchService.getHitCount(query)).isEqualTo(30);
+        assertThat(page.totalPages()).isEqualTo(5);
+        assertThat(page.totalCountExact()).isTrue();
+
+        // Counting may stop early once minExactCount hits are found; the count is then a lower bound
+        SearchQuery bounded = new SearchQuery(now.minusSeconds(60), now.plusSeconds(60), "subject:report", null,
+                "acme.com", 0, 5, null, null, null, 10);
+        SearchResult boundedPage = searchService.searchPage(bounded);
+        assertThat(boundedPage.emails()).hasSize(5);
+        if (boundedPage.totalCountExact()) {
+            assertThat(boundedPage.totalCount()).isEqualTo(30);
+        } else {
+            assertThat(boundedPage.totalCount()).isBetween(10L, 30L);
+        }
+    }
+
     private SearchQuery createSearchQuery(Instant start, Instant end, String query, String participantEmail, String adminFirmDomain) {
         List<String> participants = participantEmail != null ? List.of(participantEmail) : null;
         return new SearchQuery(start, end, query, participants, adminFirmDomain, 0, 100, null);
@@ -1,27 +1,46 @@
 package dev.aparikh.searchemail.search;
 
+import dev.aparikh.searchemail.indexing.EmailsIndexedEvent;
 import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.response.RangeFacet;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import reactor.test.StepVerifier;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,9 +55,16 @@ class EmailSearchServiceTest {
 
     private EmailSearchService searchService;
 
+    // Most tests cover the privacy filters of an index with the derived domain fields
+    private static SearchProperties domainFieldProperties() {
+        SearchProperties properties = new SearchProperties();
+        properties.setDomainFieldsEnabled(true);
+        return properties;
+    }
+
     @BeforeEach
     void setUp() {
-        searchService = new EmailSearchService(solrClient);
+        searchService = new EmailSearchService(solrClient, domainFieldProperties());
     }
 
     @Test
@@ -104,14 +130,107 @@ class EmailSearchServiceTest {
 
         SolrQuery solrQuery = captor.getValue();
         String[] filterQueries = solrQuery.getFilterQueries();
-        assertThat(filterQueries).hasSize(2);
-        // New cross-firm logic: 
-        // Case 1: Cross-firm participant in FROM/TO/CC + admin firm anywhere
+        assertThat(filterQueries).hasSize(3);
+        // Admin firm participation is a separate cached filter keyed only on the admin domain
+        assertThat(filterQueries[1]).isEqualTo("{!cache=true}any_domain:domain.com");
+        // Case 1: Cross-firm participant in FROM/TO/CC
         // Case 2: Cross-firm participant in BCC + admin firm as sender
-        String visibleCaseExpr = "((from_addr:\"alice@other.com\" OR to_addr:\"alice@other.com\" OR cc_addr:\"alice@other.com\") AND (from_addr:*@domain.com OR to_addr:*@domain.com OR cc_addr:*@domain.com OR bcc_addr:*@domain.com))";
-        String bccCaseExpr = "((bcc_addr:\"alice@other.com\") AND (from_addr:*@domain.com))";
-        String expectedFilter = "(" + visibleCaseExpr + " OR " + bccCaseExpr + ")";
-        assertThat(filterQueries[1]).isEqualTo(expectedFilter);
+        String visibleCaseExpr = "filter(from_addr:alice@other.com OR to_addr:alice@other.com OR cc_addr:alice@other.com)";
+        String bccCaseExpr = "(filter(bcc_addr:alice@other.com) AND filter(from_domain:domain.com))";
+        assertThat(filterQueries[2]).isEqualTo("{!cache=false cost=100}" + visibleCaseExpr + " OR " + bccCaseExpr);
+    }
+
+    @Test
+    void searchAddsSingleParticipantExpressionWhenSplitFiltersDisabled() throws Exception {
+        setupMockResponse();
+        SearchProperties properties = domainFieldProperties();
+        properties.setSplitPrivacyFilters(false);
+        searchService = new EmailSearchService(solrClient, properties);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        SearchQuery query = createSearchQuery(start, end, null, "alice@other.com", "domain.com");
+        searchService.search(query);
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+
+        String[] filterQueries = captor.getValue().getFilterQueries();
+        assertThat(filterQueries).hasSize(2);
+        String visibleCaseExpr = "((from_addr:alice@other.com OR to_addr:alice@other.com OR cc_addr:alice@other.com) AND any_domain:domain.com)";
+        String bccCaseExpr = "(bcc_addr:alice@other.com AND from_domain:domain.com)";
+        assertThat(filterQueries[1]).isEqualTo(visibleCaseExpr + " OR " + bccCaseExpr);
+    }
+
+    @Test
+    void searchUsesWildcardAddressFiltersUnlessDomainFieldsEnabled() throws Exception {
+        setupMockResponse();
+        SearchProperties properties = new SearchProperties();
+        properties.setSplitPrivacyFilters(false);
+        searchService = new EmailSearchService(solrClient, properties);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        SearchQuery query = createSearchQuery(start, end, null, "alice@other.com", "domain.com");
+        searchService.search(query);
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+
+        String[] filterQueries = captor.getValue().getFilterQueries();
+        String visibleCaseExpr = "((from_addr:alice@other.com OR to_addr:alice@other.com OR cc_addr:alice@other.com) AND (from_addr:*@domain.com OR to_addr:*@domain.com OR cc_addr:*@domain.com OR bcc_addr:*@domain.com))";
+        String bccCaseExpr = "(bcc_addr:alice@other.com AND from_addr:*@domain.com)";
+        assertThat(filterQueries[1]).isEqualTo(visibleCaseExpr + " OR " + bccCaseExpr);
+    }
+
+    @Test
+    void searchUsesSingleTermsFilterInVisibilityFieldMode() throws Exception {
+        setupMockResponse();
+        SearchProperties properties = domainFieldProperties();
+        properties.setPrivacyFilterMode(PrivacyFilterMode.VISIBILITY_FIELD);
+        searchService = new EmailSearchService(solrClient, properties);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        SearchQuery query = new SearchQuery(start, end, null,
+                List.of("Alice@Other.com", "bob@domain.com", "alice@other.com"), "Domain.com", 0, 100, null);
+        searchService.search(query);
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+
+        String[] filterQueries = captor.getValue().getFilterQueries();
+        assertThat(filterQueries).hasSize(2);
+        assertThat(filterQueries[1])
+                .isEqualTo("{!terms f=visible_participant cache=false}domain.com|alice@other.com,domain.com|bob@domain.com");
+    }
+
+    @Test
+    void searchSendsFiltersAsJsonQueryDslWhenConfigured() throws Exception {
+        setupMockResponse();
+        SearchProperties properties = domainFieldProperties();
+        properties.setQuerySyntax(QuerySyntax.JSON);
+        searchService = new EmailSearchService(solrClient, properties);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        SearchQuery query = createSearchQuery(start, end, null, "alice@domain.com", "domain.com");
+        searchService.search(query);
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+
+        SolrQuery solrQuery = captor.getValue();
+        assertThat(solrQuery.getFilterQueries()).isNull();
+        assertThat(solrQuery.get("json")).isEqualTo("{\"filter\":["
+                + "\"sent_at:[2025-01-01T10:00:00Z TO 2025-01-01T11:00:00Z]\","
+                + "{\"term\":{\"f\":\"any_domain\",\"query\":\"domain.com\",\"cache\":true}},"
+                + "{\"bool\":{\"filter\":[{\"bool\":{\"should\":["
+                + "{\"term\":{\"f\":\"from_addr\",\"query\":\"alice@domain.com\"}},"
+                + "{\"term\":{\"f\":\"to_addr\",\"query\":\"alice@domain.com\"}},"
+                + "{\"term\":{\"f\":\"cc_addr\",\"query\":\"alice@domain.com\"}},"
+                + "{\"term\":{\"f\":\"bcc_addr\",\"query\":\"alice@domain.com\"}}]}}],"
+                + "\"cache\":false,\"cost\":100}}]}");
     }
 
     @Test
@@ -128,8 +247,9 @@ class EmailSearchServiceTest {
 
         SolrQuery solrQuery = captor.getValue();
         String[] filterQueries = solrQuery.getFilterQueries();
-        assertThat(filterQueries).hasSize(2);
-        assertThat(filterQueries[1]).isEqualTo("(from_addr:\"alice@domain.com\" OR to_addr:\"alice@domain.com\" OR cc_addr:\"alice@domain.com\" OR bcc_addr:\"alice@domain.com\")");
+        assertThat(filterQueries).hasSize(3);
+        assertThat(filterQueries[1]).isEqualTo("{!cache=true}any_domain:domain.com");
+        assertThat(filterQueries[2]).isEqualTo("{!cache=false cost=100}filter(from_addr:alice@domain.com OR to_addr:alice@domain.com OR cc_addr:alice@domain.com OR bcc_addr:alice@domain.com)");
     }
 
     @Test
@@ -270,7 +390,7 @@ class EmailSearchServiceTest {
 
         SolrQuery solrQuery = captor.getValue();
         String[] filterQueries = solrQuery.getFilterQueries();
-        assertThat(filterQueries[1]).contains("\"user\\+test@domain.com\"");
+        assertThat(filterQueries[2]).contains("bcc_addr:user\\+test@domain.com");
     }
 
     @Test
@@ -287,8 +407,9 @@ class EmailSearchServiceTest {
 
         SolrQuery solrQuery = captor.getValue();
         String[] filterQueries = solrQuery.getFilterQueries();
-        assertThat(filterQueries).hasSize(2);
-        String participantFilter = filterQueries[1];
+        assertThat(filterQueries).hasSize(3);
+        assertThat(filterQueries[1]).isEqualTo("{!cache=true}any_domain:acme.com");
+        String participantFilter = filterQueries[2];
 
         // Should contain all three participants with appropriate logic
         assertThat(participantFilter).contains("alice@acme.com");
@@ -296,22 +417,70 @@ class EmailSearchServiceTest {
         assertThat(participantFilter).contains("charlie@acme.com");
 
         // Should include BCC for same-firm participants (alice@acme.com, charlie@acme.com)
-        assertThat(participantFilter).contains("bcc_addr:\"alice@acme.com\"");
-        assertThat(participantFilter).contains("bcc_addr:\"charlie@acme.com\"");
+        assertThat(participantFilter).contains("bcc_addr:alice@acme.com");
+        assertThat(participantFilter).contains("bcc_addr:charlie@acme.com");
         
         // For cross-firm participant (bob@other.com), should have new two-case logic:
         // Case 1: bob@other.com in FROM/TO/CC AND acme.com anywhere  
         // Case 2: bob@other.com in BCC AND acme.com as sender
-        assertThat(participantFilter).contains("from_addr:\"bob@other.com\"");
-        assertThat(participantFilter).contains("to_addr:\"bob@other.com\""); 
-        assertThat(participantFilter).contains("cc_addr:\"bob@other.com\"");
-        assertThat(participantFilter).contains("bcc_addr:\"bob@other.com\"");
-        assertThat(participantFilter).contains("*@acme.com");
+        assertThat(participantFilter).contains("from_addr:bob@other.com");
+        assertThat(participantFilter).contains("to_addr:bob@other.com"); 
+        assertThat(participantFilter).contains("cc_addr:bob@other.com");
+        assertThat(participantFilter).contains("bcc_addr:bob@other.com");
+        assertThat(participantFilter).contains("filter(from_domain:acme.com)");
+        assertThat(participantFilter).doesNotContain("*@acme.com");
 
         // Should combine participants with OR
         assertThat(participantFilter).contains(" OR ");
     }
 
+    @Test
+    void searchUsesTermsFiltersForLargeParticipantLists() throws Exception {
+        setupMockResponse();
+        SearchProperties properties = domainFieldProperties();
+        properties.setTermsFilterThreshold(3);
+        searchService = new EmailSearchService(solrClient, properties);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        SearchQuery query = new SearchQuery(start, end, null,
+                List.of("Alice@acme.com", "bob@other.com", "charlie@acme.com", "alice@acme.com"), "acme.com", 0, 100, null);
+        searchService.search(query);
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+
+        SolrQuery solrQuery = captor.getValue();
+        String[] filterQueries = solrQuery.getFilterQueries();
+        assertThat(filterQueries).hasSize(3);
+        assertThat(filterQueries[1]).isEqualTo("{!cache=true}any_domain:acme.com");
+        // Identical participant lists are sent once and shared by the FROM/TO/CC lookups
+        assertThat(filterQueries[2]).isEqualTo("{!cache=false cost=100}"
+                + "{!terms f=from_addr v=$fq.terms.0} OR {!terms f=to_addr v=$fq.terms.0}"
+                + " OR {!terms f=cc_addr v=$fq.terms.0}"
+                + " OR {!terms f=bcc_addr v=$fq.terms.1}"
+                + " OR (bcc_addr:bob@other.com AND filter(from_domain:acme.com))");
+        assertThat(solrQuery.get("fq.terms.0")).isEqualTo("alice@acme.com,bob@other.com,charlie@acme.com");
+        assertThat(solrQuery.get("fq.terms.1")).isEqualTo("alice@acme.com,charlie@acme.com");
+    }
+
+    @Test
+    void searchKeepsPhraseClausesBelowTermsThreshold() throws Exception {
+        setupMockResponse();
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        SearchQuery query = new SearchQuery(start, end, null, List.of("alice@acme.com", "bob@other.com"), "acme.com", 0, 100, null);
+        searchService.search(query);
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+
+        SolrQuery solrQuery = captor.getValue();
+        assertThat(solrQuery.getFilterQueries()[2]).doesNotContain("{!terms");
+        assertThat(solrQuery.get(QueryRenderer.TERMS_PARAM_PREFIX + "0")).isNull();
+    }
+
     @Test
     void searchAppliesPaginationParameters() throws Exception {
         setupMockResponse();
@@ -329,6 +498,350 @@ class EmailSearchServiceTest {
         assertThat(solrQuery.getStart()).isEqualTo(100); // page 2 * size 50 = start at 100
     }
 
+    @Test
+    void resultCacheServesEquivalentPageQueriesUntilNextIndexCommit() throws Exception {
+        setupMockResponse();
+        SearchProperties properties = domainFieldProperties();
+        properties.setResultCacheEnabled(true);
+        SearchResultCache cache = new SearchResultCache(properties, new SimpleMeterRegistry());
+        searchService = new EmailSearchService(solrClient, properties, new SimpleMeterRegistry(), cache);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant end = Instant.parse("2025-01-01T11:00:00Z");
+
+        searchService.search(new SearchQuery(start, end, null, List.of("Bob@other.com", "alice@acme.com"), "acme.com", 0, 10,
+                null, null, "timestamp DESC"));
+        searchService.search(new SearchQuery(start, end, null, List.of("alice@acme.com", "bob@other.com"), "ACME.com", 0, 10,
+                List.of("from_addr"), null, "sent_at desc"));
+        verify(solrClient, times(1)).query(any(SolrQuery.class));
+
+        cache.onEmailsIndexed(new EmailsIndexedEvent(1));
+        searchService.search(new SearchQuery(start, end, null, List.of("alice@acme.com", "bob@other.com"), "acme.com", 0, 10,
+                null, null, "sent_at desc"));
+        verify(solrClient, times(2)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    void searchPageReturnsDocumentsAndCountFromOneRequest() throws Exception {
+        SolrDocumentList results = new SolrDocumentList();
+        results.setNumFound(45);
+        results.setNumFoundExact(true);
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "1");
+        results.add(doc);
+        when(queryResponse.getResults()).thenReturn(results);
+        when(solrClient.query(any(SolrQuery.class))).thenReturn(queryResponse);
+
+        SearchResult page = searchService.searchPage(new SearchQuery(Instant.parse("2025-01-01T10:00:00Z"),
+                Instant.parse("2025-01-01T11:00:00Z"), null, null, "domain.com", 1, 20, null));
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient, times(1)).query(captor.capture());
+        assertThat(captor.getValue().getStart()).isEqualTo(20);
+        assertThat(captor.getValue().get("minExactCount")).isNull();
+        assertThat(page.emails()).extracting(EmailDocument::id).containsExactly("1");
+        assertThat(page.totalCount()).isEqualTo(45);
+        assertThat(page.totalPages()).isEqualTo(3);
+        assertThat(page.page()).isEqualTo(1);
+        assertThat(page.totalCountExact()).isTrue();
+    }
+
+    @Test
+    void searchPageWithMinExactCountReportsLowerBound() throws Exception {
+        SolrDocumentList results = new SolrDocumentList();
+        results.setNumFound(1000);
+        results.setNumFoundExact(false);
+        when(queryResponse.getResults()).thenReturn(results);
+        when(solrClient.query(any(SolrQuery.class))).thenReturn(queryResponse);
+
+        SearchResult page = searchService.searchPage(new SearchQuery.Builder()
+                .startTime(Instant.parse("2025-01-01T10:00:00Z"))
+                .endTime(Instant.parse("2025-01-01T11:00:00Z"))
+                .query("subject:report")
+                .adminFirmDomain("domain.com")
+                .size(100)
+                .minExactCount(1000)
+                .build());
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+        assertThat(captor.getValue().get("minExactCount")).isEqualTo("1000");
+        assertThat(page.totalCount()).isEqualTo(1000);
+        assertThat(page.totalCountExact()).isFalse();
+    }
+
+    @Test
+    void searchStreamPagesWithCursorMarkInSortOrder() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(streamed("AoE1", "1", "2"))
+                .thenAnswer(streamed("AoE2", "3"));
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, "alice@acme.com", "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 2).map(EmailDocument::id))
+                .expectNext("1", "2", "3")
+                .verifyComplete();
+
+        // Short second page ends the stream; no hit count request up front
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient, times(2)).queryAndStreamResponse(captor.capture(), any(StreamingResponseCallback.class));
+        verify(solrClient, never()).query(any(SolrQuery.class));
+        SolrQuery firstPage = captor.getAllValues().get(0);
+        assertThat(firstPage.get(CursorMarkParams.CURSOR_MARK_PARAM)).isEqualTo(CursorMarkParams.CURSOR_MARK_START);
+        assertThat(firstPage.getSortField()).isEqualTo("sent_at asc,id asc");
+        assertThat(firstPage.getRows()).isEqualTo(2);
+        assertThat(firstPage.getStart()).isNull();
+        assertThat(captor.getAllValues().get(1).get(CursorMarkParams.CURSOR_MARK_PARAM)).isEqualTo("AoE1");
+    }
+
+    @Test
+    void searchStreamAdaptsTheRowsOfLaterPages() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(streamed("AoE1", "1", "2"))
+                .thenAnswer(streamed("AoE2", "3"));
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 2))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        // Tiny, fast pages grow, and at least to search.stream-batch-size-min
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient, times(2)).queryAndStreamResponse(captor.capture(), any(StreamingResponseCallback.class));
+        assertThat(captor.getAllValues().get(0).getRows()).isEqualTo(2);
+        assertThat(captor.getAllValues().get(1).getRows()).isEqualTo(100);
+    }
+
+    @Test
+    void searchStreamKeepsTheBatchSizeWhenAdaptiveSizingIsDisabled() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(streamed("AoE1", "1", "2"))
+                .thenAnswer(streamed("AoE2", "3"));
+        SearchProperties properties = domainFieldProperties();
+        properties.setAdaptiveStreamBatchSize(false);
+        searchService = new EmailSearchService(solrClient, properties);
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 2))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient, times(2)).queryAndStreamResponse(captor.capture(), any(StreamingResponseCallback.class));
+        assertThat(captor.getAllValues().get(1).getRows()).isEqualTo(2);
+    }
+
+    @Test
+    void searchStreamResumesAfterTheToken() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(streamed("AoE1", "3"));
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+        ResumeToken after = new ResumeToken(Instant.parse("2025-01-01T10:30:00Z"), "msg-2");
+
+        StepVerifier.create(searchService.searchStream(query, 2, after).map(EmailDocument::id))
+                .expectNext("3")
+                .verifyComplete();
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).queryAndStreamResponse(captor.capture(), any(StreamingResponseCallback.class));
+        assertThat(captor.getValue().get(CursorMarkParams.CURSOR_MARK_PARAM)).isEqualTo(CursorMarkParams.CURSOR_MARK_START);
+        assertThat(captor.getValue().getFilterQueries()).contains(EmailSearchService.resumeFilter(after));
+    }
+
+    @Test
+    void resumeFilterMatchesLaterSentAtOrLaterIdAtTheSameTime() {
+        ResumeToken after = new ResumeToken(Instant.parse("2025-01-01T10:30:00.250Z"), "msg:2 b");
+
+        assertThat(EmailSearchService.resumeFilter(after)).isEqualTo(
+                "{!cache=false}sent_at:{2025-01-01T10:30:00.250Z TO *] OR "
+                        + "(sent_at:\"2025-01-01T10:30:00.250Z\" AND id:{msg\\:2\\ b TO *])");
+    }
+
+    @Test
+    void timeSlicesFollowTheSentAtHistogram() throws Exception {
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+        Instant end = start.plusMillis(127_999);
+        SearchProperties properties = domainFieldProperties();
+        properties.setParallelStreamSlices(2);
+        searchService = new EmailSearchService(solrClient, properties);
+        // 32 buckets of 4s; all matches in the first 8s
+        RangeFacet.Date histogram = new RangeFacet.Date(EmailDocument.FIELD_SENT_AT, Date.from(start),
+                Date.from(end.plusMillis(1)), "+4000MILLISECONDS", 0, 0, 0);
+        histogram.addCount("2025-01-01T00:00:00Z", 50);
+        histogram.addCount("2025-01-01T00:00:04Z", 50);
+        when(queryResponse.getFacetRanges()).thenReturn(List.of(histogram));
+        when(solrClient.query(any(SolrQuery.class))).thenReturn(queryResponse);
+        SearchQuery query = createSearchQuery(start, end, null, "alice@acme.com", "acme.com");
+
+        List<TimeSlices.Slice> slices = searchService.timeSlices(query, null);
+
+        assertThat(slices).containsExactly(
+                new TimeSlices.Slice(start, start.plusMillis(3_999)),
+                new TimeSlices.Slice(start.plusMillis(4_000), end));
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solrClient).query(captor.capture());
+        SolrQuery facetQuery = captor.getValue();
+        assertThat(facetQuery.getRows()).isEqualTo(0);
+        assertThat(facetQuery.get("facet.range")).isEqualTo(EmailDocument.FIELD_SENT_AT);
+        assertThat(facetQuery.get("f.sent_at.facet.range.gap")).isEqualTo("+4000MILLISECONDS");
+    }
+
+    @Test
+    void timeSlicesStartAtTheResumePoint() throws Exception {
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+        SearchProperties properties = domainFieldProperties();
+        properties.setParallelStreamSlices(1);
+        searchService = new EmailSearchService(solrClient, properties);
+        SearchQuery query = createSearchQuery(start, start.plusSeconds(60), null, null, "acme.com");
+
+        assertThat(searchService.timeSlices(query, new ResumeToken(start.plusSeconds(30), "x")))
+                .containsExactly(new TimeSlices.Slice(start.plusSeconds(30), start.plusSeconds(60)));
+        assertThat(searchService.timeSlices(query, new ResumeToken(start.plusSeconds(61), "x"))).isEmpty();
+    }
+
+    @Test
+    void searchStreamStopsWhenCursorDoesNotAdvance() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(streamed(CursorMarkParams.CURSOR_MARK_START, "1", "2"));
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 2))
+                .expectNextCount(2)
+                .verifyComplete();
+        verify(solrClient, times(1)).queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class));
+    }
+
+    @Test
+    void searchStreamReadsAtMostOnePageAhead() throws Exception {
+        AtomicInteger decoded = new AtomicInteger();
+        String[] ids = new String[1000];
+        for (int i = 0; i < ids.length; i++) ids[i] = "m" + i;
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(invocation -> {
+                    StreamingResponseCallback callback = invocation.getArgument(1);
+                    for (SolrDocument doc : docs(ids)) {
+                        decoded.incrementAndGet();
+                        callback.streamSolrDocument(doc);
+                    }
+                    return new QueryResponse(new NamedList<>(), null);
+                });
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 100), 3)
+                .expectNextCount(3)
+                .thenCancel()
+                .verify();
+
+        // The decoding thread waits once a page is buffered: the 3 delivered, 100 ahead and the one it holds
+        assertThat(decoded.get()).isLessThan(105);
+    }
+
+    @Test
+    void searchStreamReportsBufferedBytes() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenAnswer(streamed("AoE1", "1", "2"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        searchService = new EmailSearchService(solrClient, domainFieldProperties(), registry);
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 10))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertThat(registry.get("search.stream.buffered.bytes").gauge().value()).isEqualTo(0.0);
+        DistributionSummary peak = registry.get("search.stream.buffered.peak.bytes").summary();
+        assertThat(peak.count()).isEqualTo(1L);
+        assertThat(peak.max()).isGreaterThan(0.0);
+    }
+
+    @Test
+    void searchStreamWrapsSolrFailures() throws Exception {
+        when(solrClient.queryAndStreamResponse(any(SolrParams.class), any(StreamingResponseCallback.class)))
+                .thenThrow(new SolrServerException("Solr down"));
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, null, "acme.com");
+
+        StepVerifier.create(searchService.searchStream(query, 10))
+                .expectErrorSatisfies(e -> assertThat(e)
+                        .hasMessage("Stream batch failed")
+                        .hasCauseInstanceOf(SolrServerException.class))
+                .verify();
+    }
+
+    @Test
+    void concurrentIdenticalHitCountsShareOneSolrRequest() throws Exception {
+        SolrDocumentList results = new SolrDocumentList();
+        results.setNumFound(12);
+        when(queryResponse.getResults()).thenReturn(results);
+        CountDownLatch release = new CountDownLatch(1);
+        when(solrClient.query(any(SolrQuery.class))).thenAnswer(invocation -> {
+            release.await();
+            return queryResponse;
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        searchService = new EmailSearchService(solrClient, domainFieldProperties(), registry);
+        SearchQuery query = createSearchQuery(Instant.parse("2025-01-01T10:00:00Z"), Instant.parse("2025-01-01T11:00:00Z"),
+                null, "alice@acme.com", "acme.com");
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                counts.add(executor.submit(() -> searchService.getHitCount(query)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (registry.counter("search.solr.requests.coalesced").count() < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<Long> count : counts) {
+                assertThat(count.get()).isEqualTo(12L);
+            }
+        }
+        verify(solrClient, times(1)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    void coalescingKeyIgnoresParameterOrderButNotValueOrder() {
+        ModifiableSolrParams a = new ModifiableSolrParams();
+        a.set("q", "*:*");
+        a.set("fq", "x", "y");
+        ModifiableSolrParams b = new ModifiableSolrParams();
+        b.set("fq", "x", "y");
+        b.set("q", "*:*");
+        ModifiableSolrParams c = new ModifiableSolrParams();
+        c.set("q", "*:*");
+        c.set("fq", "x, y");
+
+        assertThat(EmailSearchService.coalescingKey(a)).isEqualTo(EmailSearchService.coalescingKey(b));
+        assertThat(EmailSearchService.coalescingKey(a)).isNotEqualTo(EmailSearchService.coalescingKey(c));
+    }
+
+    // Streams the documents to the callback like SolrJ does while decoding, then returns the cursor
+    private static Answer<QueryResponse> streamed(String nextCursorMark, String... ids) {
+        return invocation -> {
+            StreamingResponseCallback callback = invocation.getArgument(1);
+            docs(ids).forEach(callback::streamSolrDocument);
+            NamedList<Object> response = new NamedList<>();
+            response.add(CursorMarkParams.CURSOR_MARK_NEXT, nextCursorMark);
+            return new QueryResponse(response, null);
+        };
+    }
+
+    private static SolrDocumentList docs(String... ids) {
+        SolrDocumentList list = new SolrDocumentList();
+        for (String id : ids) {
+            SolrDocument doc = new SolrDocument();
+            doc.setField("id", id);
+            list.add(doc);
+        }
+        return list;
+    }
+
     private void setupMockResponse() throws Exception {
         when(queryResponse.getResults()).thenReturn(new SolrDocumentList());
         when(solrClient.query(any(SolrQuery.class))).thenReturn(queryResponse);
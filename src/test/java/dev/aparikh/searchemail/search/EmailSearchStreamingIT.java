@@ -12,6 +12,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -21,10 +22,16 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 import reactor.test.StepVerifier;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @Testcontainers
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -90,6 +97,14 @@ class EmailSearchStreamingIT {
             addField(core, EmailDocument.FIELD_CC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
             addField(core, EmailDocument.FIELD_BCC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
             addField(core, EmailDocument.FIELD_SENT_AT, Map.of("type", "pdate", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true));
+            addField(core, EmailDocument.FIELD_TO_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_ANY_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_VISIBLE_PARTICIPANT, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CONTENT_HASH, Map.of("type", "string", "stored", true, "indexed", false));
+            addField(core, EmailDocument.FIELD_TAGS, Map.of("type", "string", "stored", true, "indexed", true, "docValues", true, "multiValued", true));
         }
     }
 
@@ -148,6 +163,98 @@ class EmailSearchStreamingIT {
                 .verifyComplete();
     }
 
+    @Test
+    void streamingEmitsEveryEmailOnceInSentAtThenIdOrder() {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        // Indexed out of order, with ties on sent_at broken by id
+        List<EmailDocument> emails = List.of(
+                new EmailDocument("e", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusSeconds(120)),
+                new EmailDocument("b", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now),
+                new EmailDocument("d", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusSeconds(60)),
+                new EmailDocument("a", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now),
+                new EmailDocument("c", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusSeconds(60))
+        );
+        indexService.indexAll(emails);
+
+        SearchQuery streamQuery = new SearchQuery(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                List.of("user@test.com"), "test.com", 0, 1000, null);
+
+        StepVerifier.create(searchService.searchStream(streamQuery, 2).map(EmailDocument::id))
+                .expectNext("a", "b", "c", "d", "e")
+                .verifyComplete();
+    }
+
+    @Test
+    void exportModeEmitsTheSameEmailsAsCursorPagingWithoutText() {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        List<EmailDocument> emails = List.of(
+                new EmailDocument("c", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusSeconds(60)),
+                new EmailDocument("a", "s", "b", "sender@test.com", List.of("user@test.com"), List.of("cc@test.com"), List.of(), now),
+                new EmailDocument("b", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now),
+                new EmailDocument("x", "s", "b", "sender@test.com", List.of("other@test.com"), List.of(), List.of(), now)
+        );
+        indexService.indexAll(emails);
+
+        SearchQuery streamQuery = new SearchQuery(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                List.of("user@test.com"), "test.com", 0, 1000, null);
+
+        List<String> cursorIds = searchService.searchStream(streamQuery, 2).map(EmailDocument::id).collectList().block();
+        List<EmailDocument> exported = searchService.exportStream(streamQuery, 2).collectList().block();
+
+        assertThat(cursorIds).containsExactly("a", "b", "c");
+        assertThat(exported).extracting(EmailDocument::id).isEqualTo(cursorIds);
+        assertThat(exported.get(0).subject()).isNull();
+        assertThat(exported.get(0).body()).isNull();
+        assertThat(exported.get(0).cc()).containsExactly("cc@test.com");
+    }
+
+    @Test
+    void streamsResumeRightAfterTheTokenInBothModes() {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        // Ties on sent_at, so resuming has to break them by id
+        List<EmailDocument> emails = List.of(
+                new EmailDocument("a", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now),
+                new EmailDocument("b", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusMillis(250)),
+                new EmailDocument("c", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusMillis(250)),
+                new EmailDocument("d", "s", "b", "sender@test.com", List.of("user@test.com"), List.of(), List.of(), now.plusSeconds(60))
+        );
+        indexService.indexAll(emails);
+        SearchQuery streamQuery = new SearchQuery(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                List.of("user@test.com"), "test.com", 0, 1000, null);
+
+        EmailDocument delivered = searchService.searchStream(streamQuery, 2).elementAt(1).block();
+        ResumeToken token = ResumeToken.decode(ResumeToken.after(delivered).encode());
+
+        StepVerifier.create(searchService.searchStream(streamQuery, 2, token).map(EmailDocument::id))
+                .expectNext("c", "d")
+                .verifyComplete();
+        StepVerifier.create(searchService.exportStream(streamQuery, 2, token).map(EmailDocument::id))
+                .expectNext("c", "d")
+                .verifyComplete();
+    }
+
+    @Test
+    void parallelStreamEmitsTheSameEmailsInTheSameOrderAsCursorPaging() {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        List<EmailDocument> emails = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            // Bursty: most emails in the first minutes, with ties on sent_at
+            Instant sentAt = i < 45 ? now.plusSeconds(i / 3) : now.plusSeconds(600L * i);
+            emails.add(new EmailDocument("m" + i, "s", "b", "sender@test.com", List.of("user@test.com"),
+                    List.of(), List.of(), sentAt));
+        }
+        indexService.indexAll(emails);
+        SearchQuery streamQuery = new SearchQuery(now.minusSeconds(3600), now.plusSeconds(86_400), null,
+                List.of("user@test.com"), "test.com", 0, 1000, null);
+
+        List<String> cursorIds = searchService.searchStream(streamQuery, 7).map(EmailDocument::id).collectList().block();
+        List<String> parallelIds = searchService.parallelStream(streamQuery, 7, null).map(EmailDocument::id).collectList().block();
+
+        assertThat(cursorIds).hasSize(60);
+        assertThat(parallelIds).isEqualTo(cursorIds);
+        assertThat(searchService.timeSlices(streamQuery, null).size()).isGreaterThan(1);
+    }
+
     @Test
     void streamingEndpointWorksViaHttpApi() {
         Instant now = Instant.parse("2025-01-01T10:00:00Z");
@@ -182,4 +289,41 @@ class EmailSearchStreamingIT {
                     assert body.contains("\"id\":\"1\"") || body.contains("\"id\":\"2\"");
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    void ndjsonExportEndpointWritesOneEmailPerLine() throws Exception {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        List<EmailDocument> emails = List.of(
+                new EmailDocument("1", "Test 1", "Body 1", "sender@test.com", List.of("recipient@test.com"), List.of(), List.of(), now),
+                new EmailDocument("2", "Test 2", "Body 2", "sender@test.com", List.of("recipient@test.com"), List.of(), List.of(), now.plusSeconds(60)),
+                new EmailDocument("3", "Test 3", "Body 3", "sender@test.com", List.of("recipient@test.com"), List.of(), List.of(), now.plusSeconds(120))
+        );
+        indexService.indexAll(emails);
+
+        StreamSearchRequest request = new StreamSearchRequest(now.minusSeconds(3600), now.plusSeconds(3600), null,
+                List.of("recipient@test.com"), "test.com", 2);
+
+        byte[] plain = webTestClient.post()
+                .uri("/api/emails/export")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("application/x-ndjson")
+                .expectBody().returnResult().getResponseBody();
+        assertThat(new String(plain, StandardCharsets.UTF_8).split("\n"))
+                .hasSize(3)
+                .allSatisfy(line -> assertThat(line).startsWith("{\"id\":"));
+
+        byte[] compressed = webTestClient.post()
+                .uri("/api/emails/export")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectBody().returnResult().getResponseBody();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertThat(in.readAllBytes()).isEqualTo(plain);
+        }
+    }
+}
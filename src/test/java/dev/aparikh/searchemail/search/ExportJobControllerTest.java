@@ -0,0 +1,83 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.aparikh.searchemail.api.StreamSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = ExportJobController.class)
+class ExportJobControllerTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T10:00:00Z");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private ExportJobService exportJobService;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void submitExportReturnsTheJob() throws Exception {
+        StreamSearchRequest request = new StreamSearchRequest(NOW.minusSeconds(3600), NOW, null, null, "test.com", null);
+        String id = UUID.randomUUID().toString();
+        when(exportJobService.submit(any(StreamSearchRequest.class))).thenReturn(ExportManifest.started(id, request, NOW));
+
+        mockMvc.perform(post("/api/exports")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/api/exports/" + id))
+                .andExpect(jsonPath("$.id").value(id))
+                .andExpect(jsonPath("$.status").value("RUNNING"));
+    }
+
+    @Test
+    void getExportReturnsNotFoundForUnknownJobs() throws Exception {
+        String id = UUID.randomUUID().toString();
+        when(exportJobService.find(id)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/exports/" + id))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void downloadChunkServesRanges() throws Exception {
+        String id = UUID.randomUUID().toString();
+        Path chunk = Files.writeString(directory.resolve("chunk-00000.jsonl.gz"), "0123456789", StandardCharsets.UTF_8);
+        when(exportJobService.chunk(id, 0)).thenReturn(Optional.of(chunk));
+
+        mockMvc.perform(get("/api/exports/" + id + "/chunks/0"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ExportJobController.GZIP))
+                .andExpect(content().string("0123456789"));
+        mockMvc.perform(get("/api/exports/" + id + "/chunks/0").header(HttpHeaders.RANGE, "bytes=4-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 4-9/10"))
+                .andExpect(content().string("456789"));
+    }
+}
@@ -0,0 +1,164 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.aparikh.searchemail.api.StreamSearchRequest;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExportJobServiceTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T10:00:00Z");
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private EmailSearchService searchService;
+
+    private ExportJobService exportJobService;
+
+    @BeforeEach
+    void setUp() {
+        SearchProperties properties = new SearchProperties();
+        properties.setExportJobDirectory(directory);
+        properties.setExportJobChunkDocuments(2);
+        exportJobService = new ExportJobService(searchService, mapper, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportJobService.destroy();
+    }
+
+    private static EmailDocument email(int i) {
+        return new EmailDocument("id-" + i, "Subject " + i, "Body " + i, "from@test.com",
+                List.of("to@test.com"), List.of(), List.of(), START.plusSeconds(i));
+    }
+
+    private static Flux<EmailDocument> emails(int from, int to) {
+        return Flux.range(from, to - from).map(ExportJobServiceTest::email);
+    }
+
+    private static StreamSearchRequest request(Integer batchSize) {
+        return new StreamSearchRequest(START, START.plusSeconds(3600), null, null, "test.com", batchSize);
+    }
+
+    private ExportManifest newJob() throws IOException {
+        ExportManifest job = ExportManifest.started(UUID.randomUUID().toString(), request(null), START);
+        Files.createDirectories(directory.resolve(job.id()));
+        return job;
+    }
+
+    @Test
+    void runWritesChecksummedChunksAndCompletes() throws Exception {
+        when(searchService.searchStream(any(SearchQuery.class), eq(1000), isNull())).thenReturn(emails(0, 5));
+        ExportManifest job = newJob();
+
+        exportJobService.run(job);
+
+        ExportManifest done = exportJobService.find(job.id()).orElseThrow();
+        assertThat(done.status()).isEqualTo(ExportManifest.Status.COMPLETED);
+        assertThat(done.documents()).isEqualTo(5L);
+        assertThat(done.chunks().stream().map(ExportManifest.Chunk::documents).toList()).containsExactly(2L, 2L, 1L);
+        assertThat(done.resumeToken()).isEqualTo(new ResumeToken(email(4).sentAt(), "id-4").encode());
+        for (ExportManifest.Chunk chunk : done.chunks()) {
+            byte[] bytes = Files.readAllBytes(exportJobService.chunk(job.id(), chunk.index()).orElseThrow());
+            assertThat((long) bytes.length).isEqualTo(chunk.bytes());
+            assertThat(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)))
+                    .isEqualTo(chunk.sha256());
+        }
+        assertThat(lines(job.id(), 0)).containsExactly(email(0), email(1));
+        assertThat(lines(job.id(), 2)).containsExactly(email(4));
+    }
+
+    @Test
+    void runResumesAfterTheLastCommittedChunk() throws Exception {
+        when(searchService.searchStream(any(SearchQuery.class), eq(1000), isNull()))
+                .thenReturn(emails(0, 3).concatWith(Flux.error(new RuntimeException("Solr down"))));
+        ExportManifest job = newJob();
+
+        exportJobService.run(job);
+
+        ExportManifest failed = exportJobService.find(job.id()).orElseThrow();
+        assertThat(failed.status()).isEqualTo(ExportManifest.Status.FAILED);
+        assertThat(failed.error()).isEqualTo("Solr down");
+        assertThat(failed.chunks()).hasSize(1);
+        // The interrupted second chunk was left on disk but never committed
+        assertThat(Files.exists(directory.resolve(job.id()).resolve("chunk-00001.jsonl.gz"))).isTrue();
+
+        when(searchService.searchStream(any(SearchQuery.class), eq(1000), eq(new ResumeToken(email(1).sentAt(), "id-1"))))
+                .thenReturn(emails(2, 5));
+
+        exportJobService.run(failed);
+
+        ExportManifest done = exportJobService.find(job.id()).orElseThrow();
+        assertThat(done.status()).isEqualTo(ExportManifest.Status.COMPLETED);
+        assertThat(done.error()).isNull();
+        assertThat(done.documents()).isEqualTo(5L);
+        assertThat(lines(job.id(), 1)).containsExactly(email(2), email(3));
+        assertThat(lines(job.id(), 2)).containsExactly(email(4));
+    }
+
+    @Test
+    void submitRejectsInvalidRequests() throws IOException {
+        assertThatThrownBy(() -> exportJobService.submit(request(0)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("batchSize must be > 0");
+        try (var jobs = Files.list(directory)) {
+            assertThat(jobs.toList()).isEmpty();
+        }
+    }
+
+    @Test
+    void findRejectsIdsThatAreNotJobIds() {
+        assertThatThrownBy(() -> exportJobService.find("../etc"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid export job id");
+        assertThat(exportJobService.find(UUID.randomUUID().toString())).isEmpty();
+    }
+
+    private List<EmailDocument> lines(String id, int index) throws IOException {
+        Path file = exportJobService.chunk(id, index).orElseThrow();
+        List<EmailDocument> emails = new ArrayList<>();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                emails.add(mapper.readValue(line, EmailDocument.class));
+            }
+        }
+        return emails;
+    }
+}
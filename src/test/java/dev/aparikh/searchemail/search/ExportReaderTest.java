@@ -0,0 +1,70 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExportReaderTest {
+
+    private static List<EmailDocument> read(String json) throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser(json)) {
+            ExportReader.positionAtDocs(parser);
+            List<EmailDocument> documents = new ArrayList<>();
+            EmailDocument next;
+            while ((next = ExportReader.nextDocument(parser)) != null) {
+                documents.add(next);
+            }
+            return documents;
+        }
+    }
+
+    @Test
+    void readsExportedDocuments() throws IOException {
+        List<EmailDocument> documents = read("""
+                {"responseHeader":{"status":0},"response":{"numFound":2,"docs":[
+                  {"id":"1","from_addr":"a@x.com","to_addr":["b@x.com","c@x.com"],"sent_at":"2024-01-01T00:00:00Z"},
+                  {"id":"2","from_addr":"b@x.com","to_addr":["a@x.com"],"cc_addr":["d@y.com"],"bcc_addr":["e@z.com"],
+                   "sent_at":"2024-01-02T00:00:00Z"}]}}
+                """);
+
+        assertThat(documents).containsExactly(
+                new EmailDocument("1", null, null, "a@x.com", List.of("b@x.com", "c@x.com"), List.of(), List.of(),
+                        Instant.parse("2024-01-01T00:00:00Z")),
+                new EmailDocument("2", null, null, "b@x.com", List.of("a@x.com"), List.of("d@y.com"),
+                        List.of("e@z.com"), Instant.parse("2024-01-02T00:00:00Z")));
+    }
+
+    @Test
+    void readsAnEmptyExport() throws IOException {
+        assertThat(read("{\"responseHeader\":{\"status\":0},\"response\":{\"numFound\":0,\"docs\":[]}}")).isEmpty();
+    }
+
+    @Test
+    void failsOnAnErrorResponse() {
+        assertThatThrownBy(() -> read("""
+                {"responseHeader":{"status":400},"error":{"msg":"sort field sent_at has no docValues","code":400}}
+                """))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("sort field sent_at has no docValues");
+    }
+
+    @Test
+    void failsOnAnExceptionTuple() {
+        assertThatThrownBy(() -> read("""
+                {"responseHeader":{"status":0},"response":{"numFound":2,"docs":[
+                  {"id":"1","sent_at":"2024-01-01T00:00:00Z"},
+                  {"EXCEPTION":"early client disconnect","EOF":true}]}}
+                """))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("early client disconnect");
+    }
+}
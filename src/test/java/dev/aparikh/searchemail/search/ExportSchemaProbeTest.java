@@ -0,0 +1,82 @@
+package dev.aparikh.searchemail.search;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExportSchemaProbeTest {
+
+    @Mock
+    private SolrClient solrClient;
+
+    private static NamedList<Object> field(String name, boolean docValues) {
+        NamedList<Object> attributes = new NamedList<>();
+        attributes.add("name", name);
+        attributes.add("type", "string");
+        attributes.add("docValues", docValues);
+        NamedList<Object> response = new NamedList<>();
+        response.add("field", attributes);
+        return response;
+    }
+
+    @Test
+    void supportedWhenEveryExportFieldHasDocValues() throws Exception {
+        when(solrClient.request(any(SchemaRequest.Field.class), isNull())).thenReturn(field("any", true));
+        ExportSchemaProbe probe = new ExportSchemaProbe(solrClient);
+
+        assertThat(probe.isSupported()).isTrue();
+        assertThat(probe.isSupported()).isTrue();
+        verify(solrClient, times(ExportSchemaProbe.EXPORT_FIELDS.size())).request(any(SolrRequest.class), isNull());
+    }
+
+    @Test
+    void remembersThatAFieldLacksDocValues() throws Exception {
+        when(solrClient.request(any(SchemaRequest.Field.class), isNull())).thenAnswer(invocation -> {
+            SolrRequest<?> request = invocation.getArgument(0);
+            return field("any", !request.getPath().endsWith("/cc_addr"));
+        });
+        ExportSchemaProbe probe = new ExportSchemaProbe(solrClient);
+
+        assertThat(probe.isSupported()).isFalse();
+        int probed = ExportSchemaProbe.EXPORT_FIELDS.indexOf("cc_addr") + 1;
+        assertThat(probe.isSupported()).isFalse();
+        verify(solrClient, times(probed)).request(any(SolrRequest.class), isNull());
+    }
+
+    @Test
+    void remembersThatAFieldIsMissing() throws Exception {
+        when(solrClient.request(any(SchemaRequest.Field.class), isNull()))
+                .thenThrow(new SolrException(SolrException.ErrorCode.NOT_FOUND, "No such path /schema/fields/id"));
+        ExportSchemaProbe probe = new ExportSchemaProbe(solrClient);
+
+        assertThat(probe.isSupported()).isFalse();
+        assertThat(probe.isSupported()).isFalse();
+        verify(solrClient, times(1)).request(any(SolrRequest.class), isNull());
+    }
+
+    @Test
+    void retriesAfterConnectionFailures() throws Exception {
+        when(solrClient.request(any(SchemaRequest.Field.class), isNull()))
+                .thenThrow(new SolrServerException("connection refused"))
+                .thenReturn(field("any", true));
+        ExportSchemaProbe probe = new ExportSchemaProbe(solrClient);
+
+        assertThat(probe.isSupported()).isFalse();
+        assertThat(probe.isSupported()).isTrue();
+    }
+}
@@ -0,0 +1,119 @@
+package dev.aparikh.searchemail.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonExportWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final NdjsonExportWriter writer = new NdjsonExportWriter(mapper);
+
+    private static EmailDocument email(int i) {
+        return new EmailDocument("id-" + i, "Subject " + i, "Body " + i, "from@test.com",
+                List.of("to@test.com"), List.of(), List.of(), Instant.parse("2025-01-01T10:00:00Z").plusSeconds(i));
+    }
+
+    private static Flux<EmailDocument> emails(int count) {
+        return Flux.range(0, count).map(NdjsonExportWriterTest::email);
+    }
+
+    @Test
+    void writesOneJsonDocumentPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = writer.write(emails(3), out, false);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertThat(written).isEqualTo(3);
+        assertThat(lines).hasSize(4);
+        assertThat(lines[3]).isEmpty();
+        for (int i = 0; i < 3; i++) {
+            assertThat(mapper.readValue(lines[i], EmailDocument.class)).isEqualTo(email(i));
+        }
+    }
+
+    @Test
+    void writesNothingForAnEmptyExport() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(writer.write(Flux.empty(), out, false)).isZero();
+        assertThat(out.size()).isZero();
+    }
+
+    @Test
+    void gzipOutputDecompressesToTheSameLines() throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        writer.write(emails(1200), plain, false);
+        writer.write(emails(1200), compressed, true);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertThat(in.readAllBytes()).isEqualTo(plain.toByteArray());
+        }
+        assertThat(compressed.size()).isLessThan(plain.size());
+    }
+
+    @Test
+    void flushesInBatchesRatherThanPerDocument() throws IOException {
+        AtomicInteger flushes = new AtomicInteger();
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+
+        writer.write(emails(NdjsonExportWriter.FLUSH_DOCUMENTS * 3), out, false);
+
+        // One per full batch, plus the final flushes on close
+        assertThat(flushes.get()).isLessThan(NdjsonExportWriter.FLUSH_DOCUMENTS);
+        assertThat(flushes.get()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void cancelsTheSourceWhenTheClientGoesAway() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThatThrownBy(() -> writer.write(emails(100_000).doOnCancel(() -> cancelled.set(true)), broken, false))
+                .isInstanceOf(IOException.class);
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    void acceptsGzipUnlessRefused() {
+        assertThat(NdjsonExportWriter.acceptsGzip(null)).isFalse();
+        assertThat(NdjsonExportWriter.acceptsGzip("identity")).isFalse();
+        assertThat(NdjsonExportWriter.acceptsGzip("gzip")).isTrue();
+        assertThat(NdjsonExportWriter.acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+        assertThat(NdjsonExportWriter.acceptsGzip("*")).isTrue();
+        assertThat(NdjsonExportWriter.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(NdjsonExportWriter.acceptsGzip("br, gzip; q=0.0")).isFalse();
+    }
+}
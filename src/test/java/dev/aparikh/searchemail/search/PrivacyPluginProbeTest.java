@@ -0,0 +1,60 @@
+package dev.aparikh.searchemail.search;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PrivacyPluginProbeTest {
+
+    @Mock
+    private SolrClient solrClient;
+
+    @Mock
+    private QueryResponse queryResponse;
+
+    @Test
+    void remembersThatPluginIsAvailable() throws Exception {
+        when(solrClient.query(any(SolrQuery.class))).thenReturn(queryResponse);
+        PrivacyPluginProbe probe = new PrivacyPluginProbe(solrClient);
+
+        assertThat(probe.isAvailable()).isTrue();
+        assertThat(probe.isAvailable()).isTrue();
+        verify(solrClient, times(1)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    void remembersThatSolrRejectedTheParser() throws Exception {
+        when(solrClient.query(any(SolrQuery.class)))
+                .thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown query parser 'emailprivacy'"));
+        PrivacyPluginProbe probe = new PrivacyPluginProbe(solrClient);
+
+        assertThat(probe.isAvailable()).isFalse();
+        assertThat(probe.isAvailable()).isFalse();
+        verify(solrClient, times(1)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    void retriesAfterConnectionFailures() throws Exception {
+        when(solrClient.query(any(SolrQuery.class)))
+                .thenThrow(new SolrServerException("connection refused"))
+                .thenReturn(queryResponse);
+        PrivacyPluginProbe probe = new PrivacyPluginProbe(solrClient);
+
+        assertThat(probe.isAvailable()).isFalse();
+        assertThat(probe.isAvailable()).isTrue();
+        verify(solrClient, times(2)).query(any(SolrQuery.class));
+    }
+}
@@ -0,0 +1,258 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.indexing.EmailIndexService;
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.SolrContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Instant;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rule-equivalence suite for the index-time visibility field.
+ * <p>
+ * Runs the same searches through the query-time boolean expression (as one fq with the legacy wildcard address
+ * queries, and over the derived domain fields split into filterCache-friendly fq clauses and as grouped
+ * {@code {!terms}} lookups, the latter two also in the JSON Query DSL) and through the {@code visible_participant} term lookups, and asserts that all of them return exactly the same hits:
+ * first for the scenarios from {@link CrossFirmBccVisibilityIT}, then for a generated corpus
+ * covering every combination of firm and participant role.
+ */
+@SpringBootTest
+@Testcontainers
+class PrivacyRuleEquivalenceIT {
+
+    @Container
+    static final SolrContainer solrContainer = new SolrContainer(DockerImageName.parse("solr:9.6.1"));
+
+    private static final String CORE = "emails";
+
+    @Autowired
+    private EmailIndexService indexService;
+
+    private EmailSearchService expressionSearch;
+
+    private EmailSearchService splitExpressionSearch;
+
+    private EmailSearchService termsFilterSearch;
+
+    private EmailSearchService visibilityFieldSearch;
+
+    private EmailSearchService jsonSplitSearch;
+
+    private EmailSearchService jsonTermsFilterSearch;
+
+    @Autowired
+    private SolrClient solrClient;
+
+    static String solrBaseUrl() {
+        return "http://" + solrContainer.getHost() + ":" + solrContainer.getMappedPort(8983) + "/solr";
+    }
+
+    @DynamicPropertySource
+    static void props(DynamicPropertyRegistry registry) {
+        registry.add("solr.base-url", PrivacyRuleEquivalenceIT::solrBaseUrl);
+        registry.add("solr.core", () -> CORE);
+    }
+
+    @BeforeAll
+    static void createCoreAndSchema() throws Exception {
+        var result = solrContainer.execInContainer("solr", "create_collection", "-c", CORE, "-shards", "1", "-replicationFactor", "1");
+        if (!result.getStdout().contains("Created collection") && !result.getStdout().contains("already exists")) {
+            System.out.println("Core creation stderr: " + result.getStderr());
+        }
+
+        Thread.sleep(2000);
+
+        try (SolrClient core = new HttpSolrClient.Builder(solrBaseUrl() + "/" + CORE).build()) {
+            addField(core, EmailDocument.FIELD_ID, Map.of("type", "string", "stored", true, "indexed", true, "required", true));
+            addField(core, EmailDocument.FIELD_SUBJECT, Map.of("type", "text_general", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_BODY, Map.of("type", "text_general", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM, Map.of("type", "string", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_TO, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC, Map.of("type", "string", "stored", true, "indexed", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_SENT_AT, Map.of("type", "pdate", "stored", true, "indexed", true));
+            addField(core, EmailDocument.FIELD_FROM_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true));
+            addField(core, EmailDocument.FIELD_TO_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_BCC_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_ANY_DOMAIN, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_VISIBLE_PARTICIPANT, Map.of("type", "string", "stored", false, "indexed", true, "docValues", true, "multiValued", true));
+            addField(core, EmailDocument.FIELD_CONTENT_HASH, Map.of("type", "string", "stored", true, "indexed", false));
+            addField(core, EmailDocument.FIELD_TAGS, Map.of("type", "string", "stored", true, "indexed", true, "docValues", true, "multiValued", true));
+        }
+    }
+
+    private static void addField(SolrClient core, String name, Map<String, Object> props) {
+        Map<String, Object> field = new HashMap<>(props);
+        field.put("name", name);
+        try {
+            new SchemaRequest.AddField(field).process(core);
+        } catch (Exception ignore) {
+            // ignore errors if field exists to keep test idempotent
+        }
+    }
+
+    @BeforeEach
+    void cleanIndex() throws Exception {
+        SearchProperties expressionProperties = new SearchProperties();
+        expressionProperties.setPrivacyFilterMode(PrivacyFilterMode.BOOLEAN_EXPRESSION);
+        expressionProperties.setSplitPrivacyFilters(false);
+        expressionSearch = new EmailSearchService(solrClient, expressionProperties);
+        SearchProperties splitProperties = new SearchProperties();
+        splitProperties.setDomainFieldsEnabled(true);
+        splitProperties.setSplitPrivacyFilters(true);
+        splitExpressionSearch = new EmailSearchService(solrClient, splitProperties);
+        SearchProperties termsProperties = new SearchProperties();
+        termsProperties.setDomainFieldsEnabled(true);
+        termsProperties.setTermsFilterThreshold(1);
+        termsFilterSearch = new EmailSearchService(solrClient, termsProperties);
+        SearchProperties visibilityProperties = new SearchProperties();
+        visibilityProperties.setDomainFieldsEnabled(true);
+        visibilityProperties.setPrivacyFilterMode(PrivacyFilterMode.VISIBILITY_FIELD);
+        visibilityFieldSearch = new EmailSearchService(solrClient, visibilityProperties);
+        SearchProperties jsonSplitProperties = new SearchProperties();
+        jsonSplitProperties.setDomainFieldsEnabled(true);
+        jsonSplitProperties.setQuerySyntax(QuerySyntax.JSON);
+        jsonSplitSearch = new EmailSearchService(solrClient, jsonSplitProperties);
+        SearchProperties jsonTermsProperties = new SearchProperties();
+        jsonTermsProperties.setDomainFieldsEnabled(true);
+        jsonTermsProperties.setQuerySyntax(QuerySyntax.JSON);
+        jsonTermsProperties.setTermsFilterThreshold(1);
+        jsonTermsFilterSearch = new EmailSearchService(solrClient, jsonTermsProperties);
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                solrClient.deleteByQuery("*:*");
+                solrClient.commit();
+                break;
+            } catch (Exception e) {
+                if (i == 4) throw e;
+                Thread.sleep(1000);
+            }
+        }
+    }
+
+    private static final Instant BASE_TIME = Instant.parse("2025-01-15T10:00:00Z");
+
+    private static final List<String> FIRMS = List.of("firm1.com", "firm2.com", "firm3.com");
+
+    @Test
+    void crossFirmBccVisibilityScenariosMatch() {
+        indexService.indexAll(List.of(
+                new EmailDocument("email1", "Project Discussion", "b", "alice@firm1.com",
+                        List.of("bob@firm2.com"), List.of(), List.of(), BASE_TIME),
+                new EmailDocument("email2", "Meeting Invite", "b", "external@other.com",
+                        List.of("alice@firm1.com"), List.of("bob@firm2.com"), List.of(), BASE_TIME.plusSeconds(3600)),
+                new EmailDocument("email3", "Confidential Update", "b", "external@other.com",
+                        List.of("external2@other.com"), List.of("alice@firm1.com"), List.of("bob@firm2.com"), BASE_TIME.plusSeconds(7200)),
+                new EmailDocument("email4", "Strategic Planning", "b", "external@other.com",
+                        List.of("bob@firm2.com"), List.of(), List.of("alice@firm1.com"), BASE_TIME.plusSeconds(10800)),
+                new EmailDocument("email5", "Internal Firm 2 Discussion", "b", "bob@firm2.com",
+                        List.of("charlie@firm2.com"), List.of(), List.of(), BASE_TIME.plusSeconds(14400)),
+                new EmailDocument("email6", "Internal Firm 1 Discussion", "b", "alice@firm1.com",
+                        List.of("david@firm1.com"), List.of(), List.of(), BASE_TIME.plusSeconds(18000))
+        ));
+
+        Set<String> firm1SearchingBob = assertEquivalent(List.of("bob@firm2.com"), "firm1.com");
+        assertThat(firm1SearchingBob).containsExactlyInAnyOrder("email1", "email2", "email4");
+
+        Set<String> firm2SearchingAlice = assertEquivalent(List.of("alice@firm1.com"), "firm2.com");
+        // email4 stays hidden: alice is a cross-firm BCC recipient and firm2 did not send it
+        assertThat(firm2SearchingAlice).containsExactlyInAnyOrder("email1", "email2", "email3");
+
+        assertEquivalent(List.of("bob@firm2.com", "alice@firm1.com"), "firm1.com");
+        assertEquivalent(List.of("charlie@firm2.com"), "firm2.com");
+        assertEquivalent(List.of("external@other.com"), "FIRM1.COM");
+    }
+
+    @Test
+    void generatedCorpusMatchesForEveryAdminAndParticipant() {
+        List<String> people = new ArrayList<>();
+        for (String firm : FIRMS) {
+            people.add("a@" + firm);
+            people.add("b@" + firm);
+        }
+        people.add("x@outside.com");
+
+        Random random = new Random(42);
+        List<EmailDocument> emails = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            emails.add(new EmailDocument("gen-" + i, "s", "b",
+                    people.get(random.nextInt(people.size())),
+                    sample(random, people), sample(random, people), sample(random, people),
+                    BASE_TIME.plusSeconds(i)));
+        }
+        indexService.indexAll(emails);
+
+        List<String> admins = new ArrayList<>(FIRMS);
+        admins.add("outside.com");
+        admins.add("nobody.com");
+        for (String admin : admins) {
+            for (String person : people) {
+                assertEquivalent(List.of(person), admin);
+            }
+            assertEquivalent(people, admin);
+            assertEquivalent(List.of(people.get(random.nextInt(people.size())), people.get(random.nextInt(people.size()))), admin);
+        }
+    }
+
+    private Set<String> assertEquivalent(List<String> participants, String adminFirmDomain) {
+        SearchQuery query = new SearchQuery(BASE_TIME.minusSeconds(3600), BASE_TIME.plusSeconds(86400), null,
+                participants, adminFirmDomain, 0, 1000, null);
+
+        Set<String> expected = ids(expressionSearch.search(query));
+        Set<String> split = ids(splitExpressionSearch.search(query));
+        Set<String> terms = ids(termsFilterSearch.search(query));
+        Set<String> actual = ids(visibilityFieldSearch.search(query));
+        Set<String> jsonSplit = ids(jsonSplitSearch.search(query));
+        Set<String> jsonTerms = ids(jsonTermsFilterSearch.search(query));
+
+        assertThat(split)
+                .as("split filter hits for admin %s searching %s", adminFirmDomain, participants)
+                .isEqualTo(expected);
+        assertThat(terms)
+                .as("terms filter hits for admin %s searching %s", adminFirmDomain, participants)
+                .isEqualTo(expected);
+        assertThat(jsonSplit)
+                .as("JSON split filter hits for admin %s searching %s", adminFirmDomain, participants)
+                .isEqualTo(expected);
+        assertThat(jsonTerms)
+                .as("JSON terms filter hits for admin %s searching %s", adminFirmDomain, participants)
+                .isEqualTo(expected);
+        assertThat(actual)
+                .as("visibility field hits for admin %s searching %s", adminFirmDomain, participants)
+                .isEqualTo(expected);
+        assertThat(visibilityFieldSearch.getHitCount(query)).isEqualTo(expressionSearch.getHitCount(query));
+        return actual;
+    }
+
+    private static Set<String> ids(List<EmailDocument> emails) {
+        Set<String> ids = new HashSet<>();
+        emails.forEach(e -> ids.add(e.id()));
+        return ids;
+    }
+
+    private static List<String> sample(Random random, List<String> people) {
+        List<String> picked = new ArrayList<>();
+        int n = random.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            picked.add(people.get(random.nextInt(people.size())));
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,130 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Bool;
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.ParserQuery;
+import dev.aparikh.searchemail.search.QueryNode.Phrase;
+import dev.aparikh.searchemail.search.QueryNode.Range;
+import dev.aparikh.searchemail.search.QueryNode.Raw;
+import dev.aparikh.searchemail.search.QueryNode.Term;
+import dev.aparikh.searchemail.search.QueryNode.Terms;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryRendererTest {
+
+    @Test
+    void rendersLeafNodesInStandardSyntax() {
+        QueryRenderer renderer = new QueryRenderer(null);
+
+        assertThat(renderer.standard(new Term("from_addr", "user+test@acme.com"))).isEqualTo("from_addr:user\\+test@acme.com");
+        assertThat(renderer.standard(new Phrase("subject", "say \"hi\""))).isEqualTo("subject:\"say \\\"hi\\\"\"");
+        assertThat(renderer.standard(new Range("sent_at", "2025-01-01T00:00:00Z", null))).isEqualTo("sent_at:[2025-01-01T00:00:00Z TO *]");
+        assertThat(renderer.standard(new Raw("from_addr:*@acme.com"))).isEqualTo("from_addr:*@acme.com");
+    }
+
+    @Test
+    void rendersNestedBooleansWithGrouping() {
+        QueryNode node = QueryNode.or(
+                QueryNode.and(QueryNode.or(new Term("to_addr", "a@x.com"), new Term("cc_addr", "a@x.com")),
+                        new Raw("from_addr:*@y.com OR to_addr:*@y.com")),
+                new Filter(new Term("bcc_addr", "a@x.com")));
+
+        assertThat(new QueryRenderer(null).standard(node)).isEqualTo(
+                "((to_addr:a@x.com OR cc_addr:a@x.com) AND (from_addr:*@y.com OR to_addr:*@y.com)) OR filter(bcc_addr:a@x.com)");
+    }
+
+    @Test
+    void rendersRequiredAlternativesAndNegations() {
+        QueryNode node = new Bool(List.of(new Term("any_domain", "x.com")),
+                List.of(new Term("to_addr", "a@x.com"), new Term("cc_addr", "a@x.com")),
+                List.of(new Term("bcc_addr", "a@x.com")));
+
+        assertThat(new QueryRenderer(null).standard(node)).isEqualTo(
+                "any_domain:x.com AND (to_addr:a@x.com OR cc_addr:a@x.com) AND NOT bcc_addr:a@x.com");
+    }
+
+    @Test
+    void hoistsNestedTermsListsIntoSharedParameters() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        QueryNode node = QueryNode.or(
+                new Terms("from_addr", List.of("a@x.com", "b@y.com")),
+                new Terms("to_addr", List.of("a@x.com", "b@y.com")),
+                new Terms("bcc_addr", List.of("a@x.com")));
+
+        String rendered = new QueryRenderer(params).standard(node);
+
+        assertThat(rendered).isEqualTo("{!terms f=from_addr v=$fq.terms.0} OR {!terms f=to_addr v=$fq.terms.0}"
+                + " OR {!terms f=bcc_addr v=$fq.terms.1}");
+        assertThat(params.get("fq.terms.0")).isEqualTo("a@x.com,b@y.com");
+        assertThat(params.get("fq.terms.1")).isEqualTo("a@x.com");
+    }
+
+    @Test
+    void inlinesNestedTermsListsWithoutParameterTarget() {
+        QueryNode node = QueryNode.or(new Terms("from_addr", List.of("o'brien@x.com", "b@y.com")), new Term("to_addr", "c@z.com"));
+
+        assertThat(new QueryRenderer(null).standard(node))
+                .isEqualTo("{!terms f=from_addr v='o\\'brien@x.com,b@y.com'} OR to_addr:c@z.com");
+    }
+
+    @Test
+    void rendersFilterLocalParams() {
+        QueryRenderer renderer = new QueryRenderer(null);
+
+        assertThat(renderer.standard(FilterClause.cached(new Term("any_domain", "x.com")))).isEqualTo("{!cache=true}any_domain:x.com");
+        assertThat(renderer.standard(FilterClause.uncached(new Term("from_addr", "a@x.com"), 100))).isEqualTo("{!cache=false cost=100}from_addr:a@x.com");
+        assertThat(renderer.standard(FilterClause.uncached(new Terms("visible_participant", List.of("x.com|a@x.com", "x.com|b@y.com")), 0)))
+                .isEqualTo("{!terms f=visible_participant cache=false}x.com|a@x.com,x.com|b@y.com");
+        assertThat(renderer.standard(FilterClause.of(new Range("sent_at", "A", "B")))).isEqualTo("sent_at:[A TO B]");
+    }
+
+    @Test
+    void rendersJsonQueryDsl() {
+        QueryNode node = new Bool(List.of(new Term("any_domain", "x.com")),
+                List.of(new Terms("to_addr", List.of("a@x.com", "b@y.com")), new Filter(new Phrase("subject", "q\"1"))),
+                List.of(new Range("sent_at", null, "B")));
+
+        assertThat(QueryRenderer.json(node)).isEqualTo("{\"bool\":{\"must\":["
+                + "{\"term\":{\"f\":\"any_domain\",\"query\":\"x.com\"}},"
+                + "{\"bool\":{\"should\":["
+                + "{\"terms\":{\"f\":\"to_addr\",\"query\":\"a@x.com,b@y.com\"}},"
+                + "{\"bool\":{\"filter\":[\"subject:\\\"q\\\\\\\"1\\\"\"]}}]}}],"
+                + "\"must_not\":[\"sent_at:[* TO B]\"]}}");
+    }
+
+    @Test
+    void rendersJsonFilterLocalParams() {
+        assertThat(QueryRenderer.json(FilterClause.uncached(QueryNode.or(new Term("to_addr", "a@x.com"), new Term("cc_addr", "a@x.com")), 100)))
+                .isEqualTo("{\"bool\":{\"should\":[{\"term\":{\"f\":\"to_addr\",\"query\":\"a@x.com\"}},"
+                        + "{\"term\":{\"f\":\"cc_addr\",\"query\":\"a@x.com\"}}],\"cache\":false,\"cost\":100}}");
+        assertThat(QueryRenderer.json(FilterClause.cached(new Range("sent_at", "A", "B"))))
+                .isEqualTo("{\"lucene\":{\"query\":\"sent_at:[A TO B]\",\"cache\":true}}");
+        assertThat(QueryRenderer.jsonFilterBody(List.of(FilterClause.of(new Range("sent_at", "A", "B")))))
+                .isEqualTo("{\"filter\":[\"sent_at:[A TO B]\"]}");
+    }
+
+    @Test
+    void rendersParserQueriesThroughLocalParams() {
+        ParserQuery query = new ParserQuery("emailprivacy", Map.of("participants", "o'brien@x.com,b@y.com"));
+
+        assertThat(new QueryRenderer(null).standard(FilterClause.uncached(query, 200)))
+                .isEqualTo("{!emailprivacy participants='o\\'brien@x.com,b@y.com' cache=false cost=200}");
+        assertThat(QueryRenderer.json(FilterClause.uncached(query, 200)))
+                .isEqualTo("{\"emailprivacy\":{\"participants\":\"o'brien@x.com,b@y.com\",\"cache\":false,\"cost\":200}}");
+        assertThat(QueryRenderer.json(new ParserQuery("emailprivacy", Map.of())))
+                .isEqualTo("{\"emailprivacy\":{}}");
+    }
+
+    @Test
+    void rejectsTermsValuesContainingTheSeparator() {
+        assertThatThrownBy(() -> new Terms("from_addr", List.of("\"doe, jane\"@x.com")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,95 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Bool;
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.Term;
+import dev.aparikh.searchemail.search.QueryNode.Terms;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuerySimplifierTest {
+
+    private static final List<String> FIELDS = List.of("from_addr", "to_addr");
+
+    @Test
+    void flattensNestedDisjunctionsAndRemovesDuplicates() {
+        QueryNode node = QueryNode.or(
+                QueryNode.anyField(FIELDS, "alice@acme.com"),
+                QueryNode.or(new Filter(new Term("bcc_addr", "alice@acme.com")), new Term("cc_addr", "x@acme.com")),
+                new Filter(new Term("bcc_addr", "alice@acme.com")));
+
+        QueryNode simplified = QuerySimplifier.simplify(node);
+
+        assertThat(simplified).isEqualTo(QueryNode.or(
+                new Term("from_addr", "alice@acme.com"),
+                new Term("to_addr", "alice@acme.com"),
+                new Filter(new Term("bcc_addr", "alice@acme.com")),
+                new Term("cc_addr", "x@acme.com")));
+    }
+
+    @Test
+    void mergesTermsOnTheSameFieldIntoOneTermsLookup() {
+        QueryNode node = QueryNode.or(
+                QueryNode.anyField(FIELDS, "alice@acme.com"),
+                QueryNode.anyField(FIELDS, "bob@acme.com"),
+                QueryNode.anyField(FIELDS, "alice@acme.com"));
+
+        QueryNode simplified = QuerySimplifier.simplify(node);
+
+        assertThat(simplified).isEqualTo(QueryNode.or(
+                new Terms("from_addr", List.of("alice@acme.com", "bob@acme.com")),
+                new Terms("to_addr", List.of("alice@acme.com", "bob@acme.com"))));
+    }
+
+    @Test
+    void factorsConjunctionsSharingTheirRemainingClauses() {
+        Filter sender = new Filter(new Term("from_domain", "acme.com"));
+        QueryNode node = QueryNode.or(
+                QueryNode.and(new Term("bcc_addr", "bob@other.com"), sender),
+                QueryNode.and(new Term("bcc_addr", "carol@third.com"), sender),
+                QueryNode.and(new Term("bcc_addr", "dave@other.com"), new Filter(new Term("from_domain", "fourth.com"))));
+
+        QueryNode simplified = QuerySimplifier.simplify(node);
+
+        assertThat(simplified).isEqualTo(QueryNode.or(
+                QueryNode.and(new Terms("bcc_addr", List.of("bob@other.com", "carol@third.com")), sender),
+                QueryNode.and(new Term("bcc_addr", "dave@other.com"), new Filter(new Term("from_domain", "fourth.com")))));
+    }
+
+    @Test
+    void keepsFilterClausesSeparateSoEachStaysCached() {
+        QueryNode node = QueryNode.or(
+                new Filter(new Term("from_addr", "alice@acme.com")),
+                new Filter(new Term("from_addr", "bob@acme.com")));
+
+        assertThat(QuerySimplifier.simplify(node)).isEqualTo(node);
+    }
+
+    @Test
+    void doesNotMergeValuesContainingCommas() {
+        QueryNode node = QueryNode.or(
+                new Term("from_addr", "\"doe, jane\"@acme.com"),
+                new Term("from_addr", "bob@acme.com"));
+
+        assertThat(QuerySimplifier.simplify(node)).isEqualTo(node);
+    }
+
+    @Test
+    void unwrapsSingleClauseBooleans() {
+        QueryNode node = QueryNode.or(QueryNode.and(new Term("from_addr", "alice@acme.com")));
+
+        assertThat(QuerySimplifier.simplify(node)).isEqualTo(new Term("from_addr", "alice@acme.com"));
+    }
+
+    @Test
+    void movesSingleRequiredAlternativeIntoConjunction() {
+        QueryNode node = new Bool(List.of(new Term("any_domain", "acme.com")),
+                List.of(new Term("from_addr", "alice@acme.com")), List.of());
+
+        assertThat(QuerySimplifier.simplify(node)).isEqualTo(
+                QueryNode.and(new Term("any_domain", "acme.com"), new Term("from_addr", "alice@acme.com")));
+    }
+}
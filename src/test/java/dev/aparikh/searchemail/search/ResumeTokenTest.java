@@ -0,0 +1,43 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResumeTokenTest {
+
+    @Test
+    void encodedTokenDecodesToTheSamePosition() {
+        ResumeToken token = new ResumeToken(Instant.parse("2025-01-01T10:00:00.123Z"), "<abc:def@mail.example.com>");
+
+        String encoded = token.encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(ResumeToken.decode(encoded)).isEqualTo(token);
+    }
+
+    @Test
+    void positionAfterAnEmailIsItsSortKey() {
+        Instant sentAt = Instant.parse("2025-01-01T10:00:00Z");
+        EmailDocument email = new EmailDocument("1", "s", "b", "a@x.com", List.of(), List.of(), List.of(), sentAt);
+
+        assertThat(ResumeToken.after(email)).isEqualTo(new ResumeToken(sentAt, "1"));
+        assertThat(ResumeToken.after(new EmailDocument("1", null, null, null, List.of(), List.of(), List.of(), null)))
+                .isNull();
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        for (String token : List.of("not base64!", "", "bm8tc2VwYXJhdG9y", "MTIzOg", "YWJjOmlk")) {
+            assertThatThrownBy(() -> ResumeToken.decode(token))
+                    .as(token)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid resume token");
+        }
+    }
+}
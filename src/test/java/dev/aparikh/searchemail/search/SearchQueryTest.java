@@ -139,6 +139,13 @@ class SearchQueryTest {
                 .hasMessage("size must be > 0");
     }
 
+    @Test
+    void constructorRejectsNonPositiveMinExactCount() {
+        assertThatThrownBy(() -> new SearchQuery(start, end, null, null, "domain.com", 0, 100, null, null, null, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("minExactCount must be > 0");
+    }
+
     @Test
     void facetFieldsCanBeNull() {
         var query = new SearchQuery(start, end, null, null, "domain.com", 0, 100, null);
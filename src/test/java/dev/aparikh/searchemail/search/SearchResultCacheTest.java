@@ -0,0 +1,152 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.indexing.EmailsIndexedEvent;
+import dev.aparikh.searchemail.model.EmailDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchResultCacheTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2025-01-02T00:00:00Z");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private static SearchResultCache enabledCache(SimpleMeterRegistry registry) {
+        SearchProperties properties = new SearchProperties();
+        properties.setResultCacheEnabled(true);
+        return new SearchResultCache(properties, registry);
+    }
+
+    private static SearchQuery query(List<String> participants, String admin, String sort,
+                                     List<String> facetFields, List<FacetQueryDefinition> facetQueries) {
+        return new SearchQuery(START, END, "subject:report", participants, admin, 0, 20, facetFields, facetQueries, sort);
+    }
+
+    private List<EmailDocument> load() {
+        loads.incrementAndGet();
+        return List.of(new EmailDocument("1", "s", "b", "a@acme.com", List.of(), List.of(), List.of(), START));
+    }
+
+    private double requests(String firm, String result) {
+        return registry.get("search.result.cache.requests").tags("firm", firm, "result", result).counter().count();
+    }
+
+    @Test
+    void equivalentQueriesShareAKey() {
+        SearchCacheKey a = SearchCacheKey.of(SearchCacheKey.Kind.FACETED_PAGE, 0, query(
+                List.of("Bob@Other.com", "alice@acme.com", "bob@other.com"), "Acme.com", "timestamp DESC",
+                List.of("to_addr", "from_addr"),
+                List.of(new FacetQueryDefinition("b", "q2"), new FacetQueryDefinition("a", "q1"))));
+        SearchCacheKey b = SearchCacheKey.of(SearchCacheKey.Kind.FACETED_PAGE, 0, query(
+                List.of("alice@acme.com", "bob@other.com"), "acme.com", "sent_at desc",
+                List.of("from_addr", "to_addr", "from_addr"),
+                List.of(new FacetQueryDefinition("a", "q1"), new FacetQueryDefinition("b", "q2"))));
+
+        assertThat(a).isEqualTo(b);
+        assertThat(a.participants()).containsExactly("alice@acme.com", "bob@other.com");
+        assertThat(a.sort()).isEqualTo("sent_at desc");
+    }
+
+    @Test
+    void pageKeysIgnoreFacetsButNotPrivacyInputs() {
+        SearchCacheKey plain = SearchCacheKey.of(SearchCacheKey.Kind.PAGE, 0,
+                query(List.of("alice@acme.com"), "acme.com", null, null, null));
+        SearchCacheKey withFacets = SearchCacheKey.of(SearchCacheKey.Kind.PAGE, 0,
+                query(List.of("alice@acme.com"), "acme.com", null, List.of("from_addr"), null));
+        SearchCacheKey otherFirm = SearchCacheKey.of(SearchCacheKey.Kind.PAGE, 0,
+                query(List.of("alice@acme.com"), "other.com", null, null, null));
+
+        assertThat(plain).isEqualTo(withFacets);
+        assertThat(plain).isNotEqualTo(otherFirm);
+        assertThat(SearchCacheKey.of(SearchCacheKey.Kind.FACETED_PAGE, 0, query(List.of("alice@acme.com"), "acme.com", null, null, null)))
+                .isNotEqualTo(plain);
+    }
+
+    @Test
+    void countsHitsAndMissesPerFirm() {
+        SearchResultCache cache = enabledCache(registry);
+
+        cache.get(SearchCacheKey.Kind.PAGE, query(null, "acme.com", null, null, null), this::load);
+        cache.get(SearchCacheKey.Kind.PAGE, query(null, "ACME.com", null, null, null), this::load);
+        cache.get(SearchCacheKey.Kind.PAGE, query(null, null, null, null, null), this::load);
+
+        assertThat(loads).hasValue(2);
+        assertThat(requests("acme.com", "miss")).isEqualTo(1.0);
+        assertThat(requests("acme.com", "hit")).isEqualTo(1.0);
+        assertThat(requests("none", "miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void indexCommitInvalidatesCachedPages() {
+        SearchResultCache cache = enabledCache(registry);
+        SearchQuery q = query(null, "acme.com", null, null, null);
+
+        cache.get(SearchCacheKey.Kind.PAGE, q, this::load);
+        cache.onEmailsIndexed(new EmailsIndexedEvent(3));
+        cache.get(SearchCacheKey.Kind.PAGE, q, this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void pageLoadedAcrossACommitIsNotServedAfterIt() {
+        SearchResultCache cache = enabledCache(registry);
+        SearchQuery q = query(null, "acme.com", null, null, null);
+
+        cache.get(SearchCacheKey.Kind.PAGE, q, () -> {
+            cache.invalidateAll(); // commit lands while the page is being fetched
+            return load();
+        });
+        cache.get(SearchCacheKey.Kind.PAGE, q, this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void failedLoadsAreNotCached() {
+        SearchResultCache cache = enabledCache(registry);
+        SearchQuery q = query(null, "acme.com", null, null, null);
+
+        assertThatThrownBy(() -> cache.get(SearchCacheKey.Kind.PAGE, q, () -> {
+            throw new RuntimeException("Search failed");
+        })).hasMessage("Search failed");
+        cache.get(SearchCacheKey.Kind.PAGE, q, this::load);
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        SearchResultCache cache = new SearchResultCache(new SearchProperties(), registry);
+        SearchQuery q = query(null, "acme.com", null, null, null);
+
+        cache.get(SearchCacheKey.Kind.PAGE, q, this::load);
+        cache.get(SearchCacheKey.Kind.PAGE, q, this::load);
+
+        assertThat(loads).hasValue(2);
+        assertThat(cache.nativeCache()).isEmpty();
+    }
+
+    @Test
+    void weighsPagesByPayloadSize() {
+        EmailDocument small = new EmailDocument("1", "s", "b", "a@acme.com", List.of(), List.of(), List.of(), START);
+        EmailDocument large = new EmailDocument("2", "s", "b".repeat(10_000), "a@acme.com", List.of(), List.of(), List.of(), START);
+        SearchResult faceted = new SearchResult(List.of(small), 1, 0, 20, 1,
+                Map.of("from_addr", new FacetResult("from_addr", List.of(new FacetValue("a@acme.com", 1)))));
+
+        assertThat(SearchResultCache.weigh(null, List.of(large))).isGreaterThan(20_000);
+        assertThat(SearchResultCache.weigh(null, List.of(small, small)))
+                .isGreaterThan(SearchResultCache.weigh(null, List.of(small)));
+        assertThat(SearchResultCache.weigh(null, faceted)).isGreaterThan(SearchResultCache.weigh(null, List.of(small)));
+    }
+}
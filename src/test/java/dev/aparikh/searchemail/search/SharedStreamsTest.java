@@ -0,0 +1,159 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.model.EmailDocument;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedStreamsTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T10:00:00Z");
+
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger split = new AtomicInteger();
+
+    private static EmailDocument email(int i) {
+        return new EmailDocument("id-" + i, "Subject " + i, "Body", "from@test.com",
+                List.of("to@test.com"), List.of(), List.of(), START.plusSeconds(i));
+    }
+
+    // Emails 0 to 5, or those after the token
+    private Flux<EmailDocument> source(ResumeToken after) {
+        int from = after == null ? 0 : Integer.parseInt(after.id().substring(3)) + 1;
+        return Flux.range(from, 6 - from)
+                .map(SharedStreamsTest::email)
+                .doOnSubscribe(s -> subscriptions.incrementAndGet());
+    }
+
+    private SharedStreams<String> shared(Duration window, int replayDocuments) {
+        return new SharedStreams<>(window, replayDocuments, joined::incrementAndGet, split::incrementAndGet);
+    }
+
+    @Test
+    void subscriberWithinTheWindowJoinsTheRunningStream() {
+        SharedStreams<String> shared = shared(Duration.ofMinutes(1), 10);
+        Recorder first = new Recorder();
+        shared.stream("q", this::source).subscribe(first);
+
+        StepVerifier.create(shared.stream("q", this::source).map(EmailDocument::id))
+                .expectNext("id-0", "id-1", "id-2", "id-3", "id-4", "id-5")
+                .verifyComplete();
+        first.request(10);
+
+        assertThat(first.ids()).containsExactly("id-0", "id-1", "id-2", "id-3", "id-4", "id-5");
+        assertThat(first.completed).isTrue();
+        assertThat(subscriptions.get()).isEqualTo(1);
+        assertThat(joined.get()).isEqualTo(1);
+    }
+
+    @Test
+    void subscriberFallingBehindTheBufferContinuesOnItsOwnStream() {
+        SharedStreams<String> shared = shared(Duration.ofMinutes(1), 2);
+        Recorder slow = new Recorder();
+        Recorder fast = new Recorder();
+        shared.stream("q", this::source).subscribe(slow);
+        shared.stream("q", this::source).subscribe(fast);
+
+        slow.request(1);
+        fast.request(10);
+        // The fast subscriber read past the buffer while the slow one still held email 1 back
+        assertThat(fast.ids()).containsExactly("id-0", "id-1", "id-2", "id-3", "id-4", "id-5");
+        assertThat(split.get()).isEqualTo(1);
+
+        slow.request(10);
+
+        assertThat(slow.ids()).containsExactly("id-0", "id-1", "id-2", "id-3", "id-4", "id-5");
+        assertThat(slow.completed).isTrue();
+        assertThat(subscriptions.get()).isEqualTo(2);
+    }
+
+    @Test
+    void streamStartedBeforeTheWindowIsNotJoined() {
+        SharedStreams<String> shared = shared(Duration.ZERO, 10);
+        Recorder first = new Recorder();
+        shared.stream("q", this::source).subscribe(first);
+
+        StepVerifier.create(shared.stream("q", this::source))
+                .expectNextCount(6)
+                .verifyComplete();
+
+        assertThat(subscriptions.get()).isEqualTo(2);
+        assertThat(joined.get()).isEqualTo(0);
+    }
+
+    @Test
+    void differentKeysAreNotShared() {
+        SharedStreams<String> shared = shared(Duration.ofMinutes(1), 10);
+        shared.stream("q1", this::source).subscribe(new Recorder());
+
+        StepVerifier.create(shared.stream("q2", this::source))
+                .expectNextCount(6)
+                .verifyComplete();
+
+        assertThat(subscriptions.get()).isEqualTo(2);
+    }
+
+    @Test
+    void lastSubscriberLeavingCancelsTheSource() {
+        SharedStreams<String> shared = shared(Duration.ofMinutes(1), 10);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<EmailDocument> never = Flux.<EmailDocument>never().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = shared.stream("q", after -> never).subscribe();
+        Disposable second = shared.stream("q", after -> never).subscribe();
+        first.dispose();
+        assertThat(cancelled.get()).isFalse();
+        second.dispose();
+
+        assertThat(cancelled.get()).isTrue();
+    }
+
+    @Test
+    void sourceErrorsReachEverySubscriberAfterTheBufferedEmails() {
+        SharedStreams<String> shared = shared(Duration.ofMinutes(1), 10);
+        Flux<EmailDocument> failing = Flux.range(0, 2).map(SharedStreamsTest::email)
+                .concatWith(Flux.error(new RuntimeException("Solr down")));
+
+        StepVerifier.create(shared.stream("q", after -> failing))
+                .expectNextCount(2)
+                .expectErrorMessage("Solr down")
+                .verify();
+    }
+
+    // Records what it receives and requests only when told to
+    private static final class Recorder extends BaseSubscriber<EmailDocument> {
+        private final List<EmailDocument> received = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(EmailDocument email) {
+            received.add(email);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+
+        List<String> ids() {
+            return received.stream().map(EmailDocument::id).toList();
+        }
+    }
+}
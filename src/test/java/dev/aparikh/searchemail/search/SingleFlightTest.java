@@ -0,0 +1,102 @@
+package dev.aparikh.searchemail.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 30;
+
+    private final AtomicInteger shared = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>(shared::incrementAndGet);
+
+    private void awaitShared(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (shared.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("hits", () -> {
+                    calls.incrementAndGet();
+                    release.await();
+                    return 42;
+                })));
+            }
+            awaitShared(CALLERS - 1);
+            release.countDown();
+
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(42);
+            }
+        }
+        assertThat(calls).hasValue(1);
+        assertThat(shared).hasValue(CALLERS - 1);
+    }
+
+    @Test
+    void failureIsSharedWithWaitingCallersButNotRemembered() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            SingleFlight.Call<Integer, Exception> failing = () -> {
+                calls.incrementAndGet();
+                release.await();
+                throw new IOException("Solr unreachable");
+            };
+            Future<Integer> leader = executor.submit(() -> singleFlight.execute("hits", failing));
+            Future<Integer> follower = executor.submit(() -> singleFlight.execute("hits", failing));
+            awaitShared(1);
+            release.countDown();
+
+            assertThatThrownBy(leader::get).hasCauseInstanceOf(IOException.class);
+            assertThatThrownBy(follower::get).hasCauseInstanceOf(IOException.class);
+        }
+
+        assertThat(singleFlight.execute("hits", () -> 7)).isEqualTo(7);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void sequentialCallsEachRun() {
+        singleFlight.execute("hits", calls::incrementAndGet);
+        singleFlight.execute("hits", calls::incrementAndGet);
+
+        assertThat(calls).hasValue(2);
+        assertThat(shared).hasValue(0);
+    }
+
+    @Test
+    void differentKeysDoNotWaitForEachOther() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> blocked = executor.submit(() -> singleFlight.execute("a", () -> {
+                release.await();
+                return 1;
+            }));
+
+            assertThat(singleFlight.execute("b", () -> 2)).isEqualTo(2);
+            release.countDown();
+            assertThat(blocked.get()).isEqualTo(1);
+        }
+        assertThat(shared).hasValue(0);
+    }
+}
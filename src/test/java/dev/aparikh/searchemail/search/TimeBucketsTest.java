@@ -0,0 +1,80 @@
+package dev.aparikh.searchemail.search;
+
+import dev.aparikh.searchemail.search.QueryNode.Filter;
+import dev.aparikh.searchemail.search.QueryNode.Range;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeBucketsTest {
+
+    private static FilterClause filter(String start, String end, TimeFilterStrategy strategy) {
+        return TimeBuckets.filter("sent_at", Instant.parse(start), Instant.parse(end), strategy);
+    }
+
+    private static Range days(String lower, String upper) {
+        return new Range("sent_at", lower, upper, false);
+    }
+
+    @Test
+    void keepsRangesWithoutWholeDayExact() {
+        FilterClause filter = filter("2025-01-03T15:30:00Z", "2025-01-04T08:00:00Z", TimeFilterStrategy.DAY);
+
+        assertThat(filter).isEqualTo(FilterClause.of(new Range("sent_at", "2025-01-03T15:30:00Z", "2025-01-04T08:00:00Z")));
+        assertThat(TimeBuckets.buckets(filter)).isEmpty();
+    }
+
+    @Test
+    void splitsIntoWholeDaysAndPartialDayEdges() {
+        FilterClause filter = filter("2025-01-03T15:30:00Z", "2025-01-10T08:00:00Z", TimeFilterStrategy.DAY);
+
+        assertThat(filter).isEqualTo(FilterClause.uncached(QueryNode.or(
+                new Filter(days("2025-01-04T00:00:00Z", "2025-01-10T00:00:00Z")),
+                days("2025-01-03T15:30:00Z", "2025-01-04T00:00:00Z"),
+                new Range("sent_at", "2025-01-10T00:00:00Z", "2025-01-10T08:00:00Z")), 0));
+    }
+
+    @Test
+    void omitsLeadingEdgeWhenStartIsMidnight() {
+        FilterClause filter = filter("2025-01-03T00:00:00Z", "2025-01-10T08:00:00Z", TimeFilterStrategy.DAY);
+
+        assertThat(filter).isEqualTo(FilterClause.uncached(QueryNode.or(
+                new Filter(days("2025-01-03T00:00:00Z", "2025-01-10T00:00:00Z")),
+                new Range("sent_at", "2025-01-10T00:00:00Z", "2025-01-10T08:00:00Z")), 0));
+    }
+
+    @Test
+    void requestsLaterTheSameDayShareTheCachedDays() {
+        FilterClause morning = filter("2025-01-03T09:00:00Z", "2025-02-02T09:00:00Z", TimeFilterStrategy.DAY);
+        FilterClause evening = filter("2025-01-03T21:15:00Z", "2025-02-02T21:15:00Z", TimeFilterStrategy.DAY);
+
+        assertThat(TimeBuckets.buckets(morning)).isEqualTo(TimeBuckets.buckets(evening));
+    }
+
+    @Test
+    void splitsWholeMonthsSeparatelyFromPartialMonthDays() {
+        FilterClause filter = filter("2025-01-20T12:00:00Z", "2025-04-05T06:00:00Z", TimeFilterStrategy.MONTH);
+
+        assertThat(filter).isEqualTo(FilterClause.uncached(QueryNode.or(
+                new Filter(days("2025-02-01T00:00:00Z", "2025-04-01T00:00:00Z")),
+                new Filter(days("2025-01-21T00:00:00Z", "2025-02-01T00:00:00Z")),
+                new Filter(days("2025-04-01T00:00:00Z", "2025-04-05T00:00:00Z")),
+                days("2025-01-20T12:00:00Z", "2025-01-21T00:00:00Z"),
+                new Range("sent_at", "2025-04-05T00:00:00Z", "2025-04-05T06:00:00Z")), 0));
+        assertThat(TimeBuckets.buckets(filter)).hasSize(3);
+    }
+
+    @Test
+    void monthStrategyFallsBackToDaysWithoutWholeMonth() {
+        assertThat(filter("2025-01-20T12:00:00Z", "2025-02-05T06:00:00Z", TimeFilterStrategy.MONTH))
+                .isEqualTo(filter("2025-01-20T12:00:00Z", "2025-02-05T06:00:00Z", TimeFilterStrategy.DAY));
+    }
+
+    @Test
+    void exactStrategyNeverSplits() {
+        assertThat(filter("2025-01-03T15:30:00Z", "2025-03-10T08:00:00Z", TimeFilterStrategy.EXACT))
+                .isEqualTo(FilterClause.of(new Range("sent_at", "2025-01-03T15:30:00Z", "2025-03-10T08:00:00Z")));
+    }
+}
@@ -0,0 +1,41 @@
+package dev.aparikh.searchemail.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeFilterMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TimeFilterMetrics metrics = new TimeFilterMetrics(registry);
+
+    private static FilterClause filter(String start, String end) {
+        return TimeBuckets.filter("sent_at", Instant.parse(start), Instant.parse(end), TimeFilterStrategy.DAY);
+    }
+
+    private double count(String name, String... tags) {
+        return registry.get(name).tags(tags).counter().count();
+    }
+
+    @Test
+    void countsFiltersByShape() {
+        metrics.record(TimeFilterStrategy.DAY, filter("2025-01-03T15:30:00Z", "2025-01-03T18:00:00Z"));
+        metrics.record(TimeFilterStrategy.DAY, filter("2025-01-03T15:30:00Z", "2025-01-10T08:00:00Z"));
+
+        assertThat(count("search.time.filter", "strategy", "DAY", "shape", "exact")).isEqualTo(1.0);
+        assertThat(count("search.time.filter", "strategy", "DAY", "shape", "bucketed")).isEqualTo(1.0);
+    }
+
+    @Test
+    void countsRepeatedBucketsAsReused() {
+        metrics.record(TimeFilterStrategy.DAY, filter("2025-01-03T09:00:00Z", "2025-02-02T09:00:00Z"));
+        metrics.record(TimeFilterStrategy.DAY, filter("2025-01-03T10:00:00Z", "2025-02-02T10:00:00Z"));
+        metrics.record(TimeFilterStrategy.DAY, filter("2025-01-04T10:00:00Z", "2025-02-03T10:00:00Z"));
+
+        assertThat(count("search.time.filter.buckets", "result", "new")).isEqualTo(2.0);
+        assertThat(count("search.time.filter.buckets", "result", "reused")).isEqualTo(1.0);
+    }
+}
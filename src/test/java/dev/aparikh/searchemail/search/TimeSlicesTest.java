@@ -0,0 +1,82 @@
+package dev.aparikh.searchemail.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeSlicesTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Test
+    void bucketsSplitTheRangeEvenly() {
+        Instant end = START.plusMillis(159_999);
+
+        assertThat(TimeSlices.bucketMillis(START, end, 10)).isEqualTo(1_000L);
+        assertThat(TimeSlices.bucketMillis(START, START, 10)).isEqualTo(1L);
+    }
+
+    @Test
+    void uniformDensityGivesEqualWidthSlices() {
+        Instant end = START.plusMillis(7_999);
+        long[] counts = new long[8];
+        Arrays.fill(counts, 100);
+
+        List<TimeSlices.Slice> slices = TimeSlices.split(START, end, 1_000, counts, 4);
+
+        assertThat(slices).containsExactly(
+                new TimeSlices.Slice(START, START.plusMillis(1_999)),
+                new TimeSlices.Slice(START.plusMillis(2_000), START.plusMillis(3_999)),
+                new TimeSlices.Slice(START.plusMillis(4_000), START.plusMillis(5_999)),
+                new TimeSlices.Slice(START.plusMillis(6_000), end));
+    }
+
+    @Test
+    void denseBucketsGetTheirOwnSlices() {
+        Instant end = START.plusMillis(7_999);
+        // Nearly everything in the second and third buckets
+        long[] counts = {1, 500, 500, 1, 0, 0, 0, 0};
+
+        List<TimeSlices.Slice> slices = TimeSlices.split(START, end, 1_000, counts, 2);
+
+        assertThat(slices).containsExactly(
+                new TimeSlices.Slice(START, START.plusMillis(1_999)),
+                new TimeSlices.Slice(START.plusMillis(2_000), end));
+    }
+
+    @Test
+    void oneDenseBucketYieldsFewerSlices() {
+        Instant end = START.plusMillis(3_999);
+        long[] counts = {0, 1_000, 0, 0};
+
+        List<TimeSlices.Slice> slices = TimeSlices.split(START, end, 1_000, counts, 4);
+
+        assertThat(slices).containsExactly(
+                new TimeSlices.Slice(START, START.plusMillis(1_999)),
+                new TimeSlices.Slice(START.plusMillis(2_000), end));
+    }
+
+    @Test
+    void emptyHistogramKeepsTheWholeRange() {
+        Instant end = START.plusSeconds(3600);
+
+        assertThat(TimeSlices.split(START, end, 1_000, new long[8], 4))
+                .containsExactly(new TimeSlices.Slice(START, end));
+        assertThat(TimeSlices.split(START, end, 1_000, new long[]{5, 5}, 1))
+                .containsExactly(new TimeSlices.Slice(START, end));
+    }
+
+    @Test
+    void slicesNeverEndPastTheRange() {
+        // Every cut would fall at the end of the last bucket, which extends past the range
+        Instant end = START.plusMillis(2_499);
+        long[] counts = {0, 0, 10};
+
+        assertThat(TimeSlices.split(START, end, 1_000, counts, 4))
+                .containsExactly(new TimeSlices.Slice(START, end));
+    }
+}